@@ -95,6 +95,9 @@ public abstract class AbstractAgentMojo extends AbstractJacocoMojo {
 	 * <li>tcpclient: At startup the agent connects to the TCP port specified by
 	 * the {@link #address} and {@link #port}. Execution data is written to this
 	 * TCP connection.</li>
+	 * <li>http: The agent listens for HTTP requests on the port specified by
+	 * the {@link #address} and {@link #port}. Execution data is served at the
+	 * path /exec.</li>
 	 * <li>none: Do not produce any output.</li>
 	 * </ul>
 	 * 
@@ -134,6 +137,107 @@ public abstract class AbstractAgentMojo extends AbstractJacocoMojo {
 	 */
 	protected Boolean jmx;
 
+	/**
+	 * If set to true the agent records execution counts instead of flags.
+	 * 
+	 * @parameter expression="${jacoco.counters}"
+	 */
+	protected Boolean counters;
+
+	/**
+	 * If set to true probes only write to the probe array if they have not been
+	 * set before.
+	 * 
+	 * @parameter expression="${jacoco.conditionalProbes}"
+	 */
+	protected Boolean conditionalProbes;
+
+	/**
+	 * Interval in seconds in which fully covered classes are replaced with
+	 * versions without probes. 0 disables this feature.
+	 * 
+	 * @parameter expression="${jacoco.deinstrumentInterval}"
+	 */
+	protected Integer deinstrumentInterval;
+
+	/**
+	 * Interval in seconds in which snapshots of the current execution data are
+	 * written in the background. 0 disables periodic snapshots.
+	 * 
+	 * @parameter expression="${jacoco.dumpInterval}"
+	 */
+	protected Integer dumpInterval;
+
+	/**
+	 * Number of periodic snapshot files which are kept.
+	 * 
+	 * @parameter expression="${jacoco.dumpKeep}"
+	 */
+	protected Integer dumpKeep;
+
+	/**
+	 * File to which the probes of all classes are continuously mirrored
+	 * through a memory mapping. The file survives crashes of the VM and can be
+	 * read at any time, also by the report and merge goals.
+	 * 
+	 * @parameter expression="${jacoco.mirrorFile}"
+	 */
+	protected File mirrorFile;
+
+	/**
+	 * Interval in milliseconds in which the mirror file is updated. Probes
+	 * executed after the last update are missing in the mirror file if the VM
+	 * crashes.
+	 * 
+	 * @parameter expression="${jacoco.mirrorInterval}"
+	 */
+	protected Integer mirrorInterval;
+
+	/**
+	 * Directory where the agent caches instrumented class files. VMs started
+	 * later with the same class files and agent configuration load the
+	 * instrumented classes from the cache. The directory can be shared by
+	 * concurrently running VMs, for example forked test VMs.
+	 * 
+	 * @parameter expression="${jacoco.cacheDir}"
+	 */
+	protected File cacheDir;
+
+	/**
+	 * Number of background threads which instrument the classes of the class
+	 * path in advance when the agent starts. Pre-instrumented classes are not
+	 * instrumented again when they are loaded.
+	 * 
+	 * @parameter expression="${jacoco.preinstrument}"
+	 */
+	protected Integer preinstrument;
+
+	/**
+	 * If set to true classes are instrumented with a single probe at the entry
+	 * of every method. Reports only contain method and class coverage then.
+	 * 
+	 * @parameter expression="${jacoco.methodProbes}"
+	 */
+	protected Boolean methodProbes;
+
+	/**
+	 * If set to true threads can bind named coverage contexts through the agent
+	 * API. Probes executed by such threads are dumped as separate sessions.
+	 * 
+	 * @parameter expression="${jacoco.contexts}"
+	 */
+	protected Boolean contexts;
+
+	/**
+	 * File where the agent moves the execution data of unloaded classes to.
+	 * This limits the memory used by applications which continuously load and
+	 * unload classes, e.g. generated proxies or scripts. The data is still
+	 * included in every dump.
+	 * 
+	 * @parameter expression="${jacoco.spillFile}"
+	 */
+	protected String spillFile;
+
 	@Override
 	public void executeMojo() {
 		final String name = getEffectivePropertyName();
@@ -191,6 +295,43 @@ public abstract class AbstractAgentMojo extends AbstractJacocoMojo {
 		if (jmx != null) {
 			agentOptions.setJmx(jmx.booleanValue());
 		}
+		if (counters != null) {
+			agentOptions.setCounters(counters.booleanValue());
+		}
+		if (conditionalProbes != null) {
+			agentOptions.setConditionalProbes(conditionalProbes.booleanValue());
+		}
+		if (deinstrumentInterval != null) {
+			agentOptions.setDeinstrumentInterval(deinstrumentInterval
+					.intValue());
+		}
+		if (dumpInterval != null) {
+			agentOptions.setDumpInterval(dumpInterval.intValue());
+		}
+		if (dumpKeep != null) {
+			agentOptions.setDumpKeep(dumpKeep.intValue());
+		}
+		if (mirrorFile != null) {
+			agentOptions.setMirrorFile(mirrorFile.getAbsolutePath());
+		}
+		if (mirrorInterval != null) {
+			agentOptions.setMirrorInterval(mirrorInterval.intValue());
+		}
+		if (cacheDir != null) {
+			agentOptions.setCacheDir(cacheDir.getAbsolutePath());
+		}
+		if (preinstrument != null) {
+			agentOptions.setPreinstrument(preinstrument.intValue());
+		}
+		if (methodProbes != null) {
+			agentOptions.setMethodProbes(methodProbes.booleanValue());
+		}
+		if (contexts != null) {
+			agentOptions.setContexts(contexts.booleanValue());
+		}
+		if (spillFile != null) {
+			agentOptions.setSpillFile(spillFile);
+		}
 		return agentOptions;
 	}
 
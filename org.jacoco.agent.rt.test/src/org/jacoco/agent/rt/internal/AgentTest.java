@@ -13,15 +13,21 @@ package org.jacoco.agent.rt.internal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanServer;
@@ -29,16 +35,23 @@ import javax.management.ObjectName;
 
 import org.jacoco.agent.rt.internal.output.IAgentOutput;
 import org.jacoco.agent.rt.internal.output.FileOutput;
+import org.jacoco.agent.rt.internal.output.HttpServerOutput;
 import org.jacoco.agent.rt.internal.output.NoneOutput;
 import org.jacoco.agent.rt.internal.output.TcpClientOutput;
 import org.jacoco.agent.rt.internal.output.TcpServerOutput;
 import org.jacoco.core.JaCoCo;
+import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.data.ExecutionDataReader;
 import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
 import org.jacoco.core.data.SessionInfoStore;
 import org.jacoco.core.runtime.AgentOptions;
 import org.jacoco.core.runtime.AgentOptions.OutputMode;
+import org.jacoco.core.runtime.LoggerRuntime;
 import org.jacoco.core.runtime.RuntimeData;
+import org.jacoco.core.tools.ExecFileLoader;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -81,6 +94,10 @@ public class AgentTest implements IExceptionLogger {
 		assertEquals(TcpClientOutput.class, agent.createAgentOutput()
 				.getClass());
 
+		options.setOutput(OutputMode.http);
+		assertEquals(HttpServerOutput.class, agent.createAgentOutput()
+				.getClass());
+
 		options.setOutput(OutputMode.none);
 		assertEquals(NoneOutput.class, agent.createAgentOutput()
 				.getClass());
@@ -101,6 +118,57 @@ public class AgentTest implements IExceptionLogger {
 		assertNull(exception);
 	}
 
+	@Test
+	public void testStartupShutdownWithPeriodicDump() throws Exception {
+		options.setDumpInterval(1);
+		Agent agent = new Agent(options, this);
+		agent.startup();
+		agent.shutdown();
+
+		assertTrue(execfile.isFile());
+		assertFalse(new File(folder.getRoot(), "jacoco-1.exec").exists());
+		assertNull(exception);
+	}
+
+	@Test
+	public void testStartupShutdownWithMirrorFile() throws Exception {
+		final File mirror = new File(folder.getRoot(), "mirror.exec");
+		options.setMirrorFile(mirror.getAbsolutePath());
+		Agent agent = new Agent(options, this);
+		agent.startup();
+		agent.getData().getExecutionData(Long.valueOf(0x12345678), "Foo", 1)
+				.getProbes()[0] = true;
+		agent.shutdown();
+
+		final ExecFileLoader loader = new ExecFileLoader();
+		loader.load(mirror);
+		assertTrue(loader.getExecutionDataStore().get(0x12345678)
+				.getProbes()[0]);
+		assertNull(exception);
+	}
+
+	@Test
+	public void testStartupShutdownWithSpillFile() throws Exception {
+		final File spill = new File(folder.getRoot(), "spill.exec");
+		options.setSpillFile(spill.getAbsolutePath());
+		options.setOutput(OutputMode.none);
+		Agent agent = new Agent(options, this);
+		agent.startup();
+		agent.getData().getExecutionData(Long.valueOf(0x12345678), "Foo", 1)
+				.getProbes()[0] = true;
+		assertEquals(1,
+				agent.getData().spill(new long[] { 0x12345678 }));
+
+		final ExecFileLoader loader = new ExecFileLoader();
+		loader.load(new ByteArrayInputStream(agent.getExecutionData(false)));
+		assertTrue(loader.getExecutionDataStore().get(0x12345678)
+				.getProbes()[0]);
+		agent.shutdown();
+
+		assertTrue(spill.isFile());
+		assertNull(exception);
+	}
+
 	@Test
 	public void testShutdownWithException() throws Exception {
 		final Exception expected = new Exception();
@@ -226,6 +294,161 @@ public class AgentTest implements IExceptionLogger {
 		assertEquals("agenttestid", sessionStore.getInfos().get(0).getId());
 	}
 
+	@Test
+	public void testGetExecutionDataDelta() throws IOException {
+		Agent agent = new Agent(options, this);
+		agent.startup();
+
+		boolean[] probes = agent.getData()
+				.getExecutionData(Long.valueOf(0x12345678), "Foo", 1)
+				.getProbes();
+		agent.getData().getExecutionData(Long.valueOf(0x87654321), "Bar", 1);
+		probes[0] = true;
+
+		ExecutionDataStore execStore = new ExecutionDataStore();
+		ExecutionDataReader reader = new ExecutionDataReader(
+				new ByteArrayInputStream(agent.getExecutionDataDelta(false)));
+		reader.setExecutionDataVisitor(execStore);
+		reader.setSessionInfoVisitor(new SessionInfoStore());
+		reader.read();
+
+		assertEquals(1, execStore.getContents().size());
+		assertEquals("Foo", execStore.get(0x12345678).getName());
+
+		// nothing changed since the last delta
+		execStore = new ExecutionDataStore();
+		reader = new ExecutionDataReader(new ByteArrayInputStream(
+				agent.getExecutionDataDelta(false)));
+		reader.setExecutionDataVisitor(execStore);
+		reader.setSessionInfoVisitor(new SessionInfoStore());
+		reader.read();
+
+		assertTrue(execStore.getContents().isEmpty());
+	}
+
+	@Test
+	public void testGetExecutionDataPages() throws IOException {
+		Agent agent = new Agent(options, this);
+		agent.startup();
+		boolean[] probes = agent.getData()
+				.getExecutionData(Long.valueOf(0x12345678), "Foo", 1)
+				.getProbes();
+		probes[0] = true;
+
+		final long snapshot = agent.openExecutionData(true, 10);
+		assertFalse(probes[0]);
+
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		int index = 0;
+		byte[] page;
+		do {
+			page = agent.getExecutionDataPage(snapshot, index++);
+			assertTrue(page.length <= 10);
+			buffer.write(page);
+		} while (page.length > 0);
+		agent.closeExecutionData(snapshot);
+
+		ExecutionDataStore execStore = new ExecutionDataStore();
+		ExecutionDataReader reader = new ExecutionDataReader(
+				new ByteArrayInputStream(buffer.toByteArray()));
+		reader.setExecutionDataVisitor(execStore);
+		reader.setSessionInfoVisitor(new SessionInfoStore());
+		reader.read();
+		assertTrue(execStore.get(0x12345678).getProbes()[0]);
+
+		try {
+			agent.getExecutionDataPage(snapshot, 0);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Unknown snapshot " + snapshot, e.getMessage());
+		}
+	}
+
+	@Test
+	public void testOpenExecutionDataWhileOpen() {
+		Agent agent = new Agent(options, this);
+		agent.startup();
+		boolean[] probes = agent.getData()
+				.getExecutionData(Long.valueOf(0x12345678), "Foo", 1)
+				.getProbes();
+		probes[0] = true;
+
+		final long first = agent.openExecutionData(false, 100);
+		try {
+			agent.openExecutionData(true, 100);
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException e) {
+			assertEquals("Snapshot " + first + " is still open",
+					e.getMessage());
+		}
+		// The rejected snapshot must not reset the execution data:
+		assertTrue(probes[0]);
+		assertTrue(agent.getExecutionDataPage(first, 0).length > 0);
+
+		agent.closeExecutionData(first);
+		final long second = agent.openExecutionData(false, 100);
+		assertTrue(second != first);
+		agent.closeExecutionData(second);
+	}
+
+	@Test
+	public void testGetTestExecutionData() throws IOException {
+		Agent agent = new Agent(options, this);
+		agent.startup();
+		boolean[] probes = agent.getData()
+				.getExecutionData(Long.valueOf(0x12345678), "Foo", 2)
+				.getProbes();
+
+		agent.startTest("test1");
+		probes[0] = true;
+		agent.startTest("test2");
+		probes[1] = true;
+		agent.endTest();
+
+		final List<String> contents = new ArrayList<String>();
+		ExecutionDataReader reader = new ExecutionDataReader(
+				new ByteArrayInputStream(agent.getTestExecutionData(true)));
+		reader.setSessionInfoVisitor(new ISessionInfoVisitor() {
+			public void visitSessionInfo(SessionInfo info) {
+				contents.add(info.getId());
+			}
+		});
+		reader.setExecutionDataVisitor(new IExecutionDataVisitor() {
+			public void visitClassExecution(ExecutionData data) {
+				contents.add(data.getName() + Arrays.toString(data.getProbes()));
+			}
+		});
+		reader.read();
+
+		assertEquals(Arrays.asList("test1", "Foo[true, false]", "test2",
+				"Foo[false, true]"), contents);
+
+		// recorded tests have been reset
+		contents.clear();
+		reader = new ExecutionDataReader(new ByteArrayInputStream(
+				agent.getTestExecutionData(false)));
+		reader.setSessionInfoVisitor(new SessionInfoStore());
+		reader.read();
+
+		assertTrue(contents.isEmpty());
+	}
+
+	@Test
+	public void testBindContext() throws IOException {
+		Agent agent = new Agent(options, this);
+		agent.startup();
+		final RuntimeData data = agent.getData();
+		final boolean[] probes = data.getExecutionData(
+				Long.valueOf(0x12345678), "Foo", 1).getProbes();
+
+		agent.bindContext("checkout");
+		final Map<?, ?> context = (Map<?, ?>) data.getContextAccess().get();
+		assertNotSame(probes, context.get(probes));
+		agent.unbindContext();
+		final Map<?, ?> none = (Map<?, ?>) data.getContextAccess().get();
+		assertSame(probes, none.get(probes));
+	}
+
 	@Test
 	public void testDump() throws Exception {
 		final boolean[] called = new boolean[1];
@@ -253,6 +476,36 @@ public class AgentTest implements IExceptionLogger {
 		assertTrue(called[0]);
 	}
 
+	@Test
+	public void testMetrics() throws Exception {
+		Agent agent = new Agent(options, this);
+		agent.startup();
+		agent.getData().getExecutionData(Long.valueOf(0x12345678), "Foo", 3);
+		agent.getExecutionData(false);
+
+		assertEquals(0, agent.getTransformedClasses());
+		assertEquals(0, agent.getTransformTimeHistogram().length);
+		assertEquals(3, agent.getProbes());
+		assertEquals(1, agent.getExecutionDataRequests());
+		assertEquals(1, agent.getDumps());
+		assertEquals(1, agent.getDumpedClasses());
+		assertEquals(agent.getDumpTime(), agent.getDumpTimeMax());
+	}
+
+	@Test
+	public void testMetricsWithTransformer() throws Exception {
+		Agent agent = new Agent(options, this);
+		final CoverageTransformer transformer = new CoverageTransformer(
+				new LoggerRuntime(), options, this);
+		agent.setTransformer(transformer);
+		transformer.transform(null, "org/example/Foo", null, null, null);
+
+		assertEquals(1, agent.getSkippedClasses());
+		assertEquals(0, agent.getTransformedClasses());
+		assertEquals(0, agent.getOriginalBytes());
+		assertEquals(0, agent.getInstrumentedBytes());
+	}
+
 	@Test
 	public void testJmx() throws Exception {
 		options.setJmx(true);
@@ -263,6 +516,8 @@ public class AgentTest implements IExceptionLogger {
 		ObjectName objectName = new ObjectName("org.jacoco:type=Runtime");
 		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
 		assertEquals(JaCoCo.VERSION, server.getAttribute(objectName, "Version"));
+		assertEquals(Long.valueOf(0),
+				server.getAttribute(objectName, "TransformedClasses"));
 
 		agent.shutdown();
 
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.runtime.ExecutionDataSpill;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link ClassUnloadSpiller}.
+ */
+public class ClassUnloadSpillerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ExceptionRecorder recorder;
+
+	private RuntimeData data;
+
+	private ExecutionDataSpill spill;
+
+	private ClassUnloadSpiller spiller;
+
+	@Before
+	public void setup() throws IOException {
+		recorder = new ExceptionRecorder();
+		data = new RuntimeData();
+		spill = new ExecutionDataSpill(folder.newFile("spill.exec"));
+		data.setSpill(spill);
+		spiller = new ClassUnloadSpiller(data, recorder);
+	}
+
+	@After
+	public void teardown() {
+		recorder.assertNoException();
+	}
+
+	@Test
+	public void testSpillUnloadedClasses() throws Exception {
+		data.getExecutionData(Long.valueOf(1), "Foo", 2).getProbes()[1] = true;
+		data.getExecutionData(Long.valueOf(2), "Bar", 1).getProbes()[0] = true;
+		data.getExecutionData(Long.valueOf(3), "Other", 1).getProbes()[0] = true;
+		register(1, 2);
+		spiller.register(getClass().getClassLoader(), 3);
+
+		awaitUnload();
+
+		assertEquals(2, spill.getRecords());
+		final ExecutionDataStore store = collect();
+		assertEquals(3, store.getContents().size());
+		assertTrue(store.get(1).getProbes()[1]);
+		assertTrue(store.get(2).getProbes()[0]);
+	}
+
+	@Test
+	public void testBootstrapLoader() throws Exception {
+		data.getExecutionData(Long.valueOf(1), "Foo", 1).getProbes()[0] = true;
+		spiller.register(null, 1);
+		System.gc();
+
+		assertFalse(spiller.poll(10));
+		assertEquals(0, spill.getRecords());
+	}
+
+	@Test
+	public void testSharedClassOfLiveLoader() throws Exception {
+		final LoggerRuntime runtime = new LoggerRuntime();
+		runtime.startup(data);
+		try {
+			final byte[] original = getClassBytes(Target.class);
+			final long id = CRC64.checksum(original);
+			final byte[] instrumented = new Instrumenter(runtime).instrument(
+					original, "Target");
+
+			// The same class is defined by two loaders:
+			final Runnable live = define(instrumented, id).newInstance();
+			executeInNewLoader(instrumented, id);
+			awaitUnload();
+
+			// The class is still executed in the live loader:
+			live.run();
+			assertEquals(0, spill.getRecords());
+			assertTrue(collect().get(id).getProbes()[1]);
+		} finally {
+			runtime.shutdown();
+		}
+	}
+
+	/**
+	 * Executes the class in a new loader which is not referenced afterwards.
+	 */
+	private void executeInNewLoader(final byte[] instrumented, final long id)
+			throws Exception {
+		define(instrumented, id).newInstance();
+	}
+
+	private Class<? extends Runnable> define(final byte[] bytes, final long id) {
+		final DefiningLoader loader = new DefiningLoader();
+		spiller.register(loader, id);
+		return loader.define(Target.class.getName(), bytes).asSubclass(
+				Runnable.class);
+	}
+
+	private void awaitUnload() throws InterruptedException {
+		final long timeout = System.currentTimeMillis() + 10000;
+		while (!spiller.poll(10)) {
+			assertTrue(System.currentTimeMillis() < timeout);
+			System.gc();
+		}
+	}
+
+	private ExecutionDataStore collect() {
+		final ExecutionDataStore store = new ExecutionDataStore();
+		data.collect(store, new SessionInfoStore(), false);
+		return store;
+	}
+
+	private static byte[] getClassBytes(final Class<?> c) throws IOException {
+		final String resource = "/" + c.getName().replace('.', '/') + ".class";
+		final InputStream in = c.getResourceAsStream(resource);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1024];
+		int len;
+		while ((len = in.read(buffer)) != -1) {
+			out.write(buffer, 0, len);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Registers the given ids with a new class loader which is not referenced
+	 * afterwards.
+	 */
+	private void register(final long... ids) {
+		final ClassLoader loader = new ClassLoader() {
+		};
+		for (final long id : ids) {
+			spiller.register(loader, id);
+		}
+	}
+
+	private static class DefiningLoader extends ClassLoader {
+
+		DefiningLoader() {
+			super(ClassUnloadSpillerTest.class.getClassLoader());
+		}
+
+		Class<?> define(final String name, final byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	public static class Target implements Runnable {
+
+		public Target() {
+		}
+
+		public void run() {
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.jacoco.core.data.ExecutionData;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CompactExecutionData}.
+ */
+public class CompactExecutionDataTest {
+
+	@Test
+	public void testProbes() {
+		final boolean[] probes = new boolean[130];
+		probes[0] = probes[63] = probes[64] = probes[129] = true;
+
+		final ExecutionData data = new CompactExecutionData(new ExecutionData(
+				3, "Foo", probes)).toExecutionData();
+
+		assertEquals(3, data.getId());
+		assertEquals("Foo", data.getName());
+		assertTrue(Arrays.equals(probes, data.getProbes()));
+		assertNull(data.getCounts());
+	}
+
+	@Test
+	public void testNoProbes() {
+		final ExecutionData data = new CompactExecutionData(new ExecutionData(
+				3, "Foo", new boolean[0])).toExecutionData();
+
+		assertEquals(0, data.getProbes().length);
+	}
+
+	@Test
+	public void testCounts() {
+		final long[] counts = new long[] { 5, 0 };
+		final CompactExecutionData compact = new CompactExecutionData(
+				new ExecutionData(3, "Foo", new boolean[] { true, false },
+						counts));
+		counts[0] = 7;
+
+		final ExecutionData data = compact.toExecutionData();
+
+		assertTrue(Arrays.equals(new long[] { 5, 0 }, data.getCounts()));
+		assertNotSame(data.getCounts(), compact.toExecutionData().getCounts());
+	}
+
+}
@@ -13,6 +13,7 @@ package org.jacoco.agent.rt.internal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -21,13 +22,21 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.instrument.IllegalClassFormatException;
+import java.util.Arrays;
 
 import org.jacoco.core.JaCoCo;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.instr.InstrSupport;
 import org.jacoco.core.runtime.AbstractRuntime;
 import org.jacoco.core.runtime.AgentOptions;
+import org.jacoco.core.runtime.RuntimeData;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.objectweb.asm.MethodVisitor;
 
 /**
@@ -35,6 +44,9 @@ import org.objectweb.asm.MethodVisitor;
  */
 public class CoverageTransformerTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private ExceptionRecorder recorder;
 
 	private AgentOptions options;
@@ -85,6 +97,18 @@ public class CoverageTransformerTest {
 		assertFalse(t.filter(myClassLoader, "org/example/Foo"));
 	}
 
+	@Test
+	public void testFilterClassLoaderCached() {
+		options.setExclClassloader("org.jacoco.agent.rt.internal.CoverageTransformerTest$*");
+		CoverageTransformer t = createTransformer();
+		ClassLoader myClassLoader = new ClassLoader(null) {
+		};
+		assertFalse(t.filter(myClassLoader, "org/example/Foo"));
+		assertFalse(t.filter(myClassLoader, "org/example/Bar"));
+		assertTrue(t.filter(classLoader, "org/example/Foo"));
+		assertTrue(t.filter(classLoader, "org/example/Bar"));
+	}
+
 	@Test
 	public void testFilterIncludedClassPositive() {
 		options.setIncludes("org.jacoco.core.*:org.jacoco.agent.rt.*");
@@ -143,6 +167,135 @@ public class CoverageTransformerTest {
 		recorder.clear();
 	}
 
+	@Test
+	public void testTransformMetrics() throws Exception {
+		CoverageTransformer t = createTransformer();
+		final byte[] bytes = getClassData(JaCoCo.class);
+		final byte[] instrumented = t.transform(classLoader,
+				"org/jacoco/core/JaCoCo", null, null, bytes);
+		assertNull(t.transform(null, "org/jacoco/core/JaCoCo", null, null,
+				bytes));
+
+		assertEquals(1, t.getSkippedClasses());
+		assertEquals(1, t.getTransformTimes().getCount());
+		assertTrue(t.getTransformTimes().getTotal() > 0);
+		assertEquals(bytes.length, t.getOriginalBytes());
+		assertEquals(instrumented.length, t.getInstrumentedBytes());
+	}
+
+	@Test
+	public void testTransformWithCache() throws Exception {
+		options.setCacheDir(folder.getRoot().getAbsolutePath());
+		final byte[] bytes = getClassData(JaCoCo.class);
+		final byte[] instrumented = createTransformer().transform(classLoader,
+				"org/jacoco/core/JaCoCo", null, null, bytes);
+
+		final InstrumentationCache cache = new InstrumentationCache(folder
+				.getRoot().getAbsolutePath(), runtime.getClass().getName()
+				+ " counters=false conditionalprobes=false"
+				+ " methodprobes=false contexts=false");
+		final long classid = CRC64.checksum(bytes);
+		assertTrue(Arrays.equals(instrumented, cache.get(classid)));
+
+		// A new transformer must use the cached version:
+		final byte[] marker = new byte[] { 1, 2, 3 };
+		cache.put(classid, marker);
+		assertTrue(Arrays.equals(marker, createTransformer().transform(
+				classLoader, "org/jacoco/core/JaCoCo", null, null, bytes)));
+	}
+
+	@Test
+	public void testTransformWithCacheConfiguration() throws Exception {
+		options.setCacheDir(folder.getRoot().getAbsolutePath());
+		final byte[] bytes = getClassData(JaCoCo.class);
+		final byte[] plain = createTransformer().transform(classLoader,
+				"org/jacoco/core/JaCoCo", null, null, bytes);
+		options.setConditionalProbes(true);
+		final byte[] conditional = createTransformer().transform(classLoader,
+				"org/jacoco/core/JaCoCo", null, null, bytes);
+		assertFalse(Arrays.equals(plain, conditional));
+	}
+
+	@Test
+	public void testPreinstrument() throws Exception {
+		final CoverageTransformer t = createTransformer();
+		final byte[] bytes = getClassData(JaCoCo.class);
+		t.preinstrument("org/jacoco/core/JaCoCo", bytes);
+		final int accessors = runtime.accessors;
+
+		final byte[] first = t.transform(classLoader, "org/jacoco/core/JaCoCo",
+				null, null, bytes);
+		assertEquals(accessors, runtime.accessors);
+
+		// Pre-instrumented classes are only used once:
+		final byte[] second = t.transform(classLoader,
+				"org/jacoco/core/JaCoCo", null, null, bytes);
+		assertTrue(accessors < runtime.accessors);
+		assertTrue(Arrays.equals(first, second));
+		assertNotSame(first, second);
+	}
+
+	@Test
+	public void testFinishPreinstrument() throws Exception {
+		final CoverageTransformer t = createTransformer();
+		t.preinstrument("org/jacoco/core/JaCoCo", getClassData(JaCoCo.class));
+		t.preinstrument("org/jacoco/core/analysis/ICounter",
+				getClassData(ICounter.class));
+		t.finishPreinstrument();
+		assertEquals(2, t.getPreinstrumentedCount());
+
+		t.transform(classLoader, "org/jacoco/core/JaCoCo", null, null,
+				getClassData(JaCoCo.class));
+		assertEquals(1, t.getPreinstrumentedCount());
+		t.transform(classLoader, "org/jacoco/core/analysis/ICounter", null,
+				null, getClassData(ICounter.class));
+		assertEquals(0, t.getPreinstrumentedCount());
+	}
+
+	@Test
+	public void testFinishPreinstrumentEmpty() throws Exception {
+		final CoverageTransformer t = createTransformer();
+		t.finishPreinstrument();
+		t.preinstrument("org/jacoco/core/JaCoCo", getClassData(JaCoCo.class));
+		assertEquals(0, t.getPreinstrumentedCount());
+	}
+
+	@Test
+	public void testPreinstrumentMisses() throws Exception {
+		final CoverageTransformer t = createTransformer();
+		t.preinstrument("org/jacoco/core/analysis/ICounter",
+				getClassData(ICounter.class));
+		t.finishPreinstrument();
+		final byte[] bytes = getClassData(JaCoCo.class);
+		for (int i = 1; i < CoverageTransformer.MAX_MISSES; i++) {
+			t.transform(classLoader, "org/jacoco/core/JaCoCo", null, null,
+					bytes);
+		}
+		assertEquals(1, t.getPreinstrumentedCount());
+		t.transform(classLoader, "org/jacoco/core/JaCoCo", null, null, bytes);
+		assertEquals(0, t.getPreinstrumentedCount());
+	}
+
+	@Test
+	public void testPreinstrumentFiltered() throws Exception {
+		options.setExcludes("org.jacoco.core.*");
+		final CoverageTransformer t = createTransformer();
+		final byte[] bytes = getClassData(JaCoCo.class);
+		t.preinstrument("org/jacoco/core/JaCoCo", bytes);
+		assertNull(t.transform(classLoader, "org/jacoco/core/JaCoCo", null,
+				null, bytes));
+	}
+
+	@Test
+	public void testPreinstrumentExcludedClassLoader() throws Exception {
+		options.setExclClassloader("org.jacoco.agent.rt.internal.CoverageTransformerTest$*");
+		final CoverageTransformer t = createTransformer();
+		final byte[] bytes = getClassData(JaCoCo.class);
+		t.preinstrument("org/jacoco/core/JaCoCo", bytes);
+		assertNull(t.transform(new ClassLoader(null) {
+		}, "org/jacoco/core/JaCoCo", null, null, bytes));
+	}
+
 	@Test
 	public void testRedefinedClass() throws Exception {
 		CoverageTransformer t = createTransformer();
@@ -153,6 +306,78 @@ public class CoverageTransformerTest {
 		runtime.assertDisconnected(target);
 	}
 
+	@Test
+	public void testRetransformRetiredClass() throws Exception {
+		final RuntimeData data = new RuntimeData();
+		final byte[] bytes = getClassData(JaCoCo.class);
+		final String name = "org/jacoco/core/JaCoCo";
+		final boolean[] probes = data.getExecutionData(CRC64.checksum(bytes),
+				name, 1).getProbes();
+		probes[0] = true;
+		data.retireCoveredClasses();
+		final CoverageTransformer t = new CoverageTransformer(runtime, data,
+				options, recorder);
+
+		final byte[] result = t.transform(classLoader, name, JaCoCo.class,
+				null, bytes);
+
+		runtime.assertDisconnected(JaCoCo.class);
+		assertTrue(Arrays.equals(new Instrumenter(runtime)
+				.instrumentWithoutProbes(bytes, name), result));
+	}
+
+	@Test
+	public void testRetransformRetiredClassWithMethodProbes()
+			throws Exception {
+		options.setMethodProbes(true);
+		final RuntimeData data = new RuntimeData();
+		final byte[] bytes = getClassData(JaCoCo.class);
+		final String name = "org/jacoco/core/JaCoCo";
+		final long classid = InstrSupport.getMethodProbesId(CRC64
+				.checksum(bytes));
+		data.getExecutionData(classid, name, 1).getProbes()[0] = true;
+		data.retireCoveredClasses();
+		final CoverageTransformer t = new CoverageTransformer(runtime, data,
+				options, recorder);
+
+		final byte[] result = t.transform(classLoader, name, JaCoCo.class,
+				null, bytes);
+
+		final Instrumenter instrumenter = new Instrumenter(runtime);
+		instrumenter.setMethodProbes(true);
+		assertTrue(Arrays.equals(
+				instrumenter.instrumentWithoutProbes(bytes, name), result));
+	}
+
+	@Test
+	public void testTransformWithMethodProbes() throws Exception {
+		options.setMethodProbes(true);
+		final byte[] bytes = getClassData(JaCoCo.class);
+		final String name = "org/jacoco/core/JaCoCo";
+
+		final byte[] result = createTransformer().transform(classLoader, name,
+				null, null, bytes);
+
+		final Instrumenter instrumenter = new Instrumenter(runtime);
+		instrumenter.setMethodProbes(true);
+		assertTrue(Arrays.equals(instrumenter.instrument(bytes, name), result));
+	}
+
+	@Test
+	public void testRetransformNotRetiredClass() throws Exception {
+		final RuntimeData data = new RuntimeData();
+		final byte[] bytes = getClassData(JaCoCo.class);
+		final String name = "org/jacoco/core/JaCoCo";
+		final CoverageTransformer t = new CoverageTransformer(runtime, data,
+				options, recorder);
+
+		final byte[] result = t.transform(classLoader, name, JaCoCo.class,
+				null, bytes);
+
+		assertTrue(Arrays.equals(
+				new Instrumenter(runtime).instrument(bytes, name), result));
+	}
+
 	private CoverageTransformer createTransformer() {
 		return new CoverageTransformer(runtime, options, recorder);
 	}
@@ -175,11 +400,14 @@ public class CoverageTransformerTest {
 
 		private Class<?> disconnected;
 
+		int accessors;
+
 		public StubRuntime() {
 		}
 
 		public int generateDataAccessor(long classid, String classname,
 				int probecount, MethodVisitor mv) {
+			accessors++;
 			return 0;
 		}
 
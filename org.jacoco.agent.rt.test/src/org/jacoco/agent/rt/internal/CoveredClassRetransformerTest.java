@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CoveredClassRetransformer}.
+ */
+public class CoveredClassRetransformerTest {
+
+	private ExceptionRecorder recorder;
+
+	private RuntimeData data;
+
+	private InstrumentationMock inst;
+
+	private CoveredClassRetransformer retransformer;
+
+	@Before
+	public void setup() throws Exception {
+		recorder = new ExceptionRecorder();
+		data = new RuntimeData();
+		inst = new InstrumentationMock();
+		retransformer = new CoveredClassRetransformer(inst, data, 1000,
+				recorder);
+	}
+
+	@After
+	public void teardown() {
+		recorder.assertNoException();
+	}
+
+	@Test
+	public void testNothingCovered() {
+		data.getExecutionData(1, "java/lang/String", 2);
+		retransformer.retransformCoveredClasses();
+		assertEquals(0, inst.retransformed.size());
+		assertTrue(!data.isRetired(1));
+	}
+
+	@Test
+	public void testRetransformCoveredClass() {
+		final boolean[] probes = data.getExecutionData(1, "java/lang/String",
+				2).getProbes();
+		probes[0] = true;
+		probes[1] = true;
+		data.getExecutionData(2, "java/lang/Integer", 1);
+
+		retransformer.retransformCoveredClasses();
+
+		assertEquals(Arrays.asList(String.class), inst.retransformed);
+		assertTrue(data.isRetired(1));
+		assertTrue(!data.isRetired(2));
+
+		// Already retired classes are not retransformed again:
+		inst.retransformed.clear();
+		retransformer.retransformCoveredClasses();
+		assertEquals(0, inst.retransformed.size());
+	}
+
+	@Test
+	public void testStart() throws Exception {
+		final ClassFileTransformer transformer = new ClassFileTransformer() {
+			public byte[] transform(ClassLoader loader, String className,
+					Class<?> classBeingRedefined,
+					java.security.ProtectionDomain protectionDomain,
+					byte[] classfileBuffer) {
+				return null;
+			}
+		};
+		retransformer.start(transformer);
+		assertSame(transformer, inst.transformer);
+		assertTrue(inst.canRetransform);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStartNotSupported() throws Exception {
+		inst.supported = false;
+		retransformer.start(null);
+	}
+
+	private static class InstrumentationMock implements Instrumentation {
+
+		boolean supported = true;
+
+		ClassFileTransformer transformer;
+
+		boolean canRetransform;
+
+		final List<Class<?>> retransformed = new ArrayList<Class<?>>();
+
+		public void addTransformer(ClassFileTransformer transformer) {
+			fail();
+		}
+
+		public boolean removeTransformer(ClassFileTransformer transformer) {
+			fail();
+			return false;
+		}
+
+		public Class<?>[] getAllLoadedClasses() {
+			return new Class<?>[] { Object.class, String.class, Long.class };
+		}
+
+		public Class<?>[] getInitiatedClasses(ClassLoader loader) {
+			fail();
+			return null;
+		}
+
+		public long getObjectSize(Object objectToSize) {
+			fail();
+			return 0;
+		}
+
+		public boolean isRedefineClassesSupported() {
+			fail();
+			return false;
+		}
+
+		public void redefineClasses(ClassDefinition[] definitions) {
+			fail();
+		}
+
+		// JDK 1.6 Methods:
+
+		@SuppressWarnings("unused")
+		public void addTransformer(ClassFileTransformer transformer,
+				boolean canRetransform) {
+			this.transformer = transformer;
+			this.canRetransform = canRetransform;
+		}
+
+		@SuppressWarnings("unused")
+		public void appendToBootstrapClassLoaderSearch(JarFile jarfile) {
+			fail();
+		}
+
+		@SuppressWarnings("unused")
+		public void appendToSystemClassLoaderSearch(JarFile jarfile) {
+			fail();
+		}
+
+		@SuppressWarnings("unused")
+		public boolean isModifiableClass(Class<?> theClass) {
+			fail();
+			return false;
+		}
+
+		@SuppressWarnings("unused")
+		public boolean isNativeMethodPrefixSupported() {
+			fail();
+			return false;
+		}
+
+		@SuppressWarnings("unused")
+		public boolean isRetransformClassesSupported() {
+			return supported;
+		}
+
+		@SuppressWarnings("unused")
+		public void retransformClasses(Class<?>... classes) {
+			retransformed.addAll(Arrays.asList(classes));
+		}
+
+		@SuppressWarnings("unused")
+		public void setNativeMethodPrefix(ClassFileTransformer transformer,
+				String prefix) {
+			fail();
+		}
+
+	}
+
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ExecutionDataCursor}.
+ */
+public class ExecutionDataCursorTest {
+
+	private RuntimeData data;
+
+	private boolean[] probes;
+
+	@Before
+	public void setup() {
+		data = new RuntimeData();
+		data.setSessionId("stubid");
+		probes = data.getExecutionData(Long.valueOf(0x12345678), "Foo", 8)
+				.getProbes();
+		probes[3] = true;
+		data.getExecutionData(Long.valueOf(0x11), "Bar", 100)
+				.getProbes()[50] = true;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPageSize() {
+		new ExecutionDataCursor(data, false, 0);
+	}
+
+	@Test
+	public void testPages() throws IOException {
+		final int expected = dump().length;
+		final ExecutionDataCursor cursor = new ExecutionDataCursor(data,
+				false, 7);
+
+		final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		int index = 0;
+		byte[] page;
+		while ((page = cursor.getPage(index++)).length > 0) {
+			actual.write(page);
+			assertTrue(page.length == 7 || actual.size() == expected);
+		}
+
+		assertEquals(expected, actual.size());
+		assertEquals("stubid Bar[50] Foo[3]", read(actual.toByteArray()));
+	}
+
+	@Test
+	public void testSinglePage() throws IOException {
+		final ExecutionDataCursor cursor = new ExecutionDataCursor(data,
+				false, 1024 * 1024);
+
+		assertEquals("stubid Bar[50] Foo[3]", read(cursor.getPage(0)));
+		assertEquals(0, cursor.getPage(1).length);
+		assertEquals(0, cursor.getPage(2).length);
+	}
+
+	@Test
+	public void testRepeatPage() {
+		final ExecutionDataCursor cursor = new ExecutionDataCursor(data,
+				false, 7);
+
+		final byte[] page = cursor.getPage(0);
+		assertSame(page, cursor.getPage(0));
+		cursor.getPage(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSkipPage() {
+		final ExecutionDataCursor cursor = new ExecutionDataCursor(data,
+				false, 7);
+		cursor.getPage(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativePage() {
+		final ExecutionDataCursor cursor = new ExecutionDataCursor(data,
+				false, 7);
+		cursor.getPage(-1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPreviousPage() {
+		final ExecutionDataCursor cursor = new ExecutionDataCursor(data,
+				false, 7);
+		cursor.getPage(0);
+		cursor.getPage(1);
+		cursor.getPage(0);
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		final ExecutionDataCursor cursor = new ExecutionDataCursor(data,
+				true, 1024 * 1024);
+		assertFalse(probes[3]);
+
+		// probes executed after the snapshot are not included
+		probes[4] = true;
+		assertEquals("stubid Bar[50] Foo[3]", read(cursor.getPage(0)));
+	}
+
+	private byte[] dump() throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final ExecutionDataWriter writer = new ExecutionDataWriter(buffer);
+		data.collect(writer, writer, false);
+		return buffer.toByteArray();
+	}
+
+	private String read(final byte[] content) throws IOException {
+		final ExecutionDataReader reader = new ExecutionDataReader(
+				new ByteArrayInputStream(content));
+		final SessionInfoStore sessions = new SessionInfoStore();
+		final ExecutionDataStore store = new ExecutionDataStore();
+		reader.setSessionInfoVisitor(sessions);
+		reader.setExecutionDataVisitor(store);
+		reader.read();
+		final StringBuilder result = new StringBuilder();
+		for (final SessionInfo info : sessions.getInfos()) {
+			result.append(info.getId());
+		}
+		for (final ExecutionData d : toMap(store).values()) {
+			result.append(' ').append(d.getName()).append('[');
+			final boolean[] p = d.getProbes();
+			for (int i = 0; i < p.length; i++) {
+				if (p[i]) {
+					result.append(i);
+				}
+			}
+			result.append(']');
+		}
+		return result.toString();
+	}
+
+	private static Map<String, ExecutionData> toMap(
+			final ExecutionDataStore store) {
+		final Map<String, ExecutionData> map = new TreeMap<String, ExecutionData>();
+		for (final ExecutionData d : store.getContents()) {
+			map.put(d.getName(), d);
+		}
+		return map;
+	}
+
+}
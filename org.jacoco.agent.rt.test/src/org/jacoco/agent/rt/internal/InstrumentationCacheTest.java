@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jacoco.core.JaCoCo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link InstrumentationCache}.
+ */
+public class InstrumentationCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private InstrumentationCache cache;
+
+	@Before
+	public void setup() {
+		cache = new InstrumentationCache(folder.getRoot().getAbsolutePath(),
+				"config");
+	}
+
+	@Test
+	public void testGetMissing() {
+		assertNull(cache.get(0x12345678));
+	}
+
+	@Test
+	public void testPutGet() throws IOException {
+		cache.put(0x12345678, new byte[] { 1, 2, 3 });
+		assertTrue(Arrays.equals(new byte[] { 1, 2, 3 },
+				cache.get(0x12345678)));
+	}
+
+	@Test
+	public void testPutReplace() throws IOException {
+		cache.put(0x12345678, new byte[] { 1, 2, 3 });
+		cache.put(0x12345678, new byte[] { 4 });
+		assertTrue(Arrays.equals(new byte[] { 4 }, cache.get(0x12345678)));
+		// No temporary files must be left:
+		assertEquals(1, cache.getFile(0x12345678).getParentFile().list().length);
+	}
+
+	@Test
+	public void testGetFile() {
+		final File file = cache.getFile(0xab12345678L);
+		assertEquals("000000ab12345678.class", file.getName());
+		assertEquals("00", file.getParentFile().getName());
+		assertTrue(file.getParentFile().getParentFile().getName()
+				.startsWith(JaCoCo.VERSION + "-"));
+	}
+
+	@Test
+	public void testConfiguration() throws IOException {
+		cache.put(0x12345678, new byte[] { 1, 2, 3 });
+		final InstrumentationCache other = new InstrumentationCache(folder
+				.getRoot().getAbsolutePath(), "other");
+		assertNull(other.get(0x12345678));
+		assertFalse(cache.getFile(1).equals(other.getFile(1)));
+	}
+
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link PeriodicDump}.
+ */
+public class PeriodicDumpTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ExceptionRecorder recorder;
+
+	private RuntimeData data;
+
+	@Before
+	public void setup() {
+		recorder = new ExceptionRecorder();
+		data = new RuntimeData();
+		data.getExecutionData(Long.valueOf(0x12345678), "Foo", 1)
+				.getProbes()[0] = true;
+	}
+
+	@After
+	public void teardown() {
+		recorder.assertNoException();
+	}
+
+	@Test
+	public void testGetSnapshotFile() {
+		final File dir = folder.getRoot();
+		assertEquals(new File(dir, "jacoco-1.exec"),
+				createDump("jacoco.exec", 1).getSnapshotFile(1));
+		assertEquals(new File(dir, "jacoco-12.exec"),
+				createDump("jacoco.exec", 1).getSnapshotFile(12));
+		assertEquals(new File(dir, "jacoco-2"), createDump("jacoco", 1)
+				.getSnapshotFile(2));
+		assertEquals(new File(dir, ".exec-1"), createDump(".exec", 1)
+				.getSnapshotFile(1));
+	}
+
+	@Test
+	public void testWriteSnapshot() throws IOException {
+		final PeriodicDump dump = createDump("jacoco.exec", 1);
+		dump.writeSnapshot();
+
+		assertTrue(read(dump.getSnapshotFile(1)).get(0x12345678)
+				.getProbes()[0]);
+		assertFalse(new File(folder.getRoot(), "jacoco.exec").exists());
+		assertEquals(1, folder.getRoot().list().length);
+		// snapshots must not reset execution data:
+		assertTrue(data.getExecutionData(0x12345678, "Foo", 1).getProbes()[0]);
+	}
+
+	@Test
+	public void testRotate() throws IOException {
+		final PeriodicDump dump = createDump("jacoco.exec", 2);
+		dump.writeSnapshot();
+		data.getExecutionData(Long.valueOf(0x11), "Bar", 1);
+		dump.writeSnapshot();
+		data.getExecutionData(Long.valueOf(0x22), "Baz", 1);
+		dump.writeSnapshot();
+
+		assertEquals(3, read(dump.getSnapshotFile(1)).getContents().size());
+		assertEquals(2, read(dump.getSnapshotFile(2)).getContents().size());
+		assertFalse(dump.getSnapshotFile(3).exists());
+		assertEquals(2, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testReplaceFallback() throws IOException {
+		// Renaming to a non-empty directory fails on all platforms:
+		final File to = folder.newFolder("target");
+		new File(to, "content").createNewFile();
+		final File from = folder.newFile("source");
+
+		PeriodicDump.replace(from, to);
+
+		assertTrue(to.isFile());
+		assertFalse(from.exists());
+		assertEquals(2, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testReplaceFallbackRestoresTarget() throws IOException {
+		final File to = folder.newFolder("target");
+		new File(to, "content").createNewFile();
+		final File from = new File(folder.getRoot(), "missing");
+
+		try {
+			PeriodicDump.replace(from, to);
+			fail("IOException expected");
+		} catch (final IOException e) {
+			// expected
+		}
+
+		assertTrue(new File(to, "content").exists());
+		assertEquals(1, folder.getRoot().list().length);
+	}
+
+	@Test(expected = IOException.class)
+	public void testReplaceMissing() throws IOException {
+		PeriodicDump.replace(new File(folder.getRoot(), "missing"), new File(
+				folder.getRoot(), "target"));
+	}
+
+	@Test
+	public void testStartStop() throws Exception {
+		final PeriodicDump dump = new PeriodicDump(data, new File(
+				folder.getRoot(), "jacoco.exec"), 1, 1, recorder);
+		dump.start();
+		final File snapshot = dump.getSnapshotFile(1);
+		final long timeout = System.currentTimeMillis() + 5000;
+		while (!snapshot.exists() && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		dump.stop();
+
+		assertTrue(snapshot.exists());
+	}
+
+	@Test
+	public void testWriteError() throws Exception {
+		final File file = folder.newFile("blocked");
+		final Exception[] logged = new Exception[1];
+		final PeriodicDump dump = new PeriodicDump(data, new File(file,
+				"jacoco.exec"), 1, 1, new IExceptionLogger() {
+					public void logExeption(final Exception ex) {
+						synchronized (logged) {
+							logged[0] = ex;
+						}
+					}
+				});
+		dump.start();
+		final long timeout = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < timeout) {
+			synchronized (logged) {
+				if (logged[0] != null) {
+					break;
+				}
+			}
+			Thread.sleep(10);
+		}
+		dump.stop();
+
+		synchronized (logged) {
+			assertTrue(logged[0] instanceof IOException);
+		}
+	}
+
+	private PeriodicDump createDump(final String name, final int keep) {
+		return new PeriodicDump(data, new File(folder.getRoot(), name), 1000,
+				keep, recorder);
+	}
+
+	private ExecutionDataStore read(final File file) throws IOException {
+		final ExecutionDataStore store = new ExecutionDataStore();
+		final InputStream in = new FileInputStream(file);
+		try {
+			final ExecutionDataReader reader = new ExecutionDataReader(in);
+			reader.setExecutionDataVisitor(store);
+			reader.setSessionInfoVisitor(new SessionInfoStore());
+			reader.read();
+		} finally {
+			in.close();
+		}
+		return store;
+	}
+
+}
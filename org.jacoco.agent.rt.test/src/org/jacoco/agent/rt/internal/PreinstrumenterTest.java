@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jacoco.core.runtime.AgentOptions;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link Preinstrumenter}.
+ */
+public class PreinstrumenterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<String> classes;
+
+	private CountDownLatch finished;
+
+	private CoverageTransformer transformer;
+
+	@Before
+	public void setup() {
+		finished = new CountDownLatch(1);
+		classes = Collections.synchronizedList(new ArrayList<String>());
+		transformer = new CoverageTransformer(new LoggerRuntime(),
+				new AgentOptions(), new ExceptionRecorder()) {
+			@Override
+			void preinstrument(final String classname,
+					final byte[] classfileBuffer) throws IOException {
+				classes.add(classname + ":" + classfileBuffer.length);
+			}
+
+			@Override
+			void finishPreinstrument() {
+				finished.countDown();
+			}
+		};
+	}
+
+	@Test
+	public void testScanDirectory() throws IOException {
+		final File dir = folder.newFolder("classes");
+		createFile(new File(dir, "org/example/Foo.class"), 3);
+		createFile(new File(dir, "org/example/Foo.txt"), 1);
+		createFile(new File(dir, "Bar.class"), 5);
+
+		new Preinstrumenter(transformer, "", 1).scan(dir);
+
+		Collections.sort(classes);
+		assertEquals("[Bar:5, org/example/Foo:3]", classes.toString());
+	}
+
+	@Test
+	public void testScanArchive() throws IOException {
+		final File jar = new File(folder.getRoot(), "lib.jar");
+		final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(
+				jar));
+		out.putNextEntry(new ZipEntry("org/example/"));
+		out.putNextEntry(new ZipEntry("org/example/Foo.class"));
+		out.write(new byte[3]);
+		out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+		out.write(new byte[1]);
+		out.close();
+
+		new Preinstrumenter(transformer, "", 1).scan(jar);
+
+		assertEquals("[org/example/Foo:3]", classes.toString());
+	}
+
+	@Test
+	public void testScanMissing() {
+		new Preinstrumenter(transformer, "", 1).scan(new File(folder
+				.getRoot(), "missing.jar"));
+
+		assertTrue(classes.isEmpty());
+	}
+
+	@Test
+	public void testScanInvalidArchive() throws IOException {
+		final File jar = new File(folder.getRoot(), "invalid.jar");
+		createFile(jar, 10);
+
+		new Preinstrumenter(transformer, "", 1).scan(jar);
+
+		assertTrue(classes.isEmpty());
+	}
+
+	@Test
+	public void testStart() throws Exception {
+		final File dir1 = folder.newFolder("classes1");
+		createFile(new File(dir1, "A.class"), 1);
+		final File dir2 = folder.newFolder("classes2");
+		createFile(new File(dir2, "B.class"), 2);
+		final String classpath = dir1 + File.pathSeparator
+				+ File.pathSeparator + dir2;
+
+		final Preinstrumenter preinstrumenter = new Preinstrumenter(
+				transformer, classpath, 2);
+		preinstrumenter.start();
+		assertTrue(preinstrumenter.await(5000));
+
+		Collections.sort(classes);
+		assertEquals("[A:1, B:2]", classes.toString());
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testStartEmpty() throws Exception {
+		new Preinstrumenter(transformer, "", 1).start();
+		assertEquals(0, finished.getCount());
+	}
+
+	private void createFile(final File file, final int size)
+			throws IOException {
+		file.getParentFile().mkdirs();
+		final FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[size]);
+		out.close();
+	}
+
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.MappedExecutionDataReader;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link ProbeMirror}.
+ */
+public class ProbeMirrorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ExceptionRecorder recorder;
+
+	private RuntimeData data;
+
+	private boolean[] probes;
+
+	private File file;
+
+	private ProbeMirror mirror;
+
+	@Before
+	public void setup() throws IOException {
+		recorder = new ExceptionRecorder();
+		data = new RuntimeData();
+		data.setSessionId("stubid");
+		probes = data.getExecutionData(Long.valueOf(0x12345678), "Foo", 2)
+				.getProbes();
+		probes[0] = true;
+		file = new File(folder.getRoot(), "sub/mirror.exec");
+		mirror = new ProbeMirror(data, file, 60000, recorder);
+		mirror.start();
+	}
+
+	@After
+	public void teardown() throws Exception {
+		mirror.stop();
+		recorder.assertNoException();
+	}
+
+	@Test
+	public void testStart() throws IOException {
+		final ExecutionDataStore store = read();
+		assertTrue(store.get(0x12345678).getProbes()[0]);
+		assertFalse(store.get(0x12345678).getProbes()[1]);
+	}
+
+	@Test
+	public void testSync() throws IOException {
+		probes[1] = true;
+		data.getExecutionData(Long.valueOf(0x11), "Bar", 1).getProbes()[0] = true;
+		mirror.sync();
+
+		final ExecutionDataStore store = read();
+		assertTrue(store.get(0x12345678).getProbes()[1]);
+		assertTrue(store.get(0x11).getProbes()[0]);
+	}
+
+	@Test
+	public void testSyncAfterReset() throws IOException {
+		data.reset();
+		mirror.sync();
+
+		assertFalse(read().get(0x12345678).getProbes()[0]);
+	}
+
+	@Test
+	public void testPeriodicSync() throws Exception {
+		mirror.stop();
+		mirror = new ProbeMirror(data, file, 10, recorder);
+		mirror.start();
+		probes[1] = true;
+
+		final long timeout = System.currentTimeMillis() + 5000;
+		while (!read().get(0x12345678).getProbes()[1]) {
+			assertTrue(System.currentTimeMillis() < timeout);
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		probes[1] = true;
+		mirror.stop();
+		mirror = new ProbeMirror(data, new File(folder.getRoot(),
+				"other.exec"), 60000, recorder);
+		mirror.start();
+
+		assertTrue(read().get(0x12345678).getProbes()[1]);
+	}
+
+	private ExecutionDataStore read() throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			final MappedExecutionDataReader reader = new MappedExecutionDataReader(
+					in);
+			final ExecutionDataStore store = new ExecutionDataStore();
+			final SessionInfoStore sessions = new SessionInfoStore();
+			reader.setExecutionDataVisitor(store);
+			reader.setSessionInfoVisitor(sessions);
+			reader.read();
+			assertEquals("stubid", sessions.getInfos().get(0).getId());
+			return store;
+		} finally {
+			in.close();
+		}
+	}
+
+}
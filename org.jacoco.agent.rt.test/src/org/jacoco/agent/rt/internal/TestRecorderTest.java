@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TestRecorder}.
+ */
+public class TestRecorderTest implements IExecutionDataVisitor,
+		ISessionInfoVisitor {
+
+	private RuntimeData data;
+
+	private TestRecorder recorder;
+
+	private List<String> contents;
+
+	@Before
+	public void setup() {
+		data = new RuntimeData();
+		recorder = new TestRecorder(data);
+		contents = new ArrayList<String>();
+	}
+
+	@Test
+	public void testNoTests() {
+		data.getExecutionData(Long.valueOf(1), "Foo", 1).getProbes()[0] = true;
+
+		recorder.collect(this, this, false);
+
+		assertTrue(contents.isEmpty());
+	}
+
+	@Test
+	public void testSingleTest() {
+		final boolean[] foo = data.getExecutionData(Long.valueOf(1), "Foo", 2)
+				.getProbes();
+		data.getExecutionData(Long.valueOf(2), "Bar", 1);
+
+		recorder.startTest("test");
+		foo[1] = true;
+		recorder.endTest();
+
+		recorder.collect(this, this, false);
+
+		assertEquals(Arrays.asList("test", "Foo[false, true]"), contents);
+	}
+
+	@Test
+	public void testProbesBeforeTest() {
+		final boolean[] foo = data.getExecutionData(Long.valueOf(1), "Foo", 2)
+				.getProbes();
+		foo[0] = true;
+
+		recorder.startTest("test");
+		foo[1] = true;
+		recorder.endTest();
+
+		recorder.collect(this, this, false);
+
+		assertEquals(Arrays.asList("test", "Foo[false, true]"), contents);
+	}
+
+	@Test
+	public void testConsecutiveTests() {
+		final boolean[] foo = data.getExecutionData(Long.valueOf(1), "Foo", 1)
+				.getProbes();
+		final boolean[] bar = data.getExecutionData(Long.valueOf(2), "Bar", 1)
+				.getProbes();
+
+		recorder.startTest("test1");
+		foo[0] = true;
+		recorder.startTest("test2");
+		recorder.startTest("test3");
+		foo[0] = true;
+		bar[0] = true;
+		recorder.endTest();
+
+		recorder.collect(this, this, false);
+
+		assertEquals(4 + 2, contents.size());
+		assertEquals(Arrays.asList("test1", "Foo[true]", "test2", "test3"),
+				contents.subList(0, 4));
+		assertTrue(contents.containsAll(Arrays.asList("Foo[true]",
+				"Bar[true]")));
+	}
+
+	@Test
+	public void testRetireDuringTest() {
+		final boolean[] foo = data.getExecutionData(Long.valueOf(1), "Foo", 1)
+				.getProbes();
+
+		recorder.startTest("test");
+		foo[0] = true;
+		data.retireCoveredClasses();
+		recorder.endTest();
+
+		recorder.collect(this, this, false);
+
+		assertEquals(Arrays.asList("test", "Foo[true]"), contents);
+		assertFalse(data.isRetired(1));
+	}
+
+	@Test
+	public void testManyProbes() {
+		final boolean[] foo = data.getExecutionData(Long.valueOf(1), "Foo",
+				130).getProbes();
+
+		recorder.startTest("test");
+		foo[0] = true;
+		foo[63] = true;
+		foo[64] = true;
+		foo[129] = true;
+		recorder.endTest();
+
+		final List<ExecutionData> result = new ArrayList<ExecutionData>();
+		recorder.collect(new IExecutionDataVisitor() {
+			public void visitClassExecution(final ExecutionData data) {
+				result.add(data);
+			}
+		}, this, false);
+
+		final boolean[] expected = new boolean[130];
+		expected[0] = expected[63] = expected[64] = expected[129] = true;
+		assertTrue(Arrays.equals(expected, result.get(0).getProbes()));
+	}
+
+	@Test
+	public void testCollectReset() {
+		recorder.startTest("test");
+		recorder.endTest();
+
+		recorder.collect(this, this, true);
+		contents.clear();
+		recorder.collect(this, this, false);
+
+		assertTrue(contents.isEmpty());
+	}
+
+	@Test
+	public void testCollectNoReset() {
+		recorder.startTest("test");
+		recorder.endTest();
+
+		recorder.collect(this, this, false);
+		recorder.collect(this, this, false);
+
+		assertEquals(Arrays.asList("test", "test"), contents);
+	}
+
+	@Test
+	public void testRunningTestNotCollected() {
+		recorder.startTest("test");
+
+		recorder.collect(this, this, false);
+
+		assertTrue(contents.isEmpty());
+	}
+
+	@Test
+	public void testSessionTimes() {
+		final long before = System.currentTimeMillis();
+		recorder.startTest("test");
+		recorder.endTest();
+		final long after = System.currentTimeMillis();
+
+		final List<SessionInfo> infos = new ArrayList<SessionInfo>();
+		recorder.collect(this, new ISessionInfoVisitor() {
+			public void visitSessionInfo(final SessionInfo info) {
+				infos.add(info);
+			}
+		}, false);
+
+		final SessionInfo info = infos.get(0);
+		assertTrue(before <= info.getStartTimeStamp());
+		assertTrue(info.getStartTimeStamp() <= info.getDumpTimeStamp());
+		assertTrue(info.getDumpTimeStamp() <= after);
+	}
+
+	public void visitClassExecution(final ExecutionData data) {
+		contents.add(data.getName() + Arrays.toString(data.getProbes()));
+	}
+
+	public void visitSessionInfo(final SessionInfo info) {
+		contents.add(info.getId());
+	}
+
+}
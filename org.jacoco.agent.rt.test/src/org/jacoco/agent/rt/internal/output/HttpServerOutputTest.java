@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.jacoco.agent.rt.internal.ExceptionRecorder;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.runtime.AgentOptions;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link HttpServerOutput}.
+ */
+public class HttpServerOutputTest {
+
+	private ExceptionRecorder logger;
+
+	private HttpServerOutput controller;
+
+	private RuntimeData data;
+
+	private int port;
+
+	@Before
+	public void setup() throws Exception {
+		logger = new ExceptionRecorder();
+		controller = new HttpServerOutput(logger) {
+			@Override
+			protected ServerSocket createServerSocket(AgentOptions options)
+					throws IOException {
+				final ServerSocket socket = new ServerSocket(0, 0,
+						InetAddress.getByName(null));
+				port = socket.getLocalPort();
+				return socket;
+			}
+		};
+		data = new RuntimeData();
+		data.setSessionId("stubid");
+		data.getExecutionData(Long.valueOf(0x12345678), "Foo", 2).getProbes()[0] = true;
+		controller.startup(new AgentOptions(), data);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		controller.shutdown();
+		logger.assertNoException();
+	}
+
+	@Test
+	public void testGetExec() throws IOException {
+		final HttpURLConnection con = open("/exec", "GET");
+		assertEquals(200, con.getResponseCode());
+		assertEquals("application/octet-stream", con.getContentType());
+		assertNull(con.getContentEncoding());
+		final ExecutionDataStore store = read(con.getInputStream());
+		assertEquals("Foo", store.get(0x12345678).getName());
+		assertTrue(getProbe());
+	}
+
+	@Test
+	public void testGetExecGzip() throws IOException {
+		final HttpURLConnection con = open("/exec", "GET");
+		con.setRequestProperty("Accept-Encoding", "gzip, deflate");
+		assertEquals(200, con.getResponseCode());
+		assertEquals("gzip", con.getContentEncoding());
+		final ExecutionDataStore store = read(new GZIPInputStream(
+				con.getInputStream()));
+		assertEquals("Foo", store.get(0x12345678).getName());
+	}
+
+	@Test
+	public void testGetExecWithReset() throws IOException {
+		final HttpURLConnection con = open("/exec?reset=true", "GET");
+		assertEquals(200, con.getResponseCode());
+		final ExecutionDataStore store = read(con.getInputStream());
+		assertTrue(store.get(0x12345678).getProbes()[0]);
+		assertFalse(getProbe());
+	}
+
+	@Test
+	public void testPostReset() throws IOException {
+		final HttpURLConnection con = open("/reset", "POST");
+		assertEquals(204, con.getResponseCode());
+		assertFalse(getProbe());
+	}
+
+	@Test
+	public void testGetSummary() throws IOException {
+		final HttpURLConnection con = open("/summary", "GET");
+		assertEquals(200, con.getResponseCode());
+		assertEquals("text/plain; charset=ISO-8859-1", con.getContentType());
+		assertEquals("sessionid=stubid\nclasses=1\ncoveredclasses=1\n"
+				+ "probes=2\ncoveredprobes=1\n", readText(con.getInputStream()));
+	}
+
+	@Test
+	public void testWrongMethod() throws IOException {
+		final HttpURLConnection con = open("/reset", "GET");
+		assertEquals(405, con.getResponseCode());
+		assertEquals("POST", con.getHeaderField("Allow"));
+		assertTrue(getProbe());
+	}
+
+	@Test
+	public void testNotFound() throws IOException {
+		assertEquals(404, open("/unknown", "GET").getResponseCode());
+	}
+
+	@Test
+	public void testBadRequest() throws IOException {
+		final Socket socket = new Socket(InetAddress.getByName(null), port);
+		final OutputStream out = socket.getOutputStream();
+		out.write("nonsense\r\n\r\n".getBytes("ISO-8859-1"));
+		out.flush();
+		final String response = readText(socket.getInputStream());
+		assertTrue(response, response.startsWith("HTTP/1.0 400 Bad Request"));
+		socket.close();
+	}
+
+	@Test
+	public void testGetSummaryWithContext() throws IOException {
+		data.bindContext("checkout");
+		final Map<?, ?> context = (Map<?, ?>) data.getContextAccess().get();
+		((boolean[]) context.get(data.getExecutionData(
+				Long.valueOf(0x12345678), "Foo", 2).getProbes()))[1] = true;
+		data.unbindContext();
+
+		final HttpURLConnection con = open("/summary", "GET");
+		assertEquals("sessionid=stubid\nclasses=1\ncoveredclasses=1\n"
+				+ "probes=2\ncoveredprobes=1\n", readText(con.getInputStream()));
+	}
+
+	@Test
+	public void testGetSummaryWithoutMetrics() throws IOException {
+		final long collects = data.getCollectTimes().getCount();
+
+		assertEquals(200, open("/summary", "GET").getResponseCode());
+
+		assertEquals(collects, data.getCollectTimes().getCount());
+	}
+
+	@Test
+	public void testTooManyHeaders() throws IOException {
+		final Socket socket = new Socket(InetAddress.getByName(null), port);
+		final StringBuilder request = new StringBuilder(
+				"GET /summary HTTP/1.0\r\n");
+		for (int i = 0; i <= HttpConnection.MAX_HEADERS; i++) {
+			request.append("X-Header: ").append(i).append("\r\n");
+		}
+		request.append("\r\n");
+		final OutputStream out = socket.getOutputStream();
+		out.write(request.toString().getBytes("ISO-8859-1"));
+		out.flush();
+		final String response = readText(socket.getInputStream());
+		assertTrue(response, response.startsWith("HTTP/1.0 400 Bad Request"));
+		socket.close();
+	}
+
+	@Test
+	public void testMaxConnections() throws Exception {
+		final List<Socket> idle = new ArrayList<Socket>();
+		for (int i = 0; i < HttpServerOutput.MAX_CONNECTIONS; i++) {
+			idle.add(new Socket(InetAddress.getByName(null), port));
+		}
+		// Connections are accepted in order, so all idle ones are handled:
+		final Socket rejected = new Socket(InetAddress.getByName(null), port);
+
+		assertEquals(-1, rejected.getInputStream().read());
+
+		rejected.close();
+		for (final Socket s : idle) {
+			s.close();
+		}
+	}
+
+	@Test
+	public void testWriteExecutionData() throws Exception {
+		controller.writeExecutionData(true);
+		assertTrue(getProbe());
+	}
+
+	private HttpURLConnection open(final String path, final String method)
+			throws IOException {
+		final URL url = new URL("http", "localhost", port, path);
+		final HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		con.setRequestMethod(method);
+		return con;
+	}
+
+	private boolean getProbe() {
+		return data.getExecutionData(Long.valueOf(0x12345678), "Foo", 2)
+				.getProbes()[0];
+	}
+
+	private ExecutionDataStore read(final InputStream in) throws IOException {
+		final ExecutionDataReader reader = new ExecutionDataReader(in);
+		final ExecutionDataStore store = new ExecutionDataStore();
+		reader.setExecutionDataVisitor(store);
+		final SessionInfoStore infos = new SessionInfoStore();
+		reader.setSessionInfoVisitor(infos);
+		reader.read();
+		in.close();
+		assertEquals("stubid", infos.getInfos().get(0).getId());
+		return store;
+	}
+
+	private String readText(final InputStream in) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != -1) {
+			buffer.write(b);
+		}
+		in.close();
+		return buffer.toString("ISO-8859-1");
+	}
+
+}
@@ -55,6 +55,8 @@ public class MockSocketConnection {
 
 		private boolean closed;
 
+		private int soTimeout;
+
 		private final Queue<Byte> buffer = new ConcurrentLinkedQueue<Byte>();
 
 		private final OutputStream out = new OutputStream() {
@@ -115,6 +117,20 @@ public class MockSocketConnection {
 
 		// socket methods with mocking behavior:
 
+		/**
+		 * The timeout is only recorded, reads never time out.
+		 */
+		@Override
+		public synchronized void setSoTimeout(int timeout)
+				throws SocketException {
+			soTimeout = timeout;
+		}
+
+		@Override
+		public synchronized int getSoTimeout() throws SocketException {
+			return soTimeout;
+		}
+
 		@Override
 		public OutputStream getOutputStream() throws IOException {
 			if (closed) {
@@ -230,11 +246,6 @@ public class MockSocketConnection {
 			throw new AssertionError();
 		}
 
-		@Override
-		public synchronized int getSoTimeout() throws SocketException {
-			throw new AssertionError();
-		}
-
 		@Override
 		public boolean getTcpNoDelay() throws SocketException {
 			throw new AssertionError();
@@ -308,12 +319,6 @@ public class MockSocketConnection {
 			throw new AssertionError();
 		}
 
-		@Override
-		public synchronized void setSoTimeout(int timeout)
-				throws SocketException {
-			throw new AssertionError();
-		}
-
 		@Override
 		public void setTcpNoDelay(boolean on) throws SocketException {
 			throw new AssertionError();
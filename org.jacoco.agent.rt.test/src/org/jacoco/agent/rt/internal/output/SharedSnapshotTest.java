@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.runtime.ExecutionDataSpill;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link SharedSnapshot}.
+ */
+public class SharedSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Object lock;
+
+	private RuntimeData data;
+
+	private SharedSnapshot snapshot;
+
+	@Before
+	public void setup() throws Exception {
+		data = new RuntimeData() {
+			{
+				// Allows the test to block collecting execution data
+				lock = store;
+			}
+		};
+		data.getExecutionData(Long.valueOf(0x12345678), "Foo", 1)
+				.getProbes()[0] = true;
+		snapshot = new SharedSnapshot(data);
+	}
+
+	@Test
+	public void testGet() throws IOException {
+		final ExecutionDataStore store = read(snapshot.get());
+		assertEquals("Foo", store.get(0x12345678).getName());
+		assertTrue(data.getExecutionData(Long.valueOf(0x12345678), "Foo", 1)
+				.getProbes()[0]);
+	}
+
+	@Test
+	public void testGetSequential() throws IOException {
+		assertNotSame(snapshot.get(), snapshot.get());
+	}
+
+	@Test
+	public void testCollectWithReset() throws IOException {
+		final ExecutionDataStore store = read(snapshot.collect(true, false));
+		assertTrue(store.get(0x12345678).getProbes()[0]);
+		assertFalse(data.getExecutionData(Long.valueOf(0x12345678), "Foo", 1)
+				.getProbes()[0]);
+	}
+
+	@Test
+	public void testCollectDelta() throws IOException {
+		read(snapshot.collect(false, true));
+		final ExecutionDataStore store = read(snapshot.collect(false, true));
+		assertEquals(0, store.getContents().size());
+	}
+
+	@Test
+	public void testConcurrentRequestsShareDump() throws Exception {
+		final Future<SharedSnapshot.Dump> first, second, third, fourth;
+		synchronized (lock) {
+			first = startGet();
+			// While the first dump is collected further requests are queued:
+			second = startGet();
+			third = startGet();
+			fourth = startGet();
+		}
+
+		// All queued requests share a single dump:
+		assertNotSame(first.get(), second.get());
+		assertSame(second.get(), third.get());
+		assertSame(second.get(), fourth.get());
+		assertEquals("Foo", read(fourth.get()).get(0x12345678).getName());
+	}
+
+	@Test
+	public void testFailedDumpReleasesJoinedRequests() throws Exception {
+		// Collecting fails as the spilled data can't be read back:
+		final File file = folder.newFile("spill.exec");
+		data.setSpill(new ExecutionDataSpill(file));
+		data.getExecutionData(Long.valueOf(0x11), "Bar", 1).getProbes()[0] = true;
+		data.spill(new long[] { 0x11 });
+		assertTrue(file.delete());
+
+		final Future<SharedSnapshot.Dump> first, second, third;
+		synchronized (lock) {
+			first = startGet();
+			second = startGet();
+			third = startGet();
+		}
+
+		assertFailure(RuntimeException.class, first);
+		assertFailure(RuntimeException.class, second);
+		// The joined request gets an exception instead of blocking forever:
+		assertFailure(IOException.class, third);
+	}
+
+	private void assertFailure(final Class<? extends Throwable> type,
+			final Future<SharedSnapshot.Dump> dump) throws Exception {
+		try {
+			dump.get(5, TimeUnit.SECONDS);
+			fail("Exception expected");
+		} catch (final ExecutionException e) {
+			assertEquals(type, e.getCause().getClass());
+		}
+	}
+
+	/**
+	 * Requests a dump in a new thread and waits until the thread blocks.
+	 */
+	private Future<SharedSnapshot.Dump> startGet() throws InterruptedException {
+		final FutureTask<SharedSnapshot.Dump> task = new FutureTask<SharedSnapshot.Dump>(
+				new Callable<SharedSnapshot.Dump>() {
+					public SharedSnapshot.Dump call() throws Exception {
+						return snapshot.get();
+					}
+				});
+		final Thread thread = new Thread(task);
+		thread.start();
+		while (thread.getState() != Thread.State.BLOCKED
+				&& thread.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		return task;
+	}
+
+	private ExecutionDataStore read(final SharedSnapshot.Dump dump)
+			throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		new ExecutionDataWriter(buffer);
+		dump.writeTo(buffer);
+		final ExecutionDataReader reader = new ExecutionDataReader(
+				new ByteArrayInputStream(buffer.toByteArray()));
+		final ExecutionDataStore store = new ExecutionDataStore();
+		reader.setExecutionDataVisitor(store);
+		reader.setSessionInfoVisitor(new SessionInfoStore());
+		reader.read();
+		return store;
+	}
+
+}
@@ -17,6 +17,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.Socket;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
@@ -74,6 +75,34 @@ public class TcpConnectionTest extends ExecutorTestBase {
 		con.run();
 	}
 
+	@Test
+	public void testHeaderTimeout() throws Exception {
+		final Socket socket = mockConnection.getSocketA();
+		final TcpConnection con = new TcpConnection(socket, data);
+		con.init();
+		assertEquals(TcpConnection.HEADER_TIMEOUT, socket.getSoTimeout());
+
+		final OutputStream remoteOut = mockConnection.getSocketB()
+				.getOutputStream();
+		new ExecutionDataWriter(remoteOut);
+		final Future<Void> f = executor.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				con.run();
+				return null;
+			}
+		});
+		// Connections may stay idle once the header has been received:
+		final long timeout = System.currentTimeMillis() + 5000;
+		while (socket.getSoTimeout() != 0) {
+			assertTrue(System.currentTimeMillis() < timeout);
+			Thread.sleep(10);
+		}
+		assertBlocks(f);
+
+		mockConnection.getSocketB().close();
+		f.get();
+	}
+
 	/**
 	 * Remote endpoint is closed after a valid header has been send.
 	 */
@@ -176,6 +205,66 @@ public class TcpConnectionTest extends ExecutorTestBase {
 		f.get();
 	}
 
+	@Test
+	public void testRemoteDeltaDump() throws Exception {
+		data.getExecutionData(Long.valueOf(0x12345678), "Foo", 42)
+				.getProbes()[0] = true;
+		data.setSessionId("stubid");
+
+		final RemoteControlWriter remoteWriter = new RemoteControlWriter(
+				mockConnection.getSocketB().getOutputStream());
+
+		final TcpConnection con = new TcpConnection(
+				mockConnection.getSocketA(), data);
+		con.init();
+
+		final Future<Void> f = executor.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				con.run();
+				return null;
+			}
+		});
+
+		assertBlocks(f);
+
+		remoteWriter.visitDeltaDumpCommand(false);
+		readAndAssertData();
+
+		con.close();
+		f.get();
+	}
+
+	@Test
+	public void testRemoteCompressedDump() throws Exception {
+		data.getExecutionData(Long.valueOf(0x12345678), "Foo", 42)
+				.getProbes()[0] = true;
+		data.setSessionId("stubid");
+
+		final RemoteControlWriter remoteWriter = new RemoteControlWriter(
+				mockConnection.getSocketB().getOutputStream());
+
+		final TcpConnection con = new TcpConnection(
+				mockConnection.getSocketA(), data);
+		con.init();
+
+		final Future<Void> f = executor.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				con.run();
+				return null;
+			}
+		});
+
+		assertBlocks(f);
+
+		remoteWriter.visitCompressedDumpCommand(true);
+		readAndAssertData();
+		assertFalse(data.getExecutionData(Long.valueOf(0x12345678), "Foo", 42)
+				.getProbes()[0]);
+
+		con.close();
+		f.get();
+	}
+
 	@Test
 	public void testLocalDump() throws Exception {
 		data.getExecutionData(Long.valueOf(0x12345678), "Foo", 42);
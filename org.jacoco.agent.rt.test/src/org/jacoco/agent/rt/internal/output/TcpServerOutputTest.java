@@ -23,6 +23,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.jacoco.agent.rt.internal.ExceptionRecorder;
 import org.jacoco.agent.rt.internal.output.TcpServerOutput;
@@ -44,6 +45,8 @@ public class TcpServerOutputTest {
 
 	private ExceptionRecorder logger;
 
+	private CountDownLatch logged;
+
 	private AgentOptions options;
 
 	private MockServerSocket serverSocket;
@@ -55,7 +58,14 @@ public class TcpServerOutputTest {
 	@Before
 	public void setup() throws Exception {
 		options = new AgentOptions();
-		logger = new ExceptionRecorder();
+		logged = new CountDownLatch(1);
+		logger = new ExceptionRecorder() {
+			@Override
+			public void logExeption(Exception ex) {
+				super.logExeption(ex);
+				logged.countDown();
+			}
+		};
 		serverSocket = new MockServerSocket();
 		controller = new TcpServerOutput(logger) {
 			@Override
@@ -117,6 +127,73 @@ public class TcpServerOutputTest {
 		controller.shutdown();
 	}
 
+	@Test
+	public void testMultipleConnections() throws Exception {
+		data.getExecutionData(Long.valueOf(0x12345678), "Foo", 42);
+
+		final Socket socket1 = serverSocket.connect();
+		final Socket socket2 = serverSocket.connect();
+		final RemoteControlReader reader1 = initConnection(socket1);
+		final RemoteControlReader reader2 = initConnection(socket2);
+
+		// Both connections receive execution data dumped by the agent:
+		controller.writeExecutionData(false);
+		assertDump(reader1);
+		assertDump(reader2);
+
+		// Both connections can request dumps independently:
+		new RemoteControlWriter(socket2.getOutputStream()).visitDumpCommand(
+				true, false);
+		assertDump(reader2);
+		new RemoteControlWriter(socket1.getOutputStream()).visitDumpCommand(
+				true, false);
+		assertDump(reader1);
+
+		logger.assertNoException();
+		controller.shutdown();
+	}
+
+	private RemoteControlReader initConnection(final Socket socket)
+			throws IOException {
+		final RemoteControlWriter remoteWriter = new RemoteControlWriter(
+				socket.getOutputStream());
+		final RemoteControlReader remoteReader = new RemoteControlReader(
+				socket.getInputStream());
+		// Process a NOP command to ensure the connection is initialized:
+		remoteWriter.visitDumpCommand(false, false);
+		remoteReader.read();
+		return remoteReader;
+	}
+
+	private void assertDump(final RemoteControlReader remoteReader)
+			throws IOException {
+		final ExecutionDataStore execStore = new ExecutionDataStore();
+		remoteReader.setExecutionDataVisitor(execStore);
+		remoteReader.setSessionInfoVisitor(new SessionInfoStore());
+		assertTrue(remoteReader.read());
+		assertEquals("Foo", execStore.get(0x12345678).getName());
+	}
+
+	@Test
+	public void testMaxConnections() throws Exception {
+		for (int i = 0; i < TcpServerOutput.MAX_CONNECTIONS; i++) {
+			final Socket socket = serverSocket.connect();
+			final RemoteControlWriter remoteWriter = new RemoteControlWriter(
+					socket.getOutputStream());
+			final RemoteControlReader remoteReader = new RemoteControlReader(
+					socket.getInputStream());
+			// Process a NOP command to ensure the connection is served:
+			remoteWriter.visitDumpCommand(false, false);
+			assertTrue(remoteReader.read());
+		}
+
+		final Socket rejected = serverSocket.connect();
+		assertEquals(-1, rejected.getInputStream().read());
+
+		logger.assertNoException();
+		controller.shutdown();
+	}
+
 	@Test
 	public void testInvalidHeader() throws Exception {
 		final Socket socket = serverSocket.connect();
@@ -125,7 +202,7 @@ public class TcpServerOutputTest {
 		out.write(0xfe);
 		out.write(0xba);
 		out.write(0xbe);
-		serverSocket.waitForAccept();
+		logged.await();
 		logger.assertException(IOException.class,
 				"Invalid execution data file.");
 		controller.shutdown();
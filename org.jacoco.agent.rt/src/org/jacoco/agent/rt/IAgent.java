@@ -14,9 +14,10 @@ package org.jacoco.agent.rt;
 import java.io.IOException;
 
 /**
- * Runtime API and MBean agent interface.
+ * Runtime API and MBean agent interface. The agent also provides metrics about
+ * its own overhead which are available as MBean attributes.
  */
-public interface IAgent {
+public interface IAgent extends IAgentMetrics {
 
 	/**
 	 * Returns version of JaCoCo.
@@ -55,6 +56,66 @@ public interface IAgent {
 	 */
 	byte[] getExecutionData(boolean reset);
 
+	/**
+	 * Returns the execution data of all classes which have changed since the
+	 * last call of this method or the last reset. Execution counts are
+	 * reported as increments, so subsequent results can be merged into a
+	 * single execution data store.
+	 * 
+	 * @param reset
+	 *            if <code>true</code> the current execution data is cleared
+	 *            afterwards
+	 * @return dump of changed execution data in JaCoCo binary format
+	 */
+	byte[] getExecutionDataDelta(boolean reset);
+
+	/**
+	 * Takes a snapshot of the current execution data which can be retrieved
+	 * in pages of limited size with {@link #getExecutionDataPage(long, int)}.
+	 * This allows remote clients to fetch large amounts of execution data
+	 * without a single huge response. The snapshot must be released with
+	 * {@link #closeExecutionData(long)}. Only one snapshot can be open at a
+	 * time. A snapshot which has not been accessed for five minutes is
+	 * considered abandoned and may be replaced by a new one.
+	 * 
+	 * @param reset
+	 *            if <code>true</code> the current execution data is cleared
+	 *            afterwards
+	 * @param pageSize
+	 *            maximum size of a page in bytes
+	 * @return identifier of the snapshot
+	 * @throws IllegalStateException
+	 *             if another snapshot is still open, the execution data is
+	 *             not reset then
+	 */
+	long openExecutionData(boolean reset, int pageSize);
+
+	/**
+	 * Returns a page of a snapshot opened with
+	 * {@link #openExecutionData(boolean, int)}. The pages have to be
+	 * requested in order starting with 0, the last page may be requested
+	 * again. Concatenated the pages are a dump in JaCoCo binary format.
+	 * 
+	 * @param snapshot
+	 *            identifier of the snapshot
+	 * @param page
+	 *            index of the page
+	 * @return content of the page, an empty array if there is no more data
+	 * @throws IllegalArgumentException
+	 *             if the snapshot is not open or the page is negative or
+	 *             requested out of order
+	 */
+	byte[] getExecutionDataPage(long snapshot, int page);
+
+	/**
+	 * Releases a snapshot opened with {@link #openExecutionData(boolean, int)}.
+	 * Does nothing if the snapshot is not open.
+	 * 
+	 * @param snapshot
+	 *            identifier of the snapshot
+	 */
+	void closeExecutionData(long snapshot);
+
 	/**
 	 * Triggers a dump of the current execution data through the configured
 	 * output.
@@ -67,4 +128,54 @@ public interface IAgent {
 	 */
 	void dump(boolean reset) throws IOException;
 
+	/**
+	 * Starts recording the coverage of a test. A test which is still running
+	 * is ended first. Code executed between tests is not attributed to any
+	 * test. The coverage of tests is still included in the regular execution
+	 * data. Tests have to be executed one after the other. Once a test has
+	 * been started fully covered classes are not replaced anymore, see agent
+	 * option <code>deinstrumentinterval</code>. Classes which have been
+	 * replaced before are not attributed to tests.
+	 * 
+	 * @param name
+	 *            name of the test
+	 */
+	void startTest(String name);
+
+	/**
+	 * Ends the current test and records the classes and probes executed since
+	 * it has been started. Does nothing if no test is running.
+	 */
+	void endTest();
+
+	/**
+	 * Returns the coverage of all ended tests. For every test a session with
+	 * the name of the test is written, followed by the execution data of all
+	 * classes executed by this test.
+	 * 
+	 * @param reset
+	 *            if <code>true</code> the recorded tests are discarded
+	 *            afterwards
+	 * @return dump of the tests in JaCoCo binary format
+	 */
+	byte[] getTestExecutionData(boolean reset);
+
+	/**
+	 * Binds the coverage context with the given name to the calling thread.
+	 * Methods subsequently invoked by this thread record their coverage in
+	 * this context only, which is written as a separate session with the name
+	 * of the context. Several threads may bind the same context concurrently.
+	 * Has no effect if the agent has not been started with the option
+	 * <code>contexts</code>.
+	 * 
+	 * @param name
+	 *            name of the context
+	 */
+	void bindContext(String name);
+
+	/**
+	 * Removes the coverage context binding of the calling thread.
+	 */
+	void unbindContext();
+
 }
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt;
+
+/**
+ * Metrics about the overhead caused by the agent. All values are accumulated
+ * since the agent has been started. Durations are given in nanoseconds.
+ * Histograms contain the number of values per bucket where bucket 0 counts the
+ * value 0 and bucket <code>i</code> counts values <code>v</code> with
+ * <code>2<sup>i-1</sup> &lt;= v &lt; 2<sup>i</sup></code>.
+ */
+public interface IAgentMetrics {
+
+	/**
+	 * Returns the number of classes which have been instrumented when they
+	 * were loaded.
+	 * 
+	 * @return number of instrumented classes
+	 */
+	long getTransformedClasses();
+
+	/**
+	 * Returns the number of loaded classes which have not been instrumented
+	 * because of the filter settings.
+	 * 
+	 * @return number of skipped classes
+	 */
+	long getSkippedClasses();
+
+	/**
+	 * Returns the total time spent for instrumenting classes.
+	 * 
+	 * @return total instrumentation time
+	 */
+	long getTransformTime();
+
+	/**
+	 * Returns the longest time spent for instrumenting a single class.
+	 * 
+	 * @return maximum instrumentation time
+	 */
+	long getTransformTimeMax();
+
+	/**
+	 * Returns the distribution of the instrumentation times of single classes.
+	 * 
+	 * @return histogram of instrumentation times
+	 */
+	long[] getTransformTimeHistogram();
+
+	/**
+	 * Returns the total size of the original class files of all instrumented
+	 * classes.
+	 * 
+	 * @return size of original class files in bytes
+	 */
+	long getOriginalBytes();
+
+	/**
+	 * Returns the total size of the class files of all instrumented classes
+	 * after instrumentation.
+	 * 
+	 * @return size of instrumented class files in bytes
+	 */
+	long getInstrumentedBytes();
+
+	/**
+	 * Returns the total number of probes of all classes which have been
+	 * initialized.
+	 * 
+	 * @return number of probes
+	 */
+	long getProbes();
+
+	/**
+	 * Returns the number of execution data requests of instrumented classes.
+	 * 
+	 * @return number of execution data requests
+	 */
+	long getExecutionDataRequests();
+
+	/**
+	 * Returns the longest time spent for a single execution data request.
+	 * Long requests indicate contention between threads loading classes.
+	 * 
+	 * @return maximum execution data request time
+	 */
+	long getExecutionDataRequestTimeMax();
+
+	/**
+	 * Returns the distribution of the execution data request times.
+	 * 
+	 * @return histogram of execution data request times
+	 */
+	long[] getExecutionDataRequestTimeHistogram();
+
+	/**
+	 * Returns the number of execution data dumps.
+	 * 
+	 * @return number of dumps
+	 */
+	long getDumps();
+
+	/**
+	 * Returns the total time spent for execution data dumps including writing
+	 * to the output.
+	 * 
+	 * @return total dump time
+	 */
+	long getDumpTime();
+
+	/**
+	 * Returns the longest time spent for a single execution data dump.
+	 * 
+	 * @return maximum dump time
+	 */
+	long getDumpTimeMax();
+
+	/**
+	 * Returns the distribution of the execution data dump times.
+	 * 
+	 * @return histogram of dump times
+	 */
+	long[] getDumpTimeHistogram();
+
+	/**
+	 * Returns the total number of classes written by all execution data
+	 * dumps.
+	 * 
+	 * @return number of dumped classes
+	 */
+	long getDumpedClasses();
+
+	/**
+	 * Returns the distribution of the number of classes written per execution
+	 * data dump.
+	 * 
+	 * @return histogram of dump sizes
+	 */
+	long[] getDumpSizeHistogram();
+
+}
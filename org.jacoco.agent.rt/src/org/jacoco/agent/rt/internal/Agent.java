@@ -12,12 +12,14 @@
 package org.jacoco.agent.rt.internal;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.concurrent.Callable;
 
 import org.jacoco.agent.rt.IAgent;
 import org.jacoco.agent.rt.internal.output.FileOutput;
+import org.jacoco.agent.rt.internal.output.HttpServerOutput;
 import org.jacoco.agent.rt.internal.output.IAgentOutput;
 import org.jacoco.agent.rt.internal.output.NoneOutput;
 import org.jacoco.agent.rt.internal.output.TcpClientOutput;
@@ -27,6 +29,7 @@ import org.jacoco.core.data.ExecutionDataWriter;
 import org.jacoco.core.runtime.AbstractRuntime;
 import org.jacoco.core.runtime.AgentOptions;
 import org.jacoco.core.runtime.AgentOptions.OutputMode;
+import org.jacoco.core.runtime.ExecutionDataSpill;
 import org.jacoco.core.runtime.RuntimeData;
 
 /**
@@ -34,6 +37,12 @@ import org.jacoco.core.runtime.RuntimeData;
  */
 public class Agent implements IAgent {
 
+	/**
+	 * Time in milliseconds after which an open execution data snapshot which
+	 * has not been accessed is considered abandoned.
+	 */
+	private static final long SNAPSHOT_TIMEOUT = 5 * 60 * 1000;
+
 	private static Agent singleton;
 
 	/**
@@ -80,10 +89,28 @@ public class Agent implements IAgent {
 
 	private final RuntimeData data;
 
+	private final TestRecorder testRecorder;
+
+	private final Object snapshotLock = new Object();
+
+	private ExecutionDataCursor snapshot;
+
+	private long snapshotId;
+
+	private long snapshotAccess;
+
 	private IAgentOutput output;
 
 	private Callable<Void> jmxRegistration;
 
+	private PeriodicDump periodicDump;
+
+	private ProbeMirror probeMirror;
+
+	private ExecutionDataSpill spill;
+
+	private volatile CoverageTransformer transformer;
+
 	/**
 	 * Creates a new agent with the given agent options.
 	 * 
@@ -96,6 +123,7 @@ public class Agent implements IAgent {
 		this.options = options;
 		this.logger = logger;
 		this.data = new RuntimeData();
+		this.testRecorder = new TestRecorder(data);
 	}
 
 	/**
@@ -107,6 +135,17 @@ public class Agent implements IAgent {
 		return data;
 	}
 
+	/**
+	 * Sets the transformer which instruments classes for this agent. Its
+	 * statistics are reported as metrics of this agent.
+	 * 
+	 * @param transformer
+	 *            transformer for this agent
+	 */
+	public void setTransformer(final CoverageTransformer transformer) {
+		this.transformer = transformer;
+	}
+
 	/**
 	 * Initializes this agent.
 	 * 
@@ -123,6 +162,23 @@ public class Agent implements IAgent {
 			if (options.getJmx()) {
 				jmxRegistration = new JmxRegistration(this);
 			}
+			if (options.getDumpInterval() > 0) {
+				periodicDump = new PeriodicDump(data, new File(
+						options.getDestfile()),
+						options.getDumpInterval() * 1000L,
+						options.getDumpKeep(), logger);
+				periodicDump.start();
+			}
+			if (options.getMirrorFile() != null) {
+				probeMirror = new ProbeMirror(data, new File(
+						options.getMirrorFile()), options.getMirrorInterval(),
+						logger);
+				probeMirror.start();
+			}
+			if (options.getSpillFile() != null) {
+				spill = new ExecutionDataSpill(new File(options.getSpillFile()));
+				data.setSpill(spill);
+			}
 		} catch (final Exception e) {
 			logger.logExeption(e);
 		}
@@ -133,10 +189,20 @@ public class Agent implements IAgent {
 	 */
 	public void shutdown() {
 		try {
+			if (periodicDump != null) {
+				periodicDump.stop();
+			}
+			if (probeMirror != null) {
+				probeMirror.stop();
+			}
 			if (options.getDumpOnExit()) {
 				output.writeExecutionData(false);
 			}
 			output.shutdown();
+			if (spill != null) {
+				data.setSpill(null);
+				spill.close();
+			}
 			if (jmxRegistration != null) {
 				jmxRegistration.call();
 			}
@@ -159,6 +225,8 @@ public class Agent implements IAgent {
 			return new TcpServerOutput(logger);
 		case tcpclient:
 			return new TcpClientOutput(logger);
+		case http:
+			return new HttpServerOutput(logger);
 		case none:
 			return new NoneOutput();
 		default:
@@ -197,10 +265,18 @@ public class Agent implements IAgent {
 	}
 
 	public byte[] getExecutionData(final boolean reset) {
+		return getExecutionData(reset, false);
+	}
+
+	public byte[] getExecutionDataDelta(final boolean reset) {
+		return getExecutionData(reset, true);
+	}
+
+	private byte[] getExecutionData(final boolean reset, final boolean delta) {
 		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 		try {
 			final ExecutionDataWriter writer = new ExecutionDataWriter(buffer);
-			data.collect(writer, writer, reset);
+			data.collect(writer, writer, reset, delta);
 		} catch (final IOException e) {
 			// Must not happen with ByteArrayOutputStream
 			throw new AssertionError(e);
@@ -208,8 +284,155 @@ public class Agent implements IAgent {
 		return buffer.toByteArray();
 	}
 
+	public long openExecutionData(final boolean reset, final int pageSize) {
+		synchronized (snapshotLock) {
+			// Every snapshot holds a copy of the execution data, so only a
+			// single one is kept. It is never replaced while in use, as the
+			// data of a snapshot with reset would be lost.
+			final long now = System.currentTimeMillis();
+			if (snapshot != null && now - snapshotAccess < SNAPSHOT_TIMEOUT) {
+				throw new IllegalStateException("Snapshot " + snapshotId
+						+ " is still open");
+			}
+			// Release an abandoned snapshot before the new copy is taken:
+			snapshot = null;
+			snapshot = new ExecutionDataCursor(data, reset, pageSize);
+			snapshotAccess = now;
+			return ++snapshotId;
+		}
+	}
+
+	public byte[] getExecutionDataPage(final long snapshot, final int page) {
+		final ExecutionDataCursor cursor;
+		synchronized (snapshotLock) {
+			cursor = getSnapshot(snapshot);
+			snapshotAccess = System.currentTimeMillis();
+		}
+		return cursor.getPage(page);
+	}
+
+	public void closeExecutionData(final long snapshot) {
+		synchronized (snapshotLock) {
+			if (this.snapshot != null && snapshotId == snapshot) {
+				this.snapshot = null;
+			}
+		}
+	}
+
+	private ExecutionDataCursor getSnapshot(final long id) {
+		if (snapshot == null || snapshotId != id) {
+			throw new IllegalArgumentException("Unknown snapshot " + id);
+		}
+		return snapshot;
+	}
+
 	public void dump(final boolean reset) throws IOException {
 		output.writeExecutionData(reset);
 	}
 
+	public void startTest(final String name) {
+		testRecorder.startTest(name);
+	}
+
+	public void endTest() {
+		testRecorder.endTest();
+	}
+
+	public byte[] getTestExecutionData(final boolean reset) {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try {
+			final ExecutionDataWriter writer = new ExecutionDataWriter(buffer);
+			testRecorder.collect(writer, writer, reset);
+		} catch (final IOException e) {
+			// Must not happen with ByteArrayOutputStream
+			throw new AssertionError(e);
+		}
+		return buffer.toByteArray();
+	}
+
+	public void bindContext(final String name) {
+		data.bindContext(name);
+	}
+
+	public void unbindContext() {
+		data.unbindContext();
+	}
+
+	// === IAgentMetrics Implementation ===
+
+	public long getTransformedClasses() {
+		final CoverageTransformer t = transformer;
+		return t == null ? 0 : t.getTransformTimes().getCount();
+	}
+
+	public long getSkippedClasses() {
+		final CoverageTransformer t = transformer;
+		return t == null ? 0 : t.getSkippedClasses();
+	}
+
+	public long getTransformTime() {
+		final CoverageTransformer t = transformer;
+		return t == null ? 0 : t.getTransformTimes().getTotal();
+	}
+
+	public long getTransformTimeMax() {
+		final CoverageTransformer t = transformer;
+		return t == null ? 0 : t.getTransformTimes().getMax();
+	}
+
+	public long[] getTransformTimeHistogram() {
+		final CoverageTransformer t = transformer;
+		return t == null ? new long[0] : t.getTransformTimes().getBuckets();
+	}
+
+	public long getOriginalBytes() {
+		final CoverageTransformer t = transformer;
+		return t == null ? 0 : t.getOriginalBytes();
+	}
+
+	public long getInstrumentedBytes() {
+		final CoverageTransformer t = transformer;
+		return t == null ? 0 : t.getInstrumentedBytes();
+	}
+
+	public long getProbes() {
+		return data.getProbeCount();
+	}
+
+	public long getExecutionDataRequests() {
+		return data.getRequestTimes().getCount();
+	}
+
+	public long getExecutionDataRequestTimeMax() {
+		return data.getRequestTimes().getMax();
+	}
+
+	public long[] getExecutionDataRequestTimeHistogram() {
+		return data.getRequestTimes().getBuckets();
+	}
+
+	public long getDumps() {
+		return data.getCollectTimes().getCount();
+	}
+
+	public long getDumpTime() {
+		return data.getCollectTimes().getTotal();
+	}
+
+	public long getDumpTimeMax() {
+		return data.getCollectTimes().getMax();
+	}
+
+	public long[] getDumpTimeHistogram() {
+		return data.getCollectTimes().getBuckets();
+	}
+
+	public long getDumpedClasses() {
+		return data.getCollectSizes().getTotal();
+	}
+
+	public long[] getDumpSizeHistogram() {
+		return data.getCollectSizes().getBuckets();
+	}
+
 }
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Background thread which moves the execution data of unloaded classes to the
+ * spill file of the runtime data. Classes are only unloaded together with
+ * their class loader, therefore the ids of all instrumented classes are
+ * recorded per loader. The loaders are referenced weakly, once a loader has
+ * been garbage collected the execution data of its classes is spilled.
+ * 
+ * As class ids are calculated from the class files, identical classes defined
+ * by different loaders share the same execution data. Therefore the number of
+ * live loaders is counted per id and the execution data is only spilled when
+ * the last of them has been collected.
+ */
+class ClassUnloadSpiller implements Runnable {
+
+	private final RuntimeData data;
+
+	private final IExceptionLogger logger;
+
+	private final ReferenceQueue<ClassLoader> queue;
+
+	private final Map<ClassLoader, ClassIds> loaders;
+
+	/** Number of live loaders per class id, guarded by loaders */
+	private final Map<Long, Integer> references;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param data
+	 *            runtime data to spill unloaded classes from
+	 * @param logger
+	 *            logger for problems while writing the spill file
+	 */
+	ClassUnloadSpiller(final RuntimeData data, final IExceptionLogger logger) {
+		this.data = data;
+		this.logger = logger;
+		this.queue = new ReferenceQueue<ClassLoader>();
+		this.loaders = new WeakHashMap<ClassLoader, ClassIds>();
+		this.references = new HashMap<Long, Integer>();
+	}
+
+	/**
+	 * Records that the class with the given id has been defined by the given
+	 * loader.
+	 * 
+	 * @param loader
+	 *            defining loader, classes of the bootstrap loader are never
+	 *            unloaded and ignored
+	 * @param id
+	 *            class id as used in the runtime data
+	 */
+	void register(final ClassLoader loader, final long id) {
+		if (loader == null) {
+			return;
+		}
+		synchronized (loaders) {
+			ClassIds ids = loaders.get(loader);
+			if (ids == null) {
+				ids = new ClassIds(loader, queue);
+				loaders.put(loader, ids);
+			}
+			final Long key = Long.valueOf(id);
+			if (ids.add(key)) {
+				final Integer count = references.get(key);
+				references.put(key, Integer.valueOf(count == null ? 1 : count
+						.intValue() + 1));
+			}
+		}
+	}
+
+	/**
+	 * Starts a daemon thread which spills the classes of collected loaders.
+	 */
+	void start() {
+		final Thread worker = new Thread(this);
+		worker.setName(getClass().getName());
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				poll(0);
+			}
+		} catch (final InterruptedException e) {
+			// stop
+		}
+	}
+
+	/**
+	 * Waits for a collected class loader and spills the execution data of its
+	 * classes which are not defined by other live loaders.
+	 * 
+	 * @param timeout
+	 *            maximum time to wait in milliseconds, 0 waits indefinitely
+	 * @return <code>true</code> if a class loader has been processed
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	boolean poll(final long timeout) throws InterruptedException {
+		final Reference<? extends ClassLoader> ref = queue.remove(timeout);
+		if (ref == null) {
+			return false;
+		}
+		// The lock is held while spilling, otherwise a new loader could
+		// define one of the classes before its execution data is removed:
+		synchronized (loaders) {
+			try {
+				data.spill(release((ClassIds) ref));
+			} catch (final IOException e) {
+				logger.logExeption(e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decrements the reference counts of the given ids and returns the ids
+	 * which are not referenced by any live loader anymore.
+	 */
+	private long[] release(final ClassIds ids) {
+		final long[] result = new long[ids.size()];
+		int size = 0;
+		for (final Long key : ids) {
+			final int count = references.get(key).intValue() - 1;
+			if (count == 0) {
+				references.remove(key);
+				result[size++] = key.longValue();
+			} else {
+				references.put(key, Integer.valueOf(count));
+			}
+		}
+		final long[] unloaded = new long[size];
+		System.arraycopy(result, 0, unloaded, 0, size);
+		return unloaded;
+	}
+
+	/**
+	 * Ids of the classes defined by a single loader. The ids have to be kept
+	 * by the reference itself as the map entry is gone when the loader has
+	 * been collected.
+	 */
+	private static class ClassIds extends WeakReference<ClassLoader> implements
+			Iterable<Long> {
+
+		private final Set<Long> ids = new HashSet<Long>();
+
+		ClassIds(final ClassLoader loader,
+				final ReferenceQueue<ClassLoader> queue) {
+			super(loader, queue);
+		}
+
+		boolean add(final Long id) {
+			return ids.add(id);
+		}
+
+		int size() {
+			return ids.size();
+		}
+
+		public Iterator<Long> iterator() {
+			return ids.iterator();
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import org.jacoco.core.data.ExecutionData;
+
+/**
+ * Copy of the execution data of a single class where the probes are stored as
+ * bit set. This requires an eighth of the memory of a <code>boolean[]</code>
+ * and is used for execution data which is held for a longer time.
+ */
+class CompactExecutionData {
+
+	private final long id;
+
+	private final String name;
+
+	private final int probeCount;
+
+	private final long[] bits;
+
+	private final long[] counts;
+
+	/**
+	 * Creates a compact copy of the given execution data.
+	 * 
+	 * @param data
+	 *            execution data to copy
+	 */
+	CompactExecutionData(final ExecutionData data) {
+		final boolean[] probes = data.getProbes();
+		id = data.getId();
+		name = data.getName();
+		probeCount = probes.length;
+		bits = new long[(probeCount + 63) >>> 6];
+		for (int i = 0; i < probeCount; i++) {
+			if (probes[i]) {
+				bits[i >>> 6] |= 1L << i;
+			}
+		}
+		final long[] c = data.getCounts();
+		counts = c == null ? null : c.clone();
+	}
+
+	/**
+	 * Restores the execution data.
+	 * 
+	 * @return new execution data instance
+	 */
+	ExecutionData toExecutionData() {
+		final boolean[] probes = new boolean[probeCount];
+		for (int i = 0; i < probeCount; i++) {
+			probes[i] = (bits[i >>> 6] & (1L << i)) != 0;
+		}
+		if (counts == null) {
+			return new ExecutionData(id, name, probes);
+		}
+		return new ExecutionData(id, name, probes, counts.clone());
+	}
+
+}
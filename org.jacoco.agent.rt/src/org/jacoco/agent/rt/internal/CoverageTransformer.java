@@ -11,13 +11,28 @@
  *******************************************************************************/
 package org.jacoco.agent.rt.internal;
 
+import java.io.IOException;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
 import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.instr.InstrSupport;
 import org.jacoco.core.runtime.AgentOptions;
+import org.jacoco.core.runtime.Histogram;
 import org.jacoco.core.runtime.IRuntime;
+import org.jacoco.core.runtime.RuntimeData;
 import org.jacoco.core.runtime.WildcardMatcher;
 
 /**
@@ -27,6 +42,12 @@ public class CoverageTransformer implements ClassFileTransformer {
 
 	private static final String AGENT_PREFIX;
 
+	/**
+	 * Number of consecutive classes loaded without pre-instrumented version
+	 * after which the remaining pre-instrumented classes are discarded.
+	 */
+	static final int MAX_MISSES = 1000;
+
 	static {
 		final String name = CoverageTransformer.class.getName();
 		AGENT_PREFIX = toVMName(name.substring(0, name.lastIndexOf('.')));
@@ -34,18 +55,45 @@ public class CoverageTransformer implements ClassFileTransformer {
 
 	private final IRuntime runtime;
 
+	private final RuntimeData data;
+
 	private final Instrumenter instrumenter;
 
 	private final IExceptionLogger logger;
 
+	private final boolean methodProbes;
+
 	private final WildcardMatcher includes;
 
 	private final WildcardMatcher excludes;
 
 	private final WildcardMatcher exclClassloader;
 
+	private final Map<Class<?>, Boolean> excludedLoaderTypes;
+
 	private final ClassFileDumper classFileDumper;
 
+	private final InstrumentationCache cache;
+
+	/** pre-instrumented classes or <code>null</code> once discarded */
+	private volatile ConcurrentMap<Long, PreinstrumentedClass> preinstrumented;
+
+	private final ReferenceQueue<byte[]> clearedPreinstrumented;
+
+	private volatile boolean preinstrumentFinished;
+
+	private final AtomicInteger preinstrumentMisses;
+
+	private final AtomicLong skippedClasses;
+
+	private final Histogram transformTimes;
+
+	private final AtomicLong originalBytes;
+
+	private final AtomicLong instrumentedBytes;
+
+	private volatile ClassUnloadSpiller spiller;
+
 	/**
 	 * New transformer with the given delegates.
 	 * 
@@ -58,14 +106,60 @@ public class CoverageTransformer implements ClassFileTransformer {
 	 */
 	public CoverageTransformer(final IRuntime runtime,
 			final AgentOptions options, final IExceptionLogger logger) {
+		this(runtime, null, options, logger);
+	}
+
+	/**
+	 * New transformer with the given delegates. Retransformed classes which
+	 * have been retired in the given runtime data are replaced with versions
+	 * without probes.
+	 * 
+	 * @see RuntimeData#retireCoveredClasses()
+	 * @param runtime
+	 *            coverage runtime
+	 * @param data
+	 *            runtime data to check for retired classes or
+	 *            <code>null</code>
+	 * @param options
+	 *            configuration options for the generator
+	 * @param logger
+	 *            logger for exceptions during instrumentation
+	 */
+	public CoverageTransformer(final IRuntime runtime, final RuntimeData data,
+			final AgentOptions options, final IExceptionLogger logger) {
 		this.runtime = runtime;
+		this.data = data;
 		this.instrumenter = new Instrumenter(runtime);
+		this.instrumenter.setCounters(options.getCounters());
+		this.instrumenter.setConditionalProbes(options.getConditionalProbes());
+		this.instrumenter.setMethodProbes(options.getMethodProbes());
+		this.instrumenter.setContexts(options.getContexts());
+		this.methodProbes = options.getMethodProbes();
 		this.logger = logger;
 		// Class names will be reported in VM notation:
 		includes = new WildcardMatcher(toVMName(options.getIncludes()));
 		excludes = new WildcardMatcher(toVMName(options.getExcludes()));
 		exclClassloader = new WildcardMatcher(options.getExclClassloader());
+		excludedLoaderTypes = Collections
+				.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
 		classFileDumper = new ClassFileDumper(options.getClassDumpDir());
+		if (options.getCacheDir() == null) {
+			cache = null;
+		} else {
+			cache = new InstrumentationCache(options.getCacheDir(),
+					runtime.getClass().getName() + " counters="
+							+ options.getCounters() + " conditionalprobes="
+							+ options.getConditionalProbes() + " methodprobes="
+							+ options.getMethodProbes() + " contexts="
+							+ options.getContexts());
+		}
+		preinstrumented = new ConcurrentHashMap<Long, PreinstrumentedClass>();
+		clearedPreinstrumented = new ReferenceQueue<byte[]>();
+		preinstrumentMisses = new AtomicInteger();
+		skippedClasses = new AtomicLong();
+		transformTimes = new Histogram();
+		originalBytes = new AtomicLong();
+		instrumentedBytes = new AtomicLong();
 	}
 
 	public byte[] transform(final ClassLoader loader, final String classname,
@@ -74,17 +168,28 @@ public class CoverageTransformer implements ClassFileTransformer {
 			final byte[] classfileBuffer) throws IllegalClassFormatException {
 
 		if (!filter(loader, classname)) {
+			skippedClasses.incrementAndGet();
 			return null;
 		}
 
+		final long start = System.nanoTime();
 		try {
 			classFileDumper.dump(classname, classfileBuffer);
 			if (classBeingRedefined != null) {
 				// For redefined classes we must clear the execution data
 				// reference as probes might have changed.
 				runtime.disconnect(classBeingRedefined);
+				if (isRetired(classfileBuffer)) {
+					return instrumenter.instrumentWithoutProbes(
+							classfileBuffer, classname);
+				}
 			}
-			return instrumenter.instrument(classfileBuffer, classname);
+			final byte[] instrumented = instrument(classfileBuffer, classname);
+			registerLoader(loader, classfileBuffer);
+			transformTimes.record(System.nanoTime() - start);
+			originalBytes.addAndGet(classfileBuffer.length);
+			instrumentedBytes.addAndGet(instrumented.length);
+			return instrumented;
 		} catch (final Exception ex) {
 			final IllegalClassFormatException wrapper = new IllegalClassFormatException(
 					ex.getMessage());
@@ -95,6 +200,209 @@ public class CoverageTransformer implements ClassFileTransformer {
 		}
 	}
 
+	private byte[] instrument(final byte[] classfileBuffer,
+			final String classname) throws IOException {
+		final ConcurrentMap<Long, PreinstrumentedClass> map = preinstrumented;
+		if (cache == null && (map == null || map.isEmpty())) {
+			return instrumenter.instrument(classfileBuffer, classname);
+		}
+		final long classid = CRC64.checksum(classfileBuffer);
+		if (map != null) {
+			final byte[] instrumented = takePreinstrumented(map, classid);
+			if (instrumented != null) {
+				return instrumented;
+			}
+		}
+		return instrument(classfileBuffer, classname, classid);
+	}
+
+	/**
+	 * Removes the pre-instrumented version of the given class. Once
+	 * pre-instrumentation has finished the map is discarded if it is empty
+	 * or if the pre-instrumented classes are apparently not loaded anymore.
+	 */
+	private byte[] takePreinstrumented(
+			final ConcurrentMap<Long, PreinstrumentedClass> map,
+			final long classid) {
+		purgePreinstrumented(map);
+		final PreinstrumentedClass entry = map.remove(Long.valueOf(classid));
+		final byte[] instrumented = entry == null ? null : entry.get();
+		if (preinstrumentFinished) {
+			if (instrumented != null) {
+				preinstrumentMisses.set(0);
+			} else if (preinstrumentMisses.incrementAndGet() >= MAX_MISSES) {
+				preinstrumented = null;
+			}
+			if (map.isEmpty()) {
+				preinstrumented = null;
+			}
+		}
+		return instrumented;
+	}
+
+	/**
+	 * Removes the entries whose class files have been garbage collected.
+	 */
+	private void purgePreinstrumented(
+			final ConcurrentMap<Long, PreinstrumentedClass> map) {
+		Reference<? extends byte[]> ref;
+		while ((ref = clearedPreinstrumented.poll()) != null) {
+			final PreinstrumentedClass entry = (PreinstrumentedClass) ref;
+			map.remove(entry.classid, entry);
+		}
+	}
+
+	private byte[] instrument(final byte[] classfileBuffer,
+			final String classname, final long classid) throws IOException {
+		if (cache == null) {
+			return instrumenter.instrument(classfileBuffer, classname);
+		}
+		byte[] instrumented = cache.get(classid);
+		if (instrumented == null) {
+			instrumented = instrumenter.instrument(classfileBuffer, classname);
+			try {
+				cache.put(classid, instrumented);
+			} catch (final IOException e) {
+				// The class can be used anyways:
+				logger.logExeption(e);
+			}
+		}
+		return instrumented;
+	}
+
+	/**
+	 * Instruments the given class in advance if it matches the filter
+	 * settings. When the class is loaded later the instrumented version is
+	 * taken from memory. The memory is released if the VM runs low on memory.
+	 * As the class loader is not known class loader exclusions are applied
+	 * when the class is loaded. Does nothing after
+	 * {@link #finishPreinstrument()}.
+	 * 
+	 * @param classname
+	 *            VM name of the class
+	 * @param classfileBuffer
+	 *            original class file
+	 * @throws IOException
+	 *             if the class can't be instrumented
+	 */
+	void preinstrument(final String classname, final byte[] classfileBuffer)
+			throws IOException {
+		final ConcurrentMap<Long, PreinstrumentedClass> map = preinstrumented;
+		if (map != null && !preinstrumentFinished && filter(classname)) {
+			final long classid = CRC64.checksum(classfileBuffer);
+			final byte[] instrumented = instrument(classfileBuffer, classname,
+					classid);
+			purgePreinstrumented(map);
+			final PreinstrumentedClass entry = new PreinstrumentedClass(
+					classid, instrumented, clearedPreinstrumented);
+			map.put(entry.classid, entry);
+		}
+	}
+
+	/**
+	 * Signals that no more classes are pre-instrumented. From now on the
+	 * pre-instrumented classes are discarded when all of them have been
+	 * loaded or when {@link #MAX_MISSES} classes in a row have been loaded
+	 * without pre-instrumented version. Afterwards classes are
+	 * loaded without computing their checksum, unless a cache is configured.
+	 */
+	void finishPreinstrument() {
+		preinstrumentFinished = true;
+		final ConcurrentMap<Long, PreinstrumentedClass> map = preinstrumented;
+		if (map != null) {
+			purgePreinstrumented(map);
+			if (map.isEmpty()) {
+				preinstrumented = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of pre-instrumented classes which are still held.
+	 * 
+	 * @return number of pre-instrumented classes
+	 */
+	int getPreinstrumentedCount() {
+		final ConcurrentMap<Long, PreinstrumentedClass> map = preinstrumented;
+		return map == null ? 0 : map.size();
+	}
+
+	/**
+	 * Sets the spiller which is notified about the loaders of instrumented
+	 * classes, so that their execution data can be spilled when the loader
+	 * has been unloaded.
+	 * 
+	 * @param spiller
+	 *            spiller to notify or <code>null</code>
+	 */
+	void setClassUnloadSpiller(final ClassUnloadSpiller spiller) {
+		this.spiller = spiller;
+	}
+
+	private void registerLoader(final ClassLoader loader,
+			final byte[] classfileBuffer) {
+		final ClassUnloadSpiller s = spiller;
+		if (s != null) {
+			s.register(loader, getClassId(classfileBuffer));
+		}
+	}
+
+	/**
+	 * Returns the number of classes which have not been instrumented because
+	 * of the filter settings.
+	 * 
+	 * @return number of skipped classes
+	 */
+	long getSkippedClasses() {
+		return skippedClasses.get();
+	}
+
+	/**
+	 * Returns the durations in nanoseconds of all successful class
+	 * transformations with probes.
+	 * 
+	 * @return durations of transformations
+	 */
+	Histogram getTransformTimes() {
+		return transformTimes;
+	}
+
+	/**
+	 * Returns the total size of all original class files which have been
+	 * instrumented with probes.
+	 * 
+	 * @return size in bytes
+	 */
+	long getOriginalBytes() {
+		return originalBytes.get();
+	}
+
+	/**
+	 * Returns the total size of all class files instrumented with probes.
+	 * 
+	 * @return size in bytes
+	 */
+	long getInstrumentedBytes() {
+		return instrumentedBytes.get();
+	}
+
+	private boolean isRetired(final byte[] classfileBuffer) {
+		if (data == null) {
+			return false;
+		}
+		return data.isRetired(getClassId(classfileBuffer));
+	}
+
+	/**
+	 * Returns the id under which the execution data of the given class is
+	 * recorded in the runtime data.
+	 */
+	private long getClassId(final byte[] classfileBuffer) {
+		final long classid = CRC64.checksum(classfileBuffer);
+		return methodProbes ? InstrSupport.getMethodProbesId(classid)
+				: classid;
+	}
+
 	/**
 	 * Checks whether this class should be instrumented.
 	 * 
@@ -108,17 +416,51 @@ public class CoverageTransformer implements ClassFileTransformer {
 		// Don't instrument classes of the bootstrap loader:
 		return loader != null &&
 
-		!classname.startsWith(AGENT_PREFIX) &&
+		!isExcluded(loader) &&
+
+		filter(classname);
+	}
 
-		!exclClassloader.matches(loader.getClass().getName()) &&
+	private boolean filter(final String classname) {
+		return !classname.startsWith(AGENT_PREFIX) &&
 
 		includes.matches(classname) &&
 
 		!excludes.matches(classname);
 	}
 
+	/**
+	 * Checks whether classes of the given loader are excluded. The result is
+	 * cached per loader type, the types are referenced weakly so they can be
+	 * unloaded.
+	 */
+	private boolean isExcluded(final ClassLoader loader) {
+		final Class<?> type = loader.getClass();
+		Boolean excluded = excludedLoaderTypes.get(type);
+		if (excluded == null) {
+			excluded = Boolean.valueOf(exclClassloader.matches(type.getName()));
+			excludedLoaderTypes.put(type, excluded);
+		}
+		return excluded.booleanValue();
+	}
+
 	private static String toVMName(final String srcName) {
 		return srcName.replace('.', '/');
 	}
 
+	/**
+	 * Soft reference to a pre-instrumented class file which knows its key, so
+	 * that cleared references can be removed from the map.
+	 */
+	private static class PreinstrumentedClass extends SoftReference<byte[]> {
+
+		final Long classid;
+
+		PreinstrumentedClass(final long classid, final byte[] instrumented,
+				final ReferenceQueue<byte[]> queue) {
+			super(instrumented, queue);
+			this.classid = Long.valueOf(classid);
+		}
+	}
+
 }
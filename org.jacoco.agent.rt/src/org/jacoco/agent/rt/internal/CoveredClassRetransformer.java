@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Periodically retires fully covered classes and retransforms them, so that
+ * the {@link CoverageTransformer} can replace them with versions without
+ * probes. As class retransformation has been introduced with Java 6 the
+ * corresponding {@link Instrumentation} methods are called reflectively.
+ */
+class CoveredClassRetransformer implements Runnable {
+
+	private final Instrumentation inst;
+
+	private final RuntimeData data;
+
+	private final long interval;
+
+	private final IExceptionLogger logger;
+
+	private final Method retransformClasses;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param inst
+	 *            instrumentation callback provided by the JVM
+	 * @param data
+	 *            runtime data to check for fully covered classes
+	 * @param interval
+	 *            check interval in milliseconds
+	 * @param logger
+	 *            logger for exceptions during retransformation
+	 * @throws NoSuchMethodException
+	 *             if the JVM does not support class retransformation
+	 */
+	CoveredClassRetransformer(final Instrumentation inst,
+			final RuntimeData data, final long interval,
+			final IExceptionLogger logger) throws NoSuchMethodException {
+		this.inst = inst;
+		this.data = data;
+		this.interval = interval;
+		this.logger = logger;
+		this.retransformClasses = Instrumentation.class.getMethod(
+				"retransformClasses", Class[].class);
+	}
+
+	/**
+	 * Registers the given transformer as capable of class retransformation and
+	 * starts a daemon thread which periodically retransforms fully covered
+	 * classes.
+	 * 
+	 * @param transformer
+	 *            transformer to register
+	 * @throws Exception
+	 *             if the JVM does not support class retransformation
+	 */
+	void start(final ClassFileTransformer transformer) throws Exception {
+		final Method isSupported = Instrumentation.class
+				.getMethod("isRetransformClassesSupported");
+		if (!((Boolean) isSupported.invoke(inst)).booleanValue()) {
+			throw new IllegalStateException(
+					"Class retransformation is not supported.");
+		}
+		final Method addTransformer = Instrumentation.class.getMethod(
+				"addTransformer", ClassFileTransformer.class, Boolean.TYPE);
+		addTransformer.invoke(inst, transformer, Boolean.TRUE);
+
+		final Thread worker = new Thread(this);
+		worker.setName(getClass().getName());
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				Thread.sleep(interval);
+				retransformCoveredClasses();
+			}
+		} catch (final InterruptedException e) {
+			// stop
+		}
+	}
+
+	/**
+	 * Retires all fully covered classes and retransforms the loaded classes
+	 * with the same names. The transformer decides per class id whether the
+	 * version without probes is used.
+	 */
+	void retransformCoveredClasses() {
+		final Set<String> names = new HashSet<String>();
+		for (final ExecutionData d : data.retireCoveredClasses()) {
+			names.add(d.getName());
+		}
+		if (names.isEmpty()) {
+			return;
+		}
+		for (final Class<?> c : inst.getAllLoadedClasses()) {
+			if (names.contains(c.getName().replace('.', '/'))) {
+				try {
+					retransformClasses.invoke(inst,
+							new Object[] { new Class<?>[] { c } });
+				} catch (final Exception e) {
+					logger.logExeption(e);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Snapshot of the execution data which is written in pages of limited size.
+ * The snapshot is taken when the cursor is created, its binary representation
+ * is created page by page when the pages are requested. Concatenated the
+ * pages give the same content like a single dump. Every page except the last
+ * one has exactly the page size. Only the current page is kept, it can be
+ * requested again, e.g. if a remote client has to retry.
+ * 
+ * The snapshot is a copy, as it has to be consistent with the reset performed
+ * when the cursor is created. To limit the memory held by an open cursor the
+ * probes are kept as bit sets, see {@link CompactExecutionData}, and every
+ * class is released once it has been written to a page.
+ */
+class ExecutionDataCursor implements IExecutionDataVisitor,
+		ISessionInfoVisitor {
+
+	private static final byte[] END = new byte[0];
+
+	private final int pageSize;
+
+	private final List<Object> items;
+
+	private final ByteArrayOutputStream buffer;
+
+	private final ExecutionDataWriter writer;
+
+	private int next;
+
+	private int pageIndex;
+
+	private byte[] page;
+
+	/**
+	 * Creates a new cursor with a snapshot of the given runtime.
+	 * 
+	 * @param data
+	 *            runtime to take the snapshot from
+	 * @param reset
+	 *            if <code>true</code> the execution data of the runtime is
+	 *            cleared
+	 * @param pageSize
+	 *            maximum size of a page in bytes
+	 */
+	ExecutionDataCursor(final RuntimeData data, final boolean reset,
+			final int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Invalid page size "
+					+ pageSize);
+		}
+		this.pageSize = pageSize;
+		this.items = new ArrayList<Object>();
+		this.buffer = new ByteArrayOutputStream();
+		try {
+			this.writer = new ExecutionDataWriter(buffer);
+		} catch (final IOException e) {
+			// Must not happen with ByteArrayOutputStream
+			throw new AssertionError(e);
+		}
+		this.pageIndex = -1;
+		data.collect(this, this, reset);
+	}
+
+	/**
+	 * Returns the page with the given index. Pages have to be requested in
+	 * order, only the last page can be requested again.
+	 * 
+	 * @param index
+	 *            index of the page starting with 0
+	 * @return content of the page, an empty array after the last page
+	 * @throws IllegalArgumentException
+	 *             if the page is not the current or the next one
+	 */
+	synchronized byte[] getPage(final int index) {
+		if (index < 0) {
+			throw new IllegalArgumentException("Invalid page " + index);
+		}
+		if (index == pageIndex) {
+			return page;
+		}
+		if (index != pageIndex + 1) {
+			throw new IllegalArgumentException(String.format(
+					"Page %s requested after page %s", Integer.valueOf(index),
+					Integer.valueOf(pageIndex)));
+		}
+		page = nextPage();
+		pageIndex = index;
+		return page;
+	}
+
+	private byte[] nextPage() {
+		while (buffer.size() < pageSize && next < items.size()) {
+			final Object item = items.set(next++, null);
+			if (item instanceof SessionInfo) {
+				writer.visitSessionInfo((SessionInfo) item);
+			} else {
+				writer.visitClassExecution(((CompactExecutionData) item)
+						.toExecutionData());
+			}
+		}
+		if (buffer.size() == 0) {
+			return END;
+		}
+		final byte[] content = buffer.toByteArray();
+		final int length = Math.min(content.length, pageSize);
+		final byte[] result = new byte[length];
+		System.arraycopy(content, 0, result, 0, length);
+		buffer.reset();
+		buffer.write(content, length, content.length - length);
+		return result;
+	}
+
+	// === IExecutionDataVisitor, ISessionInfoVisitor ===
+
+	public void visitClassExecution(final ExecutionData data) {
+		items.add(new CompactExecutionData(data));
+	}
+
+	public void visitSessionInfo(final SessionInfo info) {
+		items.add(info);
+	}
+
+}
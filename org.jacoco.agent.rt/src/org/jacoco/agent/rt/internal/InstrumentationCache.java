@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+
+import org.jacoco.core.JaCoCo;
+import org.jacoco.core.internal.data.CRC64;
+
+/**
+ * File system cache for instrumented class files. Entries are identified by
+ * the CRC64 checksum of the original class file. The cache location contains
+ * a sub-directory for every JaCoCo version and instrumentation configuration,
+ * so entries are never reused with a different setup.
+ * 
+ * Multiple VMs may use the same cache location concurrently: Entries are
+ * written to temporary files first which are then renamed. So entries are
+ * either complete or do not exist. If multiple VMs write the same entry the
+ * last rename wins, as all contents are identical this does not matter.
+ */
+class InstrumentationCache {
+
+	private final File location;
+
+	/**
+	 * Creates a new cache at the given location.
+	 * 
+	 * @param location
+	 *            path to the cache directory
+	 * @param configuration
+	 *            description of all settings which influence the
+	 *            instrumented class files
+	 */
+	InstrumentationCache(final String location, final String configuration) {
+		final String folder = String.format("%s-%016x", JaCoCo.VERSION,
+				Long.valueOf(CRC64.checksum(toBytes(configuration))));
+		this.location = new File(location, folder);
+	}
+
+	private static byte[] toBytes(final String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Returns the cached instrumented class file for the given id.
+	 * 
+	 * @param classid
+	 *            CRC64 checksum of the original class file
+	 * @return instrumented class file or <code>null</code> if not cached
+	 */
+	byte[] get(final long classid) {
+		final File file = getFile(classid);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			final RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				final byte[] contents = new byte[(int) in.length()];
+				in.readFully(contents);
+				return contents;
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			// Treat unreadable entries like missing ones, they will be
+			// replaced with the next put().
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the instrumented class file for the given id to the cache.
+	 * 
+	 * @param classid
+	 *            CRC64 checksum of the original class file
+	 * @param contents
+	 *            instrumented class file
+	 * @throws IOException
+	 *             if the entry can't be written
+	 */
+	void put(final long classid, final byte[] contents) throws IOException {
+		final File file = getFile(classid);
+		final File folder = file.getParentFile();
+		folder.mkdirs();
+		final File temp = File.createTempFile(file.getName(), ".tmp", folder);
+		try {
+			final OutputStream out = new FileOutputStream(temp);
+			try {
+				out.write(contents);
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(file) && !file.isFile()) {
+				throw new IOException("Can't rename " + temp + " to " + file);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Returns the file for the given entry. Entries are distributed over
+	 * sub-directories to avoid huge directories.
+	 * 
+	 * @param classid
+	 *            CRC64 checksum of the original class file
+	 * @return file of the cache entry
+	 */
+	File getFile(final long classid) {
+		final String name = String.format("%016x", Long.valueOf(classid));
+		return new File(new File(location, name.substring(0, 2)), name
+				+ ".class");
+	}
+
+}
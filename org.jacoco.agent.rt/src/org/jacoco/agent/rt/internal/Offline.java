@@ -36,7 +36,10 @@ public final class Offline {
 	}
 
 	/**
-	 * API for offline instrumented classes.
+	 * API for offline instrumented classes. Every instrumented class calls
+	 * this method once when it is initialized and keeps the returned array in
+	 * a static field. The lookup neither boxes the class id nor acquires a
+	 * lock, so classes initialized concurrently do not block each other.
 	 * 
 	 * @param classid
 	 *            class identifier
@@ -48,8 +51,8 @@ public final class Offline {
 	 */
 	public static boolean[] getProbes(final long classid,
 			final String classname, final int probecount) {
-		return DATA.getExecutionData(Long.valueOf(classid), classname,
-				probecount).getProbes();
+		return DATA.getExecutionData(classid, classname, probecount)
+				.getProbes();
 	}
 
 }
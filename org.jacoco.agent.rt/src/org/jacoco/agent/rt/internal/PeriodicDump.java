@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Background thread which periodically writes snapshots of the current
+ * execution data to rotated files. The snapshot with index 1 is always the
+ * most recent one. Execution data is serialized to memory first, so
+ * application threads are only blocked for the time of the in-memory copy and
+ * not while the file is written. Every snapshot is written to a temporary file
+ * which is then renamed, so snapshot files are always complete.
+ * 
+ * The most recent snapshot is copied to index 2 before it is replaced, so it
+ * exists all the time on platforms which rename atomically. Platforms which
+ * don't allow to rename to existing files (Windows) fall back to moving the
+ * existing file aside first. This fallback is not atomic: for a short moment
+ * the file is missing, while its previous content is still kept under a
+ * temporary name until the new file is in place.
+ */
+class PeriodicDump implements Runnable {
+
+	private final RuntimeData data;
+
+	private final File destfile;
+
+	private final long interval;
+
+	private final int keep;
+
+	private final IExceptionLogger logger;
+
+	private Thread worker;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param data
+	 *            runtime data to dump
+	 * @param destfile
+	 *            base name for the snapshot files
+	 * @param interval
+	 *            dump interval in milliseconds
+	 * @param keep
+	 *            number of snapshot files to keep
+	 * @param logger
+	 *            logger for problems while writing snapshots
+	 */
+	PeriodicDump(final RuntimeData data, final File destfile,
+			final long interval, final int keep, final IExceptionLogger logger) {
+		this.data = data;
+		this.destfile = destfile.getAbsoluteFile();
+		this.interval = interval;
+		this.keep = Math.max(1, keep);
+		this.logger = logger;
+	}
+
+	/**
+	 * Starts the background thread.
+	 */
+	void start() {
+		worker = new Thread(this);
+		worker.setName(getClass().getName());
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Stops the background thread and waits until a snapshot which is
+	 * currently written has been completed.
+	 * 
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 */
+	void stop() throws InterruptedException {
+		worker.interrupt();
+		worker.join();
+	}
+
+	public void run() {
+		while (true) {
+			try {
+				Thread.sleep(interval);
+			} catch (final InterruptedException e) {
+				return;
+			}
+			try {
+				writeSnapshot();
+			} catch (final IOException e) {
+				logger.logExeption(e);
+			}
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the current execution data and rotates the existing
+	 * snapshot files.
+	 * 
+	 * @throws IOException
+	 *             if the snapshot can't be written
+	 */
+	void writeSnapshot() throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final ExecutionDataWriter writer = new ExecutionDataWriter(buffer);
+		data.collect(writer, writer, false);
+
+		final File folder = destfile.getParentFile();
+		if (folder != null) {
+			folder.mkdirs();
+		}
+		final File temp = File.createTempFile(destfile.getName(), ".tmp",
+				folder);
+		try {
+			final FileOutputStream out = new FileOutputStream(temp);
+			try {
+				buffer.writeTo(out);
+			} finally {
+				out.close();
+			}
+			rotate(folder);
+			replace(temp, getSnapshotFile(1));
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private void rotate(final File folder) throws IOException {
+		if (keep == 1) {
+			return;
+		}
+		for (int i = keep - 1; i >= 2; i--) {
+			final File file = getSnapshotFile(i);
+			if (file.exists()) {
+				replace(file, getSnapshotFile(i + 1));
+			}
+		}
+		// The most recent snapshot stays in place until it is replaced:
+		final File latest = getSnapshotFile(1);
+		if (latest.exists()) {
+			final File copy = File.createTempFile(destfile.getName(), ".tmp",
+					folder);
+			try {
+				copy(latest, copy);
+				replace(copy, getSnapshotFile(2));
+			} finally {
+				copy.delete();
+			}
+		}
+	}
+
+	private static void copy(final File from, final File to)
+			throws IOException {
+		final InputStream in = new FileInputStream(from);
+		try {
+			final OutputStream out = new FileOutputStream(to);
+			try {
+				final byte[] buffer = new byte[8192];
+				int len;
+				while ((len = in.read(buffer)) != -1) {
+					out.write(buffer, 0, len);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Renames the given file, replacing an existing target file. If the
+	 * platform does not allow to rename to existing files the target is moved
+	 * aside first and restored if the rename fails.
+	 * 
+	 * @param from
+	 *            file to rename
+	 * @param to
+	 *            new name, may exist
+	 * @throws IOException
+	 *             if the file can't be renamed
+	 */
+	static void replace(final File from, final File to) throws IOException {
+		if (from.renameTo(to)) {
+			return;
+		}
+		if (!to.exists()) {
+			throw new IOException("Can't rename " + from + " to " + to);
+		}
+		final File backup = new File(to.getPath() + ".old");
+		backup.delete();
+		if (!to.renameTo(backup)) {
+			throw new IOException("Can't rename " + to + " to " + backup);
+		}
+		if (!from.renameTo(to)) {
+			backup.renameTo(to);
+			throw new IOException("Can't rename " + from + " to " + to);
+		}
+		backup.delete();
+	}
+
+	/**
+	 * Returns the snapshot file with the given index. The index is inserted
+	 * before the file extension, e.g. <code>jacoco-1.exec</code>.
+	 * 
+	 * @param index
+	 *            snapshot index starting with 1
+	 * @return snapshot file
+	 */
+	File getSnapshotFile(final int index) {
+		final String name = destfile.getName();
+		final int dot = name.lastIndexOf('.');
+		final String snapshot;
+		if (dot > 0) {
+			snapshot = name.substring(0, dot) + "-" + index
+					+ name.substring(dot);
+		} else {
+			snapshot = name + "-" + index;
+		}
+		return new File(destfile.getParentFile(), snapshot);
+	}
+
+}
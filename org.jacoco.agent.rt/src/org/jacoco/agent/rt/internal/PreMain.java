@@ -46,8 +46,43 @@ public final class PreMain {
 
 		final IRuntime runtime = createRuntime(inst);
 		runtime.startup(agent.getData());
-		inst.addTransformer(new CoverageTransformer(runtime, agentOptions,
-				IExceptionLogger.SYSTEM_ERR));
+		final CoverageTransformer transformer = new CoverageTransformer(
+				runtime, agent.getData(), agentOptions,
+				IExceptionLogger.SYSTEM_ERR);
+		agent.setTransformer(transformer);
+		if (agentOptions.getSpillFile() != null) {
+			final ClassUnloadSpiller spiller = new ClassUnloadSpiller(
+					agent.getData(), IExceptionLogger.SYSTEM_ERR);
+			transformer.setClassUnloadSpiller(spiller);
+			spiller.start();
+		}
+		if (!startRetransformer(inst, agent, agentOptions, transformer)) {
+			inst.addTransformer(transformer);
+		}
+		if (agentOptions.getPreinstrument() > 0) {
+			new Preinstrumenter(transformer,
+					System.getProperty("java.class.path"),
+					agentOptions.getPreinstrument()).start();
+		}
+	}
+
+	private static boolean startRetransformer(final Instrumentation inst,
+			final Agent agent, final AgentOptions options,
+			final CoverageTransformer transformer) {
+		final int interval = options.getDeinstrumentInterval();
+		// Retired classes would not record probes in coverage contexts:
+		if (interval <= 0 || options.getCounters() || options.getContexts()) {
+			return false;
+		}
+		try {
+			new CoveredClassRetransformer(inst, agent.getData(),
+					interval * 1000L, IExceptionLogger.SYSTEM_ERR)
+					.start(transformer);
+			return true;
+		} catch (final Exception e) {
+			IExceptionLogger.SYSTEM_ERR.logExeption(e);
+			return false;
+		}
 	}
 
 	private static IRuntime createRuntime(final Instrumentation inst)
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Low priority background threads which scan the entries of a class path and
+ * instrument all classes in advance, see
+ * {@link CoverageTransformer#preinstrument(String, byte[])}. Every class path
+ * entry is processed by a single task. Problems with single entries or
+ * classes are ignored, such classes are instrumented again when they are
+ * loaded and problems are reported then. When all entries have been
+ * processed {@link CoverageTransformer#finishPreinstrument()} is called.
+ */
+class Preinstrumenter {
+
+	private static final String CLASS_SUFFIX = ".class";
+
+	private final CoverageTransformer transformer;
+
+	private final String classpath;
+
+	private final int threads;
+
+	private ExecutorService executor;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param transformer
+	 *            transformer to instrument the classes with
+	 * @param classpath
+	 *            class path with entries separated by
+	 *            {@link File#pathSeparator}
+	 * @param threads
+	 *            number of background threads
+	 */
+	Preinstrumenter(final CoverageTransformer transformer,
+			final String classpath, final int threads) {
+		this.transformer = transformer;
+		this.classpath = classpath;
+		this.threads = threads;
+	}
+
+	/**
+	 * Starts the background threads. The threads terminate when all class
+	 * path entries have been processed.
+	 */
+	void start() {
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r);
+				thread.setName(Preinstrumenter.class.getName());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		final List<File> files = new ArrayList<File>();
+		for (final String entry : classpath.split(File.pathSeparator)) {
+			if (entry.length() > 0) {
+				files.add(new File(entry));
+			}
+		}
+		final AtomicInteger pending = new AtomicInteger(files.size());
+		for (final File file : files) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						scan(file);
+					} finally {
+						if (pending.decrementAndGet() == 0) {
+							transformer.finishPreinstrument();
+						}
+					}
+				}
+			});
+		}
+		if (files.isEmpty()) {
+			transformer.finishPreinstrument();
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits until all class path entries have been processed.
+	 * 
+	 * @param timeout
+	 *            maximum time to wait in milliseconds
+	 * @return <code>true</code> if all entries have been processed
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 */
+	boolean await(final long timeout) throws InterruptedException {
+		return executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Instruments all classes of the given class path entry.
+	 * 
+	 * @param entry
+	 *            directory or archive
+	 */
+	void scan(final File entry) {
+		try {
+			if (entry.isDirectory()) {
+				scanDirectory(entry, "");
+			} else if (entry.isFile()) {
+				scanArchive(entry);
+			}
+		} catch (final IOException e) {
+			// Classes are instrumented when they are loaded
+		}
+	}
+
+	private void scanDirectory(final File dir, final String prefix)
+			throws IOException {
+		final File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (final File file : files) {
+			final String name = prefix + file.getName();
+			if (file.isDirectory()) {
+				scanDirectory(file, name + "/");
+			} else if (name.endsWith(CLASS_SUFFIX)) {
+				final InputStream in = new FileInputStream(file);
+				try {
+					preinstrument(name, in);
+				} finally {
+					in.close();
+				}
+			}
+		}
+	}
+
+	private void scanArchive(final File file) throws IOException {
+		final ZipFile zip = new ZipFile(file);
+		try {
+			final Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				final ZipEntry entry = entries.nextElement();
+				final String name = entry.getName();
+				if (!entry.isDirectory() && name.endsWith(CLASS_SUFFIX)) {
+					final InputStream in = zip.getInputStream(entry);
+					try {
+						preinstrument(name, in);
+					} finally {
+						in.close();
+					}
+				}
+			}
+		} finally {
+			zip.close();
+		}
+	}
+
+	private void preinstrument(final String name, final InputStream in)
+			throws IOException {
+		final String classname = name.substring(0, name.length()
+				- CLASS_SUFFIX.length());
+		try {
+			transformer.preinstrument(classname, readFully(in));
+		} catch (final IOException e) {
+			// Invalid class files are reported when the class is loaded
+		}
+	}
+
+	private static byte[] readFully(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int len;
+		while ((len = in.read(buffer)) != -1) {
+			out.write(buffer, 0, len);
+		}
+		return out.toByteArray();
+	}
+
+}
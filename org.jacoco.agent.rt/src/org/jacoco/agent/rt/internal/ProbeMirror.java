@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.jacoco.core.data.MappedExecutionDataWriter;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Background thread which periodically mirrors the probes of all classes into
+ * a memory mapped file. The probes are not copied on the heap, only probes
+ * which have changed since the last update are written to the mapping. As the
+ * content of the mapping is maintained by the operating system, the file is
+ * available even if the VM crashes or is killed. Probes executed after the
+ * last update are not contained in the file then, so up to one interval of
+ * coverage can be lost.
+ * 
+ * Probes which have been moved to the recorded tests by
+ * {@link RuntimeData#collectHits(org.jacoco.core.data.IExecutionDataVisitor)}
+ * are cleared in the runtime data and therefore also cleared in the mirror
+ * with the next update.
+ */
+class ProbeMirror implements Runnable {
+
+	private final RuntimeData data;
+
+	private final File file;
+
+	private final long interval;
+
+	private final IExceptionLogger logger;
+
+	private MappedExecutionDataWriter writer;
+
+	private Thread worker;
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param data
+	 *            runtime data to mirror
+	 * @param file
+	 *            file to map
+	 * @param interval
+	 *            update interval in milliseconds
+	 * @param logger
+	 *            logger for problems while updating the mirror
+	 */
+	ProbeMirror(final RuntimeData data, final File file, final long interval,
+			final IExceptionLogger logger) {
+		this.data = data;
+		this.file = file.getAbsoluteFile();
+		this.interval = interval;
+		this.logger = logger;
+	}
+
+	/**
+	 * Creates the mapped file and starts the background thread.
+	 * 
+	 * @throws IOException
+	 *             if the file can't be created or mapped
+	 */
+	void start() throws IOException {
+		final File folder = file.getParentFile();
+		if (folder != null) {
+			folder.mkdirs();
+		}
+		writer = new MappedExecutionDataWriter(file);
+		sync();
+		worker = new Thread(this);
+		worker.setName(getClass().getName());
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Stops the background thread, writes the final state of the probes and
+	 * closes the file.
+	 * 
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 * @throws IOException
+	 *             if the file can't be closed
+	 */
+	void stop() throws InterruptedException, IOException {
+		worker.interrupt();
+		worker.join();
+		sync();
+		writer.close();
+	}
+
+	public void run() {
+		while (true) {
+			try {
+				Thread.sleep(interval);
+			} catch (final InterruptedException e) {
+				return;
+			}
+			try {
+				sync();
+			} catch (final RuntimeException e) {
+				logger.logExeption(e);
+			}
+		}
+	}
+
+	/**
+	 * Updates the mapped file with the current probes.
+	 */
+	void sync() {
+		data.acceptLive(writer, writer);
+	}
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Records the probes executed by single tests. At the end of every test the
+ * probes executed since its start are moved from the runtime, see
+ * {@link RuntimeData#collectHits(IExecutionDataVisitor)}, and kept as compact
+ * bit sets. The recorded tests are written as a session per test, followed by
+ * the execution data of the classes executed by this test. Tests are expected
+ * to run one after the other, probes executed by other threads are attributed
+ * to the current test.
+ */
+class TestRecorder {
+
+	private static final IExecutionDataVisitor DISCARD = new IExecutionDataVisitor() {
+		public void visitClassExecution(final ExecutionData data) {
+			// probes executed outside of tests are not recorded
+		}
+	};
+
+	private final RuntimeData data;
+
+	private final List<Test> tests;
+
+	private Test current;
+
+	/**
+	 * Creates a new recorder for the given runtime.
+	 * 
+	 * @param data
+	 *            runtime data to take the executed probes from
+	 */
+	TestRecorder(final RuntimeData data) {
+		this.data = data;
+		this.tests = new ArrayList<Test>();
+	}
+
+	/**
+	 * Starts a new test. A currently running test is ended before. Probes
+	 * executed since the end of the last test are not attributed to the new
+	 * test.
+	 * 
+	 * @param name
+	 *            name of the test, used as session id
+	 */
+	synchronized void startTest(final String name) {
+		endTest();
+		data.collectHits(DISCARD);
+		current = new Test(name, System.currentTimeMillis());
+	}
+
+	/**
+	 * Ends the current test and records the probes executed since its start.
+	 * Does nothing if no test is running.
+	 */
+	synchronized void endTest() {
+		if (current != null) {
+			data.collectHits(current);
+			current.end = System.currentTimeMillis();
+			tests.add(current);
+			current = null;
+		}
+	}
+
+	/**
+	 * Writes all ended tests to the given visitors.
+	 * 
+	 * @param executionDataVisitor
+	 *            handler for the execution data of the tests
+	 * @param sessionInfoVisitor
+	 *            handler for a session per test
+	 * @param reset
+	 *            if <code>true</code> the recorded tests are discarded
+	 *            afterwards
+	 */
+	synchronized void collect(final IExecutionDataVisitor executionDataVisitor,
+			final ISessionInfoVisitor sessionInfoVisitor, final boolean reset) {
+		for (final Test test : tests) {
+			sessionInfoVisitor.visitSessionInfo(new SessionInfo(test.name,
+					test.start, test.end));
+			test.accept(executionDataVisitor);
+		}
+		if (reset) {
+			tests.clear();
+		}
+	}
+
+	private static class Test implements IExecutionDataVisitor {
+
+		final String name;
+
+		final long start;
+
+		long end;
+
+		private final List<CompactExecutionData> classes = new ArrayList<CompactExecutionData>();
+
+		Test(final String name, final long start) {
+			this.name = name;
+			this.start = start;
+		}
+
+		public void visitClassExecution(final ExecutionData data) {
+			classes.add(new CompactExecutionData(data));
+		}
+
+		void accept(final IExecutionDataVisitor visitor) {
+			for (final CompactExecutionData c : classes) {
+				visitor.visitClassExecution(c.toExecutionData());
+			}
+		}
+	}
+
+}
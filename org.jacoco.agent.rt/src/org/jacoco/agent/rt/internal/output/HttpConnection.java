@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.zip.GZIPOutputStream;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Handler for a single HTTP request. The connection is closed after the
+ * response has been sent. The following resources are supported:
+ * <ul>
+ * <li><code>GET /exec</code>: Execution data in the exec file format. The
+ * data is streamed from a snapshot of the runtime data and compressed with
+ * gzip if the client accepts it. With the query <code>reset=true</code>
+ * execution data is reset with the snapshot.</li>
+ * <li><code>POST /reset</code>: Resets the execution data.</li>
+ * <li><code>GET /summary</code>: Number of classes and probes as plain text
+ * properties. The summary is computed from the probe arrays in memory without
+ * copying them, classes moved to the spill file and probes moved for per test
+ * coverage are not included.</li>
+ * </ul>
+ * Requests have to be received within {@link #READ_TIMEOUT} milliseconds and
+ * may contain at most {@link #MAX_HEADERS} header lines.
+ */
+class HttpConnection {
+
+	private static final String CHARSET = "ISO-8859-1";
+
+	private static final int MAX_LINE_LENGTH = 8192;
+
+	/** maximum number of header lines of a request */
+	static final int MAX_HEADERS = 100;
+
+	/** timeout in milliseconds for reading from the connection */
+	static final int READ_TIMEOUT = 10000;
+
+	private final Socket socket;
+
+	private final RuntimeData data;
+
+	private InputStream input;
+
+	private OutputStream output;
+
+	HttpConnection(final Socket socket, final RuntimeData data) {
+		this.socket = socket;
+		this.data = data;
+	}
+
+	/**
+	 * Reads the request, sends the response and closes the connection.
+	 * 
+	 * @throws IOException
+	 *             in case of problems with the connection
+	 */
+	public void run() throws IOException {
+		try {
+			socket.setSoTimeout(READ_TIMEOUT);
+			input = new BufferedInputStream(socket.getInputStream());
+			output = new BufferedOutputStream(socket.getOutputStream());
+			handleRequest();
+			output.flush();
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Closes the underlying socket if not closed yet.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (!socket.isClosed()) {
+			socket.close();
+		}
+	}
+
+	private void handleRequest() throws IOException {
+		final String[] request = readLine().split(" ");
+		if (request.length != 3) {
+			sendStatus("400 Bad Request");
+			return;
+		}
+		boolean gzip = false;
+		String header;
+		int headers = 0;
+		while ((header = readLine()).length() > 0) {
+			if (++headers > MAX_HEADERS) {
+				sendStatus("400 Bad Request");
+				return;
+			}
+			final int colon = header.indexOf(':');
+			if (colon > 0
+					&& "accept-encoding".equalsIgnoreCase(header.substring(0,
+							colon).trim())) {
+				gzip = header.substring(colon + 1).indexOf("gzip") != -1;
+			}
+		}
+
+		final String method = request[0];
+		final String uri = request[1];
+		final int q = uri.indexOf('?');
+		final String path = q == -1 ? uri : uri.substring(0, q);
+		final String query = q == -1 ? "" : uri.substring(q + 1);
+
+		if ("/exec".equals(path)) {
+			if (checkMethod(method, "GET")) {
+				sendExecutionData(gzip, isReset(query));
+			}
+		} else if ("/reset".equals(path)) {
+			if (checkMethod(method, "POST")) {
+				data.reset();
+				sendStatus("204 No Content");
+			}
+		} else if ("/summary".equals(path)) {
+			if (checkMethod(method, "GET")) {
+				sendSummary();
+			}
+		} else {
+			sendStatus("404 Not Found");
+		}
+	}
+
+	private static boolean isReset(final String query) {
+		for (final String param : query.split("&")) {
+			if ("reset=true".equals(param)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean checkMethod(final String method, final String expected)
+			throws IOException {
+		if (expected.equals(method)) {
+			return true;
+		}
+		writeStatus("405 Method Not Allowed");
+		writeHeader("Allow", expected);
+		endHeaders();
+		return false;
+	}
+
+	private void sendExecutionData(final boolean gzip, final boolean reset)
+			throws IOException {
+		writeStatus("200 OK");
+		writeHeader("Content-Type", "application/octet-stream");
+		if (gzip) {
+			writeHeader("Content-Encoding", "gzip");
+		}
+		endHeaders();
+		if (gzip) {
+			final GZIPOutputStream body = new GZIPOutputStream(output);
+			writeExecutionData(body, reset);
+			body.finish();
+		} else {
+			writeExecutionData(output, reset);
+		}
+	}
+
+	private void writeExecutionData(final OutputStream body,
+			final boolean reset) throws IOException {
+		final ExecutionDataWriter writer = new ExecutionDataWriter(body);
+		data.collect(writer, writer, reset);
+	}
+
+	private void sendSummary() throws IOException {
+		final Summary summary = new Summary();
+		data.acceptLive(summary, summary, false);
+		writeStatus("200 OK");
+		writeHeader("Content-Type", "text/plain; charset=" + CHARSET);
+		endHeaders();
+		output.write(summary.toString().getBytes(CHARSET));
+	}
+
+	private void sendStatus(final String status) throws IOException {
+		writeStatus(status);
+		endHeaders();
+	}
+
+	private void writeStatus(final String status) throws IOException {
+		writeLine("HTTP/1.0 " + status);
+	}
+
+	private void writeHeader(final String name, final String value)
+			throws IOException {
+		writeLine(name + ": " + value);
+	}
+
+	private void endHeaders() throws IOException {
+		writeLine("");
+	}
+
+	private void writeLine(final String line) throws IOException {
+		output.write((line + "\r\n").getBytes(CHARSET));
+	}
+
+	private String readLine() throws IOException {
+		final StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = input.read()) != '\n') {
+			if (c == -1) {
+				throw new IOException("Incomplete HTTP request.");
+			}
+			if (line.length() == MAX_LINE_LENGTH) {
+				throw new IOException("HTTP request line too long.");
+			}
+			line.append((char) c);
+		}
+		final int length = line.length();
+		if (length > 0 && line.charAt(length - 1) == '\r') {
+			line.setLength(length - 1);
+		}
+		return line.toString();
+	}
+
+	private static class Summary implements IExecutionDataVisitor,
+			ISessionInfoVisitor {
+
+		private String sessionId;
+		private boolean ignored;
+		private int classes;
+		private int coveredClasses;
+		private int probes;
+		private int coveredProbes;
+
+		public void visitSessionInfo(final SessionInfo info) {
+			// Only the regular session is counted, further sessions like
+			// coverage contexts contain the same classes again:
+			if (sessionId == null) {
+				sessionId = info.getId();
+			} else {
+				ignored = true;
+			}
+		}
+
+		public void visitClassExecution(final ExecutionData data) {
+			if (ignored) {
+				return;
+			}
+			int covered = 0;
+			for (final boolean p : data.getProbes()) {
+				if (p) {
+					covered++;
+				}
+			}
+			classes++;
+			probes += data.getProbes().length;
+			if (covered > 0) {
+				coveredClasses++;
+				coveredProbes += covered;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "sessionid=" + sessionId + "\nclasses=" + classes
+					+ "\ncoveredclasses=" + coveredClasses + "\nprobes="
+					+ probes + "\ncoveredprobes=" + coveredProbes + "\n";
+		}
+
+	}
+
+}
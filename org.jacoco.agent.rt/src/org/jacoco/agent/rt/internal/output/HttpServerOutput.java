@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal.output;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jacoco.agent.rt.internal.IExceptionLogger;
+import org.jacoco.core.runtime.AgentOptions;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Output that opens a HTTP server socket. Execution data is only written on
+ * request, see {@link HttpConnection} for the supported resources. This
+ * controller uses the following agent options:
+ * <ul>
+ * <li>address</li>
+ * <li>port</li>
+ * </ul>
+ * At most {@link #MAX_CONNECTIONS} requests are handled at the same time,
+ * further connections are closed immediately.
+ */
+public class HttpServerOutput implements IAgentOutput {
+
+	/** maximum number of concurrently handled connections */
+	static final int MAX_CONNECTIONS = 16;
+
+	private final List<HttpConnection> connections = new ArrayList<HttpConnection>();
+
+	private final List<Thread> handlers = new ArrayList<Thread>();
+
+	private final IExceptionLogger logger;
+
+	private ServerSocket serverSocket;
+
+	private Thread worker;
+
+	/**
+	 * New controller instance.
+	 * 
+	 * @param logger
+	 *            logger to use in case of exceptions is spawned threads
+	 */
+	public HttpServerOutput(final IExceptionLogger logger) {
+		this.logger = logger;
+	}
+
+	public void startup(final AgentOptions options, final RuntimeData data)
+			throws IOException {
+		serverSocket = createServerSocket(options);
+		worker = new Thread(new Runnable() {
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try {
+						startHandler(new HttpConnection(serverSocket.accept(),
+								data));
+					} catch (final IOException e) {
+						// If the serverSocket is closed while accepting
+						// connections a SocketException is expected.
+						if (!serverSocket.isClosed()) {
+							logger.logExeption(e);
+						}
+					}
+				}
+			}
+		});
+		worker.setName(getClass().getName());
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	private void startHandler(final HttpConnection connection)
+			throws IOException {
+		final Thread handler = new Thread(new Runnable() {
+			public void run() {
+				try {
+					connection.run();
+				} catch (final IOException e) {
+					// Connections are closed on shutdown
+					if (!serverSocket.isClosed()) {
+						logger.logExeption(e);
+					}
+				} finally {
+					synchronized (connections) {
+						connections.remove(connection);
+						handlers.remove(Thread.currentThread());
+					}
+				}
+			}
+		});
+		handler.setName(getClass().getName() + "-connection");
+		handler.setDaemon(true);
+		synchronized (connections) {
+			if (serverSocket.isClosed()
+					|| connections.size() >= MAX_CONNECTIONS) {
+				connection.close();
+				return;
+			}
+			connections.add(connection);
+			handlers.add(handler);
+		}
+		handler.start();
+	}
+
+	public void shutdown() throws Exception {
+		serverSocket.close();
+		final List<Thread> threads;
+		synchronized (connections) {
+			for (final HttpConnection c : connections) {
+				c.close();
+			}
+			threads = new ArrayList<Thread>(handlers);
+		}
+		worker.join();
+		for (final Thread t : threads) {
+			t.join();
+		}
+	}
+
+	public void writeExecutionData(final boolean reset) {
+		// Execution data is only written on request
+	}
+
+	/**
+	 * Open a server socket based on the given configuration.
+	 * 
+	 * @param options
+	 *            address and port configuration
+	 * @return opened server socket
+	 * @throws IOException
+	 */
+	protected ServerSocket createServerSocket(final AgentOptions options)
+			throws IOException {
+		final InetAddress inetAddr = getInetAddress(options.getAddress());
+		return new ServerSocket(options.getPort(), 0, inetAddr);
+	}
+
+	/**
+	 * Returns the {@link InetAddress} object to open the server socket on.
+	 * 
+	 * @param address
+	 *            address specified as a string
+	 * @return address to open the server socket
+	 * @throws UnknownHostException
+	 */
+	protected InetAddress getInetAddress(final String address)
+			throws UnknownHostException {
+		if ("*".equals(address)) {
+			return null;
+		} else {
+			return InetAddress.getByName(address);
+		}
+	}
+
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.agent.rt.internal.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.runtime.RemoteControlWriter;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Serializes execution data for remote connections. Concurrent dump requests
+ * without reset are served with a single serialized snapshot: A request joins
+ * a pending snapshot as long as the execution data has not been collected for
+ * it yet. Therefore every request gets execution data which is at least as
+ * recent as the request itself.
+ */
+class SharedSnapshot {
+
+	private static final int HEADER_LENGTH = ExecutionDataWriter
+			.getFileHeader().length;
+
+	private final RuntimeData data;
+
+	private final Object collectLock = new Object();
+
+	private Dump pending;
+
+	/**
+	 * Creates a new instance for the given runtime data.
+	 * 
+	 * @param data
+	 *            runtime data to collect execution data from
+	 */
+	SharedSnapshot(final RuntimeData data) {
+		this.data = data;
+	}
+
+	/**
+	 * Returns a dump of the current execution data without reset which may be
+	 * shared with concurrent callers.
+	 * 
+	 * @return dump of the current execution data
+	 * @throws InterruptedIOException
+	 *             if the thread is interrupted while waiting for the dump
+	 * @throws IOException
+	 *             if the joined dump could not be collected
+	 */
+	Dump get() throws IOException {
+		final Dump dump;
+		final boolean leader;
+		synchronized (this) {
+			leader = pending == null;
+			if (leader) {
+				pending = new Dump();
+			}
+			dump = pending;
+		}
+		if (leader) {
+			// Only one dump is collected at a time, further requests join the
+			// pending dump meanwhile:
+			synchronized (collectLock) {
+				synchronized (this) {
+					pending = null;
+				}
+				byte[] bytes = null;
+				try {
+					bytes = serialize(false, false);
+				} finally {
+					// Joined requests must not wait forever if collecting
+					// fails, the leader gets the original exception:
+					dump.set(bytes);
+				}
+			}
+		}
+		return dump.await();
+	}
+
+	/**
+	 * Returns a dump which is exclusively collected for the caller.
+	 * 
+	 * @param reset
+	 *            if <code>true</code> execution data is cleared afterwards
+	 * @param delta
+	 *            if <code>true</code> only changed classes are included
+	 * @return dump of the current execution data
+	 */
+	Dump collect(final boolean reset, final boolean delta) {
+		final Dump dump = new Dump();
+		dump.set(serialize(reset, delta));
+		return dump;
+	}
+
+	private byte[] serialize(final boolean reset, final boolean delta) {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try {
+			final ExecutionDataWriter writer = new ExecutionDataWriter(buffer);
+			data.collect(writer, writer, reset, delta);
+		} catch (final IOException e) {
+			// Must not happen with ByteArrayOutputStream
+			throw new AssertionError(e);
+		}
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * Serialized session info and execution data blocks of a single dump.
+	 */
+	static class Dump {
+
+		private byte[] bytes;
+
+		private byte[] compressed;
+
+		private boolean done;
+
+		private synchronized void set(final byte[] bytes) {
+			this.bytes = bytes;
+			this.done = true;
+			notifyAll();
+		}
+
+		private synchronized Dump await() throws IOException {
+			try {
+				while (!done) {
+					wait();
+				}
+			} catch (final InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			if (bytes == null) {
+				throw new IOException("Execution data could not be collected.");
+			}
+			return this;
+		}
+
+		/**
+		 * Writes the blocks of this dump without file header to the given
+		 * stream.
+		 * 
+		 * @param output
+		 *            stream to write to
+		 * @throws IOException
+		 *             if the stream can't be written
+		 */
+		void writeTo(final OutputStream output) throws IOException {
+			output.write(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+		}
+
+		/**
+		 * Sends this dump as a compressed block with the given writer. The
+		 * dump is compressed only once, also if it is sent to multiple
+		 * connections.
+		 * 
+		 * @param writer
+		 *            writer to send the compressed block with
+		 * @throws IOException
+		 *             if the block can't be written
+		 */
+		void sendCompressed(final RemoteControlWriter writer)
+				throws IOException {
+			final byte[] block = getCompressed();
+			writer.sendCompressed(block, 0, block.length);
+		}
+
+		private synchronized byte[] getCompressed() throws IOException {
+			if (compressed == null) {
+				final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				final DeflaterOutputStream deflater = new DeflaterOutputStream(
+						buffer);
+				deflater.write(bytes);
+				deflater.close();
+				compressed = buffer.toByteArray();
+			}
+			return compressed;
+		}
+
+	}
+
+}
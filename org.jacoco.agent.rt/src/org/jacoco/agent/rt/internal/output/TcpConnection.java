@@ -12,23 +12,34 @@
 package org.jacoco.agent.rt.internal.output;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 
-import org.jacoco.core.runtime.IRemoteCommandVisitor;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.runtime.IExtendedRemoteCommandVisitor;
 import org.jacoco.core.runtime.RemoteControlReader;
 import org.jacoco.core.runtime.RemoteControlWriter;
 import org.jacoco.core.runtime.RuntimeData;
 
 /**
- * Handler for a single socket based remote connection.
+ * Handler for a single socket based remote connection. Clients have to send
+ * their header within {@link #HEADER_TIMEOUT} milliseconds, afterwards the
+ * connection may stay idle until the next command.
  */
-class TcpConnection implements IRemoteCommandVisitor {
+class TcpConnection implements IExtendedRemoteCommandVisitor {
+
+	/** timeout in milliseconds for receiving the header of the client */
+	static final int HEADER_TIMEOUT = 10000;
 
 	private final RuntimeData data;
 
 	private final Socket socket;
 
+	private final SharedSnapshot snapshot;
+
+	private OutputStream output;
+
 	private RemoteControlWriter writer;
 
 	private RemoteControlReader reader;
@@ -36,14 +47,43 @@ class TcpConnection implements IRemoteCommandVisitor {
 	private boolean initialized;
 
 	public TcpConnection(final Socket socket, final RuntimeData data) {
+		this(socket, data, new SharedSnapshot(data));
+	}
+
+	/**
+	 * Creates a connection which serves dump requests without reset from the
+	 * given snapshot, which may be shared with other connections.
+	 * 
+	 * @param socket
+	 *            socket of the connection
+	 * @param data
+	 *            runtime data
+	 * @param snapshot
+	 *            snapshot of the given runtime data
+	 */
+	public TcpConnection(final Socket socket, final RuntimeData data,
+			final SharedSnapshot snapshot) {
 		this.socket = socket;
 		this.data = data;
+		this.snapshot = snapshot;
 		this.initialized = false;
 	}
 
 	public void init() throws IOException {
-		this.writer = new RemoteControlWriter(socket.getOutputStream());
-		this.reader = new RemoteControlReader(socket.getInputStream());
+		socket.setSoTimeout(HEADER_TIMEOUT);
+		this.output = socket.getOutputStream();
+		this.writer = new RemoteControlWriter(output);
+		this.reader = new RemoteControlReader(socket.getInputStream()) {
+			@Override
+			protected boolean readBlock(final byte blockid)
+					throws IOException {
+				final boolean more = super.readBlock(blockid);
+				if (blockid == ExecutionDataWriter.BLOCK_HEADER) {
+					socket.setSoTimeout(0);
+				}
+				return more;
+			}
+		};
 		this.reader.setRemoteCommandVisitor(this);
 		this.initialized = true;
 	}
@@ -83,6 +123,21 @@ class TcpConnection implements IRemoteCommandVisitor {
 		}
 	}
 
+	/**
+	 * Sends the given dump if the connection is already initialized and the
+	 * underlying socket is still open.
+	 * 
+	 * @param dump
+	 *            dump to send
+	 * @throws IOException
+	 */
+	public void writeExecutionData(final SharedSnapshot.Dump dump)
+			throws IOException {
+		if (initialized && !socket.isClosed()) {
+			sendDump(dump);
+		}
+	}
+
 	/**
 	 * Closes the underlying socket if not closed yet.
 	 * 
@@ -94,17 +149,45 @@ class TcpConnection implements IRemoteCommandVisitor {
 		}
 	}
 
-	// === IRemoteCommandVisitor ===
+	// === IExtendedRemoteCommandVisitor ===
 
 	public void visitDumpCommand(final boolean dump, final boolean reset)
 			throws IOException {
 		if (dump) {
-			data.collect(writer, writer, reset);
+			sendDump(reset ? snapshot.collect(true, false) : snapshot.get());
 		} else {
 			if (reset) {
 				data.reset();
 			}
+			sendCmdOk();
 		}
+	}
+
+	public void visitDeltaDumpCommand(final boolean reset) throws IOException {
+		sendDump(snapshot.collect(reset, true));
+	}
+
+	public void visitCompressedDumpCommand(final boolean reset)
+			throws IOException {
+		sendCompressedDump(reset ? snapshot.collect(true, false) : snapshot
+				.get());
+	}
+
+	// Dumps may be triggered by the agent and by the remote peer in parallel:
+
+	private synchronized void sendDump(final SharedSnapshot.Dump dump)
+			throws IOException {
+		dump.writeTo(output);
+		writer.sendCmdOk();
+	}
+
+	private synchronized void sendCompressedDump(final SharedSnapshot.Dump dump)
+			throws IOException {
+		dump.sendCompressed(writer);
+		writer.sendCmdOk();
+	}
+
+	private synchronized void sendCmdOk() throws IOException {
 		writer.sendCmdOk();
 	}
 
@@ -15,6 +15,8 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.jacoco.agent.rt.internal.IExceptionLogger;
 import org.jacoco.core.runtime.AgentOptions;
@@ -27,13 +29,25 @@ import org.jacoco.core.runtime.RuntimeData;
  * <li>address</li>
  * <li>port</li>
  * </ul>
+ * Multiple clients may connect at the same time. Every connection is served
+ * by its own thread. Concurrent dump requests without reset share the same
+ * serialized snapshot of the execution data. At most {@link #MAX_CONNECTIONS}
+ * clients are served at the same time, further connections are closed
+ * immediately.
  */
 public class TcpServerOutput implements IAgentOutput {
 
-	private TcpConnection connection;
+	/** maximum number of concurrently served connections */
+	static final int MAX_CONNECTIONS = 16;
+
+	private final List<TcpConnection> connections = new ArrayList<TcpConnection>();
+
+	private final List<Thread> handlers = new ArrayList<Thread>();
 
 	private final IExceptionLogger logger;
 
+	private SharedSnapshot snapshot;
+
 	private ServerSocket serverSocket;
 
 	private Thread worker;
@@ -51,16 +65,14 @@ public class TcpServerOutput implements IAgentOutput {
 	public void startup(final AgentOptions options, final RuntimeData data)
 			throws IOException {
 		serverSocket = createServerSocket(options);
+		snapshot = new SharedSnapshot(data);
 		worker = new Thread(new Runnable() {
 			public void run() {
 				while (!serverSocket.isClosed()) {
 					try {
-						synchronized (serverSocket) {
-							connection = new TcpConnection(
-									serverSocket.accept(), data);
-						}
-						connection.init();
-						connection.run();
+						final TcpConnection connection = new TcpConnection(
+								serverSocket.accept(), data, snapshot);
+						startHandler(connection);
 					} catch (final IOException e) {
 						// If the serverSocket is closed while accepting
 						// connections a SocketException is expected.
@@ -76,19 +88,81 @@ public class TcpServerOutput implements IAgentOutput {
 		worker.start();
 	}
 
+	private void startHandler(final TcpConnection connection)
+			throws IOException {
+		final Thread handler = new Thread(new Runnable() {
+			public void run() {
+				try {
+					connection.init();
+					connection.run();
+				} catch (final IOException e) {
+					// Connections are closed on shutdown, also before they
+					// have been initialized.
+					if (!serverSocket.isClosed()) {
+						logger.logExeption(e);
+					}
+				} finally {
+					synchronized (connections) {
+						connections.remove(connection);
+						handlers.remove(Thread.currentThread());
+					}
+				}
+			}
+		});
+		handler.setName(getClass().getName() + "-connection");
+		handler.setDaemon(true);
+		synchronized (connections) {
+			if (serverSocket.isClosed()
+					|| connections.size() >= MAX_CONNECTIONS) {
+				connection.close();
+				return;
+			}
+			connections.add(connection);
+			handlers.add(handler);
+		}
+		handler.start();
+	}
+
 	public void shutdown() throws Exception {
 		serverSocket.close();
-		synchronized (serverSocket) {
-			if (connection != null) {
-				connection.close();
+		final List<Thread> threads;
+		synchronized (connections) {
+			for (final TcpConnection c : connections) {
+				c.close();
 			}
+			threads = new ArrayList<Thread>(handlers);
 		}
 		worker.join();
+		for (final Thread t : threads) {
+			t.join();
+		}
 	}
 
 	public void writeExecutionData(final boolean reset) throws IOException {
-		if (connection != null) {
-			connection.writeExecutionData(reset);
+		final List<TcpConnection> targets;
+		synchronized (connections) {
+			if (connections.isEmpty()) {
+				return;
+			}
+			targets = new ArrayList<TcpConnection>(connections);
+		}
+		// Execution data is collected only once for all connections, also if
+		// it is reset afterwards:
+		final SharedSnapshot.Dump dump = reset ? snapshot.collect(true, false)
+				: snapshot.get();
+		IOException failure = null;
+		for (final TcpConnection c : targets) {
+			try {
+				c.writeExecutionData(dump);
+			} catch (final IOException e) {
+				// Other clients should get the data anyways
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
 		}
 	}
 
@@ -103,7 +177,7 @@ public class TcpServerOutput implements IAgentOutput {
 	protected ServerSocket createServerSocket(final AgentOptions options)
 			throws IOException {
 		final InetAddress inetAddr = getInetAddress(options.getAddress());
-		return new ServerSocket(options.getPort(), 1, inetAddr);
+		return new ServerSocket(options.getPort(), 0, inetAddr);
 	}
 
 	/**
@@ -193,6 +193,129 @@ public class AbstractCoverageTask extends Task {
 		agentOptions.setJmx(jmx);
 	}
 
+	/**
+	 * Sets whether classes should be instrumented in counter mode.
+	 * 
+	 * @param counters
+	 *            <code>true</code> if counter mode should be enabled
+	 */
+	public void setCounters(final boolean counters) {
+		agentOptions.setCounters(counters);
+	}
+
+	/**
+	 * Sets whether conditional probes should be used.
+	 * 
+	 * @param conditionalProbes
+	 *            <code>true</code> if conditional probes should be used
+	 */
+	public void setConditionalprobes(final boolean conditionalProbes) {
+		agentOptions.setConditionalProbes(conditionalProbes);
+	}
+
+	/**
+	 * Sets the interval in seconds in which fully covered classes are replaced
+	 * with versions without probes.
+	 * 
+	 * @param interval
+	 *            interval in seconds or <code>0</code> to disable
+	 */
+	public void setDeinstrumentinterval(final int interval) {
+		agentOptions.setDeinstrumentInterval(interval);
+	}
+
+	/**
+	 * Sets the interval in seconds in which snapshots of the execution data
+	 * are written.
+	 * 
+	 * @param interval
+	 *            interval in seconds or <code>0</code> to disable
+	 */
+	public void setDumpinterval(final int interval) {
+		agentOptions.setDumpInterval(interval);
+	}
+
+	/**
+	 * Sets the number of periodic snapshot files which are kept.
+	 * 
+	 * @param keep
+	 *            number of snapshot files
+	 */
+	public void setDumpkeep(final int keep) {
+		agentOptions.setDumpKeep(keep);
+	}
+
+	/**
+	 * Sets the file to which the probes are continuously mirrored.
+	 * 
+	 * @param file
+	 *            mirror file
+	 */
+	public void setMirrorfile(final File file) {
+		agentOptions.setMirrorFile(file.getAbsolutePath());
+	}
+
+	/**
+	 * Sets the interval in milliseconds in which the mirror file is updated.
+	 * 
+	 * @param interval
+	 *            interval in milliseconds
+	 */
+	public void setMirrorinterval(final int interval) {
+		agentOptions.setMirrorInterval(interval);
+	}
+
+	/**
+	 * Sets the directory where instrumented class files are cached.
+	 * 
+	 * @param dir
+	 *            cache location
+	 */
+	public void setCachedir(final File dir) {
+		agentOptions.setCacheDir(dir.getAbsolutePath());
+	}
+
+	/**
+	 * Sets the number of background threads which instrument the classes of
+	 * the class path in advance.
+	 * 
+	 * @param threads
+	 *            number of threads, <code>0</code> to disable
+	 */
+	public void setPreinstrument(final int threads) {
+		agentOptions.setPreinstrument(threads);
+	}
+
+	/**
+	 * Sets whether classes should be instrumented with method probes only.
+	 * 
+	 * @param methodProbes
+	 *            <code>true</code> if method probes should be used
+	 */
+	public void setMethodprobes(final boolean methodProbes) {
+		agentOptions.setMethodProbes(methodProbes);
+	}
+
+	/**
+	 * Sets whether classes should be instrumented for coverage contexts.
+	 * 
+	 * @param contexts
+	 *            <code>true</code> if coverage contexts should be supported
+	 */
+	public void setContexts(final boolean contexts) {
+		agentOptions.setContexts(contexts);
+	}
+
+	/**
+	 * Sets the file where the execution data of unloaded classes is moved to.
+	 * 
+	 * @param spillfile
+	 *            spill file or <code>null</code> to disable
+	 */
+	public void setSpillfile(final String spillfile) {
+		agentOptions.setSpillFile(spillfile);
+	}
+
 	/**
 	 * Creates JVM argument to launch with the specified JaCoCo agent jar and
 	 * the current options
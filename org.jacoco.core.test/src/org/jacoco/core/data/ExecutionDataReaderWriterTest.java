@@ -263,6 +263,17 @@ public class ExecutionDataReaderWriterTest {
 		assertArrayEquals(data, store.get(123).getProbes());
 	}
 
+	@Test
+	public void testClassWithCounts() throws IOException {
+		final boolean[] probes = new boolean[] { true, false, true };
+		final long[] counts = new long[] { 1, 0, 1L << 40 };
+		writer.visitClassExecution(new ExecutionData(123, "Sample", probes,
+				counts));
+		assertFalse(createReaderWithVisitors().read());
+		assertArrayEquals(probes, store.get(123).getProbes());
+		assertTrue(Arrays.equals(counts, store.get(123).getCounts()));
+	}
+
 	@Test(expected = RuntimeException.class)
 	public void testExecutionDataIOException() throws IOException {
 		final boolean[] broken = new boolean[1];
@@ -98,6 +98,16 @@ public class ExecutionDataStoreTest implements IExecutionDataVisitor {
 		assertSame(data, store.get(id, "Sample", 3));
 	}
 
+	@Test
+	public void testGetWithCreatePrimitiveId() {
+		final ExecutionData data = store.get(1000L, "Sample", 3);
+		assertEquals(1000, data.getId());
+		assertEquals(3, data.getProbes().length);
+		assertSame(data, store.get(1000L, "Sample", 3));
+		assertSame(data, store.get(Long.valueOf(1000), "Sample", 3));
+		assertSame(data, store.get(1000));
+	}
+
 	@Test(expected = IllegalStateException.class)
 	public void testGetNegative1() {
 		final boolean[] data = new boolean[] { false, false, true };
@@ -200,6 +210,16 @@ public class ExecutionDataStoreTest implements IExecutionDataVisitor {
 		assertFalse(data2[2]);
 	}
 
+	@Test
+	public void testRemoveAll() {
+		store.put(new ExecutionData(1000, "Sample1", 1));
+		store.put(new ExecutionData(1001, "Sample2", 1));
+		store.removeAll(Collections.singleton(Long.valueOf(1000)));
+		assertNull(store.get(1000));
+		assertEquals("Sample2", store.get(1001).getName());
+		assertEquals(1, store.getContents().size());
+	}
+
 	// === IExecutionDataOutput ===
 
 	public void visitClassExecution(final ExecutionData data) {
@@ -13,6 +13,7 @@ package org.jacoco.core.data;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -131,4 +132,71 @@ public class ExecutionDataTest {
 				a.toString());
 	}
 
+	@Test
+	public void testGettersWithCounts() {
+		final boolean[] probes = new boolean[2];
+		final long[] counts = new long[2];
+		final ExecutionData e = new ExecutionData(5, "Example", probes, counts);
+		assertSame(probes, e.getProbes());
+		assertSame(counts, e.getCounts());
+	}
+
+	@Test
+	public void testNoCounts() {
+		assertNull(new ExecutionData(5, "Example", 3).getCounts());
+		assertNull(new ExecutionData(5, "Example", new boolean[3]).getCounts());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCountsLengthMismatch() {
+		new ExecutionData(5, "Example", new boolean[2], new long[3]);
+	}
+
+	@Test
+	public void testResetCounts() {
+		final ExecutionData e = new ExecutionData(5, "Example", new boolean[] {
+				true, true }, new long[] { 4, 1 });
+		e.reset();
+		assertEquals(0, e.getCounts()[0]);
+		assertEquals(0, e.getCounts()[1]);
+	}
+
+	@Test
+	public void testMergeCounts() {
+		final ExecutionData a = new ExecutionData(5, "Example", new boolean[] {
+				true, false, true }, new long[] { 1, 0, 7 });
+		final ExecutionData b = new ExecutionData(5, "Example", new boolean[] {
+				true, true, false }, new long[] { 2, 3, 0 });
+		a.merge(b);
+		assertEquals(3, a.getCounts()[0]);
+		assertEquals(3, a.getCounts()[1]);
+		assertEquals(7, a.getCounts()[2]);
+		assertEquals(2, b.getCounts()[0]);
+	}
+
+	@Test
+	public void testMergeCountsIntoDataWithoutCounts() {
+		final ExecutionData a = new ExecutionData(5, "Example", new boolean[] {
+				true, false });
+		final ExecutionData b = new ExecutionData(5, "Example", new boolean[] {
+				false, true }, new long[] { 0, 3 });
+		a.merge(b);
+		assertTrue(a.getProbes()[0]);
+		assertTrue(a.getProbes()[1]);
+		assertEquals(0, a.getCounts()[0]);
+		assertEquals(3, a.getCounts()[1]);
+	}
+
+	@Test
+	public void testMergeSubtractCounts() {
+		final ExecutionData a = new ExecutionData(5, "Example", new boolean[] {
+				true, true }, new long[] { 5, 6 });
+		final ExecutionData b = new ExecutionData(5, "Example", new boolean[] {
+				false, true });
+		a.merge(b, false);
+		assertTrue(a.getProbes()[0]);
+		assertFalse(a.getProbes()[1]);
+		assertEquals(5, a.getCounts()[0]);
+		assertEquals(0, a.getCounts()[1]);
+	}
 }
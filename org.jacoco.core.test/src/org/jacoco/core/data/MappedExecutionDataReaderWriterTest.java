@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link MappedExecutionDataWriter} and
+ * {@link MappedExecutionDataReader}.
+ */
+public class MappedExecutionDataReaderWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	private MappedExecutionDataWriter writer;
+
+	private ExecutionDataStore store;
+
+	private SessionInfoStore sessions;
+
+	@Before
+	public void setup() throws IOException {
+		file = new File(folder.getRoot(), "mirror.exec");
+		writer = new MappedExecutionDataWriter(file);
+	}
+
+	@After
+	public void teardown() throws IOException {
+		writer.close();
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		read();
+		assertTrue(store.getContents().isEmpty());
+		final List<SessionInfo> infos = sessions.getInfos();
+		assertEquals(1, infos.size());
+		assertEquals("", infos.get(0).getId());
+	}
+
+	@Test
+	public void testSessionInfo() throws IOException {
+		writer.visitSessionInfo(new SessionInfo("testid", 123, 456));
+		read();
+		final SessionInfo info = sessions.getInfos().get(0);
+		assertEquals("testid", info.getId());
+		assertEquals(123, info.getStartTimeStamp());
+		assertEquals(456, info.getDumpTimeStamp());
+	}
+
+	@Test
+	public void testSessionInfoIdTooLong() throws IOException {
+		final StringBuilder id = new StringBuilder();
+		while (id.length() < MappedExecutionDataWriter.SESSION_ID_SIZE) {
+			id.append("x");
+		}
+		writer.visitSessionInfo(new SessionInfo(id.toString(), 1, 2));
+		read();
+		assertEquals("<truncated>", sessions.getInfos().get(0).getId());
+	}
+
+	@Test
+	public void testClassExecution() throws IOException {
+		writer.visitClassExecution(new ExecutionData(Long.MIN_VALUE, "Foo",
+				new boolean[] { true, false, true }));
+		writer.visitClassExecution(new ExecutionData(5, "Bar",
+				new boolean[0]));
+		read();
+		assertEquals(2, store.getContents().size());
+		final ExecutionData foo = store.get(Long.MIN_VALUE);
+		assertEquals("Foo", foo.getName());
+		assertEquals(3, foo.getProbes().length);
+		assertTrue(foo.getProbes()[0]);
+		assertFalse(foo.getProbes()[1]);
+		assertTrue(foo.getProbes()[2]);
+		assertEquals("Bar", store.get(5).getName());
+	}
+
+	@Test
+	public void testUpdate() throws IOException {
+		final boolean[] probes = new boolean[2];
+		writer.visitClassExecution(new ExecutionData(1, "Foo", probes));
+		probes[1] = true;
+		writer.visitClassExecution(new ExecutionData(1, "Foo", probes));
+		read();
+		assertEquals(1, store.getContents().size());
+		assertFalse(store.get(1).getProbes()[0]);
+		assertTrue(store.get(1).getProbes()[1]);
+	}
+
+	@Test
+	public void testGrow() throws IOException {
+		final boolean[] probes = new boolean[1000];
+		probes[999] = true;
+		for (int i = 0; i < 200; i++) {
+			writer.visitClassExecution(new ExecutionData(i, "C" + i, probes));
+		}
+		read();
+		assertEquals(200, store.getContents().size());
+		assertTrue(store.get(199).getProbes()[999]);
+	}
+
+	@Test
+	public void testUpdateAfterGrow() throws IOException {
+		final boolean[] first = new boolean[2];
+		writer.visitClassExecution(new ExecutionData(-1, "Foo", first));
+		final boolean[] probes = new boolean[1000];
+		for (int i = 0; i < 200; i++) {
+			writer.visitClassExecution(new ExecutionData(i, "C" + i, probes));
+		}
+		first[1] = true;
+		writer.visitClassExecution(new ExecutionData(-1, "Foo", first));
+		read();
+		assertEquals(201, store.getContents().size());
+		assertFalse(store.get(-1).getProbes()[0]);
+		assertTrue(store.get(-1).getProbes()[1]);
+	}
+
+	@Test
+	public void testReadWhileWriting() throws IOException {
+		writer.visitClassExecution(new ExecutionData(1, "Foo",
+				new boolean[] { true }));
+		read();
+		writer.visitClassExecution(new ExecutionData(2, "Bar",
+				new boolean[] { true }));
+		read();
+		assertEquals(2, store.getContents().size());
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidMagicNumber() throws IOException {
+		read(new ByteArrayInputStream(new byte[] { 0x01, (byte) 0xC0, 0x10 }));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidVersion() throws IOException {
+		read(new ByteArrayInputStream(new byte[] { (byte) 0xC0, (byte) 0xC1,
+				0x00, 0x7F }));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoSessionInfoVisitor() throws IOException {
+		final MappedExecutionDataReader reader = new MappedExecutionDataReader(
+				new FileInputStream(file));
+		reader.setExecutionDataVisitor(new ExecutionDataStore());
+		reader.read();
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoExecutionDataVisitor() throws IOException {
+		final MappedExecutionDataReader reader = new MappedExecutionDataReader(
+				new FileInputStream(file));
+		reader.setSessionInfoVisitor(new SessionInfoStore());
+		reader.read();
+	}
+
+	private void read() throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private void read(final InputStream in) throws IOException {
+		final MappedExecutionDataReader reader = new MappedExecutionDataReader(
+				in);
+		store = new ExecutionDataStore();
+		sessions = new SessionInfoStore();
+		reader.setExecutionDataVisitor(store);
+		reader.setSessionInfoVisitor(sessions);
+		reader.read();
+	}
+
+}
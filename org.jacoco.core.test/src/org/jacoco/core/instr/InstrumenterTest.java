@@ -13,6 +13,7 @@ package org.jacoco.core.instr;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -23,6 +24,13 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Pack200;
@@ -32,13 +40,30 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.AnalyzerTest;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.internal.analysis.CounterImpl;
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.jacoco.core.runtime.ModifiedSystemClassRuntime;
+import org.jacoco.core.runtime.ModifiedSystemClassRuntimeTest;
 import org.jacoco.core.runtime.RuntimeData;
 import org.jacoco.core.runtime.SystemPropertiesRuntime;
 import org.jacoco.core.test.TargetLoader;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 /**
  * Unit tests for {@link Instrumenter}.
@@ -234,4 +259,230 @@ public class InstrumenterTest {
 		assertEquals("text", new String(out.toByteArray()));
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetCountersNotSupported() {
+		instrumenter.setCounters(true);
+	}
+
+	@Test
+	public void testSetCountersDisabled() {
+		instrumenter.setCounters(false);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetContextsNotSupported() {
+		instrumenter.setContexts(true);
+	}
+
+	@Test
+	public void testSetContextsDisabled() {
+		instrumenter.setContexts(false);
+	}
+
+	/**
+	 * Target for execution counter test.
+	 */
+	public static class CounterTarget implements Runnable {
+		public void run() {
+		}
+	}
+
+	@Test
+	public void testInstrumentWithCounters() throws Exception {
+		final ModifiedSystemClassRuntime counterRuntime = new ModifiedSystemClassRuntime(
+				ModifiedSystemClassRuntimeTest.class, "accessField");
+		final RuntimeData data = new RuntimeData();
+		counterRuntime.startup(data);
+		final Instrumenter counterInstrumenter = new Instrumenter(
+				counterRuntime);
+		counterInstrumenter.setCounters(true);
+
+		final byte[] bytes = counterInstrumenter.instrument(
+				TargetLoader.getClassDataAsBytes(CounterTarget.class),
+				"CounterTarget");
+		final Runnable target = (Runnable) new TargetLoader(
+				CounterTarget.class, bytes).newTargetInstance();
+		target.run();
+		target.run();
+		target.run();
+
+		final ExecutionDataStore store = new ExecutionDataStore();
+		data.collect(store, new SessionInfoStore(), false);
+		final ExecutionData executionData = store.getContents().iterator()
+				.next();
+		// probe 0: constructor, probe 1: run()
+		assertEquals(1, executionData.getCounts()[0]);
+		assertEquals(3, executionData.getCounts()[1]);
+		counterRuntime.shutdown();
+	}
+
+	@Test
+	public void testInstrumentWithContexts() throws Exception {
+		final ModifiedSystemClassRuntime contextRuntime = new ModifiedSystemClassRuntime(
+				ModifiedSystemClassRuntimeTest.class, "accessField");
+		final RuntimeData data = new RuntimeData();
+		contextRuntime.startup(data);
+		final Instrumenter contextInstrumenter = new Instrumenter(
+				contextRuntime);
+		contextInstrumenter.setContexts(true);
+
+		final byte[] bytes = contextInstrumenter.instrument(
+				TargetLoader.getClassDataAsBytes(CounterTarget.class),
+				"CounterTarget");
+		final Runnable target = (Runnable) new TargetLoader(
+				CounterTarget.class, bytes).newTargetInstance();
+		data.bindContext("ctx");
+		target.run();
+		data.unbindContext();
+
+		final List<boolean[]> probes = new ArrayList<boolean[]>();
+		final SessionInfoStore sessions = new SessionInfoStore();
+		data.collect(new IExecutionDataVisitor() {
+			public void visitClassExecution(final ExecutionData data) {
+				probes.add(data.getProbes());
+			}
+		}, sessions, false);
+		assertEquals(2, sessions.getInfos().size());
+		assertEquals("ctx", sessions.getInfos().get(1).getId());
+		// probe 0: constructor, probe 1: run()
+		assertTrue(Arrays.equals(new boolean[] { true, false }, probes.get(0)));
+		assertTrue(Arrays.equals(new boolean[] { false, true }, probes.get(1)));
+		contextRuntime.shutdown();
+	}
+
+	@Test
+	public void testInstrumentWithConditionalProbes() throws Exception {
+		final RuntimeData data = new RuntimeData();
+		final SystemPropertiesRuntime conditionalRuntime = new SystemPropertiesRuntime();
+		conditionalRuntime.startup(data);
+		final Instrumenter conditionalInstrumenter = new Instrumenter(
+				conditionalRuntime);
+		conditionalInstrumenter.setConditionalProbes(true);
+
+		final byte[] bytes = conditionalInstrumenter.instrument(
+				createBranchingClass(), "ConditionalTarget");
+		final Class<?> target = new TargetLoader("ConditionalTarget", bytes)
+				.getTargetClass();
+		final Method abs = target.getMethod("abs", Integer.TYPE);
+		assertEquals(Integer.valueOf(3), abs.invoke(null, Integer.valueOf(3)));
+		assertEquals(Integer.valueOf(3), abs.invoke(null, Integer.valueOf(-3)));
+		assertEquals(Integer.valueOf(3), abs.invoke(null, Integer.valueOf(-3)));
+
+		final ExecutionDataStore store = new ExecutionDataStore();
+		data.collect(store, new SessionInfoStore(), false);
+		final boolean[] probes = store.getContents().iterator().next()
+				.getProbes();
+		assertEquals(3, probes.length);
+		assertTrue(probes[0]);
+		assertTrue(probes[1]);
+		assertTrue(probes[2]);
+		conditionalRuntime.shutdown();
+	}
+
+	@Test
+	public void testInstrumentWithMethodProbes() throws Exception {
+		final RuntimeData data = new RuntimeData();
+		final SystemPropertiesRuntime methodRuntime = new SystemPropertiesRuntime();
+		methodRuntime.startup(data);
+		final Instrumenter methodInstrumenter = new Instrumenter(methodRuntime);
+		methodInstrumenter.setMethodProbes(true);
+
+		final byte[] original = createBranchingClass();
+		final byte[] bytes = methodInstrumenter.instrument(original,
+				"ConditionalTarget");
+		assertTrue(bytes.length < new Instrumenter(methodRuntime).instrument(
+				original, "ConditionalTarget").length);
+		final Class<?> target = new TargetLoader("ConditionalTarget", bytes)
+				.getTargetClass();
+		final Method abs = target.getMethod("abs", Integer.TYPE);
+		assertEquals(Integer.valueOf(3), abs.invoke(null, Integer.valueOf(-3)));
+
+		final ExecutionDataStore store = new ExecutionDataStore();
+		data.collect(store, new SessionInfoStore(), false);
+		final ExecutionData executionData = store.getContents().iterator()
+				.next();
+		assertEquals(InstrSupport.getMethodProbesId(CRC64.checksum(original)),
+				executionData.getId());
+		assertEquals(1, executionData.getProbes().length);
+		assertTrue(executionData.getProbes()[0]);
+		methodRuntime.shutdown();
+
+		final CoverageBuilder builder = new CoverageBuilder();
+		new Analyzer(store, builder).analyzeClass(original,
+				"ConditionalTarget");
+		final IClassCoverage coverage = builder.getClasses().iterator()
+				.next();
+		assertEquals(CounterImpl.COUNTER_0_1, coverage.getMethodCounter());
+		assertEquals(CounterImpl.COUNTER_0_1, coverage.getClassCounter());
+		assertEquals(CounterImpl.COUNTER_0_0,
+				coverage.getInstructionCounter());
+		assertEquals(CounterImpl.COUNTER_0_0, coverage.getLineCounter());
+	}
+
+	/**
+	 * Creates a Java 7 class file with stackmap frames and a static method
+	 * <code>int abs(int)</code>.
+	 */
+	private static byte[] createBranchingClass() {
+		final ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "ConditionalTarget",
+				null, "java/lang/Object", null);
+		final MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "abs", "(I)I", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		final Label positive = new Label();
+		mv.visitJumpInsn(Opcodes.IFGE, positive);
+		mv.visitLdcInsn("negative");
+		mv.visitVarInsn(Opcodes.ASTORE, 1);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.INEG);
+		mv.visitVarInsn(Opcodes.ISTORE, 0);
+		// The probe for this branch is directly followed by a frame which
+		// differs from the current frame:
+		mv.visitLabel(positive);
+		mv.visitFrame(Opcodes.F_NEW, 1, new Object[] { Opcodes.INTEGER }, 0,
+				new Object[0]);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(1, 2);
+		mv.visitEnd();
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	@Test
+	public void testInstrumentWithoutProbes() throws Exception {
+		final byte[] original = TargetLoader
+				.getClassDataAsBytes(InstrumenterTest.class);
+		final Class<?> instrumented = new TargetLoader(InstrumenterTest.class,
+				instrumenter.instrument(original, "Test")).getTargetClass();
+		final Class<?> withoutProbes = new TargetLoader(
+				InstrumenterTest.class, instrumenter.instrumentWithoutProbes(
+						original, "Test")).getTargetClass();
+
+		// Same members are required for retransformation:
+		assertEquals(getMembers(instrumented), getMembers(withoutProbes));
+		assertTrue(getMembers(withoutProbes).contains("$jacocoData"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInstrumentWithoutProbesBrokenClass() throws IOException {
+		final byte[] brokenclass = TargetLoader
+				.getClassDataAsBytes(AnalyzerTest.class);
+		brokenclass[10] = 0x23;
+		instrumenter.instrumentWithoutProbes(brokenclass, "Broken");
+	}
+
+	private static Set<String> getMembers(final Class<?> c) {
+		final Set<String> members = new HashSet<String>();
+		for (final Field f : c.getDeclaredFields()) {
+			members.add(f.getName());
+		}
+		for (final Method m : c.getDeclaredMethods()) {
+			members.add(m.getName() + Type.getMethodDescriptor(m));
+		}
+		return members;
+	}
+
 }
@@ -13,6 +13,7 @@ package org.jacoco.core.internal.analysis;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 import org.jacoco.core.analysis.ICounter;
 import org.junit.Before;
@@ -174,4 +175,34 @@ public class LineImplTest {
 		assertFalse(line.equals(line2));
 	}
 
+	@Test
+	public void testIncrementExecutionCount() {
+		assertEquals(0, line.getExecutionCount());
+		line = line.increment(CounterImpl.getInstance(0, 1),
+				CounterImpl.COUNTER_0_0);
+		line = line.incrementExecutionCount(5);
+		assertEquals(5, line.getExecutionCount());
+		line = line.incrementExecutionCount(3);
+		assertEquals(5, line.getExecutionCount());
+		line = line.incrementExecutionCount(7);
+		assertEquals(7, line.getExecutionCount());
+		assertEquals(CounterImpl.getInstance(0, 1),
+				line.getInstructionCounter());
+	}
+
+	@Test
+	public void testIncrementExecutionCountZero() {
+		assertSame(line, line.incrementExecutionCount(0));
+	}
+
+	@Test
+	public void testEqualsExecutionCount() {
+		line = line.increment(CounterImpl.getInstance(0, 1),
+				CounterImpl.COUNTER_0_0);
+		final LineImpl counted = LineImpl.EMPTY.increment(
+				CounterImpl.getInstance(0, 1), CounterImpl.COUNTER_0_0)
+				.incrementExecutionCount(2);
+		assertFalse(line.equals(counted));
+	}
+
 }
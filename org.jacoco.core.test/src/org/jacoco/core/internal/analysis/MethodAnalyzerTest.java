@@ -36,6 +36,8 @@ public class MethodAnalyzerTest implements IProbeIdGenerator {
 
 	private boolean[] probes;
 
+	private long[] counts;
+
 	private MethodNode method;
 
 	private IMethodCoverage result;
@@ -46,6 +48,7 @@ public class MethodAnalyzerTest implements IProbeIdGenerator {
 		method = new MethodNode();
 		method.tryCatchBlocks = new ArrayList<TryCatchBlockNode>();
 		probes = new boolean[32];
+		counts = null;
 	}
 
 	public int nextId() {
@@ -92,6 +95,19 @@ public class MethodAnalyzerTest implements IProbeIdGenerator {
 		assertLine(1002, 0, 1, 0, 0);
 	}
 
+	@Test
+	public void testLinearSequenceExecutionCount() {
+		createLinearSequence();
+		probes[0] = true;
+		counts = new long[32];
+		counts[0] = 42;
+		runMethodAnalzer();
+
+		assertLine(1001, 0, 1, 0, 0);
+		assertEquals(42, result.getLine(1001).getExecutionCount());
+		assertEquals(42, result.getLine(1002).getExecutionCount());
+	}
+
 	// === Scenario: simple if branch ===
 
 	private void createIfBranch() {
@@ -153,6 +169,21 @@ public class MethodAnalyzerTest implements IProbeIdGenerator {
 		assertLine(1003, 0, 2, 0, 0);
 	}
 
+	@Test
+	public void testIfBranchExecutionCount() {
+		createIfBranch();
+		probes[0] = true;
+		probes[1] = true;
+		counts = new long[32];
+		counts[0] = 3;
+		counts[1] = 5;
+		runMethodAnalzer();
+
+		assertEquals(8, result.getLine(1001).getExecutionCount());
+		assertEquals(3, result.getLine(1002).getExecutionCount());
+		assertEquals(5, result.getLine(1003).getExecutionCount());
+	}
+
 	// === Scenario: branch which merges back ===
 
 	private void createIfBranchMerge() {
@@ -555,7 +586,7 @@ public class MethodAnalyzerTest implements IProbeIdGenerator {
 	private void runMethodAnalzer() {
 		LabelFlowAnalyzer.markLabels(method);
 		final MethodAnalyzer analyzer = new MethodAnalyzer("doit", "()V", null,
-				probes);
+				probes, counts);
 		method.accept(new MethodProbesAdapter(analyzer, this));
 		result = analyzer.getCoverage();
 	}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.internal.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.internal.flow.IProbeIdGenerator;
+import org.jacoco.core.internal.flow.MethodEntryProbesAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+/**
+ * Unit tests for {@link MethodEntryAnalyzer}.
+ */
+public class MethodEntryAnalyzerTest implements IProbeIdGenerator {
+
+	private int nextProbeId;
+
+	private boolean[] probes;
+
+	private MethodNode method;
+
+	private IMethodCoverage result;
+
+	@Before
+	public void setup() {
+		nextProbeId = 0;
+		method = new MethodNode();
+		method.tryCatchBlocks = new ArrayList<TryCatchBlockNode>();
+		probes = new boolean[4];
+	}
+
+	public int nextId() {
+		return nextProbeId++;
+	}
+
+	private void createBranchingMethod() {
+		method.visitLineNumber(1001, new Label());
+		method.visitInsn(Opcodes.ICONST_0);
+		final Label label = new Label();
+		method.visitJumpInsn(Opcodes.IFEQ, label);
+		method.visitLineNumber(1002, new Label());
+		method.visitInsn(Opcodes.RETURN);
+		method.visitLabel(label);
+		method.visitLineNumber(1003, new Label());
+		method.visitInsn(Opcodes.RETURN);
+	}
+
+	@Test
+	public void testNotCovered() {
+		createBranchingMethod();
+		runMethodAnalyzer();
+
+		assertEquals(1, nextProbeId);
+		assertEquals(CounterImpl.COUNTER_1_0, result.getMethodCounter());
+		assertEquals(CounterImpl.COUNTER_0_0, result.getInstructionCounter());
+		assertEquals(CounterImpl.COUNTER_0_0, result.getBranchCounter());
+		assertEquals(CounterImpl.COUNTER_0_0, result.getLineCounter());
+	}
+
+	@Test
+	public void testNoProbes() {
+		createBranchingMethod();
+		probes = null;
+		runMethodAnalyzer();
+
+		assertEquals(CounterImpl.COUNTER_1_0, result.getMethodCounter());
+	}
+
+	@Test
+	public void testCovered() {
+		createBranchingMethod();
+		probes[0] = true;
+		runMethodAnalyzer();
+
+		assertEquals(CounterImpl.COUNTER_0_1, result.getMethodCounter());
+		assertEquals(CounterImpl.COUNTER_0_0, result.getComplexityCounter());
+		assertEquals(CounterImpl.COUNTER_0_0, result.getInstructionCounter());
+	}
+
+	@Test
+	public void testNoCode() {
+		runMethodAnalyzer();
+
+		assertEquals(0, nextProbeId);
+		assertEquals(CounterImpl.COUNTER_0_0, result.getMethodCounter());
+	}
+
+	private void runMethodAnalyzer() {
+		final MethodEntryAnalyzer analyzer = new MethodEntryAnalyzer("doit",
+				"()V", null, probes);
+		method.accept(new MethodEntryProbesAdapter(analyzer, this));
+		result = analyzer.getCoverage();
+	}
+
+}
@@ -213,4 +213,30 @@ public class SourceNodeImplTest {
 		assertEquals(CounterImpl.getInstance(0, 1), node.getLineCounter());
 	}
 
+	@Test
+	public void testIncrementExecutionCount() {
+		final SourceNodeImpl node = new SourceNodeImpl(ElementType.CLASS, "Foo");
+		node.increment(CounterImpl.getInstance(0, 1), CounterImpl.COUNTER_0_0,
+				5);
+		node.incrementExecutionCount(4, 5);
+		node.incrementExecutionCount(2, 5);
+		node.incrementExecutionCount(9, ISourceNode.UNKNOWN_LINE);
+		assertEquals(4, node.getLine(5).getExecutionCount());
+		assertEquals(0, node.getLine(6).getExecutionCount());
+	}
+
+	@Test
+	public void testIncrementChildWithExecutionCount() {
+		final SourceNodeImpl node = new SourceNodeImpl(ElementType.CLASS, "Foo");
+		final SourceNodeImpl child = new SourceNodeImpl(ElementType.CLASS,
+				"Foo");
+		child.increment(CounterImpl.getInstance(0, 1), CounterImpl.COUNTER_0_0,
+				5);
+		child.incrementExecutionCount(6, 5);
+
+		node.increment(child);
+
+		assertEquals(6, node.getLine(5).getExecutionCount());
+	}
+
 }
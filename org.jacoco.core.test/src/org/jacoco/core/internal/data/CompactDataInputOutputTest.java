@@ -115,4 +115,58 @@ public class CompactDataInputOutputTest {
 		}
 	}
 
+	@Test
+	public void testVarLong0x0000000000000000() throws IOException {
+		testVarLong(0x0000000000000000L);
+	}
+
+	@Test
+	public void testVarLong0x000000000000007F() throws IOException {
+		testVarLong(0x000000000000007FL);
+	}
+
+	@Test
+	public void testVarLong0x0000000000000080() throws IOException {
+		testVarLong(0x0000000000000080L);
+	}
+
+	@Test
+	public void testVarLong0x123456789ABCDEF0() throws IOException {
+		testVarLong(0x123456789ABCDEF0L);
+	}
+
+	@Test
+	public void testVarLongMinus1() throws IOException {
+		testVarLong(-1L);
+	}
+
+	@Test
+	public void testVarLongMinValue() throws IOException {
+		testVarLong(Long.MIN_VALUE);
+	}
+
+	@Test
+	public void testVarLongMaxValue() throws IOException {
+		testVarLong(Long.MAX_VALUE);
+	}
+
+	private void testVarLong(long value) throws IOException {
+		out.writeVarLong(value);
+		out.close();
+		assertEquals(Long.valueOf(value), Long.valueOf(in.readVarLong()));
+		assertEquals(Integer.valueOf(-1), Integer.valueOf(in.read()));
+	}
+
+	@Test
+	public void testLongArray() throws IOException {
+		final long[] values = new long[] { 0, 1, 300, Long.MAX_VALUE };
+		out.writeLongArray(values);
+		out.close();
+		final long[] actual = in.readLongArray();
+		assertEquals(values.length, actual.length);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals("Index " + i, values[i], actual[i]);
+		}
+		assertEquals(Integer.valueOf(-1), Integer.valueOf(in.read()));
+	}
 }
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.core.internal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jacoco.core.data.ExecutionData;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ExecutionDataTable}.
+ */
+public class ExecutionDataTableTest {
+
+	private ExecutionDataTable table;
+
+	@Before
+	public void setup() {
+		table = new ExecutionDataTable();
+	}
+
+	@Test
+	public void testEmpty() {
+		assertNull(table.get(123));
+		assertEquals(0, table.size());
+		assertFalse(table.values().iterator().hasNext());
+	}
+
+	@Test
+	public void testPutIfAbsent() {
+		final ExecutionData data = new ExecutionData(123, "Foo", 2);
+		assertNull(table.putIfAbsent(data));
+		assertSame(data, table.get(123));
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void testPutIfAbsentExisting() {
+		final ExecutionData data = new ExecutionData(123, "Foo", 2);
+		table.putIfAbsent(data);
+		assertSame(data, table.putIfAbsent(new ExecutionData(123, "Foo", 2)));
+		assertSame(data, table.get(123));
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void testCollidingIds() {
+		// Ids with identical hash codes:
+		final ExecutionData a = new ExecutionData(0x0000000100000001L, "A", 0);
+		final ExecutionData b = new ExecutionData(0L, "B", 0);
+		table.putIfAbsent(a);
+		table.putIfAbsent(b);
+		assertSame(a, table.get(0x0000000100000001L));
+		assertSame(b, table.get(0L));
+	}
+
+	@Test
+	public void testGrow() {
+		for (int i = 0; i < 10000; i++) {
+			assertNull(table.putIfAbsent(new ExecutionData(i * 31L, "C" + i,
+					1)));
+		}
+		assertEquals(10000, table.size());
+		for (int i = 0; i < 10000; i++) {
+			assertEquals("C" + i, table.get(i * 31L).getName());
+		}
+		assertNull(table.get(7));
+	}
+
+	@Test
+	public void testRemoveAll() {
+		for (int i = 0; i < 100; i++) {
+			table.putIfAbsent(new ExecutionData(i, "C" + i, 1));
+		}
+		final Set<Long> removed = new HashSet<Long>();
+		for (int i = 0; i < 100; i += 2) {
+			removed.add(Long.valueOf(i));
+		}
+		table.removeAll(removed);
+
+		assertEquals(50, table.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i % 2 == 0, table.get(i) == null);
+		}
+		assertEquals(50, table.values().size());
+		final ExecutionData data = new ExecutionData(4, "C4", 1);
+		assertNull(table.putIfAbsent(data));
+		assertSame(data, table.get(4));
+	}
+
+	@Test
+	public void testValues() {
+		final Set<String> expected = new HashSet<String>();
+		for (int i = 0; i < 100; i++) {
+			table.putIfAbsent(new ExecutionData(i, "C" + i, 1));
+			expected.add("C" + i);
+		}
+		final Set<String> actual = new HashSet<String>();
+		for (final ExecutionData data : table.values()) {
+			actual.add(data.getName());
+		}
+		assertEquals(expected, actual);
+		assertEquals(100, table.values().size());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testIteratorEnd() {
+		table.values().iterator().next();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testIteratorRemove() {
+		table.putIfAbsent(new ExecutionData(1, "A", 1));
+		final Iterator<ExecutionData> i = table.values().iterator();
+		i.next();
+		i.remove();
+	}
+
+	@Test
+	public void testConcurrentPutIfAbsent() throws Exception {
+		final int threads = 8;
+		final int count = 5000;
+		final CyclicBarrier barrier = new CyclicBarrier(threads);
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final Set<Future<ExecutionData[]>> results = new HashSet<Future<ExecutionData[]>>();
+		for (int t = 0; t < threads; t++) {
+			results.add(executor.submit(new Callable<ExecutionData[]>() {
+				public ExecutionData[] call() throws Exception {
+					final ExecutionData[] winners = new ExecutionData[count];
+					barrier.await();
+					for (int i = 0; i < count; i++) {
+						final ExecutionData data = new ExecutionData(i, "C"
+								+ i, 1);
+						final ExecutionData existing = table.putIfAbsent(data);
+						winners[i] = existing == null ? data : existing;
+					}
+					return winners;
+				}
+			}));
+		}
+		executor.shutdown();
+
+		// All threads must have seen the same instance for every id:
+		ExecutionData[] reference = null;
+		for (final Future<ExecutionData[]> f : results) {
+			final ExecutionData[] winners = f.get();
+			if (reference == null) {
+				reference = winners;
+			} else {
+				for (int i = 0; i < count; i++) {
+					assertSame(reference[i], winners[i]);
+				}
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			assertSame(reference[i], table.get(i));
+		}
+		assertEquals(count, table.size());
+		int iterated = 0;
+		for (final ExecutionData data : table.values()) {
+			assertTrue(data.getId() >= 0 && data.getId() < count);
+			iterated++;
+		}
+		assertEquals(count, iterated);
+	}
+
+}
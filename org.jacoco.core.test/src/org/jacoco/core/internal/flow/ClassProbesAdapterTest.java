@@ -149,6 +149,44 @@ public class ClassProbesAdapterTest {
 		assertEquals(3, mv.count);
 	}
 
+	@Test
+	public void testVisitMethodsWithMethodProbes() {
+		final MockVisitor mv = new MockVisitor();
+		final ClassProbesAdapter adapter = new ClassProbesAdapter(mv, true);
+		adapter.visit(Opcodes.V1_5, 0, "Foo", null, "java/lang/Object", null);
+		writeMethod(adapter);
+		writeBranchingMethod(adapter);
+		adapter.visitMethod(Opcodes.ACC_ABSTRACT, "bar", "V()", null, null)
+				.visitEnd();
+		adapter.visitEnd();
+		assertEquals(2, mv.count);
+	}
+
+	@Test
+	public void testVisitInterfaceMethodWithMethodProbes() {
+		final MockVisitor mv = new MockVisitor();
+		final ClassProbesAdapter adapter = new ClassProbesAdapter(mv, true);
+		adapter.visit(Opcodes.V1_5, Opcodes.ACC_INTERFACE, "Foo", null,
+				"java/lang/Object", null);
+		writeBranchingMethod(adapter);
+		assertEquals(1, mv.count);
+		adapter.visitEnd();
+		assertEquals(1, mv.count);
+	}
+
+	private void writeBranchingMethod(final ClassVisitor cv) {
+		MethodVisitor mv = cv.visitMethod(0, "foo", "V()", null, null);
+		mv.visitCode();
+		mv.visitInsn(Opcodes.ICONST_0);
+		final Label label = new Label();
+		mv.visitJumpInsn(Opcodes.IFEQ, label);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitLabel(label);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(1, 1);
+		mv.visitEnd();
+	}
+
 	private void writeMethod(final ClassVisitor cv) {
 		MethodVisitor mv = cv.visitMethod(0, "foo", "V()", null, null);
 		mv.visitCode();
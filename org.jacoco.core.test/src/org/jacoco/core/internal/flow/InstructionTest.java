@@ -82,4 +82,19 @@ public class InstructionTest {
 		assertEquals(1, first.getCoveredBranches());
 	}
 
+	@Test
+	public void testAddExecutionCount() {
+		final Instruction predecessor = new Instruction(122);
+		instruction.setPredecessor(predecessor);
+		assertEquals(0, instruction.getExecutionCount());
+
+		instruction.addExecutionCount(3);
+		assertEquals(3, instruction.getExecutionCount());
+		assertEquals(3, predecessor.getExecutionCount());
+
+		predecessor.addExecutionCount(2);
+		assertEquals(3, instruction.getExecutionCount());
+		assertEquals(5, predecessor.getExecutionCount());
+	}
+
 }
@@ -11,15 +11,20 @@
  *******************************************************************************/
 package org.jacoco.core.internal.instr;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 import org.jacoco.core.JaCoCo;
+import org.jacoco.core.runtime.IExecutionDataAccessorGenerator;
 import org.jacoco.core.runtime.IRuntime;
 import org.jacoco.core.runtime.LoggerRuntime;
 import org.junit.Before;
 import org.junit.Test;
 import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 
 /**
  * Unit tests for {@link ClassInstrumenter}.
@@ -65,4 +70,43 @@ public class ClassInstrumenterTest {
 		assertNull(instrumenter.visitMethod(0, "foo", "()V", null, null));
 	}
 
+	@Test
+	public void testInterfaceAccessorInStaticInitializerOnly() {
+		final int[] accessorCalls = new int[1];
+		final IExecutionDataAccessorGenerator generator = new IExecutionDataAccessorGenerator() {
+			public int generateDataAccessor(long classid, String classname,
+					int probecount, MethodVisitor mv) {
+				accessorCalls[0]++;
+				mv.visitInsn(Opcodes.ACONST_NULL);
+				return 1;
+			}
+		};
+		instrumenter = new ClassInstrumenter(123, generator, new ClassVisitor(
+				JaCoCo.ASM_API_VERSION) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name,
+					String desc, String signature, String[] exceptions) {
+				return new MethodVisitor(JaCoCo.ASM_API_VERSION) {
+				};
+			}
+
+			@Override
+			public FieldVisitor visitField(int access, String name,
+					String desc, String signature, Object value) {
+				fail("No cache field expected for interfaces.");
+				return null;
+			}
+		});
+		instrumenter.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE, "Foo", null,
+				"java/lang/Object", null);
+		instrumenter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT,
+				"run", "()V", null, null);
+		instrumenter.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null,
+				null).visitCode();
+		instrumenter.visitTotalProbeCount(1);
+		instrumenter.visitEnd();
+		assertEquals(1, accessorCalls[0]);
+	}
+
 }
@@ -18,6 +18,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
@@ -276,4 +277,82 @@ public class ProbeInserterTest {
 		pi.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
 	}
 
+	@Test
+	public void testConditionalProbe() {
+		ProbeInserter pi = new ProbeInserter(0, "()V", actualVisitor,
+				arrayStrategy);
+		pi.setConditional(new IFrameInserter() {
+			public void insertFrame() {
+				actualVisitor.visitLdcInsn("frame");
+			}
+		});
+		pi.insertProbe(0);
+
+		expectedVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+		expectedVisitor.visitInsn(Opcodes.ICONST_0);
+		expectedVisitor.visitInsn(Opcodes.BALOAD);
+		final Label done = new Label();
+		expectedVisitor.visitJumpInsn(Opcodes.IFNE, done);
+		expectedVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+		expectedVisitor.visitInsn(Opcodes.ICONST_0);
+		expectedVisitor.visitInsn(Opcodes.ICONST_1);
+		expectedVisitor.visitInsn(Opcodes.BASTORE);
+		expectedVisitor.visitLabel(done);
+		expectedVisitor.visitLdcInsn("frame");
+		expectedVisitor.visitInsn(Opcodes.NOP);
+	}
+
+	@Test
+	public void testConditionalProbeInCounterMode() {
+		ProbeInserter pi = new ProbeInserter(0, "()V", actualVisitor,
+				arrayStrategy, true);
+		pi.setConditional(IFrameInserter.NOP);
+		pi.insertProbe(0);
+
+		expectedVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+		expectedVisitor.visitInsn(Opcodes.ICONST_0);
+		expectedVisitor.visitInsn(Opcodes.DUP2);
+		expectedVisitor.visitInsn(Opcodes.LALOAD);
+		expectedVisitor.visitInsn(Opcodes.LCONST_1);
+		expectedVisitor.visitInsn(Opcodes.LADD);
+		expectedVisitor.visitInsn(Opcodes.LASTORE);
+	}
+
+	@Test
+	public void testCounterProbe() {
+		ProbeInserter pi = new ProbeInserter(0, "()V", actualVisitor,
+				arrayStrategy, true);
+		pi.insertProbe(3);
+
+		expectedVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+		expectedVisitor.visitInsn(Opcodes.ICONST_3);
+		expectedVisitor.visitInsn(Opcodes.DUP2);
+		expectedVisitor.visitInsn(Opcodes.LALOAD);
+		expectedVisitor.visitInsn(Opcodes.LCONST_1);
+		expectedVisitor.visitInsn(Opcodes.LADD);
+		expectedVisitor.visitInsn(Opcodes.LASTORE);
+	}
+
+	@Test
+	public void testCounterVisitMaxs() {
+		ProbeInserter pi = new ProbeInserter(0, "(II)V", actualVisitor,
+				arrayStrategy, true);
+		pi.visitCode();
+		pi.visitMaxs(10, 8);
+
+		expectedVisitor.visitLdcInsn("init");
+		expectedVisitor.visitMaxs(16, 9);
+	}
+
+	@Test
+	public void testCounterVisitFrame() {
+		ProbeInserter pi = new ProbeInserter(0, "(J)V", actualVisitor,
+				arrayStrategy, true);
+
+		pi.visitFrame(Opcodes.F_NEW, 3, new Object[] { "Foo", Opcodes.LONG,
+				"java/lang/String" }, 0, new Object[0]);
+
+		expectedVisitor.visitFrame(Opcodes.F_NEW, 4, new Object[] { "Foo",
+				Opcodes.LONG, "[J", "java/lang/String" }, 0, new Object[0]);
+	}
 }
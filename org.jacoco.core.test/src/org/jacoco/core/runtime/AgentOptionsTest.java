@@ -50,6 +50,18 @@ public class AgentOptionsTest {
 		assertEquals(6300, options.getPort());
 		assertNull(options.getClassDumpDir());
 		assertFalse(options.getJmx());
+		assertFalse(options.getCounters());
+		assertFalse(options.getConditionalProbes());
+		assertFalse(options.getMethodProbes());
+		assertFalse(options.getContexts());
+		assertEquals(0, options.getDeinstrumentInterval());
+		assertEquals(0, options.getDumpInterval());
+		assertEquals(1, options.getDumpKeep());
+		assertNull(options.getMirrorFile());
+		assertEquals(1000, options.getMirrorInterval());
+		assertNull(options.getSpillFile());
+		assertNull(options.getCacheDir());
+		assertEquals(0, options.getPreinstrument());
 
 		assertEquals("", options.toString());
 	}
@@ -217,6 +229,12 @@ public class AgentOptionsTest {
 		assertEquals(AgentOptions.OutputMode.tcpserver, options.getOutput());
 	}
 
+	@Test
+	public void testGetOutputHttp() {
+		AgentOptions options = new AgentOptions("output=http");
+		assertEquals(AgentOptions.OutputMode.http, options.getOutput());
+	}
+
 	@Test
 	public void testSetOutput1() {
 		AgentOptions options = new AgentOptions();
@@ -335,6 +353,167 @@ public class AgentOptionsTest {
 		assertTrue(options.getJmx());
 	}
 
+	@Test
+	public void testGetCounters() {
+		AgentOptions options = new AgentOptions("counters=true");
+		assertTrue(options.getCounters());
+	}
+
+	@Test
+	public void testSetCounters() {
+		AgentOptions options = new AgentOptions();
+		options.setCounters(true);
+		assertTrue(options.getCounters());
+	}
+
+	@Test
+	public void testGetConditionalProbes() {
+		AgentOptions options = new AgentOptions("conditionalprobes=true");
+		assertTrue(options.getConditionalProbes());
+	}
+
+	@Test
+	public void testSetConditionalProbes() {
+		AgentOptions options = new AgentOptions();
+		options.setConditionalProbes(true);
+		assertTrue(options.getConditionalProbes());
+	}
+
+	@Test
+	public void testGetMethodProbes() {
+		AgentOptions options = new AgentOptions("methodprobes=true");
+		assertTrue(options.getMethodProbes());
+	}
+
+	@Test
+	public void testSetMethodProbes() {
+		AgentOptions options = new AgentOptions();
+		options.setMethodProbes(true);
+		assertTrue(options.getMethodProbes());
+		assertEquals("methodprobes=true", options.toString());
+	}
+
+	@Test
+	public void testGetContexts() {
+		AgentOptions options = new AgentOptions("contexts=true");
+		assertTrue(options.getContexts());
+	}
+
+	@Test
+	public void testSetContexts() {
+		AgentOptions options = new AgentOptions();
+		options.setContexts(true);
+		assertTrue(options.getContexts());
+		assertEquals("contexts=true", options.toString());
+	}
+
+	@Test
+	public void testGetDeinstrumentInterval() {
+		AgentOptions options = new AgentOptions("deinstrumentinterval=30");
+		assertEquals(30, options.getDeinstrumentInterval());
+	}
+
+	@Test
+	public void testSetDeinstrumentInterval() {
+		AgentOptions options = new AgentOptions();
+		options.setDeinstrumentInterval(5);
+		assertEquals(5, options.getDeinstrumentInterval());
+	}
+
+	@Test
+	public void testGetDumpInterval() {
+		AgentOptions options = new AgentOptions("dumpinterval=60");
+		assertEquals(60, options.getDumpInterval());
+	}
+
+	@Test
+	public void testSetDumpInterval() {
+		AgentOptions options = new AgentOptions();
+		options.setDumpInterval(10);
+		assertEquals(10, options.getDumpInterval());
+	}
+
+	@Test
+	public void testGetDumpKeep() {
+		AgentOptions options = new AgentOptions("dumpkeep=5");
+		assertEquals(5, options.getDumpKeep());
+	}
+
+	@Test
+	public void testSetDumpKeep() {
+		AgentOptions options = new AgentOptions();
+		options.setDumpKeep(3);
+		assertEquals(3, options.getDumpKeep());
+	}
+
+	@Test
+	public void testGetMirrorFile() {
+		AgentOptions options = new AgentOptions("mirrorfile=/tmp/mirror.exec");
+		assertEquals("/tmp/mirror.exec", options.getMirrorFile());
+	}
+
+	@Test
+	public void testSetMirrorFile() {
+		AgentOptions options = new AgentOptions();
+		options.setMirrorFile("/tmp/mirror.exec");
+		assertEquals("/tmp/mirror.exec", options.getMirrorFile());
+		assertEquals("mirrorfile=/tmp/mirror.exec", options.toString());
+	}
+
+	@Test
+	public void testGetMirrorInterval() {
+		AgentOptions options = new AgentOptions("mirrorinterval=200");
+		assertEquals(200, options.getMirrorInterval());
+	}
+
+	@Test
+	public void testSetMirrorInterval() {
+		AgentOptions options = new AgentOptions();
+		options.setMirrorInterval(50);
+		assertEquals(50, options.getMirrorInterval());
+		assertEquals("mirrorinterval=50", options.toString());
+	}
+
+	@Test
+	public void testGetSpillFile() {
+		AgentOptions options = new AgentOptions("spillfile=/tmp/spill.exec");
+		assertEquals("/tmp/spill.exec", options.getSpillFile());
+	}
+
+	@Test
+	public void testSetSpillFile() {
+		AgentOptions options = new AgentOptions();
+		options.setSpillFile("/tmp/spill.exec");
+		assertEquals("/tmp/spill.exec", options.getSpillFile());
+		assertEquals("spillfile=/tmp/spill.exec", options.toString());
+	}
+
+	@Test
+	public void testGetCacheDir() {
+		AgentOptions options = new AgentOptions("cachedir=/tmp/cache");
+		assertEquals("/tmp/cache", options.getCacheDir());
+	}
+
+	@Test
+	public void testSetCacheDir() {
+		AgentOptions options = new AgentOptions();
+		options.setCacheDir("/tmp/cache");
+		assertEquals("/tmp/cache", options.getCacheDir());
+	}
+
+	@Test
+	public void testGetPreinstrument() {
+		AgentOptions options = new AgentOptions("preinstrument=2");
+		assertEquals(2, options.getPreinstrument());
+	}
+
+	@Test
+	public void testSetPreinstrument() {
+		AgentOptions options = new AgentOptions();
+		options.setPreinstrument(4);
+		assertEquals(4, options.getPreinstrument());
+	}
+
 	@Test
 	public void testGetVMArgumentWithNoOptions() {
 		AgentOptions options = new AgentOptions();
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link ExecutionDataSpill}.
+ */
+public class ExecutionDataSpillTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	private ExecutionDataSpill spill;
+
+	@Before
+	public void setup() throws IOException {
+		file = new File(folder.getRoot(), "sub/spill.exec");
+		spill = new ExecutionDataSpill(file);
+	}
+
+	@Test
+	public void testWrite() throws IOException {
+		spill.write(new ExecutionData(1, "Foo", new boolean[] { true }));
+		spill.write(new ExecutionData(2, "Bar", new boolean[] { false }));
+
+		assertEquals(2, spill.getRecords());
+		assertEquals("[Foo, Bar]", read(spill.segment(false, false)));
+		assertEquals("[Foo, Bar]", read(spill.segment(false, false)));
+	}
+
+	@Test
+	public void testSegmentIgnoresLaterRecords() throws IOException {
+		spill.write(new ExecutionData(1, "Foo", 1));
+		final ExecutionDataSpill.Segment segment = spill.segment(false, false);
+		spill.write(new ExecutionData(2, "Bar", 1));
+
+		assertEquals(1, segment.size());
+		assertEquals("[Foo]", read(segment));
+	}
+
+	@Test
+	public void testDeltaSegment() throws IOException {
+		spill.write(new ExecutionData(1, "Foo", 1));
+		assertEquals("[Foo]", read(spill.segment(false, true)));
+		spill.write(new ExecutionData(2, "Bar", 1));
+
+		assertEquals("[Bar]", read(spill.segment(false, true)));
+		assertEquals("[]", read(spill.segment(false, true)));
+		assertEquals("[Foo, Bar]", read(spill.segment(false, false)));
+	}
+
+	@Test
+	public void testResetSegment() throws IOException {
+		spill.write(new ExecutionData(1, "Foo", 1));
+		final ExecutionDataSpill.Segment segment = spill.segment(true, false);
+		spill.write(new ExecutionData(2, "Bar", 1));
+
+		assertEquals("[Foo]", read(segment));
+		assertEquals("[Bar]", read(spill.segment(false, false)));
+		assertEquals(1, folder.getRoot().listFiles()[0].list().length);
+	}
+
+	@Test
+	public void testSegmentIgnoresReset() throws IOException {
+		spill.write(new ExecutionData(1, "Foo", 1));
+		final ExecutionDataSpill.Segment segment = spill.segment(false, false);
+		spill.reset();
+		spill.write(new ExecutionData(2, "Bar", 1));
+		spill.flush();
+
+		assertEquals("[Foo]", read(segment));
+	}
+
+	@Test
+	public void testFlush() throws IOException {
+		final long empty = file.length();
+		spill.write(new ExecutionData(1, "Foo", 1));
+		assertEquals(empty, file.length());
+
+		spill.flush();
+		assertTrue(file.length() > empty);
+	}
+
+	@Test
+	public void testReset() throws IOException {
+		spill.write(new ExecutionData(1, "Foo", 1));
+		spill.reset();
+
+		assertEquals(0, spill.getRecords());
+		assertEquals("[]", read(spill.segment(false, false)));
+	}
+
+	@Test
+	public void testClose() throws IOException {
+		spill.write(new ExecutionData(1, "Foo", 1));
+		spill.close();
+		assertTrue(file.exists());
+	}
+
+	@Test
+	public void testCloseEmpty() throws IOException {
+		spill.close();
+		assertFalse(file.exists());
+	}
+
+	private String read(final ExecutionDataSpill.Segment segment)
+			throws IOException {
+		final List<String> names = new ArrayList<String>();
+		segment.accept(new IExecutionDataVisitor() {
+			public void visitClassExecution(final ExecutionData data) {
+				names.add(data.getName());
+			}
+		});
+		return names.toString();
+	}
+
+}
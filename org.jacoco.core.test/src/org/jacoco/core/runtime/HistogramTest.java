@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Histogram}.
+ */
+public class HistogramTest {
+
+	private Histogram histogram;
+
+	@Before
+	public void setup() {
+		histogram = new Histogram();
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getTotal());
+		assertEquals(0, histogram.getMax());
+		assertArrayEquals(new long[0], histogram.getBuckets());
+	}
+
+	@Test
+	public void testRecord() {
+		histogram.record(0);
+		histogram.record(1);
+		histogram.record(2);
+		histogram.record(3);
+		histogram.record(8);
+
+		assertEquals(5, histogram.getCount());
+		assertEquals(14, histogram.getTotal());
+		assertEquals(8, histogram.getMax());
+		assertArrayEquals(new long[] { 1, 1, 2, 0, 1 },
+				histogram.getBuckets());
+	}
+
+	@Test
+	public void testRecordNegative() {
+		histogram.record(-5);
+
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getTotal());
+		assertArrayEquals(new long[] { 1 }, histogram.getBuckets());
+	}
+
+	@Test
+	public void testRecordMaxValue() {
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(Long.MAX_VALUE, histogram.getMax());
+		assertEquals(64, histogram.getBuckets().length);
+		assertEquals(1, histogram.getBuckets()[63]);
+	}
+
+	@Test
+	public void testConcurrentRecord() throws InterruptedException {
+		final Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final long value = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						histogram.record(value);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (final Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(40000, histogram.getCount());
+		assertEquals(60000, histogram.getTotal());
+		assertEquals(3, histogram.getMax());
+		assertArrayEquals(new long[] { 10000, 10000, 20000 },
+				histogram.getBuckets());
+	}
+
+}
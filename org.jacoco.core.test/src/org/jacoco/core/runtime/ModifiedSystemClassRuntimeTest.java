@@ -13,19 +13,26 @@ package org.jacoco.core.runtime;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import java.lang.instrument.ClassDefinition;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.jar.JarFile;
 
 import org.jacoco.core.test.TargetLoader;
 import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 
 /**
  * Unit tests for {@link ModifiedSystemClassRuntime}.
@@ -44,9 +51,160 @@ public class ModifiedSystemClassRuntimeTest extends RuntimeTestBase {
 		ModifiedSystemClassRuntime.createFor(inst, TARGET_CLASS_NAME);
 	}
 
+	@Test
+	public void testForClassVersionWithoutBootstrap() {
+		final ModifiedSystemClassRuntime runtime = new ModifiedSystemClassRuntime(
+				ModifiedSystemClassRuntimeTest.class, "accessField");
+		assertSame(runtime, runtime.forClassVersion(Opcodes.V1_5));
+		assertSame(runtime, runtime.forClassVersion(Opcodes.V1_7));
+	}
+
+	@Test
+	public void testForClassVersionWithBootstrap() {
+		final ModifiedSystemClassRuntime runtime = new ModifiedSystemClassRuntime(
+				ModifiedSystemClassRuntimeTest.class, "accessField",
+				"accessFieldBootstrap");
+		assertSame(runtime, runtime.forClassVersion(Opcodes.V1_6));
+		assertTrue(runtime.forClassVersion(Opcodes.V1_7) instanceof InvokeDynamicAccessorGenerator);
+	}
+
+	@Test
+	public void testNoBootstrapForOldClassVersion() throws Exception {
+		final byte[] source = createSystemClass(Opcodes.V1_6);
+		final Class<?> systemClass = new ClassesLoader().define(
+				SYSTEM_CLASS_NAME,
+				ModifiedSystemClassRuntime.instrument(source, "$jacocoAccess"));
+		assertNotNull(systemClass.getField("$jacocoAccess"));
+		for (final Method m : systemClass.getMethods()) {
+			assertFalse(m.getName().equals("$jacocoAccessBootstrap"));
+		}
+	}
+
+	@Test
+	public void testInvokeDynamicAccessor() throws Exception {
+		assumeTrue(isInvokeDynamicSupported());
+
+		final ClassesLoader loader = new ClassesLoader();
+		final byte[] source = createSystemClass(Opcodes.V1_7);
+		final Class<?> systemClass = loader.define(SYSTEM_CLASS_NAME,
+				ModifiedSystemClassRuntime.instrument(source, "$jacocoAccess"));
+		final Method bootstrap = systemClass.getMethod(
+				"$jacocoAccessBootstrap", Class.forName(
+						"java.lang.invoke.MethodHandles$Lookup"), String.class,
+				Class.forName("java.lang.invoke.MethodType"), Long.class,
+				String.class, Integer.class);
+		assertTrue(Modifier.isStatic(bootstrap.getModifiers()));
+
+		final ModifiedSystemClassRuntime runtime = new ModifiedSystemClassRuntime(
+				systemClass, "$jacocoAccess", "$jacocoAccessBootstrap");
+		final RuntimeData data = new RuntimeData();
+		runtime.startup(data);
+
+		final String targetName = "org/jacoco/test/targets/IndyTarget";
+		final ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, targetName, null,
+				"java/lang/Object", null);
+		final MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "get", "()[Z", null, null);
+		mv.visitCode();
+		final int size = runtime.forClassVersion(Opcodes.V1_7)
+				.generateDataAccessor(42, targetName, 3, mv);
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(size, 0);
+		mv.visitEnd();
+		writer.visitEnd();
+		final Method get = loader.define(targetName, writer.toByteArray())
+				.getMethod("get");
+
+		final boolean[] probes = (boolean[]) get.invoke(null);
+		assertEquals(3, probes.length);
+		assertSame(probes, get.invoke(null));
+		assertSame(data.getExecutionData(42, targetName, 3).getProbes(),
+				probes);
+	}
+
+	private static boolean isInvokeDynamicSupported() {
+		try {
+			Class.forName("java.lang.invoke.ConstantCallSite");
+			return true;
+		} catch (final ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	private static final String SYSTEM_CLASS_NAME = "org/jacoco/test/targets/IndySystemClass";
+
+	private static byte[] createSystemClass(final int version) {
+		final ClassWriter writer = new ClassWriter(0);
+		writer.visit(version, Opcodes.ACC_PUBLIC, SYSTEM_CLASS_NAME, null,
+				"java/lang/Object", null);
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Loader for generated classes which need to see each other.
+	 */
+	private static class ClassesLoader extends ClassLoader {
+
+		ClassesLoader() {
+			super(ModifiedSystemClassRuntimeTest.class.getClassLoader());
+		}
+
+		Class<?> define(final String name, final byte[] bytes) {
+			return defineClass(name.replace('/', '.'), bytes, 0, bytes.length);
+		}
+	}
+
 	/** This static member emulate the instrumented system class. */
 	public static Object accessField;
 
+	/** This static member emulate the instrumented system class. */
+	public static ThreadLocal<?> accessFieldContext;
+
+	/** This static member emulate the instrumented system class. */
+	public static boolean accessFieldContextActive;
+
+	@Test
+	public void testStartupSetsContextField() throws Exception {
+		final RuntimeData data = new RuntimeData();
+		createRuntime().startup(data);
+
+		assertSame(data.getContextAccess(), accessFieldContext);
+	}
+
+	@Test
+	public void testStartupSetsContextActiveField() throws Exception {
+		final RuntimeData data = new RuntimeData();
+		createRuntime().startup(data);
+
+		assertFalse(accessFieldContextActive);
+		data.bindContext("search");
+		assertTrue(accessFieldContextActive);
+		data.unbindContext();
+		assertFalse(accessFieldContextActive);
+	}
+
+	@Test
+	public void testStartupWithoutContextField() throws Exception {
+		final ClassesLoader loader = new ClassesLoader();
+		final Class<?> systemClass = loader.define(SYSTEM_CLASS_NAME,
+				createSystemClassWithAccessField());
+
+		new ModifiedSystemClassRuntime(systemClass, "accessField")
+				.startup(new RuntimeData());
+	}
+
+	private static byte[] createSystemClassWithAccessField() {
+		final ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, SYSTEM_CLASS_NAME, null,
+				"java/lang/Object", null);
+		writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+				"accessField", "Ljava/lang/Object;", null, null);
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
 	private static final String TARGET_CLASS_NAME = "org/jacoco/core/runtime/ModifiedSystemClassRuntimeTest";
 
 	private static class InstrumentationMock implements Instrumentation {
@@ -166,5 +324,11 @@ public class ModifiedSystemClassRuntimeTest extends RuntimeTestBase {
 		assertTrue(Modifier.isStatic(f.getModifiers()));
 		assertTrue(Modifier.isTransient(f.getModifiers()));
 		assertEquals(Object.class, f.getType());
+
+		final Field c = targetClass.getField("$jacocoAccessContext");
+		assertTrue(Modifier.isPublic(c.getModifiers()));
+		assertTrue(Modifier.isStatic(c.getModifiers()));
+		assertTrue(Modifier.isTransient(c.getModifiers()));
+		assertEquals(ThreadLocal.class, c.getType());
 	}
 }
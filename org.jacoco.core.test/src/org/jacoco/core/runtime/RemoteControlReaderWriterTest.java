@@ -16,12 +16,19 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
 
+import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.data.ExecutionDataReader;
 import org.jacoco.core.data.ExecutionDataReaderWriterTest;
+import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.data.SessionInfoStore;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -74,16 +81,111 @@ public class RemoteControlReaderWriterTest extends
 		writer.visitDumpCommand(doDump, doReset);
 		final RemoteControlReader reader = createReader();
 		final StringBuilder calls = new StringBuilder();
-		reader.setRemoteCommandVisitor(new IRemoteCommandVisitor() {
-
-			public void visitDumpCommand(boolean dump, boolean reset) {
-				calls.append("cmd(" + dump + "," + reset + ")");
-			}
-		});
+		recordCommands(reader, calls);
 		assertFalse(reader.read());
 		assertEquals("cmd(" + doDump + "," + doReset + ")", calls.toString());
 	}
 
+	@Test
+	public void testVisitDeltaDump() throws IOException {
+		writer.visitDeltaDumpCommand(true);
+		writer.visitDeltaDumpCommand(false);
+		final RemoteControlReader reader = createReader();
+		final StringBuilder calls = new StringBuilder();
+		recordCommands(reader, calls);
+		assertFalse(reader.read());
+		assertEquals("delta(true)delta(false)", calls.toString());
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoRemoteCommandVisitorDelta() throws IOException {
+		writer.visitDeltaDumpCommand(false);
+		final RemoteControlReader reader = createReader();
+		reader.read();
+	}
+
+	@Test
+	public void testVisitCompressedDump() throws IOException {
+		writer.visitCompressedDumpCommand(true);
+		writer.visitCompressedDumpCommand(false);
+		final RemoteControlReader reader = createReader();
+		final StringBuilder calls = new StringBuilder();
+		recordCommands(reader, calls);
+		assertFalse(reader.read());
+		assertEquals("compressed(true)compressed(false)", calls.toString());
+	}
+
+	@Test
+	public void testVisitCompressedDumpCompatibility() throws IOException {
+		writer.visitCompressedDumpCommand(true);
+
+		// Runtimes without compression support read a plain dump command:
+		final DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(buffer.toByteArray()));
+		// Skip the headers written by the writers created in setup:
+		in.skipBytes(2 * ExecutionDataWriter.getFileHeader().length);
+		assertEquals(RemoteControlWriter.BLOCK_CMDDUMP, in.readByte());
+		assertTrue(in.readBoolean());
+		assertTrue(in.readBoolean());
+	}
+
+	@Test
+	public void testVisitCompressedDumpPlainVisitor() throws IOException {
+		writer.visitCompressedDumpCommand(false);
+		final RemoteControlReader reader = createReader();
+		final StringBuilder calls = new StringBuilder();
+		recordPlainCommands(reader, calls);
+		assertFalse(reader.read());
+		assertEquals("cmd(true,false)", calls.toString());
+	}
+
+	@Test(expected = IOException.class)
+	public void testVisitDeltaDumpPlainVisitor() throws IOException {
+		writer.visitDeltaDumpCommand(false);
+		final RemoteControlReader reader = createReader();
+		recordPlainCommands(reader, new StringBuilder());
+		reader.read();
+	}
+
+	@Test
+	public void testSendCompressed() throws IOException {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		final DeflaterOutputStream deflater = new DeflaterOutputStream(
+				compressed);
+		final ExecutionDataWriter content = new ExecutionDataWriter(deflater);
+		content.visitSessionInfo(new SessionInfo("session", 1, 2));
+		content.visitClassExecution(new ExecutionData(123, "Foo",
+				new boolean[] { true, false }));
+		deflater.finish();
+		final byte[] bytes = compressed.toByteArray();
+		writer.sendCompressed(bytes, 0, bytes.length);
+		writer.sendCmdOk();
+
+		final RemoteControlReader reader = createReader();
+		final SessionInfoStore sessionInfos = new SessionInfoStore();
+		reader.setSessionInfoVisitor(sessionInfos);
+		final ExecutionDataStore store = new ExecutionDataStore();
+		reader.setExecutionDataVisitor(store);
+		assertTrue(reader.read());
+		assertEquals("session", sessionInfos.getInfos().get(0).getId());
+		assertEquals("Foo", store.get(123).getName());
+		assertTrue(store.get(123).getProbes()[0]);
+		assertFalse(store.get(123).getProbes()[1]);
+	}
+
+	@Test(expected = IOException.class)
+	public void testSendCompressedNoVisitor() throws IOException {
+		final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		final DeflaterOutputStream deflater = new DeflaterOutputStream(
+				compressed);
+		new ExecutionDataWriter(deflater).visitClassExecution(new ExecutionData(
+				123, "Foo", new boolean[] { true }));
+		deflater.finish();
+		final byte[] bytes = compressed.toByteArray();
+		writer.sendCompressed(bytes, 0, bytes.length);
+		createReader().read();
+	}
+
 	@Test
 	public void testSendCmdOk() throws IOException {
 		writer.sendCmdOk();
@@ -91,6 +193,34 @@ public class RemoteControlReaderWriterTest extends
 		assertTrue(reader.read());
 	}
 
+	private void recordCommands(final RemoteControlReader reader,
+			final StringBuilder calls) {
+		reader.setRemoteCommandVisitor(new IExtendedRemoteCommandVisitor() {
+
+			public void visitDumpCommand(boolean dump, boolean reset) {
+				calls.append("cmd(" + dump + "," + reset + ")");
+			}
+
+			public void visitDeltaDumpCommand(boolean reset) {
+				calls.append("delta(" + reset + ")");
+			}
+
+			public void visitCompressedDumpCommand(boolean reset) {
+				calls.append("compressed(" + reset + ")");
+			}
+		});
+	}
+
+	private void recordPlainCommands(final RemoteControlReader reader,
+			final StringBuilder calls) {
+		reader.setRemoteCommandVisitor(new IRemoteCommandVisitor() {
+
+			public void visitDumpCommand(boolean dump, boolean reset) {
+				calls.append("cmd(" + dump + "," + reset + ")");
+			}
+		});
+	}
+
 	@Override
 	protected RemoteControlReader createReader() throws IOException {
 		return new RemoteControlReader(new ByteArrayInputStream(
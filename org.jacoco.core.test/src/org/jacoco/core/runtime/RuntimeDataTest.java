@@ -14,14 +14,29 @@ package org.jacoco.core.runtime;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
 import org.jacoco.core.test.TargetLoader;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -33,6 +48,9 @@ import org.objectweb.asm.Type;
  */
 public class RuntimeDataTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private RuntimeData data;
 	private TestStorage storage;
 
@@ -63,7 +81,8 @@ public class RuntimeDataTest {
 		assertFalse(data[0]);
 		assertFalse(data[1]);
 		assertFalse(data[2]);
-		assertSame(storage.getData(123).getProbes(), data);
+		assertSame(this.data.getExecutionData(123, "Foo", 3).getProbes(), data);
+		assertNotSame(storage.getData(123).getProbes(), data);
 		assertEquals("Foo", storage.getData(123).getName());
 	}
 
@@ -99,6 +118,828 @@ public class RuntimeDataTest {
 		assertEquals("testsession", storage.getSessionInfo().getId());
 	}
 
+	@Test
+	public void testGetExecutionCounters() {
+		final long[][] counters = data.getExecutionCounters(123, "Foo", 3);
+		assertEquals(8, counters.length);
+		assertEquals(3, counters[0].length);
+		assertSame(counters, data.getExecutionCounters(123, "Foo", 3));
+	}
+
+	@Test
+	public void testGetExecutionCountersViaEquals() {
+		Object[] args = new Object[] { Long.valueOf(123), "Foo",
+				Integer.valueOf(3), RuntimeData.COUNTERS_REQUEST };
+		data.equals(args);
+
+		assertSame(data.getExecutionCounters(123, "Foo", 3), args[0]);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetExecutionCountersIncompatible() {
+		data.getExecutionCounters(123, "Foo", 3);
+		data.getExecutionCounters(123, "Bar", 3);
+	}
+
+	@Test
+	public void testGetExecutionCountersConcurrently() throws Exception {
+		final long[][][] results = new long[4][][];
+		final Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					results[index] = data.getExecutionCounters(123, "Foo", 3);
+				}
+			};
+		}
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		for (final long[][] result : results) {
+			assertSame(results[0], result);
+		}
+		results[0][2][1] = 1;
+		data.collect(storage, storage, false);
+		assertEquals(1, storage.getData(123).getCounts()[1]);
+	}
+
+	@Test
+	public void testGetProbesViaEqualsWithoutMarker() {
+		Object[] args = new Object[] { Long.valueOf(123), "Foo",
+				Integer.valueOf(3), null };
+		data.equals(args);
+
+		assertSame(data.getExecutionData(123, "Foo", 3).getProbes(), args[0]);
+	}
+
+	@Test
+	public void testCollectCounters() {
+		final long[][] counters = data.getExecutionCounters(123, "Foo", 3);
+		counters[0][0] = 2;
+		counters[5][0] = 3;
+		counters[7][2] = 1;
+
+		data.collect(storage, storage, false);
+
+		final ExecutionData ed = storage.getData(123);
+		assertEquals(5, ed.getCounts()[0]);
+		assertEquals(0, ed.getCounts()[1]);
+		assertEquals(1, ed.getCounts()[2]);
+		assertTrue(ed.getProbes()[0]);
+		assertFalse(ed.getProbes()[1]);
+		assertTrue(ed.getProbes()[2]);
+		assertEquals(2, counters[0][0]);
+	}
+
+	@Test
+	public void testCollectCountersWithReset() {
+		final long[][] counters = data.getExecutionCounters(123, "Foo", 1);
+		counters[3][0] = 4;
+
+		data.collect(storage, storage, true);
+
+		assertEquals(4, storage.getData(123).getCounts()[0]);
+		assertTrue(storage.getData(123).getProbes()[0]);
+
+		// Stripes are not cleared, only increments are reported:
+		assertEquals(4, counters[3][0]);
+		counters[5][0] = 1;
+		storage = new TestStorage();
+		data.collect(storage, storage, true);
+		assertEquals(1, storage.getData(123).getCounts()[0]);
+
+		storage = new TestStorage();
+		data.collect(storage, storage, false);
+		assertEquals(0, storage.getData(123).getCounts()[0]);
+		assertFalse(storage.getData(123).getProbes()[0]);
+	}
+
+	@Test
+	public void testResetCounters() {
+		final long[][] counters = data.getExecutionCounters(123, "Foo", 1);
+		counters[3][0] = 4;
+		data.reset();
+		counters[0][0] = 2;
+
+		data.collect(storage, storage, false);
+
+		assertEquals(2, storage.getData(123).getCounts()[0]);
+	}
+
+	@Test
+	public void testCollectWithResetKeepsConcurrentHits() throws Exception {
+		final int count = 1000;
+		final boolean[] probes = data.getExecutionData(123, "Foo", count)
+				.getProbes();
+		final Thread writer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < count; i++) {
+					probes[i] = true;
+					Thread.yield();
+				}
+			}
+		};
+		final boolean[] reported = new boolean[count];
+		final IExecutionDataVisitor visitor = new IExecutionDataVisitor() {
+			public void visitClassExecution(ExecutionData ed) {
+				final boolean[] p = ed.getProbes();
+				for (int i = 0; i < count; i++) {
+					reported[i] |= p[i];
+				}
+			}
+		};
+		writer.start();
+		while (writer.isAlive()) {
+			data.collect(visitor, storage, true);
+		}
+		data.collect(visitor, storage, true);
+
+		// Every probe is set exactly once, so no hit must be lost:
+		for (int i = 0; i < count; i++) {
+			assertTrue(reported[i]);
+		}
+	}
+
+	@Test
+	public void testCollectSnapshot() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+		probes[0] = true;
+
+		data.collect(storage, storage, true);
+
+		assertFalse(probes[0]);
+		assertTrue(storage.getData(123).getProbes()[0]);
+	}
+
+	@Test
+	public void testAcceptLive() {
+		data.setSessionId("testsession");
+		final boolean[] probes = data.getExecutionData(123, "Foo", 2)
+				.getProbes();
+		probes[1] = true;
+
+		data.acceptLive(storage, storage);
+
+		assertEquals("testsession", storage.getSessionInfo().getId());
+		storage.assertSize(1);
+		assertSame(probes, storage.getData(123).getProbes());
+		assertTrue(probes[1]);
+	}
+
+	@Test
+	public void testAcceptLiveWithoutSpilled() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		data.getExecutionData(1, "Foo", 1).getProbes()[0] = true;
+		data.spill(new long[] { 1 });
+		data.getExecutionData(2, "Bar", 1);
+
+		data.acceptLive(storage, storage, false);
+
+		storage.assertSize(1);
+		assertEquals(0, data.getCollectTimes().getCount());
+	}
+
+	@Test
+	public void testCollectHits() {
+		final boolean[] probes1 = data.getExecutionData(123, "Foo", 3)
+				.getProbes();
+		data.getExecutionData(456, "Bar", 2);
+		probes1[1] = true;
+
+		data.collectHits(storage);
+
+		storage.assertSize(1);
+		storage.assertData(123, new boolean[] { false, true, false });
+		assertNotSame(probes1, storage.getData(123).getProbes());
+		assertFalse(probes1[1]);
+	}
+
+	@Test
+	public void testCollectHitsConsecutive() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 3)
+				.getProbes();
+		probes[0] = true;
+		data.collectHits(new TestStorage());
+		probes[2] = true;
+
+		data.collectHits(storage);
+
+		storage.assertData(123, new boolean[] { false, false, true });
+	}
+
+	@Test
+	public void testCollectAfterCollectHits() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 3)
+				.getProbes();
+		probes[0] = true;
+		data.collectHits(new TestStorage());
+		probes[2] = true;
+
+		data.collect(storage, storage, false);
+		storage.assertData(123, new boolean[] { true, false, true });
+
+		final TestStorage delta = new TestStorage();
+		data.collect(delta, delta, false, true);
+		delta.assertData(123, new boolean[] { true, false, true });
+
+		data.collect(storage, storage, true);
+		storage.assertData(123, new boolean[] { true, false, true });
+
+		final TestStorage afterReset = new TestStorage();
+		data.collect(afterReset, afterReset, false);
+		afterReset.assertData(123, new boolean[] { false, false, false });
+	}
+
+	@Test
+	public void testResetAfterCollectHits() {
+		data.getExecutionData(123, "Foo", 1).getProbes()[0] = true;
+		data.collectHits(new TestStorage());
+
+		data.reset();
+
+		data.collect(storage, storage, false);
+		storage.assertData(123, new boolean[] { false });
+	}
+
+	@Test
+	public void testCollectHitsRetired() {
+		data.getExecutionData(123, "Foo", 1).getProbes()[0] = true;
+		data.retireCoveredClasses();
+
+		data.collectHits(storage);
+
+		storage.assertSize(0);
+	}
+
+	@Test
+	public void testCollectHitsDisablesRetirement() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+		data.collectHits(new TestStorage());
+		probes[0] = true;
+
+		assertTrue(data.retireCoveredClasses().isEmpty());
+		data.collectHits(storage);
+
+		storage.assertData(123, new boolean[] { true });
+		assertFalse(data.isRetired(123));
+	}
+
+	@Test
+	public void testCollectHitsSpilled() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		data.getExecutionData(123, "Foo", 1).getProbes()[0] = true;
+		data.spill(new long[] { 123 });
+
+		data.collectHits(storage);
+
+		storage.assertSize(0);
+	}
+
+	@Test
+	public void testNoContext() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+
+		assertSame(probes, getContextProbes(probes));
+	}
+
+	@Test
+	public void testBindContext() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 2)
+				.getProbes();
+
+		data.bindContext("checkout");
+		final boolean[] contextProbes = getContextProbes(probes);
+		contextProbes[1] = true;
+		assertNotSame(probes, contextProbes);
+		assertSame(contextProbes, getContextProbes(probes));
+		data.unbindContext();
+		probes[0] = true;
+
+		assertSame(probes, getContextProbes(probes));
+		assertEquals(Arrays.asList("<none>", "Foo[true, false]", "checkout",
+				"Foo[false, true]"), collectSessions(false));
+	}
+
+	@Test
+	public void testBindContextSameName() throws Exception {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+		data.bindContext("search");
+		final boolean[] contextProbes = getContextProbes(probes);
+
+		final boolean[][] other = new boolean[1][];
+		final Thread thread = new Thread() {
+			@Override
+			public void run() {
+				data.bindContext("search");
+				other[0] = getContextProbes(probes);
+			}
+		};
+		thread.start();
+		thread.join();
+
+		assertSame(contextProbes, other[0]);
+	}
+
+	@Test
+	public void testContextOfOtherThread() throws Exception {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+
+		final boolean[][] other = new boolean[1][];
+		final Thread thread = new Thread() {
+			@Override
+			public void run() {
+				data.bindContext("search");
+				other[0] = getContextProbes(probes);
+			}
+		};
+		thread.start();
+		thread.join();
+
+		assertNotSame(probes, other[0]);
+		assertSame(probes, getContextProbes(probes));
+	}
+
+	@Test
+	public void testUnbindContextTwice() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+		data.bindContext("search");
+		data.bindContext("checkout");
+		data.unbindContext();
+		data.unbindContext();
+		assertSame(probes, getContextProbes(probes));
+
+		data.bindContext("search");
+		assertNotSame(probes, getContextProbes(probes));
+	}
+
+	@Test
+	public void testContextsSortedByName() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+		data.bindContext("search");
+		getContextProbes(probes)[0] = true;
+		data.bindContext("checkout");
+		getContextProbes(probes)[0] = true;
+		data.bindContext("empty");
+		getContextProbes(probes);
+
+		assertEquals(Arrays.asList("<none>", "Foo[false]", "checkout",
+				"Foo[true]", "search", "Foo[true]"), collectSessions(false));
+	}
+
+	@Test
+	public void testCollectContextWithReset() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+		data.bindContext("checkout");
+		final boolean[] contextProbes = getContextProbes(probes);
+		contextProbes[0] = true;
+
+		assertEquals(Arrays.asList("<none>", "Foo[false]", "checkout",
+				"Foo[true]"), collectSessions(true));
+		assertFalse(contextProbes[0]);
+		assertEquals(Arrays.asList("<none>", "Foo[false]"),
+				collectSessions(false));
+	}
+
+	@Test
+	public void testCollectContextDelta() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+		data.bindContext("checkout");
+		getContextProbes(probes)[0] = true;
+
+		final List<String> sessions = new ArrayList<String>();
+		data.collect(new Recorder(sessions), new Recorder(sessions), false,
+				true);
+
+		assertEquals(Arrays.asList("<none>", "checkout", "Foo[true]"),
+				sessions);
+	}
+
+	@Test
+	public void testResetContext() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+		data.bindContext("checkout");
+		final boolean[] contextProbes = getContextProbes(probes);
+		contextProbes[0] = true;
+
+		data.reset();
+
+		assertFalse(contextProbes[0]);
+	}
+
+	@Test
+	public void testContextSessionInfo() {
+		final boolean[] probes = data.getExecutionData(123, "Foo", 1)
+				.getProbes();
+		data.bindContext("checkout");
+		getContextProbes(probes)[0] = true;
+
+		final List<SessionInfo> infos = new ArrayList<SessionInfo>();
+		data.collect(storage, new ISessionInfoVisitor() {
+			public void visitSessionInfo(final SessionInfo info) {
+				infos.add(info);
+			}
+		}, false);
+
+		assertEquals(2, infos.size());
+		assertEquals("checkout", infos.get(1).getId());
+		assertTrue(infos.get(1).getStartTimeStamp() <= infos.get(1)
+				.getDumpTimeStamp());
+		assertEquals(infos.get(0).getDumpTimeStamp(), infos.get(1)
+				.getDumpTimeStamp());
+	}
+
+	@Test
+	public void testContextStateListener() {
+		final List<Boolean> states = new ArrayList<Boolean>();
+		data.setContextStateListener(new IContextStateListener() {
+			public void setContextsActive(final boolean active) {
+				states.add(Boolean.valueOf(active));
+			}
+		});
+
+		data.bindContext("search");
+		data.bindContext("checkout");
+		data.unbindContext();
+		data.unbindContext();
+
+		assertEquals(Arrays.asList(Boolean.FALSE, Boolean.TRUE, Boolean.FALSE),
+				states);
+	}
+
+	@Test
+	public void testContextStateTerminatedThread() throws Exception {
+		final List<Boolean> states = new ArrayList<Boolean>();
+		data.setContextStateListener(new IContextStateListener() {
+			public void setContextsActive(final boolean active) {
+				states.add(Boolean.valueOf(active));
+			}
+		});
+		final Thread thread = new Thread() {
+			@Override
+			public void run() {
+				data.bindContext("search");
+			}
+		};
+		thread.start();
+		thread.join();
+
+		data.collect(storage, storage, false);
+
+		assertEquals(Arrays.asList(Boolean.FALSE, Boolean.TRUE, Boolean.FALSE),
+				states);
+	}
+
+	@Test
+	public void testSpillContext() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		final boolean[] probes = data.getExecutionData(1, "Foo", 70)
+				.getProbes();
+		data.bindContext("checkout");
+		getContextProbes(probes)[66] = true;
+		data.unbindContext();
+
+		assertEquals(1, data.spill(new long[] { 1 }));
+
+		final boolean[] expected = new boolean[70];
+		expected[66] = true;
+		assertEquals(Arrays.asList("<none>", "checkout",
+				"Foo" + Arrays.toString(expected)), collectSessions(true));
+		assertEquals(Arrays.asList("<none>"), collectSessions(false));
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean[] getContextProbes(final boolean[] probes) {
+		final Map<Object, Object> context = (Map<Object, Object>) data
+				.getContextAccess().get();
+		return (boolean[]) context.get(probes);
+	}
+
+	private List<String> collectSessions(final boolean reset) {
+		final List<String> sessions = new ArrayList<String>();
+		final Recorder recorder = new Recorder(sessions);
+		data.collect(recorder, recorder, reset);
+		return sessions;
+	}
+
+	private static class Recorder implements IExecutionDataVisitor,
+			ISessionInfoVisitor {
+
+		private final List<String> contents;
+
+		Recorder(final List<String> contents) {
+			this.contents = contents;
+		}
+
+		public void visitSessionInfo(final SessionInfo info) {
+			contents.add(info.getId());
+		}
+
+		public void visitClassExecution(final ExecutionData data) {
+			contents.add(data.getName() + Arrays.toString(data.getProbes()));
+		}
+	}
+
+	@Test
+	public void testRequestMetrics() {
+		data.getExecutionData(123, "Foo", 2);
+		data.getExecutionData(123, "Foo", 2);
+		data.getExecutionData(Long.valueOf(456), "Bar", 3);
+
+		assertEquals(3, data.getRequestTimes().getCount());
+		assertEquals(5, data.getProbeCount());
+	}
+
+	@Test
+	public void testCollectMetrics() {
+		data.getExecutionData(123, "Foo", 2);
+		data.getExecutionData(456, "Bar", 3);
+
+		data.collect(storage, storage, false);
+		data.collect(storage, storage, false, true);
+
+		assertEquals(2, data.getCollectTimes().getCount());
+		assertEquals(2, data.getCollectSizes().getCount());
+		assertEquals(2, data.getCollectSizes().getTotal());
+		assertEquals(2, data.getCollectSizes().getMax());
+	}
+
+	@Test
+	public void testCollectVisitorsWithoutLock() throws Exception {
+		data.getExecutionData(123, "Foo", 1).getProbes()[0] = true;
+		final boolean[] blocked = new boolean[1];
+		data.collect(new IExecutionDataVisitor() {
+			public void visitClassExecution(ExecutionData ed) {
+				final Thread other = new Thread() {
+					@Override
+					public void run() {
+						data.reset();
+					}
+				};
+				other.start();
+				try {
+					other.join(5000);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				blocked[0] = other.isAlive();
+			}
+		}, storage, false);
+
+		assertFalse(blocked[0]);
+		assertFalse(data.getExecutionData(123, "Foo", 1).getProbes()[0]);
+	}
+
+	@Test
+	public void testCollectDelta() {
+		final boolean[] foo = data.getExecutionData(1, "Foo", 2).getProbes();
+		final boolean[] bar = data.getExecutionData(2, "Bar", 2).getProbes();
+		data.getExecutionData(3, "NotExecuted", 2);
+		foo[0] = true;
+		bar[0] = true;
+
+		data.collect(storage, storage, false, true);
+		storage.assertSize(2);
+		storage.assertData(1, foo);
+		storage.assertData(2, bar);
+
+		storage = new TestStorage();
+		bar[1] = true;
+		data.collect(storage, storage, false, true);
+		storage.assertSize(1);
+		storage.assertData(2, bar);
+
+		storage = new TestStorage();
+		data.collect(storage, storage, false, true);
+		storage.assertSize(0);
+		assertNotNull(storage.getSessionInfo());
+	}
+
+	@Test
+	public void testCollectDeltaAfterReset() {
+		final boolean[] foo = data.getExecutionData(1, "Foo", 1).getProbes();
+		foo[0] = true;
+		data.collect(storage, storage, true, true);
+		storage.assertSize(1);
+
+		storage = new TestStorage();
+		foo[0] = true;
+		data.collect(storage, storage, false, true);
+		storage.assertSize(1);
+		storage.assertData(1, foo);
+	}
+
+	@Test
+	public void testCollectDeltaIgnoresFullCollect() {
+		data.getExecutionData(1, "Foo", 1).getProbes()[0] = true;
+		data.collect(storage, storage, false);
+
+		storage = new TestStorage();
+		data.collect(storage, storage, false, true);
+		storage.assertSize(1);
+	}
+
+	@Test
+	public void testCollectDeltaCounters() {
+		final long[][] counters = data.getExecutionCounters(1, "Foo", 2);
+		data.getExecutionCounters(2, "NotExecuted", 1);
+		counters[0][0] = 3;
+
+		data.collect(storage, storage, false, true);
+		storage.assertSize(1);
+		assertEquals(3, storage.getData(1).getCounts()[0]);
+
+		storage = new TestStorage();
+		counters[1][0] = 2;
+		counters[2][1] = 1;
+		data.collect(storage, storage, false, true);
+		storage.assertSize(1);
+		final ExecutionData delta = storage.getData(1);
+		assertEquals(2, delta.getCounts()[0]);
+		assertEquals(1, delta.getCounts()[1]);
+		assertTrue(delta.getProbes()[0]);
+		assertTrue(delta.getProbes()[1]);
+
+		storage = new TestStorage();
+		data.collect(storage, storage, false, true);
+		storage.assertSize(0);
+	}
+
+	@Test
+	public void testRetireCoveredClasses() {
+		final ExecutionData covered = data.getExecutionData(1, "Covered", 2);
+		covered.getProbes()[0] = true;
+		covered.getProbes()[1] = true;
+		final ExecutionData partly = data.getExecutionData(2, "Partly", 2);
+		partly.getProbes()[0] = true;
+		data.getExecutionData(3, "Empty", 0);
+
+		final Collection<ExecutionData> retired = data.retireCoveredClasses();
+
+		assertEquals(Collections.singletonList(covered), retired);
+		assertTrue(data.isRetired(1));
+		assertFalse(data.isRetired(2));
+		assertFalse(data.isRetired(3));
+		assertTrue(data.retireCoveredClasses().isEmpty());
+	}
+
+	@Test
+	public void testRetireCoveredClassesIgnoresCounters() {
+		data.getExecutionCounters(1, "Counted", 1)[0][0] = 1;
+		data.collect(storage, storage, false);
+
+		assertTrue(data.retireCoveredClasses().isEmpty());
+		assertFalse(data.isRetired(1));
+	}
+
+	@Test
+	public void testResetKeepsRetiredClassesCovered() {
+		final ExecutionData covered = data.getExecutionData(1, "Covered", 2);
+		covered.getProbes()[0] = true;
+		covered.getProbes()[1] = true;
+		final ExecutionData other = data.getExecutionData(2, "Other", 2);
+		other.getProbes()[0] = true;
+		data.retireCoveredClasses();
+
+		data.collect(storage, storage, true);
+
+		assertTrue(covered.getProbes()[0]);
+		assertTrue(covered.getProbes()[1]);
+		assertFalse(other.getProbes()[0]);
+	}
+
+	@Test
+	public void testSpill() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		final boolean[] probes = data.getExecutionData(1, "Foo", 2)
+				.getProbes();
+		probes[1] = true;
+		data.getExecutionData(2, "Bar", 1).getProbes()[0] = true;
+
+		assertEquals(1, data.spill(new long[] { 1 }));
+		probes[0] = true;
+
+		data.collect(storage, storage, false);
+		storage.assertSize(2);
+		storage.assertData(1, new boolean[] { false, true });
+		assertNotSame(probes, data.getExecutionData(1, "Foo", 2).getProbes());
+	}
+
+	@Test
+	public void testSpillWithoutSpillFile() throws IOException {
+		data.getExecutionData(1, "Foo", 2);
+
+		assertEquals(0, data.spill(new long[] { 1 }));
+
+		data.collect(storage, storage, false);
+		storage.assertSize(1);
+	}
+
+	@Test
+	public void testSpillNotCovered() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		data.getExecutionData(1, "Foo", 2);
+
+		assertEquals(1, data.spill(new long[] { 1, 2 }));
+
+		data.collect(storage, storage, false);
+		storage.assertSize(0);
+	}
+
+	@Test
+	public void testSpillIgnoresCountersAndRetiredClasses() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		data.getExecutionCounters(1, "Counted", 1)[0][0] = 1;
+		final ExecutionData covered = data.getExecutionData(2, "Covered", 1);
+		covered.getProbes()[0] = true;
+		data.retireCoveredClasses();
+
+		assertEquals(0, data.spill(new long[] { 1, 2 }));
+	}
+
+	@Test
+	public void testSpillWithReset() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		data.getExecutionData(1, "Foo", 1).getProbes()[0] = true;
+		data.spill(new long[] { 1 });
+
+		data.collect(storage, storage, true);
+		storage.assertData(1, new boolean[] { true });
+
+		storage = new TestStorage();
+		data.collect(storage, storage, false);
+		storage.assertSize(0);
+	}
+
+	@Test
+	public void testSpillWithResetAndFailingVisitor() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		data.getExecutionData(1, "Foo", 1).getProbes()[0] = true;
+		data.spill(new long[] { 1 });
+
+		try {
+			data.collect(new IExecutionDataVisitor() {
+				public void visitClassExecution(final ExecutionData data) {
+				}
+			}, new ISessionInfoVisitor() {
+				public void visitSessionInfo(final SessionInfo info) {
+					throw new IllegalStateException();
+				}
+			}, true);
+			fail("Exception expected");
+		} catch (final IllegalStateException e) {
+			// expected
+		}
+
+		// The detached spill file is deleted anyways:
+		assertEquals("[spill.exec]",
+				Arrays.asList(folder.getRoot().list()).toString());
+	}
+
+	@Test
+	public void testSpillResetAll() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		data.getExecutionData(1, "Foo", 1).getProbes()[0] = true;
+		data.spill(new long[] { 1 });
+
+		data.reset();
+
+		data.collect(storage, storage, false);
+		storage.assertSize(0);
+	}
+
+	@Test
+	public void testSpillDelta() throws IOException {
+		data.setSpill(new ExecutionDataSpill(folder.newFile("spill.exec")));
+		data.getExecutionData(1, "Foo", 1).getProbes()[0] = true;
+		data.collect(storage, storage, false, true);
+		data.spill(new long[] { 1 });
+
+		storage = new TestStorage();
+		data.collect(storage, storage, false, true);
+		storage.assertData(1, new boolean[] { true });
+
+		storage = new TestStorage();
+		data.collect(storage, storage, false, true);
+		storage.assertSize(0);
+	}
+
 	@Test
 	public void testEquals() {
 		assertTrue(data.equals(data));
@@ -13,10 +13,12 @@ package org.jacoco.core.runtime;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.jacoco.core.JaCoCo;
+import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.internal.instr.InstrSupport;
 import org.jacoco.core.test.TargetLoader;
 import org.junit.After;
@@ -61,6 +63,9 @@ public abstract class RuntimeTestBase {
 		ITarget t = generateAndInstantiateClass(1234);
 		data.collect(storage, storage, false);
 		storage.assertData(1234, t.get());
+		final ExecutionData collected = storage.getData(1234);
+		assertSame(t.get(), data.getExecutionData(1234, collected.getName(),
+				collected.getProbes().length).getProbes());
 	}
 
 	@Test
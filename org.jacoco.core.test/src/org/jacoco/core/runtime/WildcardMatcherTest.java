@@ -55,11 +55,44 @@ public class WildcardMatcherTest {
 		assertTrue(new WildcardMatcher("?aco*").matches("jacoco"));
 	}
 
+	@Test
+	public void testQuestionMarkMatchesOptionalCharacter() {
+		assertTrue(new WildcardMatcher("ab?").matches("ab"));
+		assertTrue(new WildcardMatcher("ab?").matches("abc"));
+		assertFalse(new WildcardMatcher("ab?").matches("abcd"));
+		assertTrue(new WildcardMatcher("??").matches(""));
+	}
+
+	@Test
+	public void testPrefix() {
+		assertFalse(new WildcardMatcher("org/*").matches("or"));
+		assertFalse(new WildcardMatcher("org/*").matches("com/Foo"));
+		assertTrue(new WildcardMatcher("org/*").matches("org/"));
+		assertTrue(new WildcardMatcher("a*ab").matches("aab"));
+		assertFalse(new WildcardMatcher("ab*ba").matches("aba"));
+		assertTrue(new WildcardMatcher("a*b*c").matches("abbc"));
+		assertTrue(new WildcardMatcher("org/*Test").matches("org/a/FooTest"));
+		assertFalse(new WildcardMatcher("org/*Test").matches("org/a/Foo"));
+	}
+
+	@Test
+	public void testNoBacktracking() {
+		final StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			s.append('a');
+		}
+		final WildcardMatcher matcher = new WildcardMatcher("*a*a*a*a*a*a*b");
+		assertFalse(matcher.matches(s.toString()));
+		assertTrue(matcher.matches(s.append('b').toString()));
+	}
+
 	@Test
 	public void testMultiExpression() {
 		assertTrue(new WildcardMatcher("Hello:World").matches("World"));
 		assertTrue(new WildcardMatcher("Hello:World").matches("World"));
 		assertTrue(new WildcardMatcher("*Test:*Foo").matches("UnitTest"));
+		assertFalse(new WildcardMatcher("*Test:*Foo").matches("UnitBar"));
+		assertTrue(new WildcardMatcher(":Foo").matches(""));
 	}
 
 	@Test
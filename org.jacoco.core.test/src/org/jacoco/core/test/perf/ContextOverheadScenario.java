@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.test.perf;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.IRuntime;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.ModifiedSystemClassRuntime;
+import org.jacoco.core.runtime.ModifiedSystemClassRuntimeTest;
+import org.jacoco.core.runtime.RuntimeData;
+import org.jacoco.core.test.TargetLoader;
+import org.objectweb.asm.ClassReader;
+
+/**
+ * This scenario measures the overhead of coverage contexts for threads
+ * without bound context. The reference is the same target instrumented
+ * without contexts. Optionally another live thread binds a context, so the
+ * context is looked up on every method entry. Each run executes the target many times,
+ * so the measurement reflects JIT compiled code.
+ */
+public class ContextOverheadScenario extends TimedScenario {
+
+	private static final int ITERATIONS = 20;
+
+	private final Class<? extends Callable<Void>> target;
+
+	private final boolean boundElsewhere;
+
+	protected ContextOverheadScenario(String description,
+			Class<? extends Callable<Void>> target, boolean boundElsewhere) {
+		super(description);
+		this.target = target;
+		this.boundElsewhere = boundElsewhere;
+	}
+
+	@Override
+	protected Callable<Void> getInstrumentedCallable() throws Exception {
+		return instrument(true);
+	}
+
+	@Override
+	protected Callable<Void> getReferenceCallable() throws Exception {
+		return instrument(false);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Callable<Void> instrument(boolean contexts) throws Exception {
+		ClassReader reader = new ClassReader(TargetLoader.getClassData(target));
+		final RuntimeData data = new RuntimeData();
+		// Coverage contexts require a runtime based on a system class:
+		IRuntime runtime = contexts ? new ModifiedSystemClassRuntime(
+				ModifiedSystemClassRuntimeTest.class, "accessField")
+				: new LoggerRuntime();
+		runtime.startup(data);
+		if (contexts && boundElsewhere) {
+			bindInOtherThread(data);
+		}
+		final Instrumenter instr = new Instrumenter(runtime);
+		instr.setContexts(contexts);
+		final byte[] instrumentedBuffer = instr.instrument(reader);
+		final TargetLoader loader = new TargetLoader(target, instrumentedBuffer);
+
+		return repeat((Callable<Void>) loader.newTargetInstance());
+	}
+
+	private static Callable<Void> repeat(final Callable<Void> callable) {
+		return new Callable<Void>() {
+			public Void call() throws Exception {
+				for (int i = 0; i < ITERATIONS; i++) {
+					callable.call();
+				}
+				return null;
+			}
+		};
+	}
+
+	private static void bindInOtherThread(final RuntimeData data)
+			throws InterruptedException {
+		final CountDownLatch bound = new CountDownLatch(1);
+		final Thread thread = new Thread() {
+			@Override
+			public void run() {
+				// The thread stays alive with the context bound:
+				data.bindContext("other");
+				bound.countDown();
+				try {
+					Thread.sleep(Long.MAX_VALUE);
+				} catch (final InterruptedException e) {
+					data.unbindContext();
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		bound.await();
+	}
+
+}
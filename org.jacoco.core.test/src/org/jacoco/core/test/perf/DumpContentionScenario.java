@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.test.perf;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Scenario to measure how long application threads are blocked by a dump to a
+ * slow consumer, like a remote connection over a throttled network. While the
+ * dump is in progress the application initializes new classes and resets the
+ * execution data, like a test listener does between tests. As a reference the
+ * dump is executed like in previous versions, where the runtime was locked
+ * while the consumer processed the data.
+ */
+public class DumpContentionScenario implements IPerfScenario {
+
+	private static final int RUNS = 10;
+
+	private final int classes;
+
+	private final long delay;
+
+	/**
+	 * @param classes
+	 *            number of classes in the runtime
+	 * @param delay
+	 *            delay in milliseconds of the consumer per 100 classes
+	 */
+	protected DumpContentionScenario(final int classes, final long delay) {
+		this.classes = classes;
+		this.delay = delay;
+	}
+
+	public void run(final IPerfOutput output) throws Exception {
+		long time = Long.MAX_VALUE;
+		long reftime = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			time = Math.min(time, getLatency(false));
+			reftime = Math.min(reftime, getLatency(true));
+		}
+		output.writeTimeResult(String.format(
+				"class init and reset during dump of %s classes",
+				Integer.valueOf(classes)), time, reftime);
+	}
+
+	private long getLatency(final boolean locked) throws Exception {
+		final LockingRuntimeData data = new LockingRuntimeData(locked);
+		for (int i = 0; i < classes; i++) {
+			data.getExecutionData(i, "org/example/Class" + i, 10);
+		}
+		final CountDownLatch started = new CountDownLatch(1);
+		final ThrottledConsumer consumer = new ThrottledConsumer(started);
+		final Thread dump = new Thread() {
+			@Override
+			public void run() {
+				data.collect(consumer);
+			}
+		};
+		dump.start();
+		started.await();
+
+		final long start = System.nanoTime();
+		for (int i = 0; i < 100; i++) {
+			data.getExecutionData(classes + i, "org/example/New" + i, 10);
+		}
+		data.reset();
+		final long latency = System.nanoTime() - start;
+
+		dump.join();
+		return latency;
+	}
+
+	private class ThrottledConsumer implements IExecutionDataVisitor,
+			ISessionInfoVisitor {
+
+		private final CountDownLatch started;
+
+		private int count;
+
+		ThrottledConsumer(final CountDownLatch started) {
+			this.started = started;
+		}
+
+		public void visitSessionInfo(final SessionInfo info) {
+		}
+
+		public void visitClassExecution(final ExecutionData data) {
+			started.countDown();
+			if (++count % 100 == 0) {
+				try {
+					Thread.sleep(delay);
+				} catch (final InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Optionally emulates the locking behavior of previous versions.
+	 */
+	private static class LockingRuntimeData extends RuntimeData {
+
+		private final boolean locked;
+
+		LockingRuntimeData(final boolean locked) {
+			this.locked = locked;
+		}
+
+		void collect(final ThrottledConsumer consumer) {
+			if (locked) {
+				synchronized (store) {
+					store.accept(consumer);
+				}
+			} else {
+				collect(consumer, consumer, false);
+			}
+		}
+
+		@Override
+		public ExecutionData getExecutionData(final long id,
+				final String name, final int probecount) {
+			if (locked) {
+				synchronized (store) {
+					return super.getExecutionData(id, name, probecount);
+				}
+			}
+			return super.getExecutionData(id, name, probecount);
+		}
+
+	}
+
+}
@@ -16,6 +16,8 @@ import java.util.concurrent.Callable;
 import org.jacoco.core.instr.Instrumenter;
 import org.jacoco.core.runtime.IRuntime;
 import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.ModifiedSystemClassRuntime;
+import org.jacoco.core.runtime.ModifiedSystemClassRuntimeTest;
 import org.jacoco.core.runtime.RuntimeData;
 import org.jacoco.core.test.TargetLoader;
 import org.objectweb.asm.ClassReader;
@@ -28,19 +30,52 @@ public class ExecuteInstrumentedCodeScenario extends TimedScenario {
 
 	private final Class<? extends Callable<Void>> target;
 
+	private final boolean conditionalProbes;
+
+	private final boolean methodProbes;
+
+	private final boolean contexts;
+
 	protected ExecuteInstrumentedCodeScenario(String description,
 			Class<? extends Callable<Void>> target) {
+		this(description, target, false);
+	}
+
+	protected ExecuteInstrumentedCodeScenario(String description,
+			Class<? extends Callable<Void>> target, boolean conditionalProbes) {
+		this(description, target, conditionalProbes, false);
+	}
+
+	protected ExecuteInstrumentedCodeScenario(String description,
+			Class<? extends Callable<Void>> target, boolean conditionalProbes,
+			boolean methodProbes) {
+		this(description, target, conditionalProbes, methodProbes, false);
+	}
+
+	protected ExecuteInstrumentedCodeScenario(String description,
+			Class<? extends Callable<Void>> target, boolean conditionalProbes,
+			boolean methodProbes, boolean contexts) {
 		super(description);
 		this.target = target;
+		this.conditionalProbes = conditionalProbes;
+		this.methodProbes = methodProbes;
+		this.contexts = contexts;
 	}
 
 	@Override
 	@SuppressWarnings("unchecked")
 	protected Callable<Void> getInstrumentedCallable() throws Exception {
 		ClassReader reader = new ClassReader(TargetLoader.getClassData(target));
-		IRuntime runtime = new LoggerRuntime();
+		// Coverage contexts require a runtime based on a system class, no
+		// context is bound to measure the overhead of the lookup only:
+		IRuntime runtime = contexts ? new ModifiedSystemClassRuntime(
+				ModifiedSystemClassRuntimeTest.class, "accessField")
+				: new LoggerRuntime();
 		runtime.startup(new RuntimeData());
 		final Instrumenter instr = new Instrumenter(runtime);
+		instr.setConditionalProbes(conditionalProbes);
+		instr.setMethodProbes(methodProbes);
+		instr.setContexts(contexts);
 		final byte[] instrumentedBuffer = instr.instrument(reader);
 		final TargetLoader loader = new TargetLoader(target, instrumentedBuffer);
 
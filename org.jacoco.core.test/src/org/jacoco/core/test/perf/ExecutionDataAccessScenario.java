@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.core.test.perf;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.runtime.RuntimeData;
+
+/**
+ * Scenario to measure contention on the runtime when many threads request
+ * probe arrays in parallel, like it happens when an application server loads
+ * classes in parallel. As a reference the same access pattern is executed on a
+ * globally locked map with boxed keys.
+ */
+public class ExecutionDataAccessScenario extends TimedScenario {
+
+	private final int threads;
+
+	private final int classes;
+
+	private final String[] names;
+
+	protected ExecutionDataAccessScenario(final int threads, final int classes) {
+		super(String.format("%s threads requesting %s probe arrays",
+				Integer.valueOf(threads), Integer.valueOf(classes)));
+		this.threads = threads;
+		this.classes = classes;
+		this.names = new String[classes];
+		for (int i = 0; i < classes; i++) {
+			names[i] = "org/example/Class" + i;
+		}
+	}
+
+	@Override
+	protected Callable<Void> getInstrumentedCallable() throws Exception {
+		return new Callable<Void>() {
+			public Void call() throws Exception {
+				final RuntimeData data = new RuntimeData();
+				runThreads(new Access() {
+					public boolean[] getProbes(final long id, final String name) {
+						return data.getExecutionData(id, name, 10).getProbes();
+					}
+				});
+				return null;
+			}
+		};
+	}
+
+	@Override
+	protected Callable<Void> getReferenceCallable() throws Exception {
+		return new Callable<Void>() {
+			public Void call() throws Exception {
+				final Map<Long, ExecutionData> map = new HashMap<Long, ExecutionData>();
+				runThreads(new Access() {
+					public boolean[] getProbes(final long id, final String name) {
+						synchronized (map) {
+							final Long key = Long.valueOf(id);
+							ExecutionData entry = map.get(key);
+							if (entry == null) {
+								entry = new ExecutionData(id, name, 10);
+								map.put(key, entry);
+							}
+							return entry.getProbes();
+						}
+					}
+				});
+				return null;
+			}
+		};
+	}
+
+	private interface Access {
+		boolean[] getProbes(long id, String name);
+	}
+
+	private void runThreads(final Access access) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * (classes / threads);
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						// Every class is requested multiple times, like for
+						// interface initializers and repeated class loading:
+						for (int r = 0; r < 10; r++) {
+							for (int i = 0; i < classes; i++) {
+								final int c = (i + offset) % classes;
+								access.getProbes(c * 0x9E3779B97F4A7C15L,
+										names[c]);
+							}
+						}
+					} catch (final InterruptedException e) {
+						// stop
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		start.countDown();
+		done.await();
+	}
+
+}
@@ -25,16 +25,25 @@ public class InstrumentationSizeSzenario implements IPerfScenario {
 
 	private final Class<?> target;
 
+	private final boolean methodProbes;
+
 	public InstrumentationSizeSzenario(Class<?> target) {
+		this(target, false);
+	}
+
+	public InstrumentationSizeSzenario(Class<?> target, boolean methodProbes) {
 		this.target = target;
+		this.methodProbes = methodProbes;
 	}
 
 	public void run(IPerfOutput output) throws Exception {
 		final IRuntime runtime = new LoggerRuntime();
 		ClassReader reader = new ClassReader(TargetLoader.getClassData(target));
 		final Instrumenter instr = new Instrumenter(runtime);
+		instr.setMethodProbes(methodProbes);
 		instr.instrument(reader);
-		output.writeByteResult("instrumented class",
+		output.writeByteResult(methodProbes ? "instrumented class, method probes"
+				: "instrumented class",
 				instr.instrument(reader).length, reader.b.length);
 	}
 
@@ -16,6 +16,7 @@ import java.io.PrintWriter;
 import org.jacoco.core.test.perf.targets.Target01;
 import org.jacoco.core.test.perf.targets.Target02;
 import org.jacoco.core.test.perf.targets.Target03;
+import org.jacoco.core.test.perf.targets.Target04;
 
 /**
  * The main test suite.
@@ -25,13 +26,31 @@ public class PerformanceSuite implements IPerfScenario {
 	public void run(IPerfOutput output) throws Exception {
 		new ExecuteInstrumentedCodeScenario("plain method calls",
 				Target01.class).run(output);
+		new ExecuteInstrumentedCodeScenario("plain method calls, contexts",
+				Target01.class, false, false, true).run(output);
+		new ContextOverheadScenario("plain method calls, unbound context",
+				Target01.class, false).run(output);
+		new ContextOverheadScenario(
+				"plain method calls, context bound elsewhere", Target01.class,
+				true).run(output);
 		new ExecuteInstrumentedCodeScenario("loop only", Target02.class)
 				.run(output);
 		new ExecuteInstrumentedCodeScenario("game of life", Target03.class)
 				.run(output);
+		new ExecuteInstrumentedCodeScenario("parallel loops", Target04.class)
+				.run(output);
+		new ExecuteInstrumentedCodeScenario(
+				"parallel loops, conditional", Target04.class, true)
+				.run(output);
+		new ExecuteInstrumentedCodeScenario("game of life, method probes",
+				Target03.class, false, true).run(output);
 		new InstrumentationSizeSzenario(Target03.class).run(output);
+		new InstrumentationSizeSzenario(Target03.class, true).run(output);
 		new InstrumentationTimeScenario(Target03.class, 1000).run(output);
 		new AnalysisTimeScenario(Target03.class, 1000).run(output);
+		new ExecutionDataAccessScenario(40, 5000).run(output);
+		new DumpContentionScenario(5000, 1).run(output);
+		new WildcardMatcherScenario(120000).run(output);
 	}
 
 	public static void main(String[] args) throws Exception {
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.test.perf;
+
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import org.jacoco.core.runtime.WildcardMatcher;
+
+/**
+ * Scenario to measure the time the agent spends in filtering loaded classes
+ * with include and exclude expressions. As a reference the same expressions
+ * are evaluated with regular expressions like in previous versions.
+ */
+public class WildcardMatcherScenario extends TimedScenario {
+
+	private static final String INCLUDES = "org/example/*:com/example/*";
+
+	private static final String EXCLUDES = "*Test:*Test$*:*$$*:org/example/generated/*";
+
+	private final String[] names;
+
+	protected WildcardMatcherScenario(final int classes) {
+		super(String.format("filtering %s class names", Integer
+				.valueOf(classes)));
+		names = new String[classes];
+		final String[] packages = new String[] { "org/example/app/",
+				"com/example/service/impl/", "org/example/generated/",
+				"net/other/lib/" };
+		final String[] suffixes = new String[] { "", "Test", "$Inner",
+				"$$EnhancerByProxy" };
+		for (int i = 0; i < classes; i++) {
+			names[i] = packages[i % packages.length] + "Class" + i
+					+ suffixes[(i / packages.length) % suffixes.length];
+		}
+	}
+
+	@Override
+	protected Callable<Void> getInstrumentedCallable() throws Exception {
+		final WildcardMatcher includes = new WildcardMatcher(INCLUDES);
+		final WildcardMatcher excludes = new WildcardMatcher(EXCLUDES);
+		return new Callable<Void>() {
+			public Void call() throws Exception {
+				int count = 0;
+				for (final String name : names) {
+					if (includes.matches(name) && !excludes.matches(name)) {
+						count++;
+					}
+				}
+				check(count);
+				return null;
+			}
+		};
+	}
+
+	@Override
+	protected Callable<Void> getReferenceCallable() throws Exception {
+		final Pattern includes = toRegex(INCLUDES);
+		final Pattern excludes = toRegex(EXCLUDES);
+		return new Callable<Void>() {
+			public Void call() throws Exception {
+				int count = 0;
+				for (final String name : names) {
+					if (includes.matcher(name).matches()
+							&& !excludes.matcher(name).matches()) {
+						count++;
+					}
+				}
+				check(count);
+				return null;
+			}
+		};
+	}
+
+	private void check(final int count) {
+		// Only org/example/app/ and com/example/service/impl/ without Test
+		// and $$ suffixes are included:
+		if (count == 0 || count >= names.length) {
+			throw new AssertionError("Unexpected number of matches " + count);
+		}
+	}
+
+	private static Pattern toRegex(final String expression) {
+		final StringBuilder regex = new StringBuilder();
+		for (final String part : expression.split("\\:")) {
+			if (regex.length() > 0) {
+				regex.append('|');
+			}
+			regex.append('(');
+			for (final char c : part.toCharArray()) {
+				switch (c) {
+				case '?':
+					regex.append(".?");
+					break;
+				case '*':
+					regex.append(".*");
+					break;
+				default:
+					regex.append(Pattern.quote(String.valueOf(c)));
+					break;
+				}
+			}
+			regex.append(')');
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.test.perf.targets;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Loops with method calls executed by multiple threads in parallel. All
+ * threads hit the same probes of this class.
+ */
+public class Target04 implements Callable<Void>, Runnable {
+
+	private static final int THREADS = 8;
+
+	public Void call() throws Exception {
+		final Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < THREADS; i++) {
+			threads[i] = new Thread(this);
+			threads[i].start();
+		}
+		for (final Thread t : threads) {
+			t.join();
+		}
+		return null;
+	}
+
+	public void run() {
+		@SuppressWarnings("unused")
+		int count = 0;
+		for (int i = 0; i < 10000000; i++) {
+			count = inc(count);
+		}
+	}
+
+	private static int inc(final int i) {
+		return i + 1;
+	}
+
+}
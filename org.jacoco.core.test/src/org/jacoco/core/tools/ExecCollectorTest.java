@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.core.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DeflaterOutputStream;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.RemoteControlWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link ExecCollector}.
+ */
+public class ExecCollectorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	private ExecCollector collector;
+
+	private InetSocketAddress address;
+
+	private Thread thread;
+
+	private IOException exception;
+
+	@Before
+	public void setup() throws IOException {
+		file = new File(folder.getRoot(), "sub/collected.exec");
+		collector = new ExecCollector();
+		collector.setSnapshotFile(file);
+		address = collector.bind(new InetSocketAddress(
+				InetAddress.getByName(null), 0));
+	}
+
+	@After
+	public void teardown() throws Exception {
+		if (thread != null) {
+			collector.stop();
+			thread.join(5000);
+		}
+	}
+
+	@Test
+	public void testHeader() throws Exception {
+		start();
+		final Socket socket = new Socket(address.getAddress(),
+				address.getPort());
+		final byte[] header = new byte[5];
+		new DataInputStream(socket.getInputStream()).readFully(header);
+		socket.close();
+
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new RemoteControlWriter(expected);
+		assertArrayEquals(expected.toByteArray(), header);
+	}
+
+	@Test
+	public void testCollect() throws Exception {
+		start();
+		send(dump("agent1", new ExecutionData(0x10, "Foo", new boolean[] {
+				true, false })));
+		send(dump("agent2", new ExecutionData(0x10, "Foo", new boolean[] {
+				false, true }), new ExecutionData(0x11, "Bar",
+				new boolean[] { true })));
+		stop();
+
+		final ExecFileLoader loader = load();
+		final ExecutionDataStore store = loader.getExecutionDataStore();
+		assertEquals("[true, true]",
+				Arrays.toString(store.get(0x10).getProbes()));
+		assertEquals("[true]", Arrays.toString(store.get(0x11).getProbes()));
+		assertEquals(2, loader.getSessionInfoStore().getInfos().size());
+	}
+
+	@Test
+	public void testMergeSessions() throws Exception {
+		start();
+		send(dump(new SessionInfo("agent", 10, 20)));
+		send(dump(new SessionInfo("agent", 5, 15)));
+		stop();
+
+		final List<SessionInfo> infos = load().getSessionInfoStore()
+				.getInfos();
+		assertEquals(1, infos.size());
+		assertEquals(5, infos.get(0).getStartTimeStamp());
+		assertEquals(20, infos.get(0).getDumpTimeStamp());
+	}
+
+	@Test
+	public void testIncompleteBlocks() throws Exception {
+		start();
+		final byte[] dump = dump("agent", new ExecutionData(0x10, "Foo",
+				new boolean[] { false, true }));
+		final Socket socket = connect();
+		socket.setTcpNoDelay(true);
+		final OutputStream out = socket.getOutputStream();
+		for (final byte b : dump) {
+			out.write(b);
+			out.flush();
+			Thread.sleep(1);
+		}
+		socket.close();
+		stop();
+
+		assertEquals("[false, true]", Arrays.toString(load()
+				.getExecutionDataStore().get(0x10).getProbes()));
+	}
+
+	@Test
+	public void testIncompatibleData() throws Exception {
+		start();
+		send(dump("agent", new ExecutionData(0x10, "Foo", 2)));
+		send(dump("agent", new ExecutionData(0x10, "Foo", 3)));
+		stop();
+
+		assertEquals(1, collector.getRejectedClasses());
+		assertEquals(2, load().getExecutionDataStore().get(0x10)
+				.getProbes().length);
+	}
+
+	@Test
+	public void testInvalidData() throws Exception {
+		start();
+		send(new byte[] { 0x01, 0x12, 0x34 });
+		send(dump("agent", new ExecutionData(0x10, "Foo", 2)));
+		stop();
+
+		assertEquals("Foo", load().getExecutionDataStore().get(0x10)
+				.getName());
+	}
+
+	@Test
+	public void testNegativeProbeCount() throws Exception {
+		start();
+		assertClosed(invalid(ExecutionDataWriter.BLOCK_EXECUTIONDATA, 0, 0, 0,
+				0, 0, 0, 0, 0x10, 0, 3, 'F', 'o', 'o', 0xff, 0xff, 0xff, 0xff,
+				0x0f));
+		send(dump("agent", new ExecutionData(0x10, "Foo", 2)));
+		stop();
+
+		assertEquals("Foo", load().getExecutionDataStore().get(0x10)
+				.getName());
+	}
+
+	@Test
+	public void testHugeCompressedBlock() throws Exception {
+		start();
+		assertClosed(invalid(RemoteControlWriter.BLOCK_COMPRESSED, 0xff, 0xff,
+				0xff, 0xff, 0x07));
+		stop();
+	}
+
+	@Test
+	public void testBufferLimit() throws Exception {
+		collector.setMaxBufferedBytes(24 * 1024);
+		start();
+		// Incomplete compressed block of 100000 bytes:
+		final int[] block = new int[4 + 30000];
+		block[0] = RemoteControlWriter.BLOCK_COMPRESSED;
+		block[1] = 0xa0;
+		block[2] = 0x8d;
+		block[3] = 0x06;
+		final Socket socket = connect();
+		socket.getOutputStream().write(invalid(block));
+		try {
+			assertEquals(-1, socket.getInputStream().read());
+		} catch (final SocketException e) {
+			// Reset as the collector closes without reading all data
+		}
+		socket.close();
+		// Buffers of closed connections are released:
+		send(dump("agent", new ExecutionData(0x10, "Foo", 2)));
+		stop();
+
+		assertEquals("Foo", load().getExecutionDataStore().get(0x10)
+				.getName());
+	}
+
+	@Test
+	public void testCompressed() throws Exception {
+		start();
+		final byte[] dump = compressed(new ExecutionData(0x10, "Foo",
+				new boolean[] { false, true }));
+		final Socket socket = connect();
+		socket.setTcpNoDelay(true);
+		final OutputStream out = socket.getOutputStream();
+		for (int i = 0; i < dump.length; i += 7) {
+			out.write(dump, i, Math.min(7, dump.length - i));
+			out.flush();
+			Thread.sleep(1);
+		}
+		socket.close();
+		stop();
+
+		assertEquals("[false, true]", Arrays.toString(load()
+				.getExecutionDataStore().get(0x10).getProbes()));
+	}
+
+	@Test
+	public void testPeriodicSnapshotFailure() throws Exception {
+		file = new File(folder.newFile("nofolder"), "collected.exec");
+		collector.setSnapshotFile(file);
+		collector.setSnapshotInterval(10);
+		start();
+		send(dump("agent", new ExecutionData(0x10, "Foo", 2)));
+
+		final long timeout = System.currentTimeMillis() + 5000;
+		while (collector.getSnapshotFailures() < 2) {
+			assertTrue(System.currentTimeMillis() < timeout);
+			Thread.sleep(10);
+		}
+		// Still accepts connections:
+		connect().close();
+		try {
+			stop();
+			fail("IOException expected");
+		} catch (final IOException e) {
+			// The final snapshot can't be written either
+		}
+	}
+
+	@Test
+	public void testNoData() throws Exception {
+		start();
+		stop();
+
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testPeriodicSnapshot() throws Exception {
+		collector.setSnapshotInterval(10);
+		start();
+		send(dump("agent", new ExecutionData(0x10, "Foo", 2)));
+
+		final long timeout = System.currentTimeMillis() + 5000;
+		while (!file.exists()) {
+			assertTrue(System.currentTimeMillis() < timeout);
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Load generator: many agents are connected at the same time and send
+	 * their dumps concurrently.
+	 */
+	@Test
+	public void testManyAgents() throws Exception {
+		final int agents = 500;
+		final int classes = 100;
+		start();
+
+		final List<Socket> sockets = new ArrayList<Socket>();
+		for (int i = 0; i < agents; i++) {
+			sockets.add(connect());
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(16);
+		final List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (int i = 0; i < agents; i++) {
+			final Socket socket = sockets.get(i);
+			final int probe = i % 10;
+			results.add(executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					final ExecutionData[] data = new ExecutionData[classes];
+					for (int c = 0; c < classes; c++) {
+						data[c] = new ExecutionData(c, "Class" + c, 10);
+						data[c].getProbes()[probe] = true;
+					}
+					socket.getOutputStream().write(
+							dump("agent" + probe, data));
+					socket.close();
+					return null;
+				}
+			}));
+		}
+		for (final Future<Void> result : results) {
+			result.get();
+		}
+		executor.shutdown();
+		stop();
+
+		final ExecFileLoader loader = load();
+		assertEquals(10, loader.getSessionInfoStore().getInfos().size());
+		assertEquals(classes, loader.getExecutionDataStore().getContents()
+				.size());
+		for (final ExecutionData data : loader.getExecutionDataStore()
+				.getContents()) {
+			for (final boolean p : data.getProbes()) {
+				assertTrue(p);
+			}
+		}
+	}
+
+	private void start() {
+		thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					collector.run();
+				} catch (final IOException e) {
+					exception = e;
+				}
+			}
+		};
+		thread.start();
+	}
+
+	private void stop() throws Exception {
+		final long timeout = System.currentTimeMillis() + 10000;
+		while (collector.getConnections() > 0) {
+			assertTrue(System.currentTimeMillis() < timeout);
+			Thread.sleep(10);
+		}
+		collector.stop();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+		thread = null;
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * Opens a connection and waits until the collector has accepted it.
+	 */
+	private Socket connect() throws IOException {
+		final Socket socket = new Socket(address.getAddress(),
+				address.getPort());
+		new DataInputStream(socket.getInputStream()).readFully(new byte[5]);
+		return socket;
+	}
+
+	/**
+	 * Sends the given data and asserts that the connection is closed by the
+	 * collector.
+	 */
+	private void assertClosed(final byte[] data) throws IOException {
+		final Socket socket = connect();
+		socket.getOutputStream().write(data);
+		final InputStream in = socket.getInputStream();
+		assertEquals(-1, in.read());
+		socket.close();
+	}
+
+	private void send(final byte[] data) throws IOException {
+		final Socket socket = connect();
+		socket.getOutputStream().write(data);
+		socket.close();
+	}
+
+	private ExecFileLoader load() throws IOException {
+		final ExecFileLoader loader = new ExecFileLoader();
+		loader.load(file);
+		return loader;
+	}
+
+	private static byte[] dump(final String session,
+			final ExecutionData... data) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final RemoteControlWriter writer = new RemoteControlWriter(buffer);
+		writer.visitSessionInfo(new SessionInfo(session, 1, 2));
+		for (final ExecutionData d : data) {
+			writer.visitClassExecution(d);
+		}
+		writer.sendCmdOk();
+		return buffer.toByteArray();
+	}
+
+	private static byte[] invalid(final int... block) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		new RemoteControlWriter(buffer);
+		for (final int b : block) {
+			buffer.write(b);
+		}
+		return buffer.toByteArray();
+	}
+
+	private static byte[] compressed(final ExecutionData... data)
+			throws IOException {
+		final ByteArrayOutputStream content = new ByteArrayOutputStream();
+		final DeflaterOutputStream deflater = new DeflaterOutputStream(
+				content);
+		final ExecutionDataWriter contentWriter = new ExecutionDataWriter(
+				deflater);
+		contentWriter.visitSessionInfo(new SessionInfo("agent", 1, 2));
+		for (final ExecutionData d : data) {
+			contentWriter.visitClassExecution(d);
+		}
+		deflater.close();
+		final byte[] block = content.toByteArray();
+
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final RemoteControlWriter writer = new RemoteControlWriter(buffer);
+		writer.sendCompressed(block, 0, block.length);
+		writer.sendCmdOk();
+		return buffer.toByteArray();
+	}
+
+	private static byte[] dump(final SessionInfo info) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final RemoteControlWriter writer = new RemoteControlWriter(buffer);
+		writer.visitSessionInfo(info);
+		writer.sendCmdOk();
+		return buffer.toByteArray();
+	}
+
+}
@@ -16,6 +16,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.InetAddress;
@@ -24,9 +25,11 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
 
+import org.jacoco.core.data.ExecutionDataWriter;
 import org.jacoco.core.data.SessionInfo;
-import org.jacoco.core.runtime.IRemoteCommandVisitor;
+import org.jacoco.core.runtime.IExtendedRemoteCommandVisitor;
 import org.jacoco.core.runtime.RemoteControlReader;
 import org.jacoco.core.runtime.RemoteControlWriter;
 import org.junit.After;
@@ -43,11 +46,15 @@ public class ExecDumpClientTest {
 
 	private boolean dumpRequested;
 	private boolean resetRequested;
+	private boolean deltaRequested;
+	private boolean compressedRequested;
+	private boolean compressionSupported;
 
 	private ServerSocket server;
 
 	@Before
 	public void setup() {
+		compressionSupported = true;
 		callbacks = new ArrayList<String>();
 		client = new ExecDumpClient() {
 			@Override
@@ -110,6 +117,7 @@ public class ExecDumpClientTest {
 		ExecFileLoader loader = client.dump((String) null, port);
 		assertTrue(dumpRequested);
 		assertFalse(resetRequested);
+		assertFalse(deltaRequested);
 
 		List<SessionInfo> infos = loader.getSessionInfoStore().getInfos();
 		assertEquals(1, infos.size());
@@ -126,6 +134,43 @@ public class ExecDumpClientTest {
 		assertTrue(resetRequested);
 	}
 
+	@Test
+	public void testDeltaDump() throws IOException {
+		int port = createExecServer();
+		client.setDelta(true);
+		client.setReset(true);
+		ExecFileLoader loader = client.dump((String) null, port);
+		assertTrue(deltaRequested);
+		assertTrue(resetRequested);
+		assertEquals(1, loader.getSessionInfoStore().getInfos().size());
+	}
+
+	@Test
+	public void testCompressedDump() throws IOException {
+		int port = createExecServer();
+		client.setCompressed(true);
+		ExecFileLoader loader = client.dump((String) null, port);
+		assertTrue(compressedRequested);
+		assertFalse(resetRequested);
+		List<SessionInfo> infos = loader.getSessionInfoStore().getInfos();
+		assertEquals(1, infos.size());
+		assertEquals("CompressedId", infos.get(0).getId());
+	}
+
+	@Test
+	public void testCompressedDumpNotSupported() throws IOException {
+		compressionSupported = false;
+		int port = createExecServer();
+		client.setCompressed(true);
+		client.setReset(true);
+		ExecFileLoader loader = client.dump((String) null, port);
+		assertTrue(dumpRequested);
+		assertTrue(resetRequested);
+		List<SessionInfo> infos = loader.getSessionInfoStore().getInfos();
+		assertEquals(1, infos.size());
+		assertEquals("TestId", infos.get(0).getId());
+	}
+
 	private int getFreePort() throws IOException {
 		final ServerSocket server = new ServerSocket(0, 0,
 				InetAddress.getByName(null));
@@ -153,7 +198,7 @@ public class ExecDumpClientTest {
 				socket.getOutputStream());
 		final RemoteControlReader reader = new RemoteControlReader(
 				socket.getInputStream());
-		reader.setRemoteCommandVisitor(new IRemoteCommandVisitor() {
+		reader.setRemoteCommandVisitor(new IExtendedRemoteCommandVisitor() {
 			public void visitDumpCommand(boolean dump, boolean reset)
 					throws IOException {
 				dumpRequested = dump;
@@ -163,6 +208,35 @@ public class ExecDumpClientTest {
 				}
 				writer.sendCmdOk();
 			}
+
+			public void visitDeltaDumpCommand(boolean reset)
+					throws IOException {
+				deltaRequested = true;
+				resetRequested = reset;
+				writer.visitSessionInfo(new SessionInfo("TestId", 100, 200));
+				writer.sendCmdOk();
+			}
+
+			public void visitCompressedDumpCommand(boolean reset)
+					throws IOException {
+				if (!compressionSupported) {
+					// Previous versions read the request as a plain dump
+					visitDumpCommand(true, reset);
+					return;
+				}
+				compressedRequested = true;
+				resetRequested = reset;
+				final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				final DeflaterOutputStream deflater = new DeflaterOutputStream(
+						buffer);
+				new ExecutionDataWriter(deflater)
+						.visitSessionInfo(new SessionInfo("CompressedId", 100,
+								200));
+				deflater.finish();
+				final byte[] bytes = buffer.toByteArray();
+				writer.sendCompressed(bytes, 0, bytes.length);
+				writer.sendCmdOk();
+			}
 		});
 		reader.read();
 	}
@@ -26,6 +26,7 @@ import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.data.ExecutionDataReader;
 import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.MappedExecutionDataWriter;
 import org.jacoco.core.data.SessionInfo;
 import org.jacoco.core.data.SessionInfoStore;
 import org.jacoco.core.tools.ExecFileLoader;
@@ -69,6 +70,21 @@ public class ExecFileLoaderTest {
 		assertLoaderContents("a", "bb");
 	}
 
+	@Test
+	public void testLoadMappedFile() throws IOException {
+		final File file = new File(sourceFolder.getRoot(), "mirror.exec");
+		final MappedExecutionDataWriter writer = new MappedExecutionDataWriter(
+				file);
+		writer.visitSessionInfo(new SessionInfo("a", 1, 1));
+		writer.visitClassExecution(new ExecutionData(1, "a", new boolean[0]));
+		writer.close();
+
+		loader.load(file);
+		loader.load(createFile("bb"));
+
+		assertLoaderContents("a", "bb");
+	}
+
 	@Test(expected = IOException.class)
 	public void testLoadBrokenContent() throws IOException {
 		final File file = new File(sourceFolder.getRoot(), "broken.exec");
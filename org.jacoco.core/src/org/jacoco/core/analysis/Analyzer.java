@@ -28,6 +28,7 @@ import org.jacoco.core.internal.analysis.ClassAnalyzer;
 import org.jacoco.core.internal.analysis.StringPool;
 import org.jacoco.core.internal.data.CRC64;
 import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.jacoco.core.internal.instr.InstrSupport;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 
@@ -64,24 +65,33 @@ public class Analyzer {
 	}
 
 	/**
-	 * Creates an ASM class visitor for analysis.
+	 * Creates an ASM class visitor for analysis. If there is no execution data
+	 * for the given id but for the id of the same class instrumented with
+	 * method probes, only method and class coverage is calculated.
 	 * 
 	 * @param classid
 	 *            id of the class calculated with {@link CRC64}
 	 * @return ASM visitor to write class definition to
 	 */
 	private ClassVisitor createAnalyzingVisitor(final long classid) {
-		final ExecutionData data = executionData.get(classid);
+		ExecutionData data = executionData.get(classid);
+		boolean methodProbes = false;
+		if (data == null) {
+			data = executionData.get(InstrSupport.getMethodProbesId(classid));
+			methodProbes = data != null;
+		}
 		final boolean[] probes = data == null ? null : data.getProbes();
+		final long[] counts = data == null ? null : data.getCounts();
 		final ClassAnalyzer analyzer = new ClassAnalyzer(classid, probes,
-				stringPool) {
+				counts, stringPool) {
 			@Override
 			public void visitEnd() {
 				super.visitEnd();
 				coverageVisitor.visitCoverage(getCoverage());
 			}
 		};
-		return new ClassProbesAdapter(analyzer);
+		analyzer.setMethodProbes(methodProbes);
+		return new ClassProbesAdapter(analyzer, methodProbes);
 	}
 
 	/**
@@ -81,8 +81,10 @@ public class CoverageBuilder implements ICoverageVisitor {
 	// === IStructureVisitor ===
 
 	public void visitCoverage(final IClassCoverage coverage) {
-		// Only consider classes that actually contain code:
-		if (coverage.getInstructionCounter().getTotalCount() > 0) {
+		// Only consider classes that actually contain code. Classes analyzed
+		// with method probes do not have instruction counters:
+		if (coverage.getInstructionCounter().getTotalCount() > 0
+				|| coverage.getMethodCounter().getTotalCount() > 0) {
 			final String name = coverage.getName();
 			final IClassCoverage dup = classes.put(name, coverage);
 			if (dup != null && dup.getId() != coverage.getId()) {
@@ -44,4 +44,13 @@ public interface ILine {
 	 */
 	public int getStatus();
 
+	/**
+	 * Returns the maximum execution count of all instructions of this line.
+	 * Execution counts are only available for classes instrumented in counter
+	 * mode, otherwise the value is always 0.
+	 * 
+	 * @return maximum execution count or 0
+	 */
+	public long getExecutionCount();
+
 }
@@ -16,9 +16,15 @@ import static java.lang.String.format;
 import java.util.Arrays;
 
 /**
- * Execution data for a single Java class. While instances are immutable care
- * has to be taken about the probe data array of type <code>boolean[]</code>
- * which can be modified.
+ * Execution data for a single Java class. Id and name of an instance never
+ * change, but its probe data is mutable: the arrays returned by
+ * {@link #getProbes()} and {@link #getCounts()} are not copied, and
+ * {@link #reset()} and {@link #merge(ExecutionData, boolean)} modify them in
+ * place. A merge may also add an execution count array to an instance which
+ * had none before. Instances shared between threads therefore have to be
+ * copied or accessed under the lock of their owner. Optionally execution data
+ * also contains execution counts for every probe, if the class has been
+ * instrumented in counter mode.
  */
 public final class ExecutionData {
 
@@ -28,6 +34,8 @@ public final class ExecutionData {
 
 	private final boolean[] probes;
 
+	private long[] counts;
+
 	/**
 	 * Creates a new {@link ExecutionData} object with the given probe data.
 	 * 
@@ -43,6 +51,33 @@ public final class ExecutionData {
 		this.id = id;
 		this.name = name;
 		this.probes = probes;
+		this.counts = null;
+	}
+
+	/**
+	 * Creates a new {@link ExecutionData} object with the given probe data and
+	 * execution counts.
+	 * 
+	 * @param id
+	 *            class identifier
+	 * @param name
+	 *            VM name
+	 * @param probes
+	 *            probe data
+	 * @param counts
+	 *            execution counts of the probes, must have the same length as
+	 *            the probe array, or <code>null</code>
+	 */
+	public ExecutionData(final long id, final String name,
+			final boolean[] probes, final long[] counts) {
+		if (counts != null && counts.length != probes.length) {
+			throw new IllegalArgumentException(
+					"Probes and counts must have the same length.");
+		}
+		this.id = id;
+		this.name = name;
+		this.probes = probes;
+		this.counts = counts;
 	}
 
 	/**
@@ -60,6 +95,7 @@ public final class ExecutionData {
 		this.id = id;
 		this.name = name;
 		this.probes = new boolean[probeCount];
+		this.counts = null;
 	}
 
 	/**
@@ -92,10 +128,24 @@ public final class ExecutionData {
 	}
 
 	/**
-	 * Sets all probes to <code>false</code>.
+	 * Returns the execution counts of the probes if available. The count
+	 * array, if present, has the same length as the probe array.
+	 * 
+	 * @return execution counts or <code>null</code> if no counts have been
+	 *         recorded for this class
+	 */
+	public long[] getCounts() {
+		return counts;
+	}
+
+	/**
+	 * Sets all probes to <code>false</code> and all execution counts to zero.
 	 */
 	public void reset() {
 		Arrays.fill(probes, false);
+		if (counts != null) {
+			Arrays.fill(counts, 0);
+		}
 	}
 
 	/**
@@ -108,7 +158,8 @@ public final class ExecutionData {
 	 * A or B
 	 * </pre>
 	 * 
-	 * The probe array of the other object is not modified.
+	 * The probe array of the other object is not modified. Execution counts
+	 * are summed up.
 	 * 
 	 * @param other
 	 *            execution data to merge
@@ -133,7 +184,10 @@ public final class ExecutionData {
 	 * A and not B
 	 * </pre>
 	 * 
-	 * The probe array of the other object is not modified.
+	 * The probe array of the other object is not modified. If the other object
+	 * contains execution counts they are added to the counts of this object
+	 * for <code>flag==true</code>. Otherwise the counts of all probes executed
+	 * in the other object are set to zero.
 	 * 
 	 * @param other
 	 *            execution data to merge
@@ -149,6 +203,23 @@ public final class ExecutionData {
 				probes[i] = flag;
 			}
 		}
+		final long[] otherCounts = other.getCounts();
+		if (flag) {
+			if (otherCounts != null) {
+				if (counts == null) {
+					counts = new long[probes.length];
+				}
+				for (int i = 0; i < counts.length; i++) {
+					counts[i] += otherCounts[i];
+				}
+			}
+		} else if (counts != null) {
+			for (int i = 0; i < counts.length; i++) {
+				if (otherData[i]) {
+					counts[i] = 0;
+				}
+			}
+		}
 	}
 
 	/**
@@ -110,7 +110,10 @@ public class ExecutionDataReader {
 			readSessionInfo();
 			return true;
 		case ExecutionDataWriter.BLOCK_EXECUTIONDATA:
-			readExecutionData();
+			readExecutionData(false);
+			return true;
+		case ExecutionDataWriter.BLOCK_EXECUTIONCOUNTS:
+			readExecutionData(true);
 			return true;
 		default:
 			throw new IOException(format("Unknown block type %x.",
@@ -139,15 +142,17 @@ public class ExecutionDataReader {
 		sessionInfoVisitor.visitSessionInfo(new SessionInfo(id, start, dump));
 	}
 
-	private void readExecutionData() throws IOException {
+	private void readExecutionData(final boolean withCounts)
+			throws IOException {
 		if (executionDataVisitor == null) {
 			throw new IOException("No execution data visitor.");
 		}
 		final long id = in.readLong();
 		final String name = in.readUTF();
 		final boolean[] probes = in.readBooleanArray();
+		final long[] counts = withCounts ? in.readLongArray() : null;
 		executionDataVisitor.visitClassExecution(new ExecutionData(id, name,
-				probes));
+				probes, counts));
 	}
 
 }
@@ -12,8 +12,9 @@
 package org.jacoco.core.data;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
+
+import org.jacoco.core.internal.data.ExecutionDataTable;
 
 /**
  * In-memory data store for execution data. The data can be added through its
@@ -21,11 +22,12 @@ import java.util.Map;
  * multiple times for the same class the data is merged, i.e. a probe is marked
  * as executed if it is reported as executed at least once. This allows to merge
  * coverage date from multiple runs. A instance of this class is not thread
- * safe.
+ * safe, except {@link #get(long)} and {@link #get(Long, String, int)} which may
+ * be called concurrently without external synchronization.
  */
 public final class ExecutionDataStore implements IExecutionDataVisitor {
 
-	private final Map<Long, ExecutionData> entries = new HashMap<Long, ExecutionData>();
+	private final ExecutionDataTable entries = new ExecutionDataTable();
 
 	/**
 	 * Adds the given {@link ExecutionData} object into the store. If there is
@@ -40,11 +42,8 @@ public final class ExecutionDataStore implements IExecutionDataVisitor {
 	 * @see ExecutionData#assertCompatibility(long, String, int)
 	 */
 	public void put(final ExecutionData data) throws IllegalStateException {
-		final Long id = Long.valueOf(data.getId());
-		final ExecutionData entry = entries.get(id);
-		if (entry == null) {
-			entries.put(id, data);
-		} else {
+		final ExecutionData entry = entries.putIfAbsent(data);
+		if (entry != null) {
 			entry.merge(data);
 		}
 	}
@@ -63,8 +62,7 @@ public final class ExecutionDataStore implements IExecutionDataVisitor {
 	 * @see ExecutionData#assertCompatibility(long, String, int)
 	 */
 	public void subtract(final ExecutionData data) throws IllegalStateException {
-		final Long id = Long.valueOf(data.getId());
-		final ExecutionData entry = entries.get(id);
+		final ExecutionData entry = entries.get(data.getId());
 		if (entry != null) {
 			entry.merge(data, false);
 		}
@@ -92,7 +90,7 @@ public final class ExecutionDataStore implements IExecutionDataVisitor {
 	 * @return execution data or <code>null</code>
 	 */
 	public ExecutionData get(final long id) {
-		return entries.get(Long.valueOf(id));
+		return entries.get(id);
 	}
 
 	/**
@@ -109,13 +107,34 @@ public final class ExecutionDataStore implements IExecutionDataVisitor {
 	 */
 	public ExecutionData get(final Long id, final String name,
 			final int probecount) {
+		return get(id.longValue(), name, probecount);
+	}
+
+	/**
+	 * Returns the coverage data for the class with the given identifier. If
+	 * there is no data available under the given id a new entry is created.
+	 * Concurrent calls for the same id will always return the same instance.
+	 * 
+	 * @param id
+	 *            class identifier
+	 * @param name
+	 *            VM name of the class
+	 * @param probecount
+	 *            probe data length
+	 * @return execution data
+	 */
+	public ExecutionData get(final long id, final String name,
+			final int probecount) {
 		ExecutionData entry = entries.get(id);
 		if (entry == null) {
-			entry = new ExecutionData(id.longValue(), name, probecount);
-			entries.put(id, entry);
-		} else {
-			entry.assertCompatibility(id.longValue(), name, probecount);
+			final ExecutionData newEntry = new ExecutionData(id, name,
+					probecount);
+			entry = entries.putIfAbsent(newEntry);
+			if (entry == null) {
+				return newEntry;
+			}
 		}
+		entry.assertCompatibility(id, name, probecount);
 		return entry;
 	}
 
@@ -124,11 +143,22 @@ public final class ExecutionDataStore implements IExecutionDataVisitor {
 	 * execution data objects itself are not removed.
 	 */
 	public void reset() {
-		for (final ExecutionData executionData : this.entries.values()) {
+		for (final ExecutionData executionData : entries.values()) {
 			executionData.reset();
 		}
 	}
 
+	/**
+	 * Removes the execution data of the classes with the given ids from the
+	 * store.
+	 * 
+	 * @param ids
+	 *            ids of the classes to remove
+	 */
+	public void removeAll(final Set<Long> ids) {
+		entries.removeAll(ids);
+	}
+
 	/**
 	 * Returns a collection that represents current contents of the store.
 	 * 
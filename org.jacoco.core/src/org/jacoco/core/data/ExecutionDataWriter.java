@@ -38,6 +38,16 @@ public class ExecutionDataWriter implements ISessionInfoVisitor,
 	/** Block identifier for execution data of a single class. */
 	public static final byte BLOCK_EXECUTIONDATA = 0x11;
 
+	/**
+	 * Block identifier for execution data of a single class including
+	 * execution counts. This block type has been added without incrementing
+	 * {@link #FORMAT_VERSION}: it is only written for classes with execution
+	 * counts, so all other files remain readable by previous versions.
+	 * Previous versions fail on files with execution counts with an "Unknown
+	 * block type 12" error.
+	 */
+	public static final byte BLOCK_EXECUTIONCOUNTS = 0x12;
+
 	/** Underlying data output */
 	protected final CompactDataOutput out;
 
@@ -91,10 +101,15 @@ public class ExecutionDataWriter implements ISessionInfoVisitor,
 
 	public void visitClassExecution(final ExecutionData data) {
 		try {
-			out.writeByte(BLOCK_EXECUTIONDATA);
+			final long[] counts = data.getCounts();
+			out.writeByte(counts == null ? BLOCK_EXECUTIONDATA
+					: BLOCK_EXECUTIONCOUNTS);
 			out.writeLong(data.getId());
 			out.writeUTF(data.getName());
 			out.writeBooleanArray(data.getProbes());
+			if (counts != null) {
+				out.writeLongArray(counts);
+			}
 		} catch (final IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.data;
+
+import static java.lang.String.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads execution data from files written by
+ * {@link MappedExecutionDataWriter}. The file can be read at any time, also
+ * while it is written by another process or after the writing process has
+ * crashed. Only complete class entries are reported.
+ */
+public class MappedExecutionDataReader {
+
+	private final DataInputStream in;
+
+	private ISessionInfoVisitor sessionInfoVisitor = null;
+
+	private IExecutionDataVisitor executionDataVisitor = null;
+
+	/**
+	 * Creates a new reader based on the given input stream. Depending on the
+	 * nature of the underlying stream input should be buffered.
+	 * 
+	 * @param input
+	 *            input stream to read the mapped file from
+	 */
+	public MappedExecutionDataReader(final InputStream input) {
+		this.in = new DataInputStream(input);
+	}
+
+	/**
+	 * Sets an listener for session information.
+	 * 
+	 * @param visitor
+	 *            visitor to retrieve session info events
+	 */
+	public void setSessionInfoVisitor(final ISessionInfoVisitor visitor) {
+		this.sessionInfoVisitor = visitor;
+	}
+
+	/**
+	 * Sets an listener for execution data.
+	 * 
+	 * @param visitor
+	 *            visitor to retrieve execution data events
+	 */
+	public void setExecutionDataVisitor(final IExecutionDataVisitor visitor) {
+		this.executionDataVisitor = visitor;
+	}
+
+	/**
+	 * Reads the session info and all complete class entries and reports them
+	 * to the corresponding visitors.
+	 * 
+	 * @throws IOException
+	 *             if the stream is not a valid mapped execution data file or
+	 *             can't be read
+	 */
+	public void read() throws IOException {
+		if (sessionInfoVisitor == null) {
+			throw new IOException("No session info visitor.");
+		}
+		if (executionDataVisitor == null) {
+			throw new IOException("No execution data visitor.");
+		}
+		if (in.readChar() != MappedExecutionDataWriter.MAGIC_NUMBER) {
+			throw new IOException("Invalid mapped execution data file.");
+		}
+		final char version = in.readChar();
+		if (version != MappedExecutionDataWriter.FORMAT_VERSION) {
+			throw new IOException(format("Incompatible version %x.",
+					Integer.valueOf(version)));
+		}
+		final int count = in.readInt();
+		final long start = in.readLong();
+		final long dump = in.readLong();
+		final byte[] idField = new byte[MappedExecutionDataWriter.SESSION_ID_SIZE];
+		in.readFully(idField);
+		final String id = new DataInputStream(new ByteArrayInputStream(idField))
+				.readUTF();
+		sessionInfoVisitor.visitSessionInfo(new SessionInfo(id, start, dump));
+
+		for (int i = 0; i < count; i++) {
+			readEntry();
+		}
+	}
+
+	private void readEntry() throws IOException {
+		final long id = in.readLong();
+		final int size = in.readInt();
+		final String name = in.readUTF();
+		final boolean[] probes = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			probes[i] = in.readByte() != 0;
+		}
+		executionDataVisitor.visitClassExecution(new ExecutionData(id, name,
+				probes));
+	}
+
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mirrors execution data into a memory mapped file. As the file content is
+ * maintained by the operating system it survives crashes of the writing VM
+ * and can be read by other processes at any time, see
+ * {@link MappedExecutionDataReader}. Subsequent updates of the same class
+ * only write the probes which have changed since the last update.
+ * 
+ * The file starts with a fixed size header:
+ * <ul>
+ * <li>magic number and format version (2 bytes each)</li>
+ * <li>number of class entries (4 bytes)</li>
+ * <li>session start and dump time stamp (8 bytes each)</li>
+ * <li>session id in modified UTF-8 with 2 bytes length, padded to
+ * {@link #SESSION_ID_SIZE}</li>
+ * </ul>
+ * The header is followed by the class entries, every entry consists of the
+ * class id (8 bytes), the number of probes (4 bytes), the class name in
+ * modified UTF-8 with 2 bytes length and one byte for every probe. The
+ * number of entries in the header is incremented after an entry has been
+ * completely written.
+ * 
+ * The mapping grows by doubling its size. Previous mappings are released
+ * explicitly where the VM allows it, otherwise they stay mapped until they
+ * are garbage collected.
+ * 
+ * Instances of this class are not thread safe.
+ */
+public class MappedExecutionDataWriter implements ISessionInfoVisitor,
+		IExecutionDataVisitor {
+
+	/** Magic number at the beginning of memory mapped files. */
+	public static final char MAGIC_NUMBER = 0xC0C1;
+
+	/** File format version of memory mapped files. */
+	public static final char FORMAT_VERSION = 0x0001;
+
+	/** Size of the session id field in the header including its length. */
+	public static final int SESSION_ID_SIZE = 256;
+
+	/** Offset of the entry count in the header. */
+	static final int COUNT_OFFSET = 4;
+
+	/** Offset of the session info in the header. */
+	static final int SESSION_OFFSET = 8;
+
+	/** Size of the header. */
+	public static final int HEADER_SIZE = SESSION_OFFSET + 16
+			+ SESSION_ID_SIZE;
+
+	private static final int INITIAL_SIZE = 0x10000;
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private MappedByteBuffer buffer;
+
+	private final Map<Long, Integer> offsets;
+
+	private int count;
+
+	private int end;
+
+	/**
+	 * Creates a new writer for the given file. Existing content of the file is
+	 * overwritten.
+	 * 
+	 * @param file
+	 *            file to map
+	 * @throws IOException
+	 *             if the file can't be created or mapped
+	 */
+	public MappedExecutionDataWriter(final File file) throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		this.channel = this.file.getChannel();
+		this.offsets = new HashMap<Long, Integer>();
+		this.buffer = channel.map(MapMode.READ_WRITE, 0, INITIAL_SIZE);
+		this.count = 0;
+		this.end = HEADER_SIZE;
+		buffer.putChar(0, MAGIC_NUMBER);
+		buffer.putChar(2, FORMAT_VERSION);
+		buffer.putInt(COUNT_OFFSET, 0);
+	}
+
+	public void visitSessionInfo(final SessionInfo info) {
+		buffer.putLong(SESSION_OFFSET, info.getStartTimeStamp());
+		buffer.putLong(SESSION_OFFSET + 8, info.getDumpTimeStamp());
+		byte[] id = toUTF(info.getId());
+		if (id.length > SESSION_ID_SIZE) {
+			id = toUTF("<truncated>");
+		}
+		put(SESSION_OFFSET + 16, id);
+	}
+
+	/**
+	 * Adds the given class or updates its probes if it has already been
+	 * written before.
+	 * 
+	 * @param data
+	 *            execution data of the class
+	 */
+	public void visitClassExecution(final ExecutionData data) {
+		final Long id = Long.valueOf(data.getId());
+		final boolean[] probes = data.getProbes();
+		final Integer offset = offsets.get(id);
+		if (offset == null) {
+			offsets.put(id, Integer.valueOf(append(data)));
+		} else {
+			final int o = offset.intValue();
+			for (int i = 0; i < probes.length; i++) {
+				final byte b = probes[i] ? (byte) 1 : (byte) 0;
+				if (buffer.get(o + i) != b) {
+					buffer.put(o + i, b);
+				}
+			}
+		}
+	}
+
+	private int append(final ExecutionData data) {
+		final byte[] name = toUTF(data.getName());
+		final boolean[] probes = data.getProbes();
+		ensureCapacity(end + 12 + name.length + probes.length);
+		buffer.putLong(end, data.getId());
+		buffer.putInt(end + 8, probes.length);
+		put(end + 12, name);
+		final int offset = end + 12 + name.length;
+		for (int i = 0; i < probes.length; i++) {
+			buffer.put(offset + i, probes[i] ? (byte) 1 : (byte) 0);
+		}
+		end = offset + probes.length;
+		// The entry becomes visible for readers with the new count:
+		buffer.putInt(COUNT_OFFSET, ++count);
+		return offset;
+	}
+
+	private void ensureCapacity(final int size) {
+		if (size > buffer.capacity()) {
+			int capacity = buffer.capacity();
+			while (capacity < size) {
+				capacity *= 2;
+			}
+			final MappedByteBuffer previous = buffer;
+			try {
+				buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+			} catch (final IOException e) {
+				throw new RuntimeException(e);
+			}
+			unmap(previous);
+		}
+	}
+
+	/**
+	 * Releases the given mapping immediately instead of waiting for the
+	 * garbage collector. There is no public API for this, so the internal
+	 * cleaner of the buffer is used if it is accessible. The buffer must not
+	 * be accessed afterwards.
+	 */
+	private static void unmap(final MappedByteBuffer buffer) {
+		try {
+			final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			final Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (final Exception e) {
+			// Not supported by this VM, the mapping is released by the
+			// garbage collector
+		}
+	}
+
+	private void put(final int offset, final byte[] bytes) {
+		for (int i = 0; i < bytes.length; i++) {
+			buffer.put(offset + i, bytes[i]);
+		}
+	}
+
+	private static byte[] toUTF(final String s) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			new DataOutputStream(bytes).writeUTF(s);
+		} catch (final IOException e) {
+			// Must not happen with ByteArrayOutputStream, too long strings
+			// are not supported by any execution data format.
+			throw new IllegalArgumentException(e.getMessage());
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes the content of the mapped file to the storage device and closes
+	 * the file. Further updates are not possible.
+	 * 
+	 * @throws IOException
+	 *             if the file can't be closed
+	 */
+	public void close() throws IOException {
+		buffer.force();
+		unmap(buffer);
+		buffer = null;
+		file.close();
+	}
+
+}
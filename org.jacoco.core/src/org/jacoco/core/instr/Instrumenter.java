@@ -26,6 +26,9 @@ import org.jacoco.core.internal.Pack200Streams;
 import org.jacoco.core.internal.data.CRC64;
 import org.jacoco.core.internal.flow.ClassProbesAdapter;
 import org.jacoco.core.internal.instr.ClassInstrumenter;
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.jacoco.core.runtime.IExecutionContextAccessorGenerator;
+import org.jacoco.core.runtime.IExecutionCountAccessorGenerator;
 import org.jacoco.core.runtime.IExecutionDataAccessorGenerator;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
@@ -38,6 +41,14 @@ public class Instrumenter {
 
 	private final IExecutionDataAccessorGenerator accessGenerator;
 
+	private IExecutionCountAccessorGenerator countGenerator;
+
+	private IExecutionContextAccessorGenerator contextGenerator;
+
+	private boolean conditionalProbes;
+
+	private boolean methodProbes;
+
 	/**
 	 * Creates a new instance based on the given runtime.
 	 * 
@@ -46,6 +57,91 @@ public class Instrumenter {
 	 */
 	public Instrumenter(final IExecutionDataAccessorGenerator runtime) {
 		this.accessGenerator = runtime;
+		this.countGenerator = null;
+		this.contextGenerator = null;
+		this.conditionalProbes = false;
+		this.methodProbes = false;
+	}
+
+	/**
+	 * Enables or disables counter mode. In counter mode every probe increments
+	 * an execution counter instead of setting a flag. This requires a runtime
+	 * which implements {@link IExecutionCountAccessorGenerator}. Counter mode
+	 * is disabled by default.
+	 * 
+	 * @param counters
+	 *            <code>true</code> to enable counter mode
+	 * @throws IllegalArgumentException
+	 *             if counter mode is requested but not supported by the
+	 *             runtime
+	 */
+	public void setCounters(final boolean counters) {
+		if (!counters) {
+			countGenerator = null;
+		} else if (accessGenerator instanceof IExecutionCountAccessorGenerator) {
+			countGenerator = (IExecutionCountAccessorGenerator) accessGenerator;
+		} else {
+			throw new IllegalArgumentException(
+					"Runtime does not support execution counters.");
+		}
+	}
+
+	/**
+	 * Enables or disables coverage contexts. Classes instrumented for coverage
+	 * contexts look up the context bound to the current thread at the entry of
+	 * every method and record their probes in the probe array of this context,
+	 * see {@link org.jacoco.core.runtime.RuntimeData#bindContext(String)}. The
+	 * probes itself are not changed. This requires a runtime which implements
+	 * {@link IExecutionContextAccessorGenerator}. Coverage contexts are
+	 * disabled by default and have no effect in counter mode.
+	 * 
+	 * @param contexts
+	 *            <code>true</code> to enable coverage contexts
+	 * @throws IllegalArgumentException
+	 *             if coverage contexts are requested but not supported by the
+	 *             runtime
+	 */
+	public void setContexts(final boolean contexts) {
+		if (!contexts) {
+			contextGenerator = null;
+		} else if (accessGenerator instanceof IExecutionContextAccessorGenerator) {
+			contextGenerator = (IExecutionContextAccessorGenerator) accessGenerator;
+		} else {
+			throw new IllegalArgumentException(
+					"Runtime does not support coverage contexts.");
+		}
+	}
+
+	/**
+	 * Enables or disables conditional probes. Conditional probes only write to
+	 * the probe array if the probe has not been set before. This avoids that
+	 * hot code running in many threads keeps invalidating the CPU cache line
+	 * holding the probe array, at the cost of an additional read and branch
+	 * per probe. Conditional probes are disabled by default and have no effect
+	 * in counter mode.
+	 * 
+	 * @param conditionalProbes
+	 *            <code>true</code> to enable conditional probes
+	 */
+	public void setConditionalProbes(final boolean conditionalProbes) {
+		this.conditionalProbes = conditionalProbes;
+	}
+
+	/**
+	 * Enables or disables method probes. With method probes only a single
+	 * probe is inserted at the entry of every method instead of probes for
+	 * every branch of the control flow. This reduces the size of instrumented
+	 * classes and the runtime overhead considerably, but the execution data
+	 * only allows to determine which methods have been executed. Classes
+	 * instrumented with method probes report their execution data with a
+	 * different id, so the {@link org.jacoco.core.analysis.Analyzer} detects
+	 * the instrumentation mode. Method probes are disabled by default.
+	 * 
+	 * @param methodProbes
+	 *            <code>true</code> to enable method probes
+	 */
+	public void setMethodProbes(final boolean methodProbes) {
+		this.methodProbes = methodProbes;
 	}
 
 	/**
@@ -59,8 +155,19 @@ public class Instrumenter {
 	 */
 	private ClassVisitor createInstrumentingVisitor(final long classid,
 			final ClassVisitor cv) {
-		return new ClassProbesAdapter(new ClassInstrumenter(classid,
-				accessGenerator, cv));
+		return createInstrumentingVisitor(classid, cv, true);
+	}
+
+	private ClassVisitor createInstrumentingVisitor(final long classid,
+			final ClassVisitor cv, final boolean probes) {
+		final long id = methodProbes ? InstrSupport.getMethodProbesId(classid)
+				: classid;
+		final ClassInstrumenter instrumenter = new ClassInstrumenter(id,
+				accessGenerator, countGenerator, cv);
+		instrumenter.setConditionalProbes(conditionalProbes);
+		instrumenter.setContextGenerator(contextGenerator);
+		instrumenter.setProbes(probes);
+		return new ClassProbesAdapter(instrumenter, methodProbes);
 	}
 
 	/**
@@ -99,6 +206,35 @@ public class Instrumenter {
 		}
 	}
 
+	/**
+	 * Creates a version of the given class which declares the same members as
+	 * the instrumented version but does not contain probes. An instrumented
+	 * class can be replaced with this version through retransformation once
+	 * all of its probes have been executed, as retransformation must not add
+	 * or remove members.
+	 * 
+	 * @param buffer
+	 *            definition of the class
+	 * @param name
+	 *            a name used for exception messages
+	 * @return definition without probes
+	 * @throws IOException
+	 *             if the class can't be analyzed
+	 */
+	public byte[] instrumentWithoutProbes(final byte[] buffer,
+			final String name) throws IOException {
+		try {
+			final ClassReader reader = new ClassReader(buffer);
+			final ClassWriter writer = new ClassWriter(reader, 0);
+			final ClassVisitor visitor = createInstrumentingVisitor(
+					CRC64.checksum(reader.b), writer, false);
+			reader.accept(visitor, ClassReader.EXPAND_FRAMES);
+			return writer.toByteArray();
+		} catch (final RuntimeException e) {
+			throw instrumentError(name, e);
+		}
+	}
+
 	/**
 	 * Creates a instrumented version of the given class if possible.
 	 * 
@@ -25,8 +25,11 @@ public class ClassAnalyzer extends ClassProbesVisitor {
 
 	private final long classid;
 	private final boolean probes[];
+	private final long counts[];
 	private final StringPool stringPool;
 
+	private boolean methodProbes;
+
 	private ClassCoverageImpl coverage;
 
 	/**
@@ -41,11 +44,43 @@ public class ClassAnalyzer extends ClassProbesVisitor {
 	 */
 	public ClassAnalyzer(final long classid, final boolean[] probes,
 			final StringPool stringPool) {
+		this(classid, probes, null, stringPool);
+	}
+
+	/**
+	 * Creates a new analyzer that builds coverage data for a class including
+	 * execution counts.
+	 * 
+	 * @param classid
+	 *            id of the class
+	 * @param probes
+	 *            execution data for this class or <code>null</code>
+	 * @param counts
+	 *            execution counts for this class or <code>null</code>
+	 * @param stringPool
+	 *            shared pool to minimize the number of {@link String} instances
+	 */
+	public ClassAnalyzer(final long classid, final boolean[] probes,
+			final long[] counts, final StringPool stringPool) {
 		this.classid = classid;
 		this.probes = probes;
+		this.counts = counts;
 		this.stringPool = stringPool;
 	}
 
+	/**
+	 * Specifies whether the execution data has been recorded with a single
+	 * probe per method. In this case only method and class coverage is
+	 * calculated. By default probes for every branch are expected.
+	 * 
+	 * @param methodProbes
+	 *            <code>true</code> if the class has been instrumented with
+	 *            method probes
+	 */
+	public void setMethodProbes(final boolean methodProbes) {
+		this.methodProbes = methodProbes;
+	}
+
 	/**
 	 * Returns the coverage data for this class after this visitor has been
 	 * processed.
@@ -81,8 +116,23 @@ public class ClassAnalyzer extends ClassProbesVisitor {
 			return null;
 		}
 
+		if (methodProbes) {
+			return new MethodEntryAnalyzer(stringPool.get(name),
+					stringPool.get(desc), stringPool.get(signature), probes) {
+				@Override
+				public void visitEnd() {
+					super.visitEnd();
+					final IMethodCoverage methodCoverage = getCoverage();
+					if (methodCoverage.getMethodCounter().getTotalCount() > 0) {
+						// Only consider methods that actually contain code
+						coverage.addMethod(methodCoverage);
+					}
+				}
+			};
+		}
+
 		return new MethodAnalyzer(stringPool.get(name), stringPool.get(desc),
-				stringPool.get(signature), probes) {
+				stringPool.get(signature), probes, counts) {
 			@Override
 			public void visitEnd() {
 				super.visitEnd();
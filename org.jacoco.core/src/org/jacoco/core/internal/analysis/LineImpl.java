@@ -75,6 +75,12 @@ public abstract class LineImpl implements ILine {
 			this.branches = this.branches.increment(branches);
 			return this;
 		}
+
+		@Override
+		public LineImpl incrementExecutionCount(final long count) {
+			this.executionCount = Math.max(this.executionCount, count);
+			return this;
+		}
 	}
 
 	/**
@@ -92,6 +98,14 @@ public abstract class LineImpl implements ILine {
 			return getInstance(this.instructions.increment(instructions),
 					this.branches.increment(branches));
 		}
+
+		@Override
+		public LineImpl incrementExecutionCount(final long count) {
+			if (count <= 0) {
+				return this;
+			}
+			return new Var(instructions, branches).incrementExecutionCount(count);
+		}
 	}
 
 	/** instruction counter */
@@ -100,6 +114,9 @@ public abstract class LineImpl implements ILine {
 	/** branch counter */
 	protected CounterImpl branches;
 
+	/** maximum execution count */
+	protected long executionCount;
+
 	private LineImpl(final CounterImpl instructions, final CounterImpl branches) {
 		this.instructions = instructions;
 		this.branches = branches;
@@ -117,6 +134,16 @@ public abstract class LineImpl implements ILine {
 	public abstract LineImpl increment(final ICounter instructions,
 			final ICounter branches);
 
+	/**
+	 * Updates the execution count of this line with the execution count of an
+	 * instruction. The line keeps the maximum of all given counts.
+	 * 
+	 * @param count
+	 *            execution count of an instruction
+	 * @return instance with new execution count
+	 */
+	public abstract LineImpl incrementExecutionCount(final long count);
+
 	// === ILine implementation ===
 
 	public int getStatus() {
@@ -131,6 +158,10 @@ public abstract class LineImpl implements ILine {
 		return branches;
 	}
 
+	public long getExecutionCount() {
+		return executionCount;
+	}
+
 	@Override
 	public int hashCode() {
 		return 23 * instructions.hashCode() ^ branches.hashCode();
@@ -141,7 +172,8 @@ public abstract class LineImpl implements ILine {
 		if (obj instanceof ILine) {
 			final ILine that = (ILine) obj;
 			return this.instructions.equals(that.getInstructionCounter())
-					&& this.branches.equals(that.getBranchCounter());
+					&& this.branches.equals(that.getBranchCounter())
+					&& this.executionCount == that.getExecutionCount();
 		}
 		return false;
 	}
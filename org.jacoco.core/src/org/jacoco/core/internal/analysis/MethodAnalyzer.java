@@ -31,6 +31,8 @@ public class MethodAnalyzer extends MethodProbesVisitor {
 
 	private final boolean[] probes;
 
+	private final long[] counts;
+
 	private final MethodCoverageImpl coverage;
 
 	private int currentLine = ISourceNode.UNKNOWN_LINE;
@@ -48,6 +50,9 @@ public class MethodAnalyzer extends MethodProbesVisitor {
 	/** List of all predecessors of covered probes */
 	private final List<Instruction> coveredProbes = new ArrayList<Instruction>();
 
+	/** List of all predecessors of probes with execution counts */
+	private final List<ProbeCount> countedProbes = new ArrayList<ProbeCount>();
+
 	/** List of all jumps encountered */
 	private final List<Jump> jumps = new ArrayList<Jump>();
 
@@ -70,8 +75,31 @@ public class MethodAnalyzer extends MethodProbesVisitor {
 	 */
 	public MethodAnalyzer(final String name, final String desc,
 			final String signature, final boolean[] probes) {
+		this(name, desc, signature, probes, null);
+	}
+
+	/**
+	 * New Method analyzer for the given probe data and execution counts.
+	 * 
+	 * @param name
+	 *            method name
+	 * @param desc
+	 *            description of the method
+	 * @param signature
+	 *            optional parameterized signature
+	 * 
+	 * @param probes
+	 *            recorded probe date of the containing class or
+	 *            <code>null</code> if the class is not executed at all
+	 * @param counts
+	 *            recorded execution counts of the containing class or
+	 *            <code>null</code> if no counts are available
+	 */
+	public MethodAnalyzer(final String name, final String desc,
+			final String signature, final boolean[] probes, final long[] counts) {
 		super();
 		this.probes = probes;
+		this.counts = counts;
 		this.coverage = new MethodCoverageImpl(name, desc, signature);
 	}
 
@@ -268,6 +296,9 @@ public class MethodAnalyzer extends MethodProbesVisitor {
 		for (final Instruction p : coveredProbes) {
 			p.setCovered();
 		}
+		for (final ProbeCount p : countedProbes) {
+			p.instruction.addExecutionCount(p.count);
+		}
 		// Report result:
 		coverage.ensureCapacity(firstLine, lastLine);
 		for (final Instruction i : instructions) {
@@ -278,6 +309,7 @@ public class MethodAnalyzer extends MethodProbesVisitor {
 			final ICounter branchCounter = total > 1 ? CounterImpl.getInstance(
 					total - covered, covered) : CounterImpl.COUNTER_0_0;
 			coverage.increment(instrCounter, branchCounter, i.getLine());
+			coverage.incrementExecutionCount(i.getExecutionCount(), i.getLine());
 		}
 		coverage.incrementMethodCounter();
 	}
@@ -287,6 +319,20 @@ public class MethodAnalyzer extends MethodProbesVisitor {
 		if (probes != null && probes[probeId]) {
 			coveredProbes.add(lastInsn);
 		}
+		if (counts != null && counts[probeId] > 0) {
+			countedProbes.add(new ProbeCount(lastInsn, counts[probeId]));
+		}
+	}
+
+	private static class ProbeCount {
+
+		final Instruction instruction;
+		final long count;
+
+		ProbeCount(final Instruction instruction, final long count) {
+			this.instruction = instruction;
+			this.count = count;
+		}
 	}
 
 	private static class Jump {
@@ -64,6 +64,21 @@ public class MethodCoverageImpl extends SourceNodeImpl implements
 		this.complexityCounter = this.complexityCounter.increment(base);
 	}
 
+	/**
+	 * Increments the method counter of a method which has been instrumented
+	 * with a single probe at its entry. Such methods have no instruction level
+	 * information. This method must be called exactly once instead of
+	 * {@link #incrementMethodCounter()}.
+	 * 
+	 * @param covered
+	 *            <code>true</code> if the method has been executed
+	 */
+	public void incrementMethodCounter(final boolean covered) {
+		final ICounter base = covered ? CounterImpl.COUNTER_0_1
+				: CounterImpl.COUNTER_1_0;
+		this.methodCounter = this.methodCounter.increment(base);
+	}
+
 	// === IMethodCoverage implementation ===
 
 	public String getDesc() {
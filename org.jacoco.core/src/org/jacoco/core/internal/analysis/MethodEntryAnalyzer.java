@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.internal.analysis;
+
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.objectweb.asm.Label;
+
+/**
+ * A {@link MethodProbesVisitor} that analyzes whether a method instrumented
+ * with a single probe at its entry has been executed. Only the method counter
+ * of the resulting coverage node is populated.
+ */
+public class MethodEntryAnalyzer extends MethodProbesVisitor {
+
+	private final boolean[] probes;
+
+	private final MethodCoverageImpl coverage;
+
+	private boolean code = false;
+
+	private boolean covered = false;
+
+	/**
+	 * New analyzer for the given probe data.
+	 * 
+	 * @param name
+	 *            method name
+	 * @param desc
+	 *            description of the method
+	 * @param signature
+	 *            optional parameterized signature
+	 * @param probes
+	 *            recorded probe date of the containing class or
+	 *            <code>null</code> if the class is not executed at all
+	 */
+	public MethodEntryAnalyzer(final String name, final String desc,
+			final String signature, final boolean[] probes) {
+		super();
+		this.probes = probes;
+		this.coverage = new MethodCoverageImpl(name, desc, signature);
+	}
+
+	/**
+	 * Returns the coverage data for this method after this visitor has been
+	 * processed.
+	 * 
+	 * @return coverage data for this method
+	 */
+	public IMethodCoverage getCoverage() {
+		return coverage;
+	}
+
+	@Override
+	public void visitCode() {
+		code = true;
+	}
+
+	@Override
+	public void visitProbe(final int probeId) {
+		covered = probes != null && probes[probeId];
+	}
+
+	@Override
+	public void visitJumpInsnWithProbe(final int opcode, final Label label,
+			final int probeId) {
+		// not used with method probes
+	}
+
+	@Override
+	public void visitInsnWithProbe(final int opcode, final int probeId) {
+		// not used with method probes
+	}
+
+	@Override
+	public void visitTableSwitchInsnWithProbes(final int min, final int max,
+			final Label dflt, final Label[] labels) {
+		// not used with method probes
+	}
+
+	@Override
+	public void visitLookupSwitchInsnWithProbes(final Label dflt,
+			final int[] keys, final Label[] labels) {
+		// not used with method probes
+	}
+
+	@Override
+	public void visitEnd() {
+		if (code) {
+			coverage.incrementMethodCounter(covered);
+		}
+	}
+
+}
@@ -95,6 +95,7 @@ public class SourceNodeImpl extends CoverageNodeImpl implements ISourceNode {
 				final ILine line = child.getLine(i);
 				incrementLine(line.getInstructionCounter(),
 						line.getBranchCounter(), i);
+				incrementExecutionCount(line.getExecutionCount(), i);
 			}
 		}
 	}
@@ -120,6 +121,22 @@ public class SourceNodeImpl extends CoverageNodeImpl implements ISourceNode {
 		branchCounter = branchCounter.increment(branches);
 	}
 
+	/**
+	 * Updates the execution count of the given line. The line keeps the
+	 * maximum of all given execution counts.
+	 * 
+	 * @param count
+	 *            execution count of an instruction on the given line
+	 * @param line
+	 *            optional line number or {@link ISourceNode#UNKNOWN_LINE}
+	 */
+	public void incrementExecutionCount(final long count, final int line) {
+		if (count > 0 && line != UNKNOWN_LINE) {
+			ensureCapacity(line, line);
+			lines[line - offset] = getLine(line).incrementExecutionCount(count);
+		}
+	}
+
 	private void incrementLine(final ICounter instructions,
 			final ICounter branches, final int line) {
 		ensureCapacity(line, line);
@@ -48,6 +48,21 @@ public class CompactDataInput extends DataInputStream {
 		return (value & 0x7F) | (readVarInt() << 7);
 	}
 
+	/**
+	 * Reads a variable length representation of a long value.
+	 * 
+	 * @return read value
+	 * @throws IOException
+	 *             if thrown by the underlying stream
+	 */
+	public long readVarLong() throws IOException {
+		final int value = 0xFF & readByte();
+		if ((value & 0x80) == 0) {
+			return value;
+		}
+		return (value & 0x7F) | (readVarLong() << 7);
+	}
+
 	/**
 	 * Reads a boolean array.
 	 * 
@@ -68,4 +83,19 @@ public class CompactDataInput extends DataInputStream {
 		return value;
 	}
 
+	/**
+	 * Reads a long array.
+	 * 
+	 * @return long array
+	 * @throws IOException
+	 *             if thrown by the underlying stream
+	 */
+	public long[] readLongArray() throws IOException {
+		final long[] value = new long[readVarInt()];
+		for (int i = 0; i < value.length; i++) {
+			value[i] = readVarLong();
+		}
+		return value;
+	}
+
 }
@@ -52,6 +52,25 @@ public class CompactDataOutput extends DataOutputStream {
 		}
 	}
 
+	/**
+	 * Writes a variable length representation of a long value that reduces
+	 * the number of written bytes for small positive values. Depending on the
+	 * given value 1 to 10 bytes will be written to the underlying stream.
+	 * 
+	 * @param value
+	 *            value to write
+	 * @throws IOException
+	 *             if thrown by the underlying stream
+	 */
+	public void writeVarLong(final long value) throws IOException {
+		if ((value & 0xFFFFFFFFFFFFFF80L) == 0) {
+			writeByte((int) value);
+		} else {
+			writeByte(0x80 | ((int) value & 0x7F));
+			writeVarLong(value >>> 7);
+		}
+	}
+
 	/**
 	 * Writes a boolean array. Internally a sequence of boolean values is packed
 	 * into single bits.
@@ -80,4 +99,20 @@ public class CompactDataOutput extends DataOutputStream {
 		}
 	}
 
+	/**
+	 * Writes a long array. Every value is written in its variable length
+	 * representation.
+	 * 
+	 * @param value
+	 *            long array
+	 * @throws IOException
+	 *             if thrown by the underlying stream
+	 */
+	public void writeLongArray(final long[] value) throws IOException {
+		writeVarInt(value.length);
+		for (final long l : value) {
+			writeVarLong(l);
+		}
+	}
+
 }
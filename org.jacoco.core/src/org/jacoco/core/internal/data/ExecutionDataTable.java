@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.core.internal.data;
+
+import org.jacoco.core.data.ExecutionData;
+
+/**
+ * Lock-free hash table for {@link ExecutionData} objects keyed by their
+ * primitive class id, see {@link LongKeyTable}.
+ */
+public final class ExecutionDataTable extends LongKeyTable<ExecutionData> {
+
+	@Override
+	protected long getId(final ExecutionData entry) {
+		return entry.getId();
+	}
+
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.core.internal.data;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hash table for entries keyed by a primitive <code>long</code> id which is
+ * provided by the entries itself. The table uses open addressing with linear
+ * probing. Lookups are lock-free and new entries are added with a single
+ * compare-and-set operation, only growing the table and removing entries is
+ * serialized.
+ *
+ * Iterations are weakly consistent: Every entry which has been added before
+ * the iteration started is reported exactly once, entries added concurrently
+ * may or may not be reported.
+ *
+ * @param <E>
+ *            type of the entries
+ */
+public abstract class LongKeyTable<E> {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Marker for empty slots in a table which has already been copied to a
+	 * larger table. Inserts seeing this marker have to retry on the new table.
+	 */
+	private static final Object MOVED = new Object();
+
+	private volatile AtomicReferenceArray<Object> slots;
+
+	private final AtomicInteger size;
+
+	private final Object resizeLock;
+
+	/**
+	 * Creates a new empty table.
+	 */
+	protected LongKeyTable() {
+		slots = new AtomicReferenceArray<Object>(INITIAL_CAPACITY);
+		size = new AtomicInteger();
+		resizeLock = new Object();
+	}
+
+	/**
+	 * Returns the entry with the given id.
+	 *
+	 * @param id
+	 *            id of the entry
+	 * @return entry or <code>null</code> if no entry exists for this id
+	 */
+	public E get(final long id) {
+		AtomicReferenceArray<Object> table = slots;
+		int mask = table.length() - 1;
+		int i = hash(id) & mask;
+		while (true) {
+			final Object entry = table.get(i);
+			if (entry == null) {
+				return null;
+			}
+			if (entry == MOVED) {
+				table = awaitResize();
+				mask = table.length() - 1;
+				i = hash(id) & mask;
+				continue;
+			}
+			if (idOf(entry) == id) {
+				return cast(entry);
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	/**
+	 * Adds the given entry if there is no entry with the same id yet.
+	 *
+	 * @param data
+	 *            entry to add
+	 * @return the existing entry with the same id or <code>null</code> if the
+	 *         given entry has been added
+	 */
+	public E putIfAbsent(final E data) {
+		final long id = getId(data);
+		AtomicReferenceArray<Object> table = slots;
+		int mask = table.length() - 1;
+		int i = hash(id) & mask;
+		while (true) {
+			final Object entry = table.get(i);
+			if (entry == null) {
+				if (table.compareAndSet(i, null, data)) {
+					if (size.incrementAndGet() > table.length() >> 1) {
+						resize(table);
+					}
+					return null;
+				}
+				// Slot has been taken concurrently, inspect it again.
+				continue;
+			}
+			if (entry == MOVED) {
+				table = awaitResize();
+				mask = table.length() - 1;
+				i = hash(id) & mask;
+				continue;
+			}
+			if (idOf(entry) == id) {
+				return cast(entry);
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	/**
+	 * Removes the entries with the given ids. The remaining entries are copied
+	 * to a new table. Lookups which started before this method returned may
+	 * still see the removed entries.
+	 * 
+	 * @param ids
+	 *            ids of the entries to remove
+	 */
+	public void removeAll(final Set<Long> ids) {
+		synchronized (resizeLock) {
+			final AtomicReferenceArray<Object> table = slots;
+			slots = copy(table, table.length(), ids);
+		}
+	}
+
+	/**
+	 * Returns the number of entries in this table.
+	 *
+	 * @return number of entries
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Returns a weakly consistent, unmodifiable view on the entries of this
+	 * table.
+	 *
+	 * @return view on all entries
+	 */
+	public Collection<E> values() {
+		return new AbstractCollection<E>() {
+			@Override
+			public Iterator<E> iterator() {
+				return new EntryIterator(slots);
+			}
+
+			@Override
+			public int size() {
+				return size.get();
+			}
+		};
+	}
+
+	private void resize(final AtomicReferenceArray<Object> table) {
+		synchronized (resizeLock) {
+			if (slots != table) {
+				// Somebody else was faster
+				return;
+			}
+			slots = copy(table, table.length() << 1,
+					Collections.<Long> emptySet());
+		}
+	}
+
+	/**
+	 * Copies all entries except the removed ones to a new table. Empty slots
+	 * of the old table are marked, so concurrent inserts retry on the new
+	 * table. Must only be called while holding the resize lock.
+	 */
+	private AtomicReferenceArray<Object> copy(
+			final AtomicReferenceArray<Object> table, final int length,
+			final Set<Long> removed) {
+		final AtomicReferenceArray<Object> newTable = new AtomicReferenceArray<Object>(
+				length);
+		final int mask = length - 1;
+		for (int i = 0; i < table.length(); i++) {
+			Object entry;
+			while ((entry = table.get(i)) == null) {
+				if (table.compareAndSet(i, null, MOVED)) {
+					break;
+				}
+			}
+			if (entry != null) {
+				final long id = idOf(entry);
+				if (removed.contains(Long.valueOf(id))) {
+					size.decrementAndGet();
+					continue;
+				}
+				// The new table is not published yet, so there is no
+				// concurrent access:
+				int j = hash(id) & mask;
+				while (newTable.get(j) != null) {
+					j = (j + 1) & mask;
+				}
+				newTable.set(j, entry);
+			}
+		}
+		return newTable;
+	}
+
+	/**
+	 * Waits until a pending resize operation has completed.
+	 */
+	private AtomicReferenceArray<Object> awaitResize() {
+		synchronized (resizeLock) {
+			return slots;
+		}
+	}
+
+	/**
+	 * Returns the id of the given entry.
+	 *
+	 * @param entry
+	 *            entry of this table
+	 * @return id of the entry
+	 */
+	protected abstract long getId(E entry);
+
+	private long idOf(final Object entry) {
+		return getId(cast(entry));
+	}
+
+	@SuppressWarnings("unchecked")
+	private E cast(final Object entry) {
+		return (E) entry;
+	}
+
+	private static int hash(final long id) {
+		final int h = (int) (id ^ (id >>> 32));
+		return h ^ (h >>> 16);
+	}
+
+	private class EntryIterator implements Iterator<E> {
+
+		private final AtomicReferenceArray<Object> table;
+
+		private int index;
+
+		private E next;
+
+		EntryIterator(final AtomicReferenceArray<Object> table) {
+			this.table = table;
+			this.index = 0;
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+			while (index < table.length()) {
+				final Object entry = table.get(index++);
+				if (entry != null && entry != MOVED) {
+					next = cast(entry);
+					return;
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public E next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			final E result = next;
+			advance();
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
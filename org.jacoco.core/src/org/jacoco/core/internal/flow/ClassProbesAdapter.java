@@ -19,7 +19,9 @@ import org.objectweb.asm.Opcodes;
 
 /**
  * A {@link org.objectweb.asm.ClassVisitor} that calculates probes for every
- * method.
+ * method. Probes are either calculated from the control flow of the method or,
+ * with method probes enabled, a single probe is created at the entry of every
+ * method with code.
  */
 public class ClassProbesAdapter extends ClassVisitor implements
 		IProbeIdGenerator {
@@ -70,6 +72,8 @@ public class ClassProbesAdapter extends ClassVisitor implements
 
 	private final ClassProbesVisitor cv;
 
+	private final boolean entryProbes;
+
 	private int counter = 0;
 
 	private boolean interfaceType;
@@ -81,8 +85,23 @@ public class ClassProbesAdapter extends ClassVisitor implements
 	 *            instance to delegate to
 	 */
 	public ClassProbesAdapter(final ClassProbesVisitor cv) {
+		this(cv, false);
+	}
+
+	/**
+	 * Creates a new adapter that delegates to the given visitor.
+	 * 
+	 * @param cv
+	 *            instance to delegate to
+	 * @param methodProbes
+	 *            if <code>true</code> only a single probe is created at the
+	 *            entry of every method
+	 */
+	public ClassProbesAdapter(final ClassProbesVisitor cv,
+			final boolean methodProbes) {
 		super(JaCoCo.ASM_API_VERSION, cv);
 		this.cv = cv;
+		this.entryProbes = methodProbes;
 	}
 
 	@Override
@@ -112,6 +131,15 @@ public class ClassProbesAdapter extends ClassVisitor implements
 			@Override
 			public void visitEnd() {
 				super.visitEnd();
+				if (entryProbes) {
+					if (interfaceType) {
+						cv.visitTotalProbeCount(instructions.size() == 0 ? 0
+								: 1);
+					}
+					this.accept(new MethodEntryProbesAdapter(methodProbes,
+							ClassProbesAdapter.this));
+					return;
+				}
 				LabelFlowAnalyzer.markLabels(this);
 				if (interfaceType) {
 					final ProbeCounter probeCounter = new ProbeCounter();
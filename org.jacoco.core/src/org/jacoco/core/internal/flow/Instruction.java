@@ -23,6 +23,8 @@ public class Instruction {
 
 	private int coveredBranches;
 
+	private long executionCount;
+
 	private Instruction predecessor;
 
 	/**
@@ -68,6 +70,21 @@ public class Instruction {
 		}
 	}
 
+	/**
+	 * Adds the given number of executions to this instruction and all its
+	 * predecessors. This method is called for every probe with a positive
+	 * execution count, so the execution count of an instruction is the sum of
+	 * the executions of all its branches.
+	 * 
+	 * @param count
+	 *            number of executions to add
+	 */
+	public void addExecutionCount(final long count) {
+		for (Instruction i = this; i != null; i = i.predecessor) {
+			i.executionCount += count;
+		}
+	}
+
 	/**
 	 * Returns the source line this instruction belongs to.
 	 * 
@@ -95,4 +112,14 @@ public class Instruction {
 		return coveredBranches;
 	}
 
+	/**
+	 * Returns the number of executions of this instruction if execution
+	 * counts are available.
+	 * 
+	 * @return number of executions or 0
+	 */
+	public long getExecutionCount() {
+		return executionCount;
+	}
+
 }
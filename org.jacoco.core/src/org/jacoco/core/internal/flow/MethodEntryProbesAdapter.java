@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.internal.flow;
+
+import org.jacoco.core.JaCoCo;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * Adapter that creates a single probe at the entry of a method with code and
+ * passes all instructions unchanged to a {@link MethodProbesVisitor}. Other
+ * than {@link MethodProbesAdapter} no control flow information is required.
+ */
+public final class MethodEntryProbesAdapter extends MethodVisitor {
+
+	private final MethodProbesVisitor probesVisitor;
+
+	private final IProbeIdGenerator idGenerator;
+
+	/**
+	 * Create a new adapter instance.
+	 * 
+	 * @param probesVisitor
+	 *            visitor to delegate to
+	 * @param idGenerator
+	 *            generator for unique probe ids
+	 */
+	public MethodEntryProbesAdapter(final MethodProbesVisitor probesVisitor,
+			final IProbeIdGenerator idGenerator) {
+		super(JaCoCo.ASM_API_VERSION, probesVisitor);
+		this.probesVisitor = probesVisitor;
+		this.idGenerator = idGenerator;
+	}
+
+	@Override
+	public void visitCode() {
+		super.visitCode();
+		probesVisitor.visitProbe(idGenerator.nextId());
+	}
+
+}
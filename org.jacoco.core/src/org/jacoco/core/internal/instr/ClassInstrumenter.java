@@ -13,6 +13,9 @@ package org.jacoco.core.internal.instr;
 
 import org.jacoco.core.internal.flow.ClassProbesVisitor;
 import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.jacoco.core.runtime.IClassVersionAccessorGenerator;
+import org.jacoco.core.runtime.IExecutionContextAccessorGenerator;
+import org.jacoco.core.runtime.IExecutionCountAccessorGenerator;
 import org.jacoco.core.runtime.IExecutionDataAccessorGenerator;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
@@ -25,12 +28,19 @@ import org.objectweb.asm.Opcodes;
  */
 public class ClassInstrumenter extends ClassProbesVisitor {
 
-	private static final Object[] STACK_ARRZ = new Object[] { InstrSupport.DATAFIELD_DESC };
 	private static final Object[] NO_LOCALS = new Object[0];
 
 	private final long id;
 
-	private final IExecutionDataAccessorGenerator accessorGenerator;
+	private IExecutionDataAccessorGenerator accessorGenerator;
+
+	private final IExecutionCountAccessorGenerator countGenerator;
+
+	private IExecutionContextAccessorGenerator contextGenerator;
+
+	private final String dataFieldDesc;
+
+	private final String initMethodDesc;
 
 	private IProbeArrayStrategy probeArrayStrategy;
 
@@ -40,6 +50,10 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 
 	private int probeCount;
 
+	private boolean conditionalProbes;
+
+	private boolean probes = true;
+
 	/**
 	 * Emits a instrumented version of this class to the given class visitor.
 	 * 
@@ -54,9 +68,82 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 	public ClassInstrumenter(final long id,
 			final IExecutionDataAccessorGenerator accessorGenerator,
 			final ClassVisitor cv) {
+		this(id, accessorGenerator, null, cv);
+	}
+
+	/**
+	 * Emits a instrumented version of this class to the given class visitor.
+	 * If a count generator is given the class is instrumented in counter mode,
+	 * i.e. every probe increments a execution counter instead of setting a
+	 * flag.
+	 * 
+	 * @param id
+	 *            unique identifier given to this class
+	 * @param accessorGenerator
+	 *            this generator will be used for instrumentation
+	 * @param countGenerator
+	 *            generator for counter mode or <code>null</code>
+	 * @param cv
+	 *            next delegate in the visitor chain will receive the
+	 *            instrumented class
+	 */
+	public ClassInstrumenter(final long id,
+			final IExecutionDataAccessorGenerator accessorGenerator,
+			final IExecutionCountAccessorGenerator countGenerator,
+			final ClassVisitor cv) {
 		super(cv);
 		this.id = id;
 		this.accessorGenerator = accessorGenerator;
+		this.countGenerator = countGenerator;
+		if (countGenerator == null) {
+			dataFieldDesc = InstrSupport.DATAFIELD_DESC;
+			initMethodDesc = InstrSupport.INITMETHOD_DESC;
+		} else {
+			dataFieldDesc = InstrSupport.COUNTERFIELD_DESC;
+			initMethodDesc = InstrSupport.COUNTERINITMETHOD_DESC;
+		}
+	}
+
+	/**
+	 * Enables or disables conditional probes which only write to the probe
+	 * array if the probe has not been set before. This avoids repeated writes
+	 * to the probe array in hot code. Conditional probes are disabled by
+	 * default and have no effect in counter mode.
+	 * 
+	 * @param conditionalProbes
+	 *            <code>true</code> to enable conditional probes
+	 */
+	public void setConditionalProbes(final boolean conditionalProbes) {
+		this.conditionalProbes = conditionalProbes;
+	}
+
+	/**
+	 * Enables coverage contexts with the given generator. With coverage
+	 * contexts every method replaces the probe array with the one of the
+	 * context bound to the current thread on entry. Coverage contexts are
+	 * disabled by default and have no effect in counter mode.
+	 * 
+	 * @param contextGenerator
+	 *            generator for coverage contexts or <code>null</code> to
+	 *            disable them
+	 */
+	public void setContextGenerator(
+			final IExecutionContextAccessorGenerator contextGenerator) {
+		this.contextGenerator = contextGenerator;
+	}
+
+	/**
+	 * Enables or disables the insertion of probes. Without probes the method
+	 * bodies are emitted unchanged while the class still declares all members
+	 * added by the instrumentation. Such a class can replace an instrumented
+	 * version of the same class through retransformation, which must not
+	 * change the set of members. Probes are enabled by default.
+	 * 
+	 * @param probes
+	 *            <code>false</code> to emit method bodies without probes
+	 */
+	public void setProbes(final boolean probes) {
+		this.probes = probes;
 	}
 
 	@Override
@@ -65,6 +152,10 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 			final String[] interfaces) {
 		this.className = name;
 		withFrames = (version & 0xff) >= Opcodes.V1_6;
+		if (accessorGenerator instanceof IClassVersionAccessorGenerator) {
+			accessorGenerator = ((IClassVersionAccessorGenerator) accessorGenerator)
+					.forClassVersion(version & 0xff);
+		}
 		if ((access & Opcodes.ACC_INTERFACE) == 0) {
 			this.probeArrayStrategy = new ClassTypeStrategy();
 		} else {
@@ -92,15 +183,25 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 		if (mv == null) {
 			return null;
 		}
+		if (!probes) {
+			return new MethodProbesRemover(mv);
+		}
 		final MethodVisitor frameEliminator = new DuplicateFrameEliminator(mv);
 		final ProbeInserter probeVariableInserter = new ProbeInserter(access,
-				desc, frameEliminator, probeArrayStrategy);
+				desc, frameEliminator, probeArrayStrategy,
+				countGenerator != null);
 		if (withFrames) {
 			final FrameTracker frameTracker = new FrameTracker(className,
 					access, name, desc, probeVariableInserter);
+			if (conditionalProbes) {
+				probeVariableInserter.setConditional(frameTracker);
+			}
 			return new MethodInstrumenter(frameTracker, probeVariableInserter,
 					frameTracker);
 		} else {
+			if (conditionalProbes) {
+				probeVariableInserter.setConditional(IFrameInserter.NOP);
+			}
 			return new MethodInstrumenter(probeVariableInserter,
 					probeVariableInserter, IFrameInserter.NOP);
 		}
@@ -117,15 +218,124 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 		super.visitEnd();
 	}
 
+	/**
+	 * Generates the code that pushes the probe array or in counter mode the
+	 * counter stripes from the runtime.
+	 */
+	private int generateAccessor(final MethodVisitor mv) {
+		if (countGenerator == null) {
+			return accessorGenerator.generateDataAccessor(id, className,
+					probeCount, mv);
+		}
+		return countGenerator.generateCountAccessor(id, className, probeCount,
+				mv);
+	}
+
+	/**
+	 * In counter mode pops the counter stripes and pushes the stripe for the
+	 * current thread. Returns the required stack size.
+	 */
+	private int selectStripe(final MethodVisitor mv) {
+		if (countGenerator == null) {
+			return 1;
+		}
+
+		// Stack[0]: [[J
+
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Thread",
+				"currentThread", "()Ljava/lang/Thread;");
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Thread", "getId",
+				"()J");
+		mv.visitInsn(Opcodes.L2I);
+		InstrSupport.push(mv, InstrSupport.COUNTER_STRIPES - 1);
+		mv.visitInsn(Opcodes.IAND);
+
+		// Stack[1]: I
+		// Stack[0]: [[J
+
+		mv.visitInsn(Opcodes.AALOAD);
+
+		// Stack[0]: [J
+
+		return 3;
+	}
+
+	/**
+	 * With coverage contexts pops the probe array and pushes the probe array
+	 * of the context bound to the current thread, which is the same array if
+	 * no context is bound. Returns the required stack size.
+	 */
+	private int selectContext(final MethodVisitor mv) {
+		if (contextGenerator == null || countGenerator != null) {
+			return 1;
+		}
+
+		// Stack[0]: [Z
+
+		final int size = contextGenerator.generateContextAccessor(mv);
+
+		// Stack[1]: Ljava/lang/ThreadLocal;
+		// Stack[0]: [Z
+
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/ThreadLocal",
+				"get", "()Ljava/lang/Object;");
+		mv.visitTypeInsn(Opcodes.CHECKCAST, "java/util/Map");
+		mv.visitInsn(Opcodes.SWAP);
+
+		// Stack[1]: [Z
+		// Stack[0]: Ljava/util/Map;
+
+		mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/util/Map", "get",
+				"(Ljava/lang/Object;)Ljava/lang/Object;");
+		mv.visitTypeInsn(Opcodes.CHECKCAST, InstrSupport.DATAFIELD_DESC);
+
+		// Stack[0]: [Z
+
+		return Math.max(size + 1, 2);
+	}
+
+	/**
+	 * Like {@link #selectContext(MethodVisitor)}, but the context is only
+	 * looked up if the runtime reports that contexts are in use. So methods
+	 * executed while no thread has a bound context only read a static field.
+	 * Returns the required stack size.
+	 */
+	private int selectActiveContext(final MethodVisitor mv) {
+		if (contextGenerator == null || countGenerator != null) {
+			return 1;
+		}
+
+		// Stack[0]: [Z
+
+		final int flagSize = contextGenerator.generateContextFlagAccessor(mv);
+
+		// Stack[1]: I
+		// Stack[0]: [Z
+
+		final Label inactive = new Label();
+		mv.visitJumpInsn(Opcodes.IFEQ, inactive);
+		final int size = selectContext(mv);
+		if (withFrames) {
+			mv.visitFrame(Opcodes.F_NEW, 0, NO_LOCALS, 1,
+					new Object[] { dataFieldDesc });
+		}
+		mv.visitLabel(inactive);
+
+		// Stack[0]: [Z
+
+		return Math.max(flagSize + 1, size);
+	}
+
 	// === probe array strategies ===
 
 	private class ClassTypeStrategy implements IProbeArrayStrategy {
 
 		public int storeInstance(final MethodVisitor mv, final int variable) {
 			mv.visitMethodInsn(Opcodes.INVOKESTATIC, className,
-					InstrSupport.INITMETHOD_NAME, InstrSupport.INITMETHOD_DESC);
+					InstrSupport.INITMETHOD_NAME, initMethodDesc);
+			final int size = selectStripe(mv);
 			mv.visitVarInsn(Opcodes.ASTORE, variable);
-			return 1;
+			return size;
 		}
 
 		public void addMembers(final ClassVisitor delegate) {
@@ -135,19 +345,18 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 
 		private void createDataField() {
 			cv.visitField(InstrSupport.DATAFIELD_ACC,
-					InstrSupport.DATAFIELD_NAME, InstrSupport.DATAFIELD_DESC,
-					null, null);
+					InstrSupport.DATAFIELD_NAME, dataFieldDesc, null, null);
 		}
 
 		private void createInitMethod(final int probeCount) {
 			final MethodVisitor mv = cv.visitMethod(
 					InstrSupport.INITMETHOD_ACC, InstrSupport.INITMETHOD_NAME,
-					InstrSupport.INITMETHOD_DESC, null, null);
+					initMethodDesc, null, null);
 			mv.visitCode();
 
 			// Load the value of the static data field:
 			mv.visitFieldInsn(Opcodes.GETSTATIC, className,
-					InstrSupport.DATAFIELD_NAME, InstrSupport.DATAFIELD_DESC);
+					InstrSupport.DATAFIELD_NAME, dataFieldDesc);
 			mv.visitInsn(Opcodes.DUP);
 
 			// Stack[1]: [Z
@@ -166,12 +375,17 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 
 			// Return the class' probe array:
 			if (withFrames) {
-				mv.visitFrame(Opcodes.F_NEW, 0, NO_LOCALS, 1, STACK_ARRZ);
+				mv.visitFrame(Opcodes.F_NEW, 0, NO_LOCALS, 1,
+						new Object[] { dataFieldDesc });
 			}
 			mv.visitLabel(alreadyInitialized);
+
+			// Replace it with the one of the current coverage context:
+			final int contextSize = selectActiveContext(mv);
 			mv.visitInsn(Opcodes.ARETURN);
 
-			mv.visitMaxs(Math.max(size, 2), 0); // Maximum local stack size is 2
+			// Maximum local stack size is 2:
+			mv.visitMaxs(Math.max(size, Math.max(contextSize, 2)), 0);
 			mv.visitEnd();
 		}
 
@@ -186,8 +400,7 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 		 */
 		private int genInitializeDataField(final MethodVisitor mv,
 				final int probeCount) {
-			final int size = accessorGenerator.generateDataAccessor(id,
-					className, probeCount, mv);
+			final int size = generateAccessor(mv);
 
 			// Stack[0]: [Z
 
@@ -197,7 +410,7 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 			// Stack[0]: [Z
 
 			mv.visitFieldInsn(Opcodes.PUTSTATIC, className,
-					InstrSupport.DATAFIELD_NAME, InstrSupport.DATAFIELD_DESC);
+					InstrSupport.DATAFIELD_NAME, dataFieldDesc);
 
 			// Stack[0]: [Z
 
@@ -205,13 +418,22 @@ public class ClassInstrumenter extends ClassProbesVisitor {
 		}
 	}
 
+	/**
+	 * Interfaces can not declare the private cache field and init method used
+	 * for classes. This is not required: Up to class file version 51 (Java 7)
+	 * the only interface method with code is the static initializer, which is
+	 * executed exactly once. So the probe array is requested directly. Runtimes
+	 * supporting <code>invokedynamic</code> additionally bind the accessor to a
+	 * constant for version 51 interfaces.
+	 */
 	private class InterfaceTypeStrategy implements IProbeArrayStrategy {
 
 		public int storeInstance(final MethodVisitor mv, final int variable) {
-			final int maxStack = accessorGenerator.generateDataAccessor(id,
-					className, probeCount, mv);
+			final int maxStack = generateAccessor(mv);
+			final int stripeStack = selectStripe(mv);
+			final int contextStack = selectContext(mv);
 			mv.visitVarInsn(Opcodes.ASTORE, variable);
-			return maxStack;
+			return Math.max(maxStack, Math.max(stripeStack, contextStack));
 		}
 
 		public void addMembers(final ClassVisitor delegate) {
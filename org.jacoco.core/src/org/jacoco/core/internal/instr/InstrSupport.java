@@ -62,6 +62,49 @@ public final class InstrSupport {
 	public static final int INITMETHOD_ACC = Opcodes.ACC_SYNTHETIC
 			| Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL;
 
+	// === Execution Counters ===
+
+	/**
+	 * Data type of the field that stores execution counters of a class
+	 * instrumented in counter mode (<code>long[][]</code>). The first
+	 * dimension are {@link #COUNTER_STRIPES} independent stripes, the second
+	 * dimension the probes.
+	 */
+	public static final String COUNTERFIELD_DESC = "[[J";
+
+	/**
+	 * Descriptor of the initialization method in counter mode.
+	 */
+	public static final String COUNTERINITMETHOD_DESC = "()[[J";
+
+	/**
+	 * Data type of the local variable holding the counter stripe of the
+	 * current thread (<code>long[]</code>).
+	 */
+	public static final String COUNTERSTRIPE_DESC = "[J";
+
+	/**
+	 * Number of counter stripes per class. Threads select their stripe by
+	 * their id, so that threads running the same code on different cores
+	 * typically do not write to the same array. Must be a power of two.
+	 */
+	public static final int COUNTER_STRIPES = 8;
+
+	/**
+	 * Returns the id of a class instrumented with method probes. As the probes
+	 * of such classes are not compatible with the probes of fully instrumented
+	 * classes, an id different from the CRC64 checksum of the class file is
+	 * used. This also allows the analysis to detect the instrumentation mode
+	 * from the execution data.
+	 * 
+	 * @param classid
+	 *            CRC64 checksum of the class file
+	 * @return id of the class instrumented with method probes
+	 */
+	public static long getMethodProbesId(final long classid) {
+		return ~classid;
+	}
+
 	/**
 	 * Ensures that the given member does not correspond to a internal member
 	 * created by the instrumentation process. This would mean that the class is
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.internal.instr;
+
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * This method adapter ignores all probe events and emits the original
+ * instructions only.
+ */
+class MethodProbesRemover extends MethodProbesVisitor {
+
+	/**
+	 * Create a new adapter instance for the given method.
+	 * 
+	 * @param mv
+	 *            next method visitor in the chain
+	 */
+	public MethodProbesRemover(final MethodVisitor mv) {
+		super(mv);
+	}
+
+	// === IMethodProbesVisitor ===
+
+	@Override
+	public void visitProbe(final int probeId) {
+	}
+
+	@Override
+	public void visitInsnWithProbe(final int opcode, final int probeId) {
+		mv.visitInsn(opcode);
+	}
+
+	@Override
+	public void visitJumpInsnWithProbe(final int opcode, final Label label,
+			final int probeId) {
+		mv.visitJumpInsn(opcode, label);
+	}
+
+	@Override
+	public void visitTableSwitchInsnWithProbes(final int min, final int max,
+			final Label dflt, final Label[] labels) {
+		mv.visitTableSwitchInsn(min, max, dflt, labels);
+	}
+
+	@Override
+	public void visitLookupSwitchInsnWithProbes(final Label dflt,
+			final int[] keys, final Label[] labels) {
+		mv.visitLookupSwitchInsn(dflt, keys, labels);
+	}
+
+}
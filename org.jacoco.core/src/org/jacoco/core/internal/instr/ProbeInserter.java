@@ -30,6 +30,15 @@ class ProbeInserter extends MethodVisitor implements IProbeInserter {
 	/** Position of the inserted variable. */
 	private final int variable;
 
+	/** Whether probes increment counters instead of setting flags. */
+	private final boolean counters;
+
+	/**
+	 * Call-back for frames required by conditional probes or
+	 * <code>null</code> if probes are written unconditionally.
+	 */
+	private IFrameInserter conditional;
+
 	/** Maximum stack usage of the code to access the probe array. */
 	private int accessorStackSize;
 
@@ -48,8 +57,31 @@ class ProbeInserter extends MethodVisitor implements IProbeInserter {
 	 */
 	ProbeInserter(final int access, final String desc, final MethodVisitor mv,
 			final IProbeArrayStrategy arrayStrategy) {
+		this(access, desc, mv, arrayStrategy, false);
+	}
+
+	/**
+	 * Creates a new {@link ProbeInserter}.
+	 * 
+	 * @param access
+	 *            access flags of the adapted method.
+	 * @param desc
+	 *            the method's descriptor
+	 * @param mv
+	 *            the method visitor to which this adapter delegates calls
+	 * @param arrayStrategy
+	 *            callback to create the code that retrieves the reference to
+	 *            the probe array
+	 * @param counters
+	 *            if <code>true</code> probes increment a counter in a
+	 *            <code>long[]</code> instead of setting a flag in a
+	 *            <code>boolean[]</code>
+	 */
+	ProbeInserter(final int access, final String desc, final MethodVisitor mv,
+			final IProbeArrayStrategy arrayStrategy, final boolean counters) {
 		super(JaCoCo.ASM_API_VERSION, mv);
 		this.arrayStrategy = arrayStrategy;
+		this.counters = counters;
 		int pos = (Opcodes.ACC_STATIC & access) == 0 ? 1 : 0;
 		for (final Type t : Type.getArgumentTypes(desc)) {
 			pos += t.getSize();
@@ -57,7 +89,30 @@ class ProbeInserter extends MethodVisitor implements IProbeInserter {
 		variable = pos;
 	}
 
+	/**
+	 * Enables conditional probes which only write to the probe array if the
+	 * probe has not been set before. Hot code running in many threads then only
+	 * reads the probe array once all its probes are set and does not
+	 * invalidate the CPU cache line holding the array on every execution.
+	 * Conditional probes are not used in counter mode.
+	 * 
+	 * @param frameInserter
+	 *            call-back to insert the stackmap frame for the branch target
+	 *            within the probe code
+	 */
+	void setConditional(final IFrameInserter frameInserter) {
+		this.conditional = frameInserter;
+	}
+
 	public void insertProbe(final int id) {
+		if (counters) {
+			insertCounterProbe(id);
+			return;
+		}
+		if (conditional != null) {
+			insertConditionalProbe(id);
+			return;
+		}
 
 		// For a probe we set the corresponding position in the boolean[] array
 		// to true.
@@ -80,6 +135,61 @@ class ProbeInserter extends MethodVisitor implements IProbeInserter {
 		mv.visitInsn(Opcodes.BASTORE);
 	}
 
+	private void insertConditionalProbe(final int id) {
+
+		// For a conditional probe we first check whether the corresponding
+		// position in the boolean[] array is already set.
+
+		mv.visitVarInsn(Opcodes.ALOAD, variable);
+		InstrSupport.push(mv, id);
+		mv.visitInsn(Opcodes.BALOAD);
+
+		// Stack[0]: I
+
+		final Label done = new Label();
+		mv.visitJumpInsn(Opcodes.IFNE, done);
+
+		mv.visitVarInsn(Opcodes.ALOAD, variable);
+		InstrSupport.push(mv, id);
+		mv.visitInsn(Opcodes.ICONST_1);
+		mv.visitInsn(Opcodes.BASTORE);
+
+		// The frame at the branch target is identical to the frame before the
+		// probe. The NOP avoids that the frame collides with a frame of the
+		// original code at the same offset.
+
+		mv.visitLabel(done);
+		conditional.insertFrame();
+		mv.visitInsn(Opcodes.NOP);
+	}
+
+	private void insertCounterProbe(final int id) {
+
+		// For a probe in counter mode we increment the corresponding position
+		// in the long[] stripe selected for the current thread. The increment
+		// is not atomic, threads sharing a stripe may rarely lose updates.
+
+		mv.visitVarInsn(Opcodes.ALOAD, variable);
+
+		// Stack[0]: [J
+
+		InstrSupport.push(mv, id);
+
+		// Stack[1]: I
+		// Stack[0]: [J
+
+		mv.visitInsn(Opcodes.DUP2);
+		mv.visitInsn(Opcodes.LALOAD);
+
+		// Stack[2]: J
+		// Stack[1]: I
+		// Stack[0]: [J
+
+		mv.visitInsn(Opcodes.LCONST_1);
+		mv.visitInsn(Opcodes.LADD);
+		mv.visitInsn(Opcodes.LASTORE);
+	}
+
 	@Override
 	public void visitCode() {
 		accessorStackSize = arrayStrategy.storeInstance(mv, variable);
@@ -105,11 +215,14 @@ class ProbeInserter extends MethodVisitor implements IProbeInserter {
 
 	@Override
 	public void visitMaxs(final int maxStack, final int maxLocals) {
-		// Max stack size of the probe code is 3 which can add to the
-		// original stack size depending on the probe locations. The accessor
-		// stack size is an absolute maximum, as the accessor code is inserted
-		// at the very beginning of each method when the stack size is empty.
-		final int increasedStack = Math.max(maxStack + 3, accessorStackSize);
+		// Max stack size of the probe code is 3 (6 in counter mode) which can
+		// add to the original stack size depending on the probe locations. The
+		// accessor stack size is an absolute maximum, as the accessor code is
+		// inserted at the very beginning of each method when the stack size is
+		// empty.
+		final int probeStack = counters ? 6 : 3;
+		final int increasedStack = Math.max(maxStack + probeStack,
+				accessorStackSize);
 		mv.visitMaxs(increasedStack, maxLocals + 1);
 	}
 
@@ -136,7 +249,8 @@ class ProbeInserter extends MethodVisitor implements IProbeInserter {
 		int pos = 0; // Current variable position
 		while (idx < nLocal || pos <= variable) {
 			if (pos == variable) {
-				newLocal[newIdx++] = InstrSupport.DATAFIELD_DESC;
+				newLocal[newIdx++] = counters ? InstrSupport.COUNTERSTRIPE_DESC
+						: InstrSupport.DATAFIELD_DESC;
 				pos++;
 			} else {
 				if (idx < nLocal) {
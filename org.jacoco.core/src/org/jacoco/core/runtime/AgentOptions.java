@@ -89,6 +89,7 @@ public final class AgentOptions {
 	 * @see OutputMode#file
 	 * @see OutputMode#tcpserver
 	 * @see OutputMode#tcpclient
+	 * @see OutputMode#http
 	 * @see OutputMode#none
 	 */
 	public static final String OUTPUT = "output";
@@ -119,6 +120,14 @@ public final class AgentOptions {
 		 */
 		tcpclient,
 
+		/**
+		 * Value for the {@link AgentOptions#OUTPUT} parameter: The agent
+		 * listens for HTTP requests on a TCP port specified by
+		 * {@link AgentOptions#ADDRESS} and {@link AgentOptions#PORT}.
+		 * Execution data is served at the path <code>/exec</code>.
+		 */
+		http,
+
 		/**
 		 * Value for the {@link AgentOptions#OUTPUT} parameter: Do not produce
 		 * any output.
@@ -164,9 +173,94 @@ public final class AgentOptions {
 	 */
 	public static final String JMX = "jmx";
 
+	/**
+	 * Specifies whether the agent instruments classes in counter mode. In
+	 * counter mode every probe records the number of its executions instead of
+	 * a flag, which allows to identify hot code. Default is <code>false</code>.
+	 */
+	public static final String COUNTERS = "counters";
+
+	/**
+	 * Specifies whether probes only write to the probe array if they have not
+	 * been set before. This reduces memory traffic for hot code running in many
+	 * threads. Default is <code>false</code>.
+	 */
+	public static final String CONDITIONALPROBES = "conditionalprobes";
+
+	/**
+	 * Specifies the interval in seconds in which the agent replaces fully
+	 * covered classes with versions without probes. Requires Java 6 or later.
+	 * Default is <code>0</code> which disables this feature.
+	 */
+	public static final String DEINSTRUMENTINTERVAL = "deinstrumentinterval";
+
+	/**
+	 * Specifies the interval in seconds in which the agent writes snapshots of
+	 * the current execution data in the background. Default is <code>0</code>
+	 * which disables periodic snapshots.
+	 */
+	public static final String DUMPINTERVAL = "dumpinterval";
+
+	/**
+	 * Specifies the number of periodic snapshot files which are kept. Default
+	 * is <code>1</code>.
+	 */
+	public static final String DUMPKEEP = "dumpkeep";
+
+	/**
+	 * Specifies a file to which the probes of all classes are continuously
+	 * mirrored through a memory mapping. The file survives crashes of the VM
+	 * and can be read at any time. Default is <code>null</code> (no mirror).
+	 */
+	public static final String MIRRORFILE = "mirrorfile";
+
+	/**
+	 * Specifies the interval in milliseconds in which the mirror file is
+	 * updated. Probes executed after the last update are missing in the
+	 * mirror file if the VM crashes. Default is <code>1000</code>.
+	 */
+	public static final String MIRRORINTERVAL = "mirrorinterval";
+
+	/**
+	 * Specifies a directory where instrumented class files are cached. Agents
+	 * of different VMs can share the same directory. Default is
+	 * <code>null</code> (no cache).
+	 */
+	public static final String CACHEDIR = "cachedir";
+
+	/**
+	 * Specifies the number of background threads which instrument the classes
+	 * of the class path in advance. Default is <code>0</code> (disabled).
+	 */
+	public static final String PREINSTRUMENT = "preinstrument";
+
+	/**
+	 * Specifies whether classes are instrumented with a single probe per method
+	 * only. Coverage is then reported on method and class level only. Default
+	 * is <code>false</code>.
+	 */
+	public static final String METHODPROBES = "methodprobes";
+
+	/**
+	 * Specifies whether threads can bind coverage contexts which record the
+	 * executed probes separately. Default is <code>false</code>.
+	 */
+	public static final String CONTEXTS = "contexts";
+
+	/**
+	 * Specifies a file where the execution data of unloaded classes is moved
+	 * to. This limits the memory used by applications which continuously load
+	 * and unload classes. Default is <code>null</code> (execution data is
+	 * kept in memory).
+	 */
+	public static final String SPILLFILE = "spillfile";
+
 	private static final Collection<String> VALID_OPTIONS = Arrays.asList(
 			DESTFILE, APPEND, INCLUDES, EXCLUDES, EXCLCLASSLOADER, SESSIONID,
-			DUMPONEXIT, OUTPUT, ADDRESS, PORT, CLASSDUMPDIR, JMX);
+			DUMPONEXIT, OUTPUT, ADDRESS, PORT, CLASSDUMPDIR, JMX, COUNTERS,
+			CONDITIONALPROBES, DEINSTRUMENTINTERVAL, DUMPINTERVAL, DUMPKEEP,
+			MIRRORFILE, MIRRORINTERVAL, CACHEDIR, PREINSTRUMENT, METHODPROBES,
+			CONTEXTS, SPILLFILE);
 
 	private final Map<String, String> options;
 
@@ -488,6 +582,242 @@ public final class AgentOptions {
 		setOption(JMX, jmx);
 	}
 
+	/**
+	 * Returns whether classes are instrumented in counter mode.
+	 * 
+	 * @return <code>true</code>, when counter mode is enabled
+	 */
+	public boolean getCounters() {
+		return getOption(COUNTERS, false);
+	}
+
+	/**
+	 * Sets whether classes should be instrumented in counter mode.
+	 * 
+	 * @param counters
+	 *            <code>true</code> if counter mode should be enabled
+	 */
+	public void setCounters(final boolean counters) {
+		setOption(COUNTERS, counters);
+	}
+
+	/**
+	 * Returns whether conditional probes are enabled.
+	 * 
+	 * @return <code>true</code>, when conditional probes are enabled
+	 */
+	public boolean getConditionalProbes() {
+		return getOption(CONDITIONALPROBES, false);
+	}
+
+	/**
+	 * Sets whether conditional probes should be used.
+	 * 
+	 * @param conditionalProbes
+	 *            <code>true</code> if conditional probes should be used
+	 */
+	public void setConditionalProbes(final boolean conditionalProbes) {
+		setOption(CONDITIONALPROBES, conditionalProbes);
+	}
+
+	/**
+	 * Returns the interval in seconds in which fully covered classes are
+	 * replaced with versions without probes.
+	 * 
+	 * @return interval in seconds or <code>0</code> if disabled
+	 */
+	public int getDeinstrumentInterval() {
+		return getOption(DEINSTRUMENTINTERVAL, 0);
+	}
+
+	/**
+	 * Sets the interval in seconds in which fully covered classes are replaced
+	 * with versions without probes.
+	 * 
+	 * @param interval
+	 *            interval in seconds or <code>0</code> to disable
+	 */
+	public void setDeinstrumentInterval(final int interval) {
+		setOption(DEINSTRUMENTINTERVAL, interval);
+	}
+
+	/**
+	 * Returns the interval in seconds in which snapshots of the execution data
+	 * are written.
+	 * 
+	 * @return interval in seconds or <code>0</code> if disabled
+	 */
+	public int getDumpInterval() {
+		return getOption(DUMPINTERVAL, 0);
+	}
+
+	/**
+	 * Sets the interval in seconds in which snapshots of the execution data
+	 * are written.
+	 * 
+	 * @param interval
+	 *            interval in seconds or <code>0</code> to disable
+	 */
+	public void setDumpInterval(final int interval) {
+		setOption(DUMPINTERVAL, interval);
+	}
+
+	/**
+	 * Returns the number of periodic snapshot files which are kept.
+	 * 
+	 * @return number of snapshot files
+	 */
+	public int getDumpKeep() {
+		return getOption(DUMPKEEP, 1);
+	}
+
+	/**
+	 * Sets the number of periodic snapshot files which are kept.
+	 * 
+	 * @param keep
+	 *            number of snapshot files
+	 */
+	public void setDumpKeep(final int keep) {
+		setOption(DUMPKEEP, keep);
+	}
+
+	/**
+	 * Returns the file to which the probes are continuously mirrored.
+	 * 
+	 * @return mirror file or <code>null</code> if disabled
+	 */
+	public String getMirrorFile() {
+		return getOption(MIRRORFILE, null);
+	}
+
+	/**
+	 * Sets the file to which the probes are continuously mirrored.
+	 * 
+	 * @param mirrorfile
+	 *            mirror file or <code>null</code> to disable
+	 */
+	public void setMirrorFile(final String mirrorfile) {
+		setOption(MIRRORFILE, mirrorfile);
+	}
+
+	/**
+	 * Returns the interval in milliseconds in which the mirror file is
+	 * updated.
+	 * 
+	 * @return interval in milliseconds
+	 */
+	public int getMirrorInterval() {
+		return getOption(MIRRORINTERVAL, 1000);
+	}
+
+	/**
+	 * Sets the interval in milliseconds in which the mirror file is updated.
+	 * 
+	 * @param interval
+	 *            interval in milliseconds
+	 */
+	public void setMirrorInterval(final int interval) {
+		setOption(MIRRORINTERVAL, interval);
+	}
+
+	/**
+	 * Returns the directory where instrumented class files are cached.
+	 * 
+	 * @return cache location or <code>null</code> if disabled
+	 */
+	public String getCacheDir() {
+		return getOption(CACHEDIR, null);
+	}
+
+	/**
+	 * Sets the directory where instrumented class files are cached.
+	 * 
+	 * @param cachedir
+	 *            cache location or <code>null</code> to disable
+	 */
+	public void setCacheDir(final String cachedir) {
+		setOption(CACHEDIR, cachedir);
+	}
+
+	/**
+	 * Returns the number of background threads which instrument the classes
+	 * of the class path in advance.
+	 * 
+	 * @return number of threads, <code>0</code> if disabled
+	 */
+	public int getPreinstrument() {
+		return getOption(PREINSTRUMENT, 0);
+	}
+
+	/**
+	 * Sets the number of background threads which instrument the classes of
+	 * the class path in advance.
+	 * 
+	 * @param threads
+	 *            number of threads, <code>0</code> to disable
+	 */
+	public void setPreinstrument(final int threads) {
+		setOption(PREINSTRUMENT, threads);
+	}
+
+	/**
+	 * Returns whether classes are instrumented with method probes only.
+	 * 
+	 * @return <code>true</code>, when method probes are enabled
+	 */
+	public boolean getMethodProbes() {
+		return getOption(METHODPROBES, false);
+	}
+
+	/**
+	 * Sets whether classes should be instrumented with method probes only.
+	 * 
+	 * @param methodProbes
+	 *            <code>true</code> if method probes should be used
+	 */
+	public void setMethodProbes(final boolean methodProbes) {
+		setOption(METHODPROBES, methodProbes);
+	}
+
+	/**
+	 * Returns whether classes are instrumented for coverage contexts.
+	 * 
+	 * @return <code>true</code>, when coverage contexts are enabled
+	 */
+	public boolean getContexts() {
+		return getOption(CONTEXTS, false);
+	}
+
+	/**
+	 * Sets whether classes should be instrumented for coverage contexts.
+	 * 
+	 * @param contexts
+	 *            <code>true</code> if coverage contexts should be supported
+	 */
+	public void setContexts(final boolean contexts) {
+		setOption(CONTEXTS, contexts);
+	}
+
+	/**
+	 * Returns the file where the execution data of unloaded classes is moved
+	 * to.
+	 * 
+	 * @return spill file or <code>null</code> if disabled
+	 */
+	public String getSpillFile() {
+		return getOption(SPILLFILE, null);
+	}
+
+	/**
+	 * Sets the file where the execution data of unloaded classes is moved to.
+	 * 
+	 * @param spillfile
+	 *            spill file or <code>null</code> to disable
+	 */
+	public void setSpillFile(final String spillfile) {
+		setOption(SPILLFILE, spillfile);
+	}
+
 	private void setOption(final String key, final int value) {
 		setOption(key, Integer.toString(value));
 	}
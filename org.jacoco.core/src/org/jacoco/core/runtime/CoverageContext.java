@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jacoco.core.data.ExecutionData;
+
+/**
+ * Probe arrays of a named coverage context. Instrumented classes obtain the
+ * probe array of the context bound to the current thread through the JRE API
+ * method {@link Map#get(Object)}: The key is the regular probe array of the
+ * class, the value is the probe array of the class within the context. So
+ * contexts only hold probe arrays for classes which have been executed while
+ * the context was bound. As arrays inherit {@link Object#equals(Object)} and
+ * {@link Object#hashCode()} the probe arrays of a context are identified by
+ * the instance of the regular probe array.
+ * 
+ * Once a class is removed from the runtime, see
+ * {@link RuntimeData#spill(long[])}, its probes within the context are
+ * compacted to a bit set keyed by the class id. So the context does not retain
+ * the probe arrays of unloaded classes.
+ * 
+ * In violation of the regular semantic of {@link Map} the other methods of
+ * this class behave like an empty map.
+ */
+class CoverageContext extends AbstractMap<Object, Object> {
+
+	/**
+	 * Pseudo context for threads without bound context, which returns the
+	 * regular probe arrays.
+	 */
+	static final Map<Object, Object> NONE = new AbstractMap<Object, Object>() {
+
+		@Override
+		public Object get(final Object probes) {
+			return probes;
+		}
+
+		@Override
+		public Set<Map.Entry<Object, Object>> entrySet() {
+			return Collections.emptySet();
+		}
+	};
+
+	private final String name;
+
+	private final ConcurrentMap<Object, boolean[]> probes;
+
+	/** probes of released classes, only accessed under the runtime lock */
+	private final Map<Long, Released> released;
+
+	private long startTimeStamp;
+
+	/**
+	 * Creates a new empty context.
+	 * 
+	 * @param name
+	 *            name of the context
+	 * @param startTimeStamp
+	 *            time stamp of the creation
+	 */
+	CoverageContext(final String name, final long startTimeStamp) {
+		this.name = name;
+		this.probes = new ConcurrentHashMap<Object, boolean[]>();
+		this.released = new HashMap<Long, Released>();
+		this.startTimeStamp = startTimeStamp;
+	}
+
+	/**
+	 * @return name of this context
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * @return time stamp of the creation or the last reset of this context
+	 */
+	long getStartTimeStamp() {
+		return startTimeStamp;
+	}
+
+	/**
+	 * Sets the start time stamp, which is reported as the start of the next
+	 * session of this context.
+	 * 
+	 * @param startTimeStamp
+	 *            new start time stamp
+	 */
+	void setStartTimeStamp(final long startTimeStamp) {
+		this.startTimeStamp = startTimeStamp;
+	}
+
+	/**
+	 * Returns the probe array of this context for the class with the given
+	 * regular probe array. The array is created on first access, concurrent
+	 * calls always return the same instance.
+	 * 
+	 * @param original
+	 *            regular probe array of type <code>boolean[]</code>
+	 * @return probe array of type <code>boolean[]</code> within this context
+	 */
+	@Override
+	public Object get(final Object original) {
+		boolean[] result = probes.get(original);
+		if (result == null) {
+			result = new boolean[((boolean[]) original).length];
+			final boolean[] existing = probes.putIfAbsent(original, result);
+			if (existing != null) {
+				result = existing;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Releases the probe array of the given class. Executed probes are kept as
+	 * a bit set until they are captured with reset.
+	 * 
+	 * @param data
+	 *            regular execution data of the class
+	 */
+	void release(final ExecutionData data) {
+		final boolean[] p = probes.remove(data.getProbes());
+		if (p == null) {
+			return;
+		}
+		final Long key = Long.valueOf(data.getId());
+		Released r = released.get(key);
+		for (int i = 0; i < p.length; i++) {
+			if (p[i]) {
+				if (r == null) {
+					r = new Released(data.getName(), p.length);
+					released.put(key, r);
+				}
+				r.bits[i >> 6] |= 1L << i;
+			}
+		}
+	}
+
+	/**
+	 * Captures the executed probes of this context. With reset the probes are
+	 * captured and cleared individually.
+	 * 
+	 * @param classes
+	 *            regular execution data of all classes in the runtime
+	 * @param reset
+	 *            if <code>true</code> the probes are also cleared
+	 * @return execution data of the classes with executed probes
+	 */
+	Collection<ExecutionData> capture(final Collection<ExecutionData> classes,
+			final boolean reset) {
+		final Map<Long, ExecutionData> result = new LinkedHashMap<Long, ExecutionData>();
+		for (final ExecutionData data : classes) {
+			final boolean[] p = probes.get(data.getProbes());
+			if (p != null) {
+				final boolean[] captured = capture(p, reset);
+				if (captured != null) {
+					result.put(Long.valueOf(data.getId()), new ExecutionData(
+							data.getId(), data.getName(), captured));
+				}
+			}
+		}
+		for (final Map.Entry<Long, Released> entry : released.entrySet()) {
+			final Released r = entry.getValue();
+			ExecutionData data = result.get(entry.getKey());
+			if (data == null || data.getProbes().length != r.length) {
+				data = new ExecutionData(entry.getKey().longValue(), r.name,
+						new boolean[r.length]);
+				result.put(entry.getKey(), data);
+			}
+			final boolean[] captured = data.getProbes();
+			for (int i = 0; i < r.length; i++) {
+				captured[i] |= (r.bits[i >> 6] & (1L << i)) != 0;
+			}
+		}
+		if (reset) {
+			released.clear();
+		}
+		return new ArrayList<ExecutionData>(result.values());
+	}
+
+	/**
+	 * Copies the given probes, with reset set probes are captured and cleared
+	 * individually. Returns <code>null</code> if no probe is set.
+	 */
+	private static boolean[] capture(final boolean[] probes,
+			final boolean reset) {
+		boolean[] captured = null;
+		for (int i = 0; i < probes.length; i++) {
+			if (probes[i]) {
+				if (captured == null) {
+					captured = new boolean[probes.length];
+				}
+				captured[i] = true;
+				if (reset) {
+					probes[i] = false;
+				}
+			}
+		}
+		return captured;
+	}
+
+	/**
+	 * Clears all probes of this context.
+	 * 
+	 * @param startTimeStamp
+	 *            time stamp of the reset
+	 */
+	void reset(final long startTimeStamp) {
+		for (final boolean[] p : probes.values()) {
+			Arrays.fill(p, false);
+		}
+		released.clear();
+		this.startTimeStamp = startTimeStamp;
+	}
+
+	@Override
+	public Set<Map.Entry<Object, Object>> entrySet() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Executed probes of a released class.
+	 */
+	private static class Released {
+
+		final String name;
+
+		final int length;
+
+		final long[] bits;
+
+		Released(final String name, final int length) {
+			this.name = name;
+			this.length = length;
+			this.bits = new long[(length + 63) >> 6];
+		}
+	}
+
+}
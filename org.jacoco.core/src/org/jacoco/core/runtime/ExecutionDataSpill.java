@@ -0,0 +1,407 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.IExecutionDataVisitor;
+
+/**
+ * Append-only file for the execution data of classes which have been removed
+ * from a {@link RuntimeData} instance, see {@link RuntimeData#spill(long[])}.
+ * The spilled records are read back when execution data is collected. On
+ * reset the file is replaced with a new empty one. The same class may be
+ * spilled several times, e.g. if it is loaded by multiple class loaders, its
+ * records are merged by the consumers of the execution data.
+ *
+ * {@link #write(ExecutionData)} only serializes the record in memory, the
+ * data is written to disk by {@link #flush()}. This allows to spill classes
+ * while holding the lock of the {@link RuntimeData} instance and write the
+ * file after releasing it. The methods are thread safe. Segments returned by
+ * {@link #segment(boolean, boolean)} only read the records up to the file
+ * position at creation time, so they may be read concurrently to further
+ * writes and resets.
+ */
+public class ExecutionDataSpill {
+
+	private static final byte[] HEADER = ExecutionDataWriter.getFileHeader();
+
+	private final File file;
+
+	/** Serializes all modifications of the file itself. */
+	private final Object fileLock = new Object();
+
+	private final ByteArrayOutputStream buffer;
+
+	private final ExecutionDataWriter writer;
+
+	/** Serialized records not written to disk yet. */
+	private final List<byte[]> pending;
+
+	private FileOutputStream output;
+
+	/** Number of bytes written to disk. */
+	private long written;
+
+	/** Length of the file including the pending records. */
+	private long length;
+
+	private int records;
+
+	private long deltaOffset;
+
+	private int deltaRecords;
+
+	/**
+	 * Creates a new spill file at the given location. An existing file is
+	 * overwritten.
+	 * 
+	 * @param file
+	 *            location of the spill file
+	 * @throws IOException
+	 *             if the file can't be created
+	 */
+	public ExecutionDataSpill(final File file) throws IOException {
+		this.file = file;
+		this.buffer = new ByteArrayOutputStream();
+		this.writer = new ExecutionDataWriter(buffer);
+		this.pending = new ArrayList<byte[]>();
+		open();
+	}
+
+	/**
+	 * Creates a new empty file. Must be called while holding the file lock
+	 * and the monitor of this instance.
+	 */
+	private void open() throws IOException {
+		final File folder = file.getAbsoluteFile().getParentFile();
+		if (folder != null) {
+			folder.mkdirs();
+		}
+		output = new FileOutputStream(file);
+		output.write(HEADER);
+		pending.clear();
+		written = HEADER.length;
+		length = HEADER.length;
+		records = 0;
+		deltaOffset = HEADER.length;
+		deltaRecords = 0;
+	}
+
+	/**
+	 * Appends the given execution data to the file. The record is only
+	 * serialized in memory, it is written to disk with the next call of
+	 * {@link #flush()}.
+	 * 
+	 * @param data
+	 *            execution data to append
+	 */
+	public synchronized void write(final ExecutionData data) {
+		buffer.reset();
+		writer.visitClassExecution(data);
+		final byte[] record = buffer.toByteArray();
+		pending.add(record);
+		length += record.length;
+		records++;
+	}
+
+	/**
+	 * Writes all pending records to disk. If the records can't be written
+	 * they are kept and written with the next call.
+	 * 
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public void flush() throws IOException {
+		synchronized (fileLock) {
+			final List<byte[]> records;
+			synchronized (this) {
+				records = new ArrayList<byte[]>(pending);
+			}
+			long position = written;
+			try {
+				for (final byte[] record : records) {
+					output.write(record);
+					position += record.length;
+				}
+			} catch (final IOException e) {
+				// Remove partially written records, they are written again:
+				output.getChannel().truncate(written);
+				throw e;
+			}
+			synchronized (this) {
+				pending.subList(0, records.size()).clear();
+				written = position;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of records in the current file.
+	 * 
+	 * @return number of records
+	 */
+	public synchronized int getRecords() {
+		return records;
+	}
+
+	/**
+	 * Returns the records which have to be included in a collect call. The
+	 * segment keeps the file open until {@link Segment#accept} has been
+	 * called.
+	 * 
+	 * @param reset
+	 *            if <code>true</code> the current file is handed over to the
+	 *            segment and replaced with a new empty file
+	 * @param delta
+	 *            if <code>true</code> only the records spilled since the last
+	 *            delta segment are included
+	 * @return segment with the records to include
+	 * @throws IOException
+	 *             if the file can't be opened or replaced
+	 */
+	public Segment segment(final boolean reset, final boolean delta)
+			throws IOException {
+		if (reset) {
+			synchronized (fileLock) {
+				flush();
+				synchronized (this) {
+					final Segment segment = detach(delta);
+					open();
+					return segment;
+				}
+			}
+		}
+		synchronized (this) {
+			final long from = delta ? deltaOffset : HEADER.length;
+			final int size = records - (delta ? deltaRecords : 0);
+			if (delta) {
+				deltaOffset = length;
+				deltaRecords = records;
+			}
+			if (size == 0) {
+				return new Segment();
+			}
+			// Records which are still pending are flushed before reading:
+			return new Segment(this, new RandomAccessFile(file, "r"), null,
+					from, length, size);
+		}
+	}
+
+	/**
+	 * Closes the current file and moves it to a temporary file which is
+	 * owned by the returned segment. Must be called while holding the file
+	 * lock and the monitor of this instance after all records have been
+	 * flushed.
+	 */
+	private Segment detach(final boolean delta) throws IOException {
+		output.close();
+		final long from = delta ? deltaOffset : HEADER.length;
+		final int size = records - (delta ? deltaRecords : 0);
+		if (size == 0) {
+			file.delete();
+			return new Segment();
+		}
+		final File folder = file.getAbsoluteFile().getParentFile();
+		final File detached = File.createTempFile(file.getName(), ".tmp",
+				folder);
+		detached.delete();
+		if (!file.renameTo(detached)) {
+			throw new IOException("Can't rename " + file + " to " + detached);
+		}
+		return new Segment(null, new RandomAccessFile(detached, "r"),
+				detached, from, length, size);
+	}
+
+	/**
+	 * Discards all records. The file is replaced with a new empty one.
+	 * Segments created before are not affected.
+	 * 
+	 * @throws IOException
+	 *             if the file can't be replaced
+	 */
+	public void reset() throws IOException {
+		synchronized (fileLock) {
+			// Pending records may belong to segments which are not read yet:
+			flush();
+			synchronized (this) {
+				output.close();
+				file.delete();
+				open();
+			}
+		}
+	}
+
+	/**
+	 * Writes all pending records and closes the file. It is deleted if it
+	 * does not contain any records.
+	 * 
+	 * @throws IOException
+	 *             if the file can't be written or closed
+	 */
+	public void close() throws IOException {
+		synchronized (fileLock) {
+			flush();
+			synchronized (this) {
+				output.close();
+				if (records == 0) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A range of records of a spill file.
+	 */
+	public static class Segment {
+
+		private final ExecutionDataSpill spill;
+
+		private final RandomAccessFile input;
+
+		private final File detached;
+
+		private final long from;
+
+		private final long to;
+
+		private final int size;
+
+		private Segment() {
+			this(null, null, null, 0, 0, 0);
+		}
+
+		private Segment(final ExecutionDataSpill spill,
+				final RandomAccessFile input, final File detached,
+				final long from, final long to, final int size) {
+			this.spill = spill;
+			this.input = input;
+			this.detached = detached;
+			this.from = from;
+			this.to = to;
+			this.size = size;
+		}
+
+		/**
+		 * Returns the number of records in this segment.
+		 * 
+		 * @return number of records
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Writes the records of this segment to the given visitor and
+		 * releases the segment afterwards. A segment which has been detached
+		 * from the spill file by a reset is deleted.
+		 * 
+		 * @param visitor
+		 *            visitor to write the records to
+		 * @throws IOException
+		 *             if the file can't be read
+		 */
+		public void accept(final IExecutionDataVisitor visitor)
+				throws IOException {
+			try {
+				if (input != null) {
+					if (spill != null) {
+						spill.flush();
+					}
+					input.seek(from);
+					final InputStream in = new SequenceInputStream(
+							new ByteArrayInputStream(HEADER),
+							new BufferedInputStream(new Range(input, to - from)));
+					final ExecutionDataReader reader = new ExecutionDataReader(
+							in);
+					reader.setExecutionDataVisitor(visitor);
+					reader.read();
+				}
+			} finally {
+				close();
+			}
+		}
+
+		/**
+		 * Releases this segment, also if it has not been read.
+		 */
+		void close() {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (final IOException e) {
+					// The file has only been read, nothing is lost
+				}
+			}
+			if (detached != null) {
+				detached.delete();
+			}
+		}
+	}
+
+	/**
+	 * Stream of the bytes of a file up to a given length from its current
+	 * position. Records appended later are not visible.
+	 */
+	private static class Range extends InputStream {
+
+		private final RandomAccessFile file;
+
+		private long remaining;
+
+		Range(final RandomAccessFile file, final long length) {
+			this.file = file;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			final int b = file.read();
+			if (b != -1) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			final int count = file.read(b, off, (int) Math.min(len,
+					remaining));
+			if (count > 0) {
+				remaining -= count;
+			}
+			return count;
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe statistics about recorded values like durations or sizes. Beside
+ * count, total and maximum the distribution of the values is kept in buckets
+ * with power of two boundaries: Bucket 0 counts the value 0, bucket
+ * <code>i</code> counts values <code>v</code> with
+ * <code>2<sup>i-1</sup> &lt;= v &lt; 2<sup>i</sup></code>. Recording a value
+ * does not block and only costs a few atomic updates.
+ */
+public class Histogram {
+
+	private static final int BUCKETS = Long.SIZE;
+
+	private final AtomicLong count;
+
+	private final AtomicLong total;
+
+	private final AtomicLong max;
+
+	private final AtomicLongArray buckets;
+
+	/**
+	 * Creates a new empty histogram.
+	 */
+	public Histogram() {
+		count = new AtomicLong();
+		total = new AtomicLong();
+		max = new AtomicLong();
+		buckets = new AtomicLongArray(BUCKETS);
+	}
+
+	/**
+	 * Records the given value. Negative values are recorded as 0.
+	 * 
+	 * @param value
+	 *            value to record
+	 */
+	public void record(final long value) {
+		final long v = Math.max(value, 0);
+		count.incrementAndGet();
+		total.addAndGet(v);
+		buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(v));
+		long m = max.get();
+		while (v > m && !max.compareAndSet(m, v)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 * 
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the sum of all recorded values.
+	 * 
+	 * @return sum of all values
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * Returns the largest recorded value.
+	 * 
+	 * @return largest value or 0 if no value has been recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the number of values per bucket. Empty buckets at the end are
+	 * omitted, so the array is empty if no value has been recorded.
+	 * 
+	 * @return new array with the counts of all buckets
+	 */
+	public long[] getBuckets() {
+		int length = BUCKETS;
+		while (length > 0 && buckets.get(length - 1) == 0) {
+			length--;
+		}
+		final long[] result = new long[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = buckets.get(i);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+/**
+ * Optional extension for {@link IExecutionDataAccessorGenerator}
+ * implementations which can emit different accessor code depending on the
+ * class file version of the instrumented class. For example class files of
+ * version 51 (Java 7) or higher may use the <code>invokedynamic</code>
+ * instruction.
+ */
+public interface IClassVersionAccessorGenerator extends
+		IExecutionDataAccessorGenerator {
+
+	/**
+	 * Returns the generator which should be used for a class with the given
+	 * class file version.
+	 * 
+	 * @param version
+	 *            major class file version as defined in {@link org.objectweb.asm.Opcodes}
+	 * @return generator for the given class file version
+	 */
+	public IExecutionDataAccessorGenerator forClassVersion(int version);
+
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+/**
+ * Call-back for runtimes which have to know whether coverage contexts are in
+ * use, see {@link RuntimeData#setContextStateListener(IContextStateListener)}.
+ */
+public interface IContextStateListener {
+
+	/**
+	 * Called when the first thread binds a coverage context and when no
+	 * thread has a bound context anymore. The activation is reported by the
+	 * binding thread before it continues, so the state can be published
+	 * without synchronization: Only the binding thread has to see it, for all
+	 * other threads the context lookup returns their regular probe arrays
+	 * anyway. Calls are serialized by the runtime.
+	 * 
+	 * @param active
+	 *            <code>true</code> if at least one thread has a bound context
+	 */
+	public void setContextsActive(boolean active);
+
+}
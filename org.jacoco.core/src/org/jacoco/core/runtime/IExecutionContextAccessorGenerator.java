@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * Optional extension for {@link IExecutionDataAccessorGenerator}
+ * implementations which support coverage contexts. Classes instrumented for
+ * coverage contexts replace the probe array at the entry of every method with
+ * the probe array of the context bound to the current thread, see
+ * {@link RuntimeData#bindContext(String)}. The lookup is only performed while
+ * a flag maintained by the runtime indicates that contexts are in use.
+ */
+public interface IExecutionContextAccessorGenerator extends
+		IExecutionDataAccessorGenerator {
+
+	/**
+	 * This method generates the byte code required to obtain the holder of
+	 * the coverage context of the current thread. The same restrictions as for
+	 * {@link #generateDataAccessor(long, String, int, MethodVisitor)} apply.
+	 * 
+	 * The generated code must push the {@link ThreadLocal} instance returned
+	 * by {@link RuntimeData#getContextAccess()} to the operand stack.
+	 * 
+	 * @param mv
+	 *            code output
+	 * @return additional stack size required by the implementation, including
+	 *         the instance pushed to the stack
+	 */
+	public int generateContextAccessor(MethodVisitor mv);
+
+	/**
+	 * This method generates the byte code required to obtain the flag which
+	 * indicates whether coverage contexts are in use. The same restrictions
+	 * as for {@link #generateDataAccessor(long, String, int, MethodVisitor)}
+	 * apply.
+	 * 
+	 * The generated code must push a non-zero <code>int</code> value to the
+	 * operand stack while at least one thread has a bound context, see
+	 * {@link IContextStateListener}. Reading the flag must be cheap, as it is
+	 * evaluated at the entry of every method. A plain static field is
+	 * sufficient, it should not be volatile.
+	 * 
+	 * @param mv
+	 *            code output
+	 * @return additional stack size required by the implementation, including
+	 *         the value pushed to the stack
+	 */
+	public int generateContextFlagAccessor(MethodVisitor mv);
+
+}
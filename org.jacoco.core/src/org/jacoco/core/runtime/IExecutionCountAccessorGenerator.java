@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * Optional extension for {@link IExecutionDataAccessorGenerator}
+ * implementations which support classes instrumented in counter mode. In
+ * counter mode probes increment a counter instead of setting a flag.
+ */
+public interface IExecutionCountAccessorGenerator extends
+		IExecutionDataAccessorGenerator {
+
+	/**
+	 * This method generates the byte code required to obtain the execution
+	 * counters for the class with the given id. The same restrictions as for
+	 * {@link #generateDataAccessor(long, String, int, MethodVisitor)} apply.
+	 * 
+	 * The generated code must push a <code>long[][]</code> instance to the
+	 * operand stack, as returned by
+	 * {@link RuntimeData#getExecutionCounters(long, String, int)}.
+	 * 
+	 * @param classid
+	 *            identifier of the class
+	 * @param classname
+	 *            VM class name
+	 * @param probecount
+	 *            probe count for this class
+	 * @param mv
+	 *            code output
+	 * @return additional stack size required by the implementation, including
+	 *         the instance pushed to the stack
+	 */
+	public int generateCountAccessor(final long classid,
+			final String classname, final int probecount, MethodVisitor mv);
+
+}
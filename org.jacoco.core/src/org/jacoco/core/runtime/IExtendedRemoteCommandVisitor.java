@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+import java.io.IOException;
+
+/**
+ * Extension of {@link IRemoteCommandVisitor} for the delta and compressed
+ * dump commands. {@link RemoteControlReader} only dispatches these commands
+ * to visitors implementing this interface, so existing implementations of
+ * {@link IRemoteCommandVisitor} remain valid.
+ */
+public interface IExtendedRemoteCommandVisitor extends IRemoteCommandVisitor {
+
+	/**
+	 * Requests a dump of the execution data of all classes which have changed
+	 * since the last delta dump, with an optional reset.
+	 * 
+	 * @param reset
+	 *            <code>true</code> if the reset should be executed
+	 * @throws IOException
+	 *             in case of problems with the remote connection
+	 */
+	public void visitDeltaDumpCommand(final boolean reset) throws IOException;
+
+	/**
+	 * Requests a execution data dump with an optional reset. The execution
+	 * data is sent as a single deflate compressed block, see
+	 * {@link RemoteControlWriter#sendCompressed(byte[], int, int)}.
+	 * 
+	 * @param reset
+	 *            <code>true</code> if the reset should be executed
+	 * @throws IOException
+	 *             in case of problems with the remote connection
+	 */
+	public void visitCompressedDumpCommand(final boolean reset)
+			throws IOException;
+
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *    
+ *******************************************************************************/
+package org.jacoco.core.runtime;
+
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Accessor generator which emits a single <code>invokedynamic</code>
+ * instruction. The class id, the class name and the probe count are passed as
+ * static bootstrap arguments. The bootstrap method is expected to bind the call
+ * site to a constant <code>boolean[]</code> so that no allocation or
+ * reflective call happens on subsequent executions. The generated code can
+ * only be used in class files of version 51 (Java 7) or higher.
+ */
+public class InvokeDynamicAccessorGenerator implements
+		IExecutionDataAccessorGenerator {
+
+	/**
+	 * Descriptor of the bootstrap method referenced by the generated call
+	 * sites. The three static arguments are the class id ({@link Long}), the
+	 * VM class name ({@link String}) and the probe count ({@link Integer}).
+	 */
+	public static final String BOOTSTRAP_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/Long;Ljava/lang/String;Ljava/lang/Integer;)Ljava/lang/invoke/CallSite;";
+
+	private static final String CALLSITE_DESC = "()" + InstrSupport.DATAFIELD_DESC;
+
+	private final Handle bootstrap;
+
+	/**
+	 * Creates a new generator which references the given bootstrap method.
+	 * 
+	 * @param owner
+	 *            VM name of the class declaring the bootstrap method
+	 * @param name
+	 *            name of the public static bootstrap method with descriptor
+	 *            {@link #BOOTSTRAP_DESC}
+	 */
+	public InvokeDynamicAccessorGenerator(final String owner, final String name) {
+		this.bootstrap = new Handle(Opcodes.H_INVOKESTATIC, owner, name,
+				BOOTSTRAP_DESC);
+	}
+
+	public int generateDataAccessor(final long classid, final String classname,
+			final int probecount, final MethodVisitor mv) {
+		mv.visitInvokeDynamicInsn(InstrSupport.DATAFIELD_NAME, CALLSITE_DESC,
+				bootstrap, Long.valueOf(classid), classname,
+				Integer.valueOf(probecount));
+		return 1;
+	}
+
+}
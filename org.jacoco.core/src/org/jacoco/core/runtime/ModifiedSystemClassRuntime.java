@@ -17,6 +17,7 @@ import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.security.ProtectionDomain;
 
 import org.jacoco.core.JaCoCo;
@@ -25,23 +26,52 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 /**
  * This {@link IRuntime} implementation works with a modified system class. A
  * new static method is added to a bootstrap class that will be used by
  * instrumented classes. As the system class itself needs to be instrumented
  * this runtime requires a Java agent.
+ * 
+ * If the system class has class file version 51 (Java 7) or higher a static
+ * bootstrap method is added in addition. Instrumented classes of version 51 or
+ * higher then obtain their probe array through a <code>invokedynamic</code>
+ * call site which is bound once to the constant probe array.
+ * 
+ * For coverage contexts two more static fields are added to the system class.
+ * The field with the access field name and the suffix <code>Context</code>
+ * holds the {@link RuntimeData#getContextAccess()} instance. The field with the
+ * suffix <code>ContextActive</code> is maintained through a
+ * {@link IContextStateListener} and tells instrumented classes whether the
+ * context has to be looked up at all. The field is intentionally not volatile,
+ * a volatile read on every method entry prevents loop optimizations of the
+ * JIT compiler.
  */
-public class ModifiedSystemClassRuntime extends AbstractRuntime {
+public class ModifiedSystemClassRuntime extends AbstractRuntime implements
+		IClassVersionAccessorGenerator, IExecutionCountAccessorGenerator,
+		IExecutionContextAccessorGenerator {
 
 	private static final String ACCESS_FIELD_TYPE = "Ljava/lang/Object;";
 
+	private static final String CONTEXT_FIELD_TYPE = "Ljava/lang/ThreadLocal;";
+
+	private static final String CONTEXT_NAME_SUFFIX = "Context";
+
+	private static final String CONTEXT_ACTIVE_FIELD_TYPE = "Z";
+
+	private static final String CONTEXT_ACTIVE_NAME_SUFFIX = "ContextActive";
+
+	private static final String BOOTSTRAP_NAME_SUFFIX = "Bootstrap";
+
 	private final Class<?> systemClass;
 
 	private final String systemClassName;
 
 	private final String accessFieldName;
 
+	private final IExecutionDataAccessorGenerator indyGenerator;
+
 	/**
 	 * Creates a new runtime based on the given class and members.
 	 * 
@@ -53,10 +83,33 @@ public class ModifiedSystemClassRuntime extends AbstractRuntime {
 	 */
 	public ModifiedSystemClassRuntime(final Class<?> systemClass,
 			final String accessFieldName) {
+		this(systemClass, accessFieldName, null);
+	}
+
+	/**
+	 * Creates a new runtime based on the given class and members.
+	 * 
+	 * @param systemClass
+	 *            system class that contains the execution data
+	 * @param accessFieldName
+	 *            name of the public static runtime access field
+	 * @param bootstrapMethodName
+	 *            name of the public static bootstrap method for
+	 *            <code>invokedynamic</code> call sites or <code>null</code>
+	 *            if no such method is available
+	 */
+	public ModifiedSystemClassRuntime(final Class<?> systemClass,
+			final String accessFieldName, final String bootstrapMethodName) {
 		super();
 		this.systemClass = systemClass;
 		this.systemClassName = systemClass.getName().replace('.', '/');
 		this.accessFieldName = accessFieldName;
+		if (bootstrapMethodName == null) {
+			this.indyGenerator = this;
+		} else {
+			this.indyGenerator = new InvokeDynamicAccessorGenerator(
+					systemClassName, bootstrapMethodName);
+		}
 	}
 
 	@Override
@@ -64,6 +117,27 @@ public class ModifiedSystemClassRuntime extends AbstractRuntime {
 		super.startup(data);
 		final Field field = systemClass.getField(accessFieldName);
 		field.set(null, data);
+		final Field contextField;
+		final Field activeField;
+		try {
+			contextField = systemClass.getField(accessFieldName
+					+ CONTEXT_NAME_SUFFIX);
+			activeField = systemClass.getField(accessFieldName
+					+ CONTEXT_ACTIVE_NAME_SUFFIX);
+		} catch (final NoSuchFieldException e) {
+			// Coverage contexts are not supported by this system class
+			return;
+		}
+		contextField.set(null, data.getContextAccess());
+		data.setContextStateListener(new IContextStateListener() {
+			public void setContextsActive(final boolean active) {
+				try {
+					activeField.setBoolean(null, active);
+				} catch (final IllegalAccessException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
 	}
 
 	public void shutdown() {
@@ -81,6 +155,33 @@ public class ModifiedSystemClassRuntime extends AbstractRuntime {
 		return 6;
 	}
 
+	public int generateCountAccessor(final long classid,
+			final String classname, final int probecount, final MethodVisitor mv) {
+
+		mv.visitFieldInsn(Opcodes.GETSTATIC, systemClassName, accessFieldName,
+				ACCESS_FIELD_TYPE);
+
+		RuntimeData.generateCountAccessCall(classid, classname, probecount, mv);
+
+		return 6;
+	}
+
+	public int generateContextAccessor(final MethodVisitor mv) {
+		mv.visitFieldInsn(Opcodes.GETSTATIC, systemClassName, accessFieldName
+				+ CONTEXT_NAME_SUFFIX, CONTEXT_FIELD_TYPE);
+		return 1;
+	}
+
+	public int generateContextFlagAccessor(final MethodVisitor mv) {
+		mv.visitFieldInsn(Opcodes.GETSTATIC, systemClassName, accessFieldName
+				+ CONTEXT_ACTIVE_NAME_SUFFIX, CONTEXT_ACTIVE_FIELD_TYPE);
+		return 1;
+	}
+
+	public IExecutionDataAccessorGenerator forClassVersion(final int version) {
+		return version >= Opcodes.V1_7 ? indyGenerator : this;
+	}
+
 	/**
 	 * Creates a new {@link ModifiedSystemClassRuntime} using the given class as
 	 * the data container. Members are creates with internal default names. The
@@ -139,12 +240,26 @@ public class ModifiedSystemClassRuntime extends AbstractRuntime {
 			throw new RuntimeException(format(
 					"Class %s could not be instrumented.", className), e);
 		}
-		return new ModifiedSystemClassRuntime(clazz, accessFieldName);
+		final String bootstrapName = accessFieldName + BOOTSTRAP_NAME_SUFFIX;
+		return new ModifiedSystemClassRuntime(clazz, accessFieldName,
+				hasMethod(clazz, bootstrapName) ? bootstrapName : null);
+	}
+
+	private static boolean hasMethod(final Class<?> clazz, final String name) {
+		for (final Method m : clazz.getMethods()) {
+			if (m.getName().equals(name)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
-	 * Adds the static access method and data field to the given class
-	 * definition.
+	 * Adds the static access method and data fields to the given class
+	 * definition. For class files of version 51 (Java 7) or higher a public
+	 * static bootstrap method for <code>invokedynamic</code> call sites is
+	 * added in addition. Its name is the access field name with the suffix
+	 * <code>Bootstrap</code>.
 	 * 
 	 * @param source
 	 *            class definition source
@@ -158,9 +273,30 @@ public class ModifiedSystemClassRuntime extends AbstractRuntime {
 		final ClassWriter writer = new ClassWriter(reader, 0);
 		reader.accept(new ClassVisitor(JaCoCo.ASM_API_VERSION, writer) {
 
+			private String className;
+
+			private boolean withBootstrap;
+
+			@Override
+			public void visit(final int version, final int access,
+					final String name, final String signature,
+					final String superName, final String[] interfaces) {
+				className = name;
+				withBootstrap = (version & 0xff) >= Opcodes.V1_7;
+				super.visit(version, access, name, signature, superName,
+						interfaces);
+			}
+
 			@Override
 			public void visitEnd() {
-				createDataField(cv, accessFieldName);
+				createDataField(cv, accessFieldName, ACCESS_FIELD_TYPE);
+				createDataField(cv, accessFieldName + CONTEXT_NAME_SUFFIX,
+						CONTEXT_FIELD_TYPE);
+				createDataField(cv, accessFieldName
+						+ CONTEXT_ACTIVE_NAME_SUFFIX, CONTEXT_ACTIVE_FIELD_TYPE);
+				if (withBootstrap) {
+					createBootstrapMethod(cv, className, accessFieldName);
+				}
 				super.visitEnd();
 			}
 
@@ -169,10 +305,62 @@ public class ModifiedSystemClassRuntime extends AbstractRuntime {
 	}
 
 	private static void createDataField(final ClassVisitor visitor,
-			final String dataField) {
+			final String dataField, final String desc) {
 		visitor.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC
 				| Opcodes.ACC_SYNTHETIC | Opcodes.ACC_TRANSIENT, dataField,
-				ACCESS_FIELD_TYPE, null, null);
+				desc, null, null);
+	}
+
+	/**
+	 * Creates the bootstrap method for {@link InvokeDynamicAccessorGenerator}.
+	 * The method requests the probe array once through the access field and
+	 * binds the call site to it.
+	 */
+	private static void createBootstrapMethod(final ClassVisitor visitor,
+			final String className, final String dataField) {
+		final MethodVisitor mv = visitor.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, dataField
+				+ BOOTSTRAP_NAME_SUFFIX,
+				InvokeDynamicAccessorGenerator.BOOTSTRAP_DESC, null, null);
+		mv.visitCode();
+
+		// Argument array from the static bootstrap arguments:
+		mv.visitInsn(Opcodes.ICONST_3);
+		mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+		for (int i = 0; i < 3; i++) {
+			mv.visitInsn(Opcodes.DUP);
+			mv.visitInsn(Opcodes.ICONST_0 + i);
+			mv.visitVarInsn(Opcodes.ALOAD, 3 + i);
+			mv.visitInsn(Opcodes.AASTORE);
+		}
+		mv.visitVarInsn(Opcodes.ASTORE, 6);
+
+		// Request the probe array from the runtime:
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className, dataField,
+				ACCESS_FIELD_TYPE);
+		mv.visitVarInsn(Opcodes.ALOAD, 6);
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "equals",
+				"(Ljava/lang/Object;)Z");
+		mv.visitInsn(Opcodes.POP);
+
+		// new ConstantCallSite(MethodHandles.constant(boolean[].class, args[0]))
+		mv.visitTypeInsn(Opcodes.NEW, "java/lang/invoke/ConstantCallSite");
+		mv.visitInsn(Opcodes.DUP);
+		mv.visitLdcInsn(Type.getType("[Z"));
+		mv.visitVarInsn(Opcodes.ALOAD, 6);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitInsn(Opcodes.AALOAD);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC,
+				"java/lang/invoke/MethodHandles", "constant",
+				"(Ljava/lang/Class;Ljava/lang/Object;)"
+						+ "Ljava/lang/invoke/MethodHandle;");
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL,
+				"java/lang/invoke/ConstantCallSite", "<init>",
+				"(Ljava/lang/invoke/MethodHandle;)V");
+		mv.visitInsn(Opcodes.ARETURN);
+
+		mv.visitMaxs(5, 7);
+		mv.visitEnd();
 	}
 
 }
@@ -11,10 +11,14 @@
  *******************************************************************************/
 package org.jacoco.core.runtime;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
 
 /**
  * {@link ExecutionDataReader} with commands added for runtime remote control.
@@ -23,6 +27,10 @@ public class RemoteControlReader extends ExecutionDataReader {
 
 	private IRemoteCommandVisitor remoteCommandVisitor;
 
+	private ISessionInfoVisitor sessionInfoVisitor;
+
+	private IExecutionDataVisitor executionDataVisitor;
+
 	/**
 	 * Create a new read based on the given input stream.
 	 * 
@@ -41,6 +49,12 @@ public class RemoteControlReader extends ExecutionDataReader {
 		case RemoteControlWriter.BLOCK_CMDDUMP:
 			readDumpCommand();
 			return true;
+		case RemoteControlWriter.BLOCK_CMDDUMPDELTA:
+			readDeltaDumpCommand();
+			return true;
+		case RemoteControlWriter.BLOCK_COMPRESSED:
+			readCompressed();
+			return true;
 		case RemoteControlWriter.BLOCK_CMDOK:
 			return false;
 		default:
@@ -48,8 +62,24 @@ public class RemoteControlReader extends ExecutionDataReader {
 		}
 	}
 
+	@Override
+	public void setSessionInfoVisitor(final ISessionInfoVisitor visitor) {
+		super.setSessionInfoVisitor(visitor);
+		this.sessionInfoVisitor = visitor;
+	}
+
+	@Override
+	public void setExecutionDataVisitor(final IExecutionDataVisitor visitor) {
+		super.setExecutionDataVisitor(visitor);
+		this.executionDataVisitor = visitor;
+	}
+
 	/**
-	 * Sets an listener for agent commands.
+	 * Sets an listener for agent commands. Delta and compressed dump commands
+	 * are only dispatched to visitors implementing
+	 * {@link IExtendedRemoteCommandVisitor}. Other visitors receive a plain
+	 * dump command for compressed dump commands, delta dump commands are
+	 * rejected with an {@link IOException}.
 	 * 
 	 * @param visitor
 	 *            visitor to retrieve agent commands
@@ -59,12 +89,46 @@ public class RemoteControlReader extends ExecutionDataReader {
 	}
 
 	private void readDumpCommand() throws IOException {
+		assertRemoteCommandVisitor();
+		final byte flags = in.readByte();
+		final boolean reset = in.readBoolean();
+		final int compressed = flags & RemoteControlWriter.FLAG_COMPRESSED;
+		if (compressed != 0 && isExtended()) {
+			((IExtendedRemoteCommandVisitor) remoteCommandVisitor)
+					.visitCompressedDumpCommand(reset);
+		} else {
+			remoteCommandVisitor.visitDumpCommand(flags != 0, reset);
+		}
+	}
+
+	private void readDeltaDumpCommand() throws IOException {
+		assertRemoteCommandVisitor();
+		final boolean reset = in.readBoolean();
+		if (!isExtended()) {
+			throw new IOException("Delta dump command not supported.");
+		}
+		((IExtendedRemoteCommandVisitor) remoteCommandVisitor)
+				.visitDeltaDumpCommand(reset);
+	}
+
+	private void readCompressed() throws IOException {
+		final byte[] buffer = new byte[in.readVarInt()];
+		in.readFully(buffer);
+		final ExecutionDataReader reader = new ExecutionDataReader(
+				new InflaterInputStream(new ByteArrayInputStream(buffer)));
+		reader.setSessionInfoVisitor(sessionInfoVisitor);
+		reader.setExecutionDataVisitor(executionDataVisitor);
+		reader.read();
+	}
+
+	private boolean isExtended() {
+		return remoteCommandVisitor instanceof IExtendedRemoteCommandVisitor;
+	}
+
+	private void assertRemoteCommandVisitor() throws IOException {
 		if (remoteCommandVisitor == null) {
 			throw new IOException("No remote command visitor.");
 		}
-		final boolean dump = in.readBoolean();
-		final boolean reset = in.readBoolean();
-		remoteCommandVisitor.visitDumpCommand(dump, reset);
 	}
 
 }
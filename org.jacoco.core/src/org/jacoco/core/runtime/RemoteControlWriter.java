@@ -20,14 +20,30 @@ import org.jacoco.core.data.ExecutionDataWriter;
  * {@link ExecutionDataWriter} with commands added for runtime remote control.
  */
 public class RemoteControlWriter extends ExecutionDataWriter implements
-		IRemoteCommandVisitor {
+		IExtendedRemoteCommandVisitor {
 
 	/** Block identifier to confirm successful command execution. */
 	public static final byte BLOCK_CMDOK = 0x20;
 
+	/**
+	 * Block identifier for execution data which is compressed with a
+	 * {@link java.util.zip.Deflater}.
+	 */
+	public static final byte BLOCK_COMPRESSED = 0x21;
+
 	/** Block identifier for dump command */
 	public static final byte BLOCK_CMDDUMP = 0x40;
 
+	/** Block identifier for delta dump command */
+	public static final byte BLOCK_CMDDUMPDELTA = 0x41;
+
+	/**
+	 * Flag in the dump command to request a compressed response. Runtimes
+	 * which do not support compression read the flags as a plain
+	 * <code>true</code> and respond with uncompressed execution data.
+	 */
+	static final byte FLAG_COMPRESSED = 0x02;
+
 	/**
 	 * Creates a new writer based on the given output stream.
 	 * 
@@ -51,6 +67,27 @@ public class RemoteControlWriter extends ExecutionDataWriter implements
 		out.writeByte(RemoteControlWriter.BLOCK_CMDOK);
 	}
 
+	/**
+	 * Sends execution data as a single compressed block. The compressed
+	 * content is a complete execution data stream including its header,
+	 * deflated with {@link java.util.zip.DeflaterOutputStream}.
+	 * 
+	 * @param buffer
+	 *            buffer containing the compressed execution data
+	 * @param offset
+	 *            offset of the compressed execution data in the buffer
+	 * @param length
+	 *            length of the compressed execution data
+	 * @throws IOException
+	 *             in case of problems with the remote connection
+	 */
+	public void sendCompressed(final byte[] buffer, final int offset,
+			final int length) throws IOException {
+		out.writeByte(RemoteControlWriter.BLOCK_COMPRESSED);
+		out.writeVarInt(length);
+		out.write(buffer, offset, length);
+	}
+
 	public void visitDumpCommand(final boolean dump, final boolean reset)
 			throws IOException {
 		out.writeByte(RemoteControlWriter.BLOCK_CMDDUMP);
@@ -58,4 +95,16 @@ public class RemoteControlWriter extends ExecutionDataWriter implements
 		out.writeBoolean(reset);
 	}
 
+	public void visitDeltaDumpCommand(final boolean reset) throws IOException {
+		out.writeByte(RemoteControlWriter.BLOCK_CMDDUMPDELTA);
+		out.writeBoolean(reset);
+	}
+
+	public void visitCompressedDumpCommand(final boolean reset)
+			throws IOException {
+		out.writeByte(RemoteControlWriter.BLOCK_CMDDUMP);
+		out.writeByte(1 | FLAG_COMPRESSED);
+		out.writeBoolean(reset);
+	}
+
 }
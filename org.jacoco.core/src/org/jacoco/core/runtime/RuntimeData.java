@@ -11,11 +11,27 @@
  *******************************************************************************/
 package org.jacoco.core.runtime;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.data.IExecutionDataVisitor;
 import org.jacoco.core.data.ISessionInfoVisitor;
 import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.internal.data.LongKeyTable;
 import org.jacoco.core.internal.instr.InstrSupport;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -26,18 +42,86 @@ import org.objectweb.asm.Opcodes;
  */
 public class RuntimeData {
 
+	/**
+	 * Marker in the last element of the argument array which requests the
+	 * execution counters instead of the probe array, see
+	 * {@link #getCounters(Object[])}.
+	 */
+	public static final String COUNTERS_REQUEST = InstrSupport.COUNTERFIELD_DESC;
+
 	/** store for execution data */
 	protected final ExecutionDataStore store;
 
+	/** execution counters of classes instrumented in counter mode */
+	private final LongKeyTable<Counters> counters;
+
+	/** ids of classes which are permanently considered as fully covered */
+	private final Set<Long> retired;
+
+	/** state of every class at the time of the last delta collect */
+	private final Map<Long, long[]> dumped;
+
+	/** probes cleared by collectHits() which are still reported by collect */
+	private final Map<Long, boolean[]> hits;
+
+	/** whether collectHits() has been called, which disables retirement */
+	private boolean hitsCollected;
+
+	/** coverage contexts by name */
+	private final ConcurrentMap<String, CoverageContext> contexts;
+
+	/** coverage context bound to the current thread */
+	private final ThreadLocal<Map<Object, Object>> contextAccess;
+
+	/** threads with a bound coverage context, guarded by itself */
+	private final Map<Thread, Boolean> boundThreads;
+
+	/** whether at least one thread had a bound context at the last update */
+	private boolean contextsActive;
+
+	private IContextStateListener contextStateListener;
+
+	/** file for the execution data of removed classes or <code>null</code> */
+	private ExecutionDataSpill spill;
+
 	private long startTimeStamp;
 
 	private String sessionId;
 
+	/** durations of {@link #getExecutionData(long, String, int)} calls */
+	private final Histogram requestTimes;
+
+	/** durations of collect calls */
+	private final Histogram collectTimes;
+
+	/** number of classes written by collect calls */
+	private final Histogram collectSizes;
+
 	/**
 	 * Creates a new runtime.
 	 */
 	public RuntimeData() {
 		store = new ExecutionDataStore();
+		counters = new LongKeyTable<Counters>() {
+			@Override
+			protected long getId(final Counters entry) {
+				return entry.data.getId();
+			}
+		};
+		retired = new HashSet<Long>();
+		dumped = new HashMap<Long, long[]>();
+		hits = new HashMap<Long, boolean[]>();
+		contexts = new ConcurrentHashMap<String, CoverageContext>();
+		contextAccess = new ThreadLocal<Map<Object, Object>>() {
+			@Override
+			protected Map<Object, Object> initialValue() {
+				return CoverageContext.NONE;
+			}
+		};
+		boundThreads = new WeakHashMap<Thread, Boolean>();
+		requestTimes = new Histogram();
+		collectTimes = new Histogram();
+		collectSizes = new Histogram();
 		sessionId = "<none>";
 		startTimeStamp = System.currentTimeMillis();
 	}
@@ -80,15 +164,372 @@ public class RuntimeData {
 	 */
 	public final void collect(final IExecutionDataVisitor executionDataVisitor,
 			final ISessionInfoVisitor sessionInfoVisitor, final boolean reset) {
+		collect(executionDataVisitor, sessionInfoVisitor, reset, false);
+	}
+
+	/**
+	 * Collects the current execution data and writes it to the given
+	 * {@link IExecutionDataVisitor} object. The execution data is copied while
+	 * the runtime is locked, the visitors are called afterwards. So slow
+	 * visitors do not block other threads accessing the runtime. With reset
+	 * every probe is captured and cleared individually, so probes executed
+	 * concurrently are either reported by this call or remain set. In delta
+	 * mode only classes which have executed new probes since the last delta
+	 * collect or reset are written. Execution counts in delta mode contain the
+	 * increments since then, so the results of subsequent delta collects can
+	 * be merged into a single {@link ExecutionDataStore}. Every coverage
+	 * context with executed probes is written as a separate session after the
+	 * regular execution data, see {@link #bindContext(String)}. Coverage
+	 * contexts are always written completely, also in delta mode. The
+	 * execution data of classes moved to the spill file, see
+	 * {@link #spill(long[])}, is written after the regular execution data. In
+	 * delta mode only classes spilled since the last delta collect are
+	 * written.
+	 * 
+	 * @param executionDataVisitor
+	 *            handler to write coverage data to
+	 * @param sessionInfoVisitor
+	 *            handler to write session information to
+	 * @param reset
+	 *            if <code>true</code> the current coverage information is also
+	 *            cleared
+	 * @param delta
+	 *            if <code>true</code> only changed classes are written
+	 */
+	public final void collect(final IExecutionDataVisitor executionDataVisitor,
+			final ISessionInfoVisitor sessionInfoVisitor, final boolean reset,
+			final boolean delta) {
+		final long start = System.nanoTime();
+		updateContextState();
+		final SessionInfo info;
+		final Collection<ExecutionData> snapshot;
+		final Map<SessionInfo, Collection<ExecutionData>> contextSnapshots;
+		final ExecutionDataSpill.Segment spilled;
 		synchronized (store) {
-			final SessionInfo info = new SessionInfo(sessionId, startTimeStamp,
+			info = new SessionInfo(sessionId, startTimeStamp,
 					System.currentTimeMillis());
+			sumCounters();
+			if (reset) {
+				resetCounters();
+			}
+			snapshot = delta ? snapshotDelta(reset) : snapshot(reset);
+			contextSnapshots = snapshotContexts(info.getDumpTimeStamp(), reset);
+			spilled = segment(reset, delta);
+			if (reset) {
+				resetState();
+			}
+		}
+		// Visitors may perform I/O, therefore the lock is not held anymore:
+		int size = snapshot.size();
+		try {
 			sessionInfoVisitor.visitSessionInfo(info);
-			store.accept(executionDataVisitor);
+			for (final ExecutionData data : snapshot) {
+				executionDataVisitor.visitClassExecution(data);
+			}
+			if (spilled != null) {
+				accept(spilled, executionDataVisitor);
+				size += spilled.size();
+			}
+		} finally {
+			if (spilled != null) {
+				spilled.close();
+			}
+		}
+		for (final SessionInfo contextInfo : contextSnapshots.keySet()) {
+			sessionInfoVisitor.visitSessionInfo(contextInfo);
+			final Collection<ExecutionData> contents = contextSnapshots
+					.get(contextInfo);
+			for (final ExecutionData data : contents) {
+				executionDataVisitor.visitClassExecution(data);
+			}
+			size += contents.size();
+		}
+		collectTimes.record(System.nanoTime() - start);
+		collectSizes.record(size);
+	}
+
+	/**
+	 * Writes the current execution data of all classes to the given visitors
+	 * without copying the probes. The runtime is only locked to take the list
+	 * of classes. The probe arrays passed to the visitor are the ones used by
+	 * the instrumented classes, so they are modified concurrently and must
+	 * neither be modified nor retained by the visitor. Execution counts are
+	 * not reported. This allows to frequently mirror the probes with low
+	 * overhead. Probes moved by {@link #collectHits(IExecutionDataVisitor)}
+	 * are not included.
+	 * 
+	 * @param executionDataVisitor
+	 *            handler to write the live execution data to
+	 * @param sessionInfoVisitor
+	 *            handler to write session information to
+	 */
+	public final void acceptLive(
+			final IExecutionDataVisitor executionDataVisitor,
+			final ISessionInfoVisitor sessionInfoVisitor) {
+		acceptLive(executionDataVisitor, sessionInfoVisitor, true);
+	}
+
+	/**
+	 * Writes the current execution data like
+	 * {@link #acceptLive(IExecutionDataVisitor, ISessionInfoVisitor)}.
+	 * Optionally the classes in the spill file are omitted, then the call
+	 * only walks the classes in memory and does not perform any I/O.
+	 * 
+	 * @param executionDataVisitor
+	 *            handler to write the live execution data to
+	 * @param sessionInfoVisitor
+	 *            handler to write session information to
+	 * @param spilled
+	 *            if <code>true</code> the classes of the spill file are
+	 *            written as well
+	 */
+	public final void acceptLive(
+			final IExecutionDataVisitor executionDataVisitor,
+			final ISessionInfoVisitor sessionInfoVisitor, final boolean spilled) {
+		final SessionInfo info;
+		final Collection<ExecutionData> contents;
+		final ExecutionDataSpill.Segment segment;
+		synchronized (store) {
+			info = new SessionInfo(sessionId, startTimeStamp,
+					System.currentTimeMillis());
+			contents = new ArrayList<ExecutionData>(store.getContents());
+			segment = spilled ? segment(false, false) : null;
+		}
+		try {
+			sessionInfoVisitor.visitSessionInfo(info);
+			for (final ExecutionData data : contents) {
+				executionDataVisitor.visitClassExecution(data);
+			}
+			if (segment != null) {
+				accept(segment, executionDataVisitor);
+			}
+		} finally {
+			if (segment != null) {
+				segment.close();
+			}
+		}
+	}
+
+	private ExecutionDataSpill.Segment segment(final boolean reset,
+			final boolean delta) {
+		if (spill == null) {
+			return null;
+		}
+		try {
+			return spill.segment(reset, delta);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void accept(final ExecutionDataSpill.Segment segment,
+			final IExecutionDataVisitor visitor) {
+		try {
+			segment.accept(visitor);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Collection<ExecutionData> snapshot(final boolean reset) {
+		final Collection<ExecutionData> snapshot = new ArrayList<ExecutionData>(
+				store.getContents().size());
+		for (final ExecutionData data : store.getContents()) {
+			snapshot.add(copy(data, reset));
+		}
+		return snapshot;
+	}
+
+	private Collection<ExecutionData> snapshotDelta(final boolean reset) {
+		final Collection<ExecutionData> snapshot = new ArrayList<ExecutionData>();
+		for (final ExecutionData original : store.getContents()) {
+			final ExecutionData data = reset || !hits.isEmpty() ? copy(
+					original, reset) : original;
+			final Long key = Long.valueOf(data.getId());
+			final long[] last = dumped.get(key);
+			final long[] counts = data.getCounts();
+			if (counts == null) {
+				final long covered = countCovered(data.getProbes());
+				if (last == null ? covered > 0 : last[0] != covered) {
+					dumped.put(key, new long[] { covered });
+					snapshot.add(new ExecutionData(data.getId(), data
+							.getName(), data.getProbes().clone()));
+				}
+			} else if (last == null ? countCovered(data.getProbes()) > 0
+					: !Arrays.equals(last, counts)) {
+				final long[] increments = counts.clone();
+				if (last != null) {
+					for (int i = 0; i < increments.length; i++) {
+						increments[i] -= last[i];
+					}
+				}
+				dumped.put(key, counts.clone());
+				snapshot.add(new ExecutionData(data.getId(), data.getName(),
+						data.getProbes().clone(), increments));
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Creates a session for every coverage context with executed probes.
+	 */
+	private Map<SessionInfo, Collection<ExecutionData>> snapshotContexts(
+			final long timeStamp, final boolean reset) {
+		final Map<SessionInfo, Collection<ExecutionData>> snapshots = new LinkedHashMap<SessionInfo, Collection<ExecutionData>>();
+		if (contexts.isEmpty()) {
+			return snapshots;
+		}
+		final Collection<CoverageContext> sorted = new TreeMap<String, CoverageContext>(
+				contexts).values();
+		for (final CoverageContext context : sorted) {
+			final Collection<ExecutionData> snapshot = context.capture(
+					store.getContents(), reset);
+			if (!snapshot.isEmpty()) {
+				snapshots.put(new SessionInfo(context.getName(),
+						context.getStartTimeStamp(), timeStamp), snapshot);
+			}
 			if (reset) {
-				reset();
+				context.setStartTimeStamp(timeStamp);
+			}
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Creates a copy of the given execution data. With reset the data is
+	 * captured and cleared element by element. Probes are only cleared if they
+	 * have been captured as set, so concurrent hits of probes which are not
+	 * set yet are never lost. Counts are not modified by instrumented code,
+	 * the stripes have already been moved to the baselines before. Probes
+	 * moved by {@link #collectHits(IExecutionDataVisitor)} are added.
+	 */
+	private ExecutionData copy(final ExecutionData data, final boolean reset) {
+		final boolean[] probes = data.getProbes();
+		final boolean[] capturedProbes;
+		if (reset) {
+			capturedProbes = new boolean[probes.length];
+			for (int i = 0; i < probes.length; i++) {
+				if (probes[i]) {
+					capturedProbes[i] = true;
+					probes[i] = false;
+				}
+			}
+		} else {
+			capturedProbes = probes.clone();
+		}
+		final boolean[] moved = hits.get(Long.valueOf(data.getId()));
+		if (moved != null) {
+			for (int i = 0; i < moved.length; i++) {
+				capturedProbes[i] |= moved[i];
+			}
+		}
+		final long[] counts = data.getCounts();
+		long[] capturedCounts = null;
+		if (counts != null) {
+			capturedCounts = counts.clone();
+			if (reset) {
+				Arrays.fill(counts, 0);
+			}
+		}
+		return new ExecutionData(data.getId(), data.getName(),
+				capturedProbes, capturedCounts);
+	}
+
+	/**
+	 * Writes the probes which have been executed since the last call of this
+	 * method, the last reset or collect with reset to the given visitor and
+	 * clears them. Only classes with at least one executed probe are written,
+	 * their probe arrays are new instances. The cleared probes are still
+	 * reported by subsequent collects until the next reset, so the overall
+	 * coverage is not affected. This allows to attribute coverage to
+	 * consecutive time windows like single tests without writing all classes.
+	 * Classes instrumented in counter mode and retired classes are not
+	 * reported. Once this method has been called no more classes are retired,
+	 * see {@link #retireCoveredClasses()}, as the probes of retired classes
+	 * can not be attributed to time windows. The classes with executed probes
+	 * are determined without holding the lock of this instance, only these
+	 * classes are processed while holding the lock.
+	 * 
+	 * @param executionDataVisitor
+	 *            handler for the executed probes
+	 */
+	public final void collectHits(
+			final IExecutionDataVisitor executionDataVisitor) {
+		final Collection<ExecutionData> dirty = new ArrayList<ExecutionData>();
+		for (final ExecutionData data : store.getContents()) {
+			if (data.getCounts() == null && hasHits(data.getProbes())) {
+				dirty.add(data);
+			}
+		}
+		final Collection<ExecutionData> result = new ArrayList<ExecutionData>();
+		synchronized (store) {
+			hitsCollected = true;
+			for (final ExecutionData data : dirty) {
+				// The class might have been spilled in the meantime:
+				if (store.get(data.getId()) == data
+						&& !isRetired(data.getId())) {
+					final boolean[] captured = moveHits(data);
+					if (captured != null) {
+						result.add(new ExecutionData(data.getId(), data
+								.getName(), captured));
+					}
+				}
+			}
+		}
+		for (final ExecutionData data : result) {
+			executionDataVisitor.visitClassExecution(data);
+		}
+	}
+
+	private static boolean hasHits(final boolean[] probes) {
+		for (final boolean p : probes) {
+			if (p) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Captures and clears the set probes of the given class and remembers
+	 * them for collects. Returns <code>null</code> if no probe is set.
+	 */
+	private boolean[] moveHits(final ExecutionData data) {
+		final boolean[] probes = data.getProbes();
+		boolean[] captured = null;
+		boolean[] moved = null;
+		for (int i = 0; i < probes.length; i++) {
+			if (probes[i]) {
+				if (captured == null) {
+					captured = new boolean[probes.length];
+					final Long key = Long.valueOf(data.getId());
+					moved = hits.get(key);
+					if (moved == null) {
+						moved = new boolean[probes.length];
+						hits.put(key, moved);
+					}
+				}
+				captured[i] = true;
+				moved[i] = true;
+				probes[i] = false;
+			}
+		}
+		return captured;
+	}
+
+	/**
+	 * As probes are only set between resets, the number of set probes
+	 * identifies the state of a class since the last reset.
+	 */
+	private static long countCovered(final boolean[] probes) {
+		long covered = 0;
+		for (final boolean p : probes) {
+			if (p) {
+				covered++;
 			}
 		}
+		return covered;
 	}
 
 	/**
@@ -96,15 +537,267 @@ public class RuntimeData {
 	 */
 	public final void reset() {
 		synchronized (store) {
+			sumCounters();
+			resetCounters();
 			store.reset();
-			startTimeStamp = System.currentTimeMillis();
+			resetState();
+			for (final CoverageContext context : contexts.values()) {
+				context.reset(startTimeStamp);
+			}
+			if (spill != null) {
+				try {
+					spill.reset();
+				} catch (final IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the file to which the execution data of classes removed with
+	 * {@link #spill(long[])} is written. The spilled data is included when
+	 * execution data is collected.
+	 * 
+	 * @param spill
+	 *            spill file or <code>null</code> to disable spilling
+	 */
+	public void setSpill(final ExecutionDataSpill spill) {
+		synchronized (store) {
+			this.spill = spill;
+		}
+	}
+
+	/**
+	 * Moves the execution data of the given classes from memory to the spill
+	 * file. This must only be called for classes which have been unloaded, as
+	 * their probe arrays are not used anymore. Classes without executed probes
+	 * are just removed. Classes instrumented in counter mode and retired
+	 * classes are kept in memory. The probes of removed classes in coverage
+	 * contexts are kept as compact bit sets. Does nothing if no spill file is
+	 * set. The records are only serialized while
+	 * holding the lock of this instance, they are written to disk after the
+	 * lock has been released.
+	 * 
+	 * @param ids
+	 *            ids of the unloaded classes
+	 * @return number of classes removed from memory
+	 * @throws IOException
+	 *             if the spill file can't be written, the records are written
+	 *             with the next spill or collect call then
+	 */
+	public final int spill(final long[] ids) throws IOException {
+		final ExecutionDataSpill target;
+		final Set<Long> removed = new HashSet<Long>();
+		synchronized (store) {
+			if (spill == null) {
+				return 0;
+			}
+			target = spill;
+			for (final long id : ids) {
+				final Long key = Long.valueOf(id);
+				final ExecutionData data = store.get(id);
+				if (data == null || counters.get(id) != null
+						|| retired.contains(key)) {
+					continue;
+				}
+				for (final CoverageContext context : contexts.values()) {
+					context.release(data);
+				}
+				final ExecutionData copy = copy(data, false);
+				if (countCovered(copy.getProbes()) > 0) {
+					spill.write(copy);
+				}
+				removed.add(key);
+			}
+			store.removeAll(removed);
+			for (final Long key : removed) {
+				dumped.remove(key);
+				hits.remove(key);
+			}
+		}
+		target.flush();
+		return removed.size();
+	}
+
+	/**
+	 * Binds the coverage context with the given name to the current thread.
+	 * The context is created if it does not exist yet. Methods of classes
+	 * instrumented for coverage contexts which are subsequently invoked by
+	 * this thread record their probes in the probe arrays of the context
+	 * instead of the regular probe arrays, see
+	 * {@link IExecutionContextAccessorGenerator}. Contexts are written as
+	 * separate sessions with the name of the context as session id. While
+	 * at least one thread has a bound context the registered
+	 * {@link IContextStateListener} is notified as active. Threads which
+	 * terminate without unbinding their context are detected with the next
+	 * call of {@link #bindContext(String)}, {@link #unbindContext()} or
+	 * collect.
+	 * 
+	 * @param name
+	 *            name of the context
+	 */
+	public void bindContext(final String name) {
+		CoverageContext context = contexts.get(name);
+		if (context == null) {
+			context = new CoverageContext(name, System.currentTimeMillis());
+			final CoverageContext existing = contexts.putIfAbsent(name,
+					context);
+			if (existing != null) {
+				context = existing;
+			}
+		}
+		contextAccess.set(context);
+		synchronized (boundThreads) {
+			boundThreads.put(Thread.currentThread(), Boolean.TRUE);
+		}
+		updateContextState();
+	}
+
+	/**
+	 * Removes the coverage context binding of the current thread. Methods
+	 * invoked subsequently record their probes in the regular probe arrays
+	 * again.
+	 */
+	public void unbindContext() {
+		contextAccess.remove();
+		synchronized (boundThreads) {
+			boundThreads.remove(Thread.currentThread());
+		}
+		updateContextState();
+	}
+
+	/**
+	 * Sets the listener which is notified whether coverage contexts are in
+	 * use. The listener is called immediately with the current state.
+	 * 
+	 * @param listener
+	 *            listener for the context state
+	 */
+	public void setContextStateListener(final IContextStateListener listener) {
+		synchronized (boundThreads) {
+			contextStateListener = listener;
+			listener.setContextsActive(contextsActive);
+		}
+	}
+
+	/**
+	 * Removes terminated threads from the bound threads and notifies the
+	 * listener if the state has changed.
+	 */
+	private void updateContextState() {
+		synchronized (boundThreads) {
+			final Iterator<Thread> i = boundThreads.keySet().iterator();
+			while (i.hasNext()) {
+				if (!i.next().isAlive()) {
+					i.remove();
+				}
+			}
+			final boolean active = !boundThreads.isEmpty();
+			if (active != contextsActive) {
+				contextsActive = active;
+				if (contextStateListener != null) {
+					contextStateListener.setContextsActive(active);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the holder for the coverage context of the current thread which
+	 * is used by classes instrumented for coverage contexts. The value of the
+	 * {@link ThreadLocal} is a {@link Map} which returns for the regular probe
+	 * array of a class the probe array to use. If no context is bound the
+	 * regular probe array itself is returned.
+	 * 
+	 * @return holder of the context of the current thread
+	 */
+	public ThreadLocal<?> getContextAccess() {
+		return contextAccess;
+	}
+
+	private void resetState() {
+		restoreRetired();
+		dumped.clear();
+		hits.clear();
+		startTimeStamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * Retires all classes where every probe has been executed. The execution
+	 * data of retired classes is permanently considered as fully covered and
+	 * is not cleared by {@link #reset()}. This allows to replace retired
+	 * classes with versions without probes. Classes instrumented in counter
+	 * mode are never retired. After
+	 * {@link #collectHits(IExecutionDataVisitor)} has been called no classes
+	 * are retired anymore.
+	 * 
+	 * @return execution data of the classes which have been retired by this
+	 *         call
+	 */
+	public Collection<ExecutionData> retireCoveredClasses() {
+		final Collection<ExecutionData> result = new ArrayList<ExecutionData>();
+		synchronized (store) {
+			if (hitsCollected) {
+				return result;
+			}
+			for (final ExecutionData data : store.getContents()) {
+				if (data.getCounts() == null && isFullyCovered(data)) {
+					synchronized (retired) {
+						if (retired.add(Long.valueOf(data.getId()))) {
+							result.add(data);
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether the class with the given id has been retired.
+	 * 
+	 * @see #retireCoveredClasses()
+	 * @param id
+	 *            class identifier
+	 * @return <code>true</code> if the class has been retired
+	 */
+	public boolean isRetired(final long id) {
+		synchronized (retired) {
+			return retired.contains(Long.valueOf(id));
+		}
+	}
+
+	private static boolean isFullyCovered(final ExecutionData data) {
+		final boolean[] probes = data.getProbes();
+		if (probes.length == 0) {
+			return false;
+		}
+		for (final boolean p : probes) {
+			if (!p) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void restoreRetired() {
+		synchronized (retired) {
+			for (final Long id : retired) {
+				final ExecutionData data = store.get(id.longValue());
+				if (data != null) {
+					Arrays.fill(data.getProbes(), true);
+				}
+			}
 		}
 	}
 
 	/**
 	 * Returns the coverage data for the class with the given identifier. If
 	 * there is no data available under the given id a new entry is created.
-	 * This is a synchronized access to the underlying store.
+	 * This method does not lock the underlying store, concurrent calls for the
+	 * same id will always return the same instance. The duration of every call
+	 * is recorded, see {@link #getRequestTimes()}.
 	 * 
 	 * @param id
 	 *            class identifier
@@ -116,8 +809,152 @@ public class RuntimeData {
 	 */
 	public ExecutionData getExecutionData(final Long id, final String name,
 			final int probecount) {
+		return getExecutionData(id.longValue(), name, probecount);
+	}
+
+	/**
+	 * Returns the coverage data for the class with the given identifier. If
+	 * there is no data available under the given id a new entry is created.
+	 * This method does not lock the underlying store, concurrent calls for the
+	 * same id will always return the same instance.
+	 * 
+	 * @param id
+	 *            class identifier
+	 * @param name
+	 *            VM name of the class
+	 * @param probecount
+	 *            probe data length
+	 * @return execution data
+	 */
+	public ExecutionData getExecutionData(final long id, final String name,
+			final int probecount) {
+		final long start = System.nanoTime();
+		final ExecutionData data = store.get(id, name, probecount);
+		requestTimes.record(System.nanoTime() - start);
+		return data;
+	}
+
+	/**
+	 * Returns the total number of probes of all classes which have requested
+	 * their execution data from this runtime.
+	 * 
+	 * @return total number of probes
+	 */
+	public long getProbeCount() {
+		long count = 0;
 		synchronized (store) {
-			return store.get(id, name, probecount);
+			for (final ExecutionData data : store.getContents()) {
+				count += data.getProbes().length;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the durations in nanoseconds of all
+	 * {@link #getExecutionData(long, String, int)} calls. As execution data is
+	 * requested by every instrumented class when it is initialized, long
+	 * durations indicate contention between threads loading classes.
+	 * 
+	 * @return durations of execution data requests
+	 */
+	public Histogram getRequestTimes() {
+		return requestTimes;
+	}
+
+	/**
+	 * Returns the durations in nanoseconds of all collect calls including the
+	 * time spent in the visitors.
+	 * 
+	 * @see #collect(IExecutionDataVisitor, ISessionInfoVisitor, boolean,
+	 *      boolean)
+	 * @return durations of collect calls
+	 */
+	public Histogram getCollectTimes() {
+		return collectTimes;
+	}
+
+	/**
+	 * Returns the number of classes written by all collect calls.
+	 * 
+	 * @see #collect(IExecutionDataVisitor, ISessionInfoVisitor, boolean,
+	 *      boolean)
+	 * @return sizes of collect calls
+	 */
+	public Histogram getCollectSizes() {
+		return collectSizes;
+	}
+
+	/**
+	 * Returns the execution counters for the class with the given identifier.
+	 * The result has {@link InstrSupport#COUNTER_STRIPES} stripes of length
+	 * <code>probecount</code> which may be incremented independently by
+	 * different threads. The increase of the sum of all stripes since the last
+	 * reset is reported as the execution counts of the corresponding
+	 * {@link ExecutionData} object when data is collected. The stripes itself
+	 * are never cleared. Probes of the execution data are set for every probe
+	 * with a positive count. The stripe is selected by the id of the thread
+	 * and the increments are not atomic, so threads sharing a stripe may lose
+	 * concurrent increments. The counts are therefore approximate, every
+	 * executed probe has a positive count though.
+	 * 
+	 * @param id
+	 *            class identifier
+	 * @param name
+	 *            VM name of the class
+	 * @param probecount
+	 *            probe data length
+	 * @return execution counter stripes
+	 */
+	public long[][] getExecutionCounters(final long id, final String name,
+			final int probecount) {
+		Counters entry = counters.get(id);
+		if (entry == null) {
+			// The execution data is added first, so every entry of the
+			// counter table has execution data in the store:
+			store.put(new ExecutionData(id, name, new boolean[probecount],
+					new long[probecount]));
+			final Counters newEntry = new Counters(store.get(id), probecount);
+			entry = counters.putIfAbsent(newEntry);
+			if (entry == null) {
+				return newEntry.stripes;
+			}
+		}
+		entry.data.assertCompatibility(id, name, probecount);
+		return entry.stripes;
+	}
+
+	/**
+	 * Sums up the counter stripes into the execution data. Must be called
+	 * while holding the lock of the store.
+	 */
+	private void sumCounters() {
+		for (final Counters entry : counters.values()) {
+			final boolean[] probes = entry.data.getProbes();
+			final long[] counts = entry.data.getCounts();
+			for (int i = 0; i < counts.length; i++) {
+				long sum = -entry.baseline[i];
+				for (final long[] stripe : entry.stripes) {
+					sum += stripe[i];
+				}
+				counts[i] = sum;
+				probes[i] = sum > 0;
+			}
+		}
+	}
+
+	/**
+	 * The counter stripes are never cleared as this would lose concurrent
+	 * increments. Instead the counts summed up by the last call of
+	 * {@link #sumCounters()} are added to the baselines. Must be called while
+	 * holding the lock of the store.
+	 */
+	private void resetCounters() {
+		for (final Counters entry : counters.values()) {
+			final long[] counts = entry.data.getCounts();
+			for (int i = 0; i < counts.length; i++) {
+				entry.baseline[i] += counts[i];
+			}
 		}
 	}
 
@@ -142,12 +979,31 @@ public class RuntimeData {
 	 *            parameter array of length 3
 	 */
 	public void getProbes(final Object[] args) {
-		final Long classid = (Long) args[0];
+		final long classid = ((Long) args[0]).longValue();
 		final String name = (String) args[1];
 		final int probecount = ((Integer) args[2]).intValue();
 		args[0] = getExecutionData(classid, name, probecount).getProbes();
 	}
 
+	/**
+	 * Retrieves the execution counters for a given class. The passed
+	 * {@link Object} array instance is used for parameters and the return value
+	 * like for {@link #getProbes(Object[])}, the additional element args[3]
+	 * is the marker {@link #COUNTERS_REQUEST} to distinguish the requests. The
+	 * return value in args[0] is the counter array of type
+	 * <code>long[][]</code>.
+	 * 
+	 * @see #getExecutionCounters(long, String, int)
+	 * @param args
+	 *            parameter array of length 4
+	 */
+	public void getCounters(final Object[] args) {
+		final long classid = ((Long) args[0]).longValue();
+		final String name = (String) args[1];
+		final int probecount = ((Integer) args[2]).intValue();
+		args[0] = getExecutionCounters(classid, name, probecount);
+	}
+
 	/**
 	 * In violation of the regular semantic of {@link Object#equals(Object)}
 	 * this implementation is used as the interface to the execution data store.
@@ -159,11 +1015,20 @@ public class RuntimeData {
 	@Override
 	public boolean equals(final Object args) {
 		if (args instanceof Object[]) {
-			getProbes((Object[]) args);
+			final Object[] array = (Object[]) args;
+			if (isCountersRequest(array)) {
+				getCounters(array);
+			} else {
+				getProbes(array);
+			}
 		}
 		return super.equals(args);
 	}
 
+	private static boolean isCountersRequest(final Object[] args) {
+		return args.length > 3 && COUNTERS_REQUEST.equals(args[3]);
+	}
+
 	/**
 	 * Generates code that creates the argument array for the
 	 * {@link #getProbes(Object[])} method. The array instance is left on the
@@ -180,7 +1045,13 @@ public class RuntimeData {
 	 */
 	public static void generateArgumentArray(final long classid,
 			final String classname, final int probecount, final MethodVisitor mv) {
-		mv.visitInsn(Opcodes.ICONST_3);
+		generateArgumentArray(classid, classname, probecount, false, mv);
+	}
+
+	private static void generateArgumentArray(final long classid,
+			final String classname, final int probecount,
+			final boolean counters, final MethodVisitor mv) {
+		InstrSupport.push(mv, counters ? 4 : 3);
 		mv.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
 
 		// Class Id:
@@ -204,6 +1075,14 @@ public class RuntimeData {
 		mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer",
 				"valueOf", "(I)Ljava/lang/Integer;");
 		mv.visitInsn(Opcodes.AASTORE);
+
+		if (counters) {
+			// Request Marker:
+			mv.visitInsn(Opcodes.DUP);
+			mv.visitInsn(Opcodes.ICONST_3);
+			mv.visitLdcInsn(COUNTERS_REQUEST);
+			mv.visitInsn(Opcodes.AASTORE);
+		}
 	}
 
 	/**
@@ -224,9 +1103,38 @@ public class RuntimeData {
 	 */
 	public static void generateAccessCall(final long classid,
 			final String classname, final int probecount, final MethodVisitor mv) {
+		generateAccessCall(classid, classname, probecount, false, mv);
+		mv.visitTypeInsn(Opcodes.CHECKCAST, InstrSupport.DATAFIELD_DESC);
+	}
+
+	/**
+	 * Generates the code that requests the execution counters from a
+	 * {@link RuntimeData} instance through the JRE API method
+	 * {@link Object#equals(Object)}. The code pops a {@link Object} instance
+	 * from the stack and pushes the counters of type <code>long[][]</code> on
+	 * the operand stack. The generated code requires a stack size of 6.
+	 * 
+	 * @param classid
+	 *            class identifier
+	 * @param classname
+	 *            VM class name
+	 * @param probecount
+	 *            probe count for this class
+	 * @param mv
+	 *            visitor to emit generated code
+	 */
+	public static void generateCountAccessCall(final long classid,
+			final String classname, final int probecount, final MethodVisitor mv) {
+		generateAccessCall(classid, classname, probecount, true, mv);
+		mv.visitTypeInsn(Opcodes.CHECKCAST, InstrSupport.COUNTERFIELD_DESC);
+	}
+
+	private static void generateAccessCall(final long classid,
+			final String classname, final int probecount,
+			final boolean counters, final MethodVisitor mv) {
 		// stack[0]: Ljava/lang/Object;
 
-		generateArgumentArray(classid, classname, probecount, mv);
+		generateArgumentArray(classid, classname, probecount, counters, mv);
 
 		// stack[1]: [Ljava/lang/Object;
 		// stack[0]: Ljava/lang/Object;
@@ -246,9 +1154,28 @@ public class RuntimeData {
 		mv.visitInsn(Opcodes.ICONST_0);
 		mv.visitInsn(Opcodes.AALOAD);
 
-		// stack[0]: [Z
+		// stack[0]: Ljava/lang/Object;
+	}
 
-		mv.visitTypeInsn(Opcodes.CHECKCAST, InstrSupport.DATAFIELD_DESC);
+	/**
+	 * Counter stripes of a class instrumented in counter mode.
+	 */
+	private static class Counters {
+
+		/** execution data in the store the counts are summed up in */
+		final ExecutionData data;
+
+		/** stripes incremented by the instrumented code */
+		final long[][] stripes;
+
+		/** sums of the stripes at the time of the last reset */
+		final long[] baseline;
+
+		Counters(final ExecutionData data, final int probecount) {
+			this.data = data;
+			this.stripes = new long[InstrSupport.COUNTER_STRIPES][probecount];
+			this.baseline = new long[probecount];
+		}
 	}
 
 }
@@ -11,16 +11,21 @@
  *******************************************************************************/
 package org.jacoco.core.runtime;
 
-import java.util.regex.Pattern;
-
 /**
  * Matches strings against <code>?</code>/<code>*</code> wildcard expressions.
  * Multiple expressions can be separated with a colon (:). In this case the
  * expression matches if at least one part matches.
+ * 
+ * Expressions are compiled once. Expressions with <code>*</code> wildcards only
+ * are split into literal segments which are compared directly or searched
+ * from left to right. Expressions with <code>?</code> wildcards are matched by
+ * simulating all possible positions in the expression in parallel. In both
+ * cases matching never backtracks, independently of the number of wildcards
+ * in the expression.
  */
 public class WildcardMatcher {
 
-	private final Pattern pattern;
+	private final Part[] parts;
 
 	/**
 	 * Creates a new matcher with the given expression.
@@ -29,35 +34,11 @@ public class WildcardMatcher {
 	 *            wildcard expressions
 	 */
 	public WildcardMatcher(final String expression) {
-		final String[] parts = expression.split("\\:");
-		final StringBuilder regex = new StringBuilder(expression.length() * 2);
-		boolean next = false;
-		for (final String part : parts) {
-			if (next) {
-				regex.append('|');
-			}
-			regex.append('(').append(toRegex(part)).append(')');
-			next = true;
-		}
-		pattern = Pattern.compile(regex.toString());
-	}
-
-	private static CharSequence toRegex(final String expression) {
-		final StringBuilder regex = new StringBuilder(expression.length() * 2);
-		for (final char c : expression.toCharArray()) {
-			switch (c) {
-			case '?':
-				regex.append(".?");
-				break;
-			case '*':
-				regex.append(".*");
-				break;
-			default:
-				regex.append(Pattern.quote(String.valueOf(c)));
-				break;
-			}
+		final String[] expressions = expression.split("\\:");
+		parts = new Part[expressions.length];
+		for (int i = 0; i < expressions.length; i++) {
+			parts[i] = new Part(expressions[i]);
 		}
-		return regex;
 	}
 
 	/**
@@ -68,7 +49,131 @@ public class WildcardMatcher {
 	 * @return <code>true</code>, if the expression matches
 	 */
 	public boolean matches(final String s) {
-		return pattern.matcher(s).matches();
+		for (final Part part : parts) {
+			if (part.matches(s)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A single expression without colons.
+	 */
+	private static class Part {
+
+		/**
+		 * Literal segments between <code>*</code> wildcards or
+		 * <code>null</code> if the expression contains <code>?</code>
+		 */
+		private final String[] segments;
+
+		/** Complete expression if it contains <code>?</code> */
+		private final char[] pattern;
+
+		Part(final String expression) {
+			if (expression.indexOf('?') == -1) {
+				segments = expression.split("\\*", -1);
+				pattern = null;
+			} else {
+				segments = null;
+				pattern = expression.toCharArray();
+			}
+		}
+
+		boolean matches(final String s) {
+			return segments == null ? matchesPattern(s) : matchesSegments(s);
+		}
+
+		/**
+		 * The first segment must be a prefix, the last one a suffix. Every
+		 * segment in between is searched at its leftmost position after the
+		 * previous one, which is sufficient as <code>*</code> can absorb any
+		 * characters in between.
+		 */
+		private boolean matchesSegments(final String s) {
+			final int last = segments.length - 1;
+			if (last == 0) {
+				return s.equals(segments[0]);
+			}
+			if (!s.startsWith(segments[0]) || !s.endsWith(segments[last])) {
+				return false;
+			}
+			int pos = segments[0].length();
+			final int end = s.length() - segments[last].length();
+			if (end < pos) {
+				return false;
+			}
+			for (int i = 1; i < last; i++) {
+				final String segment = segments[i];
+				final int idx = s.indexOf(segment, pos);
+				if (idx == -1 || idx + segment.length() > end) {
+					return false;
+				}
+				pos = idx + segment.length();
+			}
+			return true;
+		}
+
+		/**
+		 * Simulates the expression as a non-deterministic automaton where
+		 * state <code>i</code> means that the first <code>i</code> characters
+		 * of the pattern have been consumed. <code>*</code> matches any
+		 * sequence of characters and <code>?</code> zero or one character.
+		 */
+		private boolean matchesPattern(final String s) {
+			final int length = pattern.length;
+			boolean[] current = new boolean[length + 1];
+			boolean[] next = new boolean[length + 1];
+			current[0] = true;
+			closure(current);
+			for (int pos = 0; pos < s.length(); pos++) {
+				final char c = s.charAt(pos);
+				for (int i = 0; i < length; i++) {
+					if (current[i]) {
+						switch (pattern[i]) {
+						case '*':
+							next[i] = true;
+							break;
+						case '?':
+							next[i + 1] = true;
+							break;
+						default:
+							if (pattern[i] == c) {
+								next[i + 1] = true;
+							}
+							break;
+						}
+					}
+				}
+				closure(next);
+				boolean alive = false;
+				for (int i = 0; i <= length; i++) {
+					alive |= next[i];
+					current[i] = false;
+				}
+				if (!alive) {
+					return false;
+				}
+				final boolean[] t = current;
+				current = next;
+				next = t;
+			}
+			return current[length];
+		}
+
+		/**
+		 * Adds the states reachable without consuming a character. As
+		 * wildcards may match empty sequences they can be skipped.
+		 */
+		private void closure(final boolean[] states) {
+			for (int i = 0; i < pattern.length; i++) {
+				if (states[i] && (pattern[i] == '*' || pattern[i] == '?')) {
+					states[i + 1] = true;
+				}
+			}
+		}
+
 	}
 
 }
@@ -0,0 +1,787 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2013 Mountainminds GmbH & Co. KG and Contributors
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Marc R. Hoffmann - initial API and implementation
+ *
+ *******************************************************************************/
+package org.jacoco.core.tools;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.InflaterInputStream;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.RemoteControlReader;
+import org.jacoco.core.runtime.RemoteControlWriter;
+
+/**
+ * A server which collects execution data from many agents running in output
+ * mode <code>tcpclient</code>. All connections are served by a single thread
+ * with non-blocking I/O, so thousands of agents can stay connected at the
+ * same time. Execution data is merged by class id into a single
+ * {@link ExecutionDataStore}, sessions with the same id are merged into a
+ * single session. The merged data is written to a snapshot file
+ * periodically and when the server is stopped. Periodic snapshots are copied
+ * on the server thread and written by a background thread, so slow file
+ * systems do not delay the agents. Snapshots are written to a temporary file
+ * first which is then renamed, so readers never see partially written
+ * snapshots.
+ * 
+ * Invalid data only closes the connection of the affected agent. Blocks which
+ * would require more than {@link #MAX_BLOCK_LENGTH} bytes of memory are
+ * considered invalid. Connections are also closed if the data buffered for
+ * all connections together would exceed the limit set with
+ * {@link #setMaxBufferedBytes(long)}.
+ * 
+ * The collector can be started as a standalone program, see
+ * {@link #main(String[])}.
+ */
+public class ExecCollector {
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	/** Maximum memory in bytes a single block may allocate. */
+	public static final int MAX_BLOCK_LENGTH = 64 * 1024 * 1024;
+
+	/** Maximum number of bytes buffered for a single connection. */
+	private static final int MAX_BUFFER_SIZE = 2 * MAX_BLOCK_LENGTH;
+
+	/** Default port of {@link #main(String[])}. */
+	private static final int DEFAULT_PORT = 6300;
+
+	private final ExecutionDataStore store;
+
+	private final Map<String, SessionInfo> sessions;
+
+	private File snapshotFile;
+
+	private long snapshotInterval;
+
+	private long maxBufferedBytes;
+
+	private long bufferedBytes;
+
+	private ExecutorService snapshotWriter;
+
+	private Future<?> pendingSnapshot;
+
+	private Selector selector;
+
+	private ServerSocketChannel server;
+
+	private volatile boolean running;
+
+	private volatile boolean modified;
+
+	private volatile int connections;
+
+	private volatile long rejectedClasses;
+
+	private volatile long snapshotFailures;
+
+	/**
+	 * New instance with the defaults <code>snapshotFile==null</code>,
+	 * <code>snapshotInterval==60000</code> and
+	 * <code>maxBufferedBytes==4*MAX_BLOCK_LENGTH</code>.
+	 */
+	public ExecCollector() {
+		this.store = new ExecutionDataStore();
+		this.sessions = new LinkedHashMap<String, SessionInfo>();
+		this.snapshotFile = null;
+		this.snapshotInterval = 60000;
+		this.maxBufferedBytes = 4L * MAX_BLOCK_LENGTH;
+	}
+
+	/**
+	 * Sets the file the collected execution data is written to. If no file
+	 * is set no snapshots are written.
+	 *
+	 * @param snapshotFile
+	 *            snapshot file or <code>null</code>
+	 */
+	public void setSnapshotFile(final File snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	/**
+	 * Sets the interval in which snapshots are written if new execution data
+	 * has been received.
+	 *
+	 * @param snapshotInterval
+	 *            interval in milliseconds
+	 */
+	public void setSnapshotInterval(final long snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	/**
+	 * Sets the maximum number of bytes buffered for all connections together.
+	 * A connection which needs a larger buffer while this limit is reached is
+	 * closed. Every connection can buffer at least one block of
+	 * {@link #MAX_BLOCK_LENGTH} bytes if no other connection holds large
+	 * buffers.
+	 * 
+	 * @param maxBufferedBytes
+	 *            maximum number of buffered bytes
+	 */
+	public void setMaxBufferedBytes(final long maxBufferedBytes) {
+		this.maxBufferedBytes = maxBufferedBytes;
+	}
+
+	/**
+	 * Binds the server to the given address. Agents can connect as soon as
+	 * this method returns, their data is processed by {@link #run()}.
+	 *
+	 * @param address
+	 *            local address, port 0 selects a free port
+	 * @return address the server is bound to
+	 * @throws IOException
+	 *             if the server socket can't be opened
+	 */
+	public InetSocketAddress bind(final InetSocketAddress address)
+			throws IOException {
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.socket().setReuseAddress(true);
+		server.socket().bind(address, 1024);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		running = true;
+		return (InetSocketAddress) server.socket().getLocalSocketAddress();
+	}
+
+	/**
+	 * Serves all connections until {@link #stop()} is called. All open
+	 * connections are closed and a final snapshot is written before this
+	 * method returns.
+	 *
+	 * @throws IOException
+	 *             if the server socket fails or a snapshot can't be written
+	 */
+	public void run() throws IOException {
+		snapshotWriter = Executors
+				.newSingleThreadExecutor(new ThreadFactory() {
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r);
+						thread.setName(ExecCollector.class.getName());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		try {
+			long nextSnapshot = System.currentTimeMillis() + snapshotInterval;
+			while (running) {
+				final long timeout = nextSnapshot - System.currentTimeMillis();
+				if (timeout > 0) {
+					selector.select(timeout);
+					for (final SelectionKey key : selector.selectedKeys()) {
+						handle(key);
+					}
+					selector.selectedKeys().clear();
+				} else {
+					startSnapshot();
+					nextSnapshot = System.currentTimeMillis()
+							+ snapshotInterval;
+				}
+			}
+		} finally {
+			for (final SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+			snapshotWriter.shutdown();
+		}
+		try {
+			snapshotWriter.awaitTermination(Long.MAX_VALUE,
+					TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (modified) {
+			modified = false;
+			writeSnapshot(copySessions(), copyStore());
+		}
+	}
+
+	/**
+	 * Stops the server. May be called from any thread.
+	 */
+	public void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * Returns the number of currently connected agents.
+	 *
+	 * @return number of connections
+	 */
+	public int getConnections() {
+		return connections;
+	}
+
+	/**
+	 * Returns the number of received class execution data records which
+	 * could not be merged because they are incompatible with the already
+	 * collected data of the same class id.
+	 *
+	 * @return number of rejected records
+	 */
+	public long getRejectedClasses() {
+		return rejectedClasses;
+	}
+
+	/**
+	 * Returns the number of periodic snapshots which could not be written.
+	 * Failed snapshots are tried again with the next interval, only a failure
+	 * of the final snapshot written by {@link #run()} stops the server with an
+	 * exception.
+	 * 
+	 * @return number of failed snapshots
+	 */
+	public long getSnapshotFailures() {
+		return snapshotFailures;
+	}
+
+	private void handle(final SelectionKey key) throws IOException {
+		if (!key.isValid()) {
+			return;
+		}
+		if (key.isAcceptable()) {
+			accept();
+			return;
+		}
+		final Connection connection = (Connection) key.attachment();
+		try {
+			if (key.isWritable()) {
+				connection.write();
+			}
+			if (key.isReadable()) {
+				connection.read();
+			}
+		} catch (final IOException e) {
+			// Broken connections and invalid data only affect a single agent
+			connection.close();
+		} catch (final RuntimeException e) {
+			connection.close();
+		}
+	}
+
+	private void accept() throws IOException {
+		final SocketChannel channel = server.accept();
+		if (channel != null) {
+			channel.configureBlocking(false);
+			final SelectionKey key = channel.register(selector,
+					SelectionKey.OP_READ);
+			final Connection connection = new Connection(key);
+			key.attach(connection);
+			connections++;
+			try {
+				connection.write();
+			} catch (final IOException e) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Copies the collected data and writes it in the background. If the
+	 * previous snapshot is still being written the new one is skipped and
+	 * written with the next interval.
+	 */
+	private void startSnapshot() {
+		if (snapshotFile == null || !modified) {
+			return;
+		}
+		if (pendingSnapshot != null && !pendingSnapshot.isDone()) {
+			return;
+		}
+		modified = false;
+		final Collection<SessionInfo> sessionsCopy = copySessions();
+		final Collection<ExecutionData> storeCopy = copyStore();
+		pendingSnapshot = snapshotWriter.submit(new Runnable() {
+			public void run() {
+				try {
+					writeSnapshot(sessionsCopy, storeCopy);
+				} catch (final IOException e) {
+					// The data is kept, the snapshot is written again with
+					// the next interval:
+					modified = true;
+					snapshotFailures++;
+				}
+			}
+		});
+	}
+
+	private Collection<SessionInfo> copySessions() {
+		return new ArrayList<SessionInfo>(sessions.values());
+	}
+
+	private Collection<ExecutionData> copyStore() {
+		final List<ExecutionData> copy = new ArrayList<ExecutionData>();
+		for (final ExecutionData data : store.getContents()) {
+			final long[] counts = data.getCounts();
+			copy.add(new ExecutionData(data.getId(), data.getName(), data
+					.getProbes().clone(), counts == null ? null : counts
+					.clone()));
+		}
+		return copy;
+	}
+
+	private void writeSnapshot(final Collection<SessionInfo> sessions,
+			final Collection<ExecutionData> contents) throws IOException {
+		if (snapshotFile == null) {
+			return;
+		}
+		final File folder = snapshotFile.getAbsoluteFile().getParentFile();
+		folder.mkdirs();
+		final File temp = File.createTempFile(snapshotFile.getName(), ".tmp",
+				folder);
+		try {
+			final OutputStream out = new FileOutputStream(temp);
+			try {
+				final ExecutionDataWriter writer = new ExecutionDataWriter(out);
+				for (final SessionInfo info : sessions) {
+					writer.visitSessionInfo(info);
+				}
+				for (final ExecutionData data : contents) {
+					writer.visitClassExecution(data);
+				}
+			} finally {
+				out.close();
+			}
+			// Renaming does not replace existing files on all platforms
+			if (!temp.renameTo(snapshotFile)) {
+				snapshotFile.delete();
+				if (!temp.renameTo(snapshotFile)) {
+					throw new IOException("Can't rename " + temp + " to "
+							+ snapshotFile);
+				}
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private void merge(final SessionInfo info) {
+		final SessionInfo existing = sessions.get(info.getId());
+		if (existing == null) {
+			sessions.put(info.getId(), info);
+		} else {
+			sessions.put(info.getId(), new SessionInfo(info.getId(), Math.min(
+					existing.getStartTimeStamp(), info.getStartTimeStamp()),
+					Math.max(existing.getDumpTimeStamp(),
+							info.getDumpTimeStamp())));
+		}
+		modified = true;
+	}
+
+	private void merge(final ExecutionData data) {
+		try {
+			store.put(data);
+			modified = true;
+		} catch (final IllegalStateException e) {
+			rejectedClasses++;
+		}
+	}
+
+	/**
+	 * State of a single agent connection.
+	 */
+	private class Connection implements ISessionInfoVisitor,
+			IExecutionDataVisitor {
+
+		private final SelectionKey key;
+
+		private final SocketChannel channel;
+
+		private final BlockInput input;
+
+		private final Reader reader;
+
+		private final ByteBuffer output;
+
+		Connection(final SelectionKey key) throws IOException {
+			this.key = key;
+			this.channel = (SocketChannel) key.channel();
+			this.input = new BlockInput();
+			bufferedBytes += input.capacity();
+			this.reader = new Reader(input, this, this);
+			final ByteArrayOutputStream header = new ByteArrayOutputStream();
+			new RemoteControlWriter(header);
+			this.output = ByteBuffer.wrap(header.toByteArray());
+		}
+
+		void write() throws IOException {
+			channel.write(output);
+			if (output.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			} else {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		void read() throws IOException {
+			if (!input.fill(channel)) {
+				close();
+				return;
+			}
+			while (reader.read()) {
+				// Continue after command confirmations
+			}
+			input.compact();
+		}
+
+		void close() throws IOException {
+			if (key.isValid()) {
+				key.cancel();
+				connections--;
+				bufferedBytes -= input.capacity();
+			}
+			channel.close();
+		}
+
+		// === ISessionInfoVisitor, IExecutionDataVisitor ===
+
+		public void visitSessionInfo(final SessionInfo info) {
+			merge(info);
+		}
+
+		public void visitClassExecution(final ExecutionData data) {
+			merge(data);
+		}
+	}
+
+	/**
+	 * Buffer for the data received from a connection. Bytes are kept until
+	 * the block they belong to is complete. Reading beyond the received data
+	 * throws an {@link EOFException}, the input is then rewound to the start
+	 * of the incomplete block and parsed again when more data has arrived.
+	 */
+	private class BlockInput extends InputStream {
+
+		private byte[] buffer = new byte[BUFFER_SIZE];
+
+		private int length;
+
+		private int position;
+
+		private int blockStart;
+
+		private int mark;
+
+		boolean fill(final SocketChannel channel) throws IOException {
+			if (length == buffer.length) {
+				if (buffer.length >= MAX_BUFFER_SIZE) {
+					throw new IOException("Block too large.");
+				}
+				if (bufferedBytes + buffer.length > maxBufferedBytes) {
+					throw new IOException("Buffer limit exceeded.");
+				}
+				resize(buffer.length * 2);
+			}
+			final int count = channel.read(ByteBuffer.wrap(buffer, length,
+					buffer.length - length));
+			if (count == -1) {
+				return false;
+			}
+			length += count;
+			return true;
+		}
+
+		void endOfBlock() {
+			blockStart = position;
+		}
+
+		void rewind() {
+			position = blockStart;
+		}
+
+		void compact() {
+			System.arraycopy(buffer, blockStart, buffer, 0, length
+					- blockStart);
+			length -= blockStart;
+			position -= blockStart;
+			blockStart = 0;
+			if (buffer.length > BUFFER_SIZE && length <= BUFFER_SIZE) {
+				// Release large buffers once the block has been processed
+				resize(BUFFER_SIZE);
+			}
+		}
+
+		int capacity() {
+			return buffer.length;
+		}
+
+		private void resize(final int size) {
+			final byte[] newBuffer = new byte[size];
+			System.arraycopy(buffer, 0, newBuffer, 0, length);
+			bufferedBytes += size - buffer.length;
+			buffer = newBuffer;
+		}
+
+		@Override
+		public int available() {
+			return length - position;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return true;
+		}
+
+		@Override
+		public void mark(final int readlimit) {
+			mark = position;
+		}
+
+		@Override
+		public void reset() {
+			position = mark;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (position == length) {
+				throw new EOFException();
+			}
+			return buffer[position++] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (position == length) {
+				throw new EOFException();
+			}
+			final int count = Math.min(len, length - position);
+			System.arraycopy(buffer, position, b, off, count);
+			position += count;
+			return count;
+		}
+	}
+
+	/**
+	 * Reader which checks the lengths of arrays and compressed blocks before
+	 * they are allocated. If the number of available bytes of the source is
+	 * exact, the check also fails with an {@link EOFException} if the block
+	 * has not been received completely. Blocks are only parsed once they are
+	 * complete therefore.
+	 */
+	private static class CheckedReader extends RemoteControlReader {
+
+		private final InputStream source;
+
+		private final boolean exact;
+
+		private final ISessionInfoVisitor sessionInfoVisitor;
+
+		private final IExecutionDataVisitor executionDataVisitor;
+
+		CheckedReader(final InputStream source, final boolean exact,
+				final ISessionInfoVisitor sessionInfoVisitor,
+				final IExecutionDataVisitor executionDataVisitor)
+				throws IOException {
+			super(source);
+			this.source = source;
+			this.exact = exact;
+			this.sessionInfoVisitor = sessionInfoVisitor;
+			this.executionDataVisitor = executionDataVisitor;
+			setSessionInfoVisitor(sessionInfoVisitor);
+			setExecutionDataVisitor(executionDataVisitor);
+		}
+
+		@Override
+		protected boolean readBlock(final byte blockid) throws IOException {
+			switch (blockid) {
+			case ExecutionDataWriter.BLOCK_EXECUTIONDATA:
+				checkExecutionData(false);
+				return super.readBlock(blockid);
+			case ExecutionDataWriter.BLOCK_EXECUTIONCOUNTS:
+				checkExecutionData(true);
+				return super.readBlock(blockid);
+			case RemoteControlWriter.BLOCK_COMPRESSED:
+				readCompressed();
+				return true;
+			default:
+				return super.readBlock(blockid);
+			}
+		}
+
+		/**
+		 * Checks the array lengths of the following execution data block
+		 * without consuming it.
+		 */
+		private void checkExecutionData(final boolean withCounts)
+				throws IOException {
+			source.mark(Integer.MAX_VALUE);
+			in.readLong();
+			in.readUTF();
+			final int probes = in.readVarInt();
+			check(probes, probes, (probes + 7) / 8);
+			if (withCounts) {
+				in.skipBytes((probes + 7) / 8);
+				final int counts = in.readVarInt();
+				check(counts, counts * 8L, counts);
+			}
+			source.reset();
+		}
+
+		private void readCompressed() throws IOException {
+			final int length = in.readVarInt();
+			check(length, length, length);
+			final byte[] buffer = new byte[length];
+			in.readFully(buffer);
+			final InputStream inflater = new BufferedInputStream(
+					new InflaterInputStream(new ByteArrayInputStream(buffer)),
+					BUFFER_SIZE);
+			new CheckedReader(inflater, false, sessionInfoVisitor,
+					executionDataVisitor).read();
+		}
+
+		/**
+		 * Checks the length of an array before it is allocated.
+		 * 
+		 * @param length
+		 *            number of elements
+		 * @param memory
+		 *            bytes required in memory
+		 * @param encoded
+		 *            minimum number of encoded bytes
+		 */
+		private void check(final int length, final long memory,
+				final int encoded) throws IOException {
+			if (length < 0 || memory > MAX_BLOCK_LENGTH) {
+				throw new IOException("Invalid block length " + length + ".");
+			}
+			if (exact && source.available() < encoded) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	/**
+	 * Reader which marks the end of every complete block. If the received
+	 * data ends within a block the input is rewound to its start.
+	 */
+	private static class Reader extends CheckedReader {
+
+		private final BlockInput input;
+
+		Reader(final BlockInput input,
+				final ISessionInfoVisitor sessionInfoVisitor,
+				final IExecutionDataVisitor executionDataVisitor)
+				throws IOException {
+			super(input, true, sessionInfoVisitor, executionDataVisitor);
+			this.input = input;
+		}
+
+		@Override
+		public boolean read() throws IOException {
+			if (super.read()) {
+				return true;
+			}
+			input.rewind();
+			return false;
+		}
+
+		@Override
+		protected boolean readBlock(final byte blockid) throws IOException {
+			final boolean more = super.readBlock(blockid);
+			input.endOfBlock();
+			return more;
+		}
+	}
+
+
+	/**
+	 * Runs a collector as a standalone program until the VM is terminated.
+	 * The final snapshot is written by a shutdown hook. Arguments:
+	 * <code>snapshotfile [port [address [interval]]]</code>. The port
+	 * defaults to 6300, the address to all local interfaces and the snapshot
+	 * interval to 60000 milliseconds.
+	 * 
+	 * @param args
+	 *            command line arguments
+	 * @throws IOException
+	 *             if the server socket can't be opened or the final snapshot
+	 *             can't be written
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 1 || args.length > 4) {
+			System.err.println("Usage: ExecCollector snapshotfile "
+					+ "[port [address [interval]]]");
+			System.exit(1);
+		}
+		final ExecCollector collector = new ExecCollector();
+		collector.setSnapshotFile(new File(args[0]));
+		final int port = args.length > 1 ? Integer.parseInt(args[1])
+				: DEFAULT_PORT;
+		final InetSocketAddress address;
+		if (args.length > 2) {
+			address = new InetSocketAddress(args[2], port);
+		} else {
+			address = new InetSocketAddress(port);
+		}
+		if (args.length > 3) {
+			collector.setSnapshotInterval(Long.parseLong(args[3]));
+		}
+		final InetSocketAddress bound = collector.bind(address);
+		System.out.println("Collecting execution data on " + bound);
+		final CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				collector.stop();
+				try {
+					stopped.await();
+				} catch (final InterruptedException e) {
+					// Terminate without final snapshot
+				}
+			}
+		});
+		try {
+			collector.run();
+		} finally {
+			stopped.countDown();
+		}
+	}
+
+}
@@ -26,17 +26,22 @@ public class ExecDumpClient {
 
 	private boolean dump;
 	private boolean reset;
+	private boolean delta;
+	private boolean compressed;
 	private int retryCount;
 	private long retryDelay;
 
 	/**
 	 * New instance with the defaults <code>dump==true</code>,
-	 * <code>reset==false</code>, <code>retryCount==0</code> and
+	 * <code>reset==false</code>, <code>delta==false</code>,
+	 * <code>compressed==false</code>, <code>retryCount==0</code> and
 	 * <code>retryDelay=1000</code>.
 	 */
 	public ExecDumpClient() {
 		this.dump = true;
 		this.reset = false;
+		this.delta = false;
+		this.compressed = false;
 		this.retryCount = 0;
 		this.setRetryDelay(1000);
 	}
@@ -61,6 +66,34 @@ public class ExecDumpClient {
 		this.reset = reset;
 	}
 
+	/**
+	 * Specifies whether only the execution data of classes which have changed
+	 * since the last delta dump should be requested. Execution counts are
+	 * then reported as increments, so the results of subsequent delta dumps
+	 * can be merged. Only applies if a dump is requested. Agents of previous
+	 * versions do not know the delta dump command and close the connection
+	 * after reporting an "Unknown block type" error.
+	 * 
+	 * @param delta
+	 *            <code>true</code> if a delta dump should be requested
+	 */
+	public void setDelta(final boolean delta) {
+		this.delta = delta;
+	}
+
+	/**
+	 * Specifies whether the execution data should be transferred with deflate
+	 * compression. Agents which do not support compression respond with
+	 * uncompressed execution data. Only applies if a dump without delta is
+	 * requested.
+	 * 
+	 * @param compressed
+	 *            <code>true</code> if a compressed dump should be requested
+	 */
+	public void setCompressed(final boolean compressed) {
+		this.compressed = compressed;
+	}
+
 	/**
 	 * Sets the number of retry attempts to connect to the target socket. This
 	 * allows to wait for a certain time until the target agent has initialized.
@@ -122,7 +155,13 @@ public class ExecDumpClient {
 			remoteReader
 					.setExecutionDataVisitor(loader.getExecutionDataStore());
 
-			remoteWriter.visitDumpCommand(dump, reset);
+			if (dump && delta) {
+				remoteWriter.visitDeltaDumpCommand(reset);
+			} else if (dump && compressed) {
+				remoteWriter.visitCompressedDumpCommand(reset);
+			} else {
+				remoteWriter.visitDumpCommand(dump, reset);
+			}
 			remoteReader.read();
 
 		} finally {
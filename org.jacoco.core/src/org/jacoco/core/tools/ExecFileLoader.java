@@ -23,6 +23,8 @@ import java.io.OutputStream;
 import org.jacoco.core.data.ExecutionDataReader;
 import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.MappedExecutionDataReader;
+import org.jacoco.core.data.MappedExecutionDataWriter;
 import org.jacoco.core.data.SessionInfoStore;
 
 /**
@@ -44,7 +46,8 @@ public class ExecFileLoader {
 	}
 
 	/**
-	 * Reads all data from given input stream.
+	 * Reads all data from given input stream. Besides the exec file format
+	 * also files written by {@link MappedExecutionDataWriter} are supported.
 	 * 
 	 * @param stream
 	 *            Stream to read data from
@@ -52,11 +55,23 @@ public class ExecFileLoader {
 	 *             in case of problems while reading from the stream
 	 */
 	public void load(final InputStream stream) throws IOException {
-		final ExecutionDataReader reader = new ExecutionDataReader(
-				new BufferedInputStream(stream));
-		reader.setExecutionDataVisitor(executionData);
-		reader.setSessionInfoVisitor(sessionInfos);
-		reader.read();
+		final InputStream buffered = new BufferedInputStream(stream);
+		buffered.mark(1);
+		final int first = buffered.read();
+		buffered.reset();
+		if (first == MappedExecutionDataWriter.MAGIC_NUMBER >> 8) {
+			final MappedExecutionDataReader reader = new MappedExecutionDataReader(
+					buffered);
+			reader.setExecutionDataVisitor(executionData);
+			reader.setSessionInfoVisitor(sessionInfos);
+			reader.read();
+		} else {
+			final ExecutionDataReader reader = new ExecutionDataReader(
+					buffered);
+			reader.setExecutionDataVisitor(executionData);
+			reader.setSessionInfoVisitor(sessionInfos);
+			reader.read();
+		}
 	}
 
 	/**
@@ -28,7 +28,9 @@ import org.jacoco.core.runtime.RemoteControlWriter;
 /**
  * This example starts a socket server to collect coverage from agents that run
  * in output mode <code>tcpclient</code>. The collected data is dumped to a
- * local file.
+ * local file. For many agents see
+ * {@link org.jacoco.core.tools.ExecCollector} which serves all connections
+ * with a single thread and merges their data.
  */
 public final class ExecutionDataServer {
 
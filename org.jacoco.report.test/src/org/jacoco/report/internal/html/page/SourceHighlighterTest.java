@@ -150,4 +150,28 @@ public class SourceHighlighterTest {
 				htmlSupport.findStr(doc, "//pre/span/@title"));
 	}
 
+	@Test
+	public void testHighlightExecutionCount() throws Exception {
+		source.increment(CounterImpl.COUNTER_0_1, CounterImpl.COUNTER_0_0, 1);
+		source.incrementExecutionCount(17, 1);
+		sourceHighlighter.highlight(parent.pre(null), source.getLine(1), 1);
+		html.close();
+		final Document doc = htmlSupport.parse(buffer.toString());
+		assertEquals("fc", htmlSupport.findStr(doc, "//pre/span/@class"));
+		assertEquals("Executed 17 times.",
+				htmlSupport.findStr(doc, "//pre/span/@title"));
+	}
+
+	@Test
+	public void testHighlightBranchesExecutionCount() throws Exception {
+		source.increment(CounterImpl.COUNTER_0_1,
+				CounterImpl.getInstance(2, 3), 1);
+		source.incrementExecutionCount(4, 1);
+		sourceHighlighter.highlight(parent.pre(null), source.getLine(1), 1);
+		html.close();
+		final Document doc = htmlSupport.parse(buffer.toString());
+		assertEquals("2 of 5 branches missed. Executed 4 times.",
+				htmlSupport.findStr(doc, "//pre/span/@title"));
+	}
+
 }
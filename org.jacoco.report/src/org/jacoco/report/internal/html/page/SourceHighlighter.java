@@ -103,29 +103,42 @@ final class SourceHighlighter {
 
 		final String lineId = "L" + Integer.toString(lineNr);
 		final ICounter branches = line.getBranchCounter();
+		final long count = line.getExecutionCount();
 		switch (branches.getStatus()) {
 		case ICounter.NOT_COVERED:
 			return span(pre, lineId, style, Styles.BRANCH_NOT_COVERED,
-					"All %2$d branches missed.", branches);
+					"All %2$d branches missed.", branches, count);
 		case ICounter.FULLY_COVERED:
 			return span(pre, lineId, style, Styles.BRANCH_FULLY_COVERED,
-					"All %2$d branches covered.", branches);
+					"All %2$d branches covered.", branches, count);
 		case ICounter.PARTLY_COVERED:
 			return span(pre, lineId, style, Styles.BRANCH_PARTLY_COVERED,
-					"%1$d of %2$d branches missed.", branches);
+					"%1$d of %2$d branches missed.", branches, count);
 		default:
-			return pre.span(style, lineId);
+			final HTMLElement span = pre.span(style, lineId);
+			if (count > 0) {
+				span.attr("title", executions(count));
+			}
+			return span;
 		}
 	}
 
 	private HTMLElement span(final HTMLElement parent, final String id,
 			final String style1, final String style2, final String title,
-			final ICounter branches) throws IOException {
+			final ICounter branches, final long count) throws IOException {
 		final HTMLElement span = parent.span(style1 + " " + style2, id);
 		final Integer missed = Integer.valueOf(branches.getMissedCount());
 		final Integer total = Integer.valueOf(branches.getTotalCount());
-		span.attr("title", String.format(locale, title, missed, total));
+		String text = String.format(locale, title, missed, total);
+		if (count > 0) {
+			text += " " + executions(count);
+		}
+		span.attr("title", text);
 		return span;
 	}
 
+	private String executions(final long count) {
+		return String.format(locale, "Executed %d times.", Long.valueOf(count));
+	}
+
 }
@@ -141,6 +141,9 @@ public final class XMLCoverageWriter {
 				element.attr("nr", nr);
 				writeCounter(element, "mi", "ci", line.getInstructionCounter());
 				writeCounter(element, "mb", "cb", line.getBranchCounter());
+				if (line.getExecutionCount() > 0) {
+					element.attr("ec", line.getExecutionCount());
+				}
 			}
 		}
 	}